@@ -0,0 +1,84 @@
+package com.fx360t.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+
+/**
+ * Latency of one message hop through {@link SimpleMessageService}: time from John's send by handles until 
+ * Bob's receiving thread has the message.<br>
+ * No strategy turns are played, Bob's thread only takes messages from its mailbox, so the result is the cost
+ * of the service and the mailbox alone. A turn of {@link com.fx360t.strategy.StringMessageStrategy} is measured 
+ * by {@link RoundTripLatencyBenchmark}.<br>
+ * Bob acknowledges every received message through a shared counter instead of a reply message, 
+ * John spins on the counter, yielding the core. The acknowledgement costs one cache line transfer, much less than a message hop.
+ * Sample time mode reports latency percentiles.
+ * @author Oleg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=OFF")
+public class MessageHopLatencyBenchmark {
+	@Param({"linked", "ring:1024"})
+	public String mailbox;
+	
+	private SimpleMessageService service;
+	private int john;
+	private int bob;
+	private final AtomicLong received = new AtomicLong();
+	private long sent;
+	private Thread bobReceiver;
+	private volatile boolean running;
+	
+	@Setup
+	public void setUp() {
+		service = new SimpleMessageService(MailboxFactory.forName(mailbox), MailboxLimits.unbounded(), null);
+		john = service.registerUser("John");
+		bob = service.registerUser("Bob");
+		running = true;
+		bobReceiver = new Thread(() -> {
+			while (running) {
+				if (service.getNextMessage(bob) != null)
+					received.lazySet(received.get() + 1);
+			}
+		}, "Bob");
+		bobReceiver.setDaemon(true);
+		bobReceiver.start();
+	}
+	
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		running = false;
+		service.sendMessage("stop", john, bob);
+		bobReceiver.join(TimeUnit.SECONDS.toMillis(1));
+	}
+	
+	@Benchmark
+	public long hop() {
+		long expected = ++sent;
+		service.sendMessage("ping", john, bob);
+		while (received.get() != expected)
+			// gives Bob's thread the core when there are fewer cores than threads
+			Thread.yield();
+		return expected;
+	}
+}
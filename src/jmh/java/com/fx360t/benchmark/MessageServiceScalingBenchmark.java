@@ -0,0 +1,79 @@
+package com.fx360t.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+
+/**
+ * Send throughput of {@link SimpleMessageService} depending on the number of registered users 
+ * and concurrent producers.<br>
+ * Every producer thread is a registered user which sends to all receivers in turn. 
+ * Mailboxes are small and drop the oldest message when full, so producers never wait for consumers.
+ * The number of producers is 4 by default and can be changed with JMH option {@code -t}.
+ * @author Oleg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=OFF")
+@Threads(4)
+public class MessageServiceScalingBenchmark {
+	private static final int CAPACITY = 64;
+	
+	@Param({"linked", "ring:1024"})
+	public String mailbox;
+	
+	@Param({"2", "64", "1024"})
+	public int users;
+	
+	private SimpleMessageService service;
+	private int[] receivers;
+	private final AtomicInteger producers = new AtomicInteger();
+	
+	@Setup
+	public void setUp() {
+		service = new SimpleMessageService(MailboxFactory.forName(mailbox), 
+				new MailboxLimits(CAPACITY, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS), null);
+		receivers = new int[users];
+		for (int i = 0; i < users; i++)
+			receivers[i] = service.registerUser("user" + i);
+	}
+	
+	@State(Scope.Thread)
+	public static class Producer {
+		int handle;
+		int next;
+		
+		@Setup
+		public void setUp(MessageServiceScalingBenchmark benchmark) {
+			handle = benchmark.service.registerUser("producer" + benchmark.producers.getAndIncrement());
+		}
+	}
+	
+	@Benchmark
+	public void send(Producer producer) {
+		int index = producer.next++;
+		if (producer.next == receivers.length)
+			producer.next = 0;
+		service.sendMessage("message", producer.handle, receivers[index]);
+	}
+}
@@ -0,0 +1,68 @@
+package com.fx360t.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.strategy.Message;
+
+/**
+ * Send/take throughput of {@link SimpleMessageService} between one producer and one consumer thread.<br>
+ * Mailbox is bounded and the producer blocks when it is full, so the result is the sustained rate of 
+ * the slower side. Waits are limited to a millisecond, so that no thread hangs at the end of an iteration.
+ * @author Oleg
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=OFF")
+public class MessageServiceThroughputBenchmark {
+	private static final int CAPACITY = 1024;
+	
+	@Param({"linked", "ring:1024"})
+	public String mailbox;
+	
+	private SimpleMessageService service;
+	private int sender;
+	private int receiver;
+	
+	@Setup
+	public void setUp() {
+		service = new SimpleMessageService(MailboxFactory.forName(mailbox), 
+				new MailboxLimits(CAPACITY, OverflowPolicy.BLOCK, 1, TimeUnit.MILLISECONDS), null);
+		sender = service.registerUser("sender");
+		receiver = service.registerUser("receiver");
+	}
+	
+	@Benchmark
+	@Group("sendTake")
+	@GroupThreads(1)
+	public void send() {
+		service.sendMessage("message", sender, receiver);
+	}
+	
+	@Benchmark
+	@Group("sendTake")
+	@GroupThreads(1)
+	public Message<String> take() {
+		return service.pollNextMessage("receiver", 1, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,92 @@
+package com.fx360t.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fx360t.player.SimplePlayer;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.SimplePlayGround;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessagePool;
+import com.fx360t.strategy.StringMessageStrategy;
+
+/**
+ * Round-trip latency between two {@link SimplePlayer}s.<br>
+ * Bob plays turns of {@link StringMessageStrategy} in a background thread: waits for a message, 
+ * prepares a reply and sends it back. Every benchmark call sends a message from John and waits for Bob's reply.
+ * Sample time mode reports latency percentiles, {@code -prof gc} shows allocation with and without the message pool.
+ * @author Oleg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog.level=OFF")
+public class RoundTripLatencyBenchmark {
+	@Param({"linked", "ring:1024"})
+	public String mailbox;
+	
+	/**
+	 * Size of the message pool, 0 to create a new message for every send
+	 */
+	@Param({"0", "1024"})
+	public int pool;
+	
+	private SimpleMessageService service;
+	private int john;
+	private int bob;
+	private Thread bobTurns;
+	private volatile boolean running;
+	
+	@Setup
+	public void setUp() {
+		service = new SimpleMessageService(MailboxFactory.forName(mailbox), MailboxLimits.unbounded(), null, 
+				pool == 0 ? null : new MessagePool<>(pool));
+		SimplePlayGround playGround = new SimplePlayGround();
+		StringMessageStrategy bobStrategy = new StringMessageStrategy(service);
+		SimplePlayer bobPlayer = new SimplePlayer("Bob", "pong", bobStrategy, playGround);
+		bobStrategy.ready(bobPlayer);
+		john = service.registerUser(new SimplePlayer("John", "ping", new StringMessageStrategy(service), playGround)
+				.getIdentity());
+		bob = service.getHandle(bobPlayer.getIdentity());
+		running = true;
+		bobTurns = new Thread(() -> {
+			while (running)
+				bobStrategy.play(bobPlayer);
+		}, "Bob");
+		bobTurns.setDaemon(true);
+		bobTurns.start();
+	}
+	
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		running = false;
+		// the last turn lets Bob's thread see the flag
+		service.sendMessage("stop", john, bob);
+		bobTurns.join(TimeUnit.SECONDS.toMillis(1));
+	}
+	
+	@Benchmark
+	public String roundTrip() {
+		service.sendMessage("ping", john, bob);
+		Message<String> reply = service.getNextMessage(john);
+		String body = reply.getMessageBody();
+		reply.release();
+		return body;
+	}
+}
@@ -1,47 +1,149 @@
 package com.fx360t;
 
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.rmi.AlreadyBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import com.fx360t.metrics.MBeans;
+import com.fx360t.player.EventDrivenPlayer;
 import com.fx360t.player.Player;
+import com.fx360t.player.PlayerExecutors;
 import com.fx360t.player.SimplePlayer;
+import com.fx360t.service.MatchmakingPlayGround;
 import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayGround;
 import com.fx360t.service.PlayerRegistrator;
 import com.fx360t.service.SimpleMessageService;
 import com.fx360t.service.SimplePlayGround;
+import com.fx360t.service.journal.MessageJournal;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.service.session.GameSession;
+import com.fx360t.service.session.SessionPlayGround;
+import com.fx360t.service.simulation.NetworkSimulator;
+import com.fx360t.strategy.MessageCodec;
+import com.fx360t.strategy.MessagePool;
+import com.fx360t.strategy.StringMessageEventStrategy;
 import com.fx360t.strategy.StringMessageStrategy;
+import com.fx360t.tournament.GameResult;
+import com.fx360t.tournament.Tournament;
+import com.fx360t.tournament.TournamentResult;
+import com.fx360t.transport.RmiSocketFactory;
+import com.fx360t.transport.Transport;
 /**
  * Main class which starts playground, message service and two players if not in remote mode.<br>
  * Pass argument {@code -remote} to start in remote mode. In this case playground will be waiting until all 
  * remote players registered and then the game will be started.<br>
- * The second argument in remote mode defines a port on which registry will be created 
+ * The second argument in remote mode defines a port on which registry will be created or services will listen.<br>
+ * Argument {@code -shard} starts a message service node of a sharded deployment, it takes the same arguments 
+ * as remote mode and only serves messages until the process is stopped, players list the nodes in system 
+ * property {@code message.shards}.<br>
+ * Argument {@code -tournament} plays a round robin {@link Tournament} of local players in one JVM, 
+ * the second and the third arguments are the number of players (4 by default) and the number of games 
+ * of every pair (1 by default).<br>
+ * The third argument in remote mode chooses the transport: {@code rmi} (default) or {@code nio}, 
+ * remote players must use the same transport. Players on the same host may use {@code shm} with a server 
+ * started with {@code nio} or {@code shm}, they message each other through memory-mapped files in 
+ * the directory set by system property {@code shm.dir}, private to the OS user in the temporary directory 
+ * by default, rings hold {@code shm.slots} messages of at most 
+ * {@code shm.slot.size} bytes. Sockets of RMI are configured with system properties 
+ * described in {@link RmiSocketFactory#fromSystemProperties()}, connections of {@code nio} compress long message 
+ * bodies from the length set by system property {@code nio.compress.threshold}.<br>
+ * Type of users' mailboxes can be chosen with system property {@code message.mailbox}, 
+ * i.e. {@code linked} (default) or {@code ring:1024}. Mailboxes are unbounded unless system property 
+ * {@code message.mailbox.capacity} is set, then {@code message.mailbox.overflow} defines the overflow policy 
+ * ({@code BLOCK} by default) and {@code message.mailbox.block.timeout} the maximum blocking time in milliseconds.<br>
+ * In local mode system property {@code message.pool} enables reuse of message envelopes, 
+ * its value is the number of free envelopes kept in the pool.<br>
+ * Messages are journaled to memory-mapped files if system property {@code message.journal} is set, 
+ * see {@link MessageJournal#fromSystemProperties()}, a restarted service recovers users and pending messages.<br>
+ * With system property {@code message.opaque} set to {@code true} the service routes message bodies 
+ * as received bytes and does not decode them, see {@link MessageCodec}.<br>
+ * With system property {@code playground.players} the playground accepts that number of players and pairs them 
+ * into games as they register, see {@link MatchmakingPlayGround}, local mode then starts that many players.<br>
+ * In local mode system property {@code playground.sessions} runs that number of games at once in separate 
+ * {@link GameSession sessions}, each with its own John and Bob and its own mailboxes.<br>
+ * Local players run their turn loops in threads of their own unless system property {@code player.executor} 
+ * is {@code shared} or {@code virtual}, see {@link PlayerExecutors}. Outside of sessions system property 
+ * {@code player.events} set to {@code true} starts {@link EventDrivenPlayer}s instead, their turns are taken 
+ * by push threads of the message service, which are limited by system property {@code message.push.threads}, 
+ * the number of cores by default.<br>
+ * Network conditions can be simulated with system properties described in {@link NetworkSimulator#fromSystemProperties()}.<br>
+ * Message service and playground are registered as MXBeans in domain {@value MBeans#DOMAIN}.
  * @author Oleg
  */
 public class App {
 
 	public static void main(String[] args) throws RemoteException  {
 		
-		boolean isRemote = (args.length>0 && "-remote".equalsIgnoreCase(args[0]));
+		boolean isShard = (args.length>0 && "-shard".equalsIgnoreCase(args[0]));
+		boolean isRemote = isShard || (args.length>0 && "-remote".equalsIgnoreCase(args[0]));
 		
-		MessageService<String> messageService = new SimpleMessageService();
-		SimplePlayGround playGround = new SimplePlayGround();
+		MessageJournal journal = messageJournal();
+		SimpleMessageService messageService = 
+				new SimpleMessageService(MailboxFactory.forName(System.getProperty("message.mailbox")), mailboxLimits(),
+						NetworkSimulator.fromSystemProperties(), isRemote ? null : messagePool(), journal);
+		if (args.length>0 && "-tournament".equalsIgnoreCase(args[0])) {
+			playTournament(messageService, args);
+			closeJournal(journal);
+			System.exit(0);
+		}
+		Integer players = Integer.getInteger("playground.players");
+		Integer sessions = isRemote ? null : Integer.getInteger("playground.sessions");
+		PlayGround playGround;
+		PlayerRegistrator registrator = null;
+		SessionPlayGround sessionPlayGround = null;
+		if (sessions != null) {
+			sessionPlayGround = new SessionPlayGround(messageService);
+			playGround = sessionPlayGround;
+		} else if (players == null) {
+			SimplePlayGround simplePlayGround = new SimplePlayGround();
+			playGround = simplePlayGround;
+			registrator = simplePlayGround;
+		} else {
+			MatchmakingPlayGround matchmakingPlayGround = new MatchmakingPlayGround(players);
+			playGround = matchmakingPlayGround;
+			registrator = matchmakingPlayGround;
+		}
+		ExecutorService playerExecutor = isRemote ? null : PlayerExecutors.fromSystemProperties();
+		MBeans.register(messageService, "MessageService", "default");
+		MBeans.register(playGround, "PlayGround", "default");
 		if (isRemote) {
-			int registryPort = (args.length>1 && args[1].matches("\\d+") ? Integer.parseInt(args[1]):1099);
+			int port = (args.length>1 && args[1].matches("\\d+") ? Integer.parseInt(args[1]):1099);
+			Transport transport = Transport.forName(args.length>2 ? args[2] : null);
 			try {
-				initializeRMI(messageService, playGround,registryPort);
-			} catch (RemoteException | AlreadyBoundException | UnknownHostException e) {
-				System.out.println("Unable to initialize RMI: " + e.getMessage());
+				initializeTransport(transport, messageService, registrator, port);
+			} catch (IOException e) {
+				System.out.println("Unable to initialize " + transport + " transport: " + e.getMessage());
 				e.printStackTrace();
 			}
-		} else {
-			Player player1 = new SimplePlayer("John","Hi there",
-								new StringMessageStrategy(messageService), playGround);
-			Player player2 = new SimplePlayer("Bob","Hi there", new StringMessageStrategy(messageService), playGround);
+			if (isShard) {
+				System.out.println("Serving messages as a shard node...");
+				try {
+					// transport threads are daemons, the node lives as long as the main thread
+					Thread.currentThread().join();
+				} catch (InterruptedException e) {
+					System.exit(0);
+				}
+			}
+		} else if (sessionPlayGround != null) {
+			try {
+				for (int i = 0; i < sessions; i++) {
+					GameSession session = sessionPlayGround.openSession();
+					new SimplePlayer("John", "Hi there", new StringMessageStrategy(session.getMessageService()), session, 
+							null, playerExecutor).prepare();
+					new SimplePlayer("Bob", "Hi there", new StringMessageStrategy(session.getMessageService()), session, 
+							null, playerExecutor).prepare();
+				}
+			} catch (RemoteException e) {
+				//never thrown in this mode
+			}
+		} else if (players == null) {
+			Player player1 = localPlayer("John", messageService, registrator, playerExecutor);
+			Player player2 = localPlayer("Bob", messageService, registrator, playerExecutor);
 			try {
 				player1.prepare();
 				player2.prepare();		
@@ -49,6 +151,13 @@ public class App {
 				//never thrown in this mode
 			}
 			
+		} else {
+			try {
+				for (int i = 1; i <= players; i++)
+					localPlayer("Player" + i, messageService, registrator, playerExecutor).prepare();
+			} catch (RemoteException e) {
+				//never thrown in this mode
+			}
 		}
 		
 		playGround.waitAllPlayersRegistered();
@@ -59,19 +168,82 @@ public class App {
 		
 		playGround.finishPlaying();
 		
+		closeJournal(journal);
 		System.exit(0);
 	}
 
-	private static void initializeRMI(MessageService<String> messageService, PlayerRegistrator playGround , int registryPort)
-			throws RemoteException, AlreadyBoundException, UnknownHostException {
-		System.out.println("Initializing RMI on " + InetAddress.getLocalHost()+":"+registryPort);
-		Registry registry = LocateRegistry.createRegistry(registryPort);
-		MessageService<String> msStub = (MessageService<String>) UnicastRemoteObject.exportObject(messageService,0);
-		registry.bind("MessageService", msStub);
+	/**
+	 * Plays a round robin of players with {@link StringMessageStrategy}
+	 */
+	private static void playTournament(MessageService<String> messageService, String[] args) {
+		int players = (args.length>1 && args[1].matches("\\d+") ? Integer.parseInt(args[1]) : 4);
+		int rounds = (args.length>2 && args[2].matches("\\d+") ? Integer.parseInt(args[2]) : 1);
+		try (Tournament tournament = new Tournament(messageService)) {
+			for (int i = 1; i <= players; i++)
+				tournament.addEntrant("Player" + i, StringMessageStrategy::new);
+			TournamentResult result = tournament.roundRobin(rounds);
+			for (GameResult game : result.getGames())
+				System.out.println(game);
+			System.out.println(result);
+		}
+	}
+
+	private static void closeJournal(MessageJournal journal) {
+		if (journal != null)
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.out.println("Unable to close message journal: " + e.getMessage());
+			}
+	}
+
+	/**
+	 * Creates a player for a local playground, event driven if system property {@code player.events} is {@code true}
+	 */
+	private static Player localPlayer(String name, MessageService<String> messageService, PlayerRegistrator playGround,
+			ExecutorService playerExecutor) {
+		if (Boolean.getBoolean("player.events"))
+			return new EventDrivenPlayer(name, "Hi there", new StringMessageEventStrategy(), messageService, playGround);
+		return new SimplePlayer(name, "Hi there", new StringMessageStrategy(messageService), playGround, null, playerExecutor);
+	}
+
+	/**
+	 * Creates mailbox limits configured by system properties
+	 */
+	private static MailboxLimits mailboxLimits() {
+		Integer capacity = Integer.getInteger("message.mailbox.capacity");
+		if (capacity == null)
+			return MailboxLimits.unbounded();
+		OverflowPolicy policy = OverflowPolicy.valueOf(System.getProperty("message.mailbox.overflow", "BLOCK").toUpperCase());
+		long timeout = Long.getLong("message.mailbox.block.timeout", Long.MAX_VALUE);
+		return new MailboxLimits(capacity, policy, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Creates a pool of message envelopes if system property {@code message.pool} is set
+	 */
+	private static MessagePool<String> messagePool() {
+		Integer size = Integer.getInteger("message.pool");
+		return size == null ? null : new MessagePool<>(size);
+	}
+
+	/**
+	 * Opens the message journal if system property {@code message.journal} is set
+	 */
+	private static MessageJournal messageJournal() {
+		try {
+			return MessageJournal.fromSystemProperties();
+		} catch (IOException e) {
+			System.out.println("Unable to open message journal, messages are not persisted: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static void initializeTransport(Transport transport, MessageService<String> messageService, 
+			PlayerRegistrator playGround, int port) throws IOException {
+		System.out.println("Initializing " + transport + " transport on " + InetAddress.getLocalHost()+":"+port);
+		transport.bind(messageService, playGround, port);
 		System.out.println("MessageService is ready..");
-		PlayerRegistrator rem = playGround;
-		PlayerRegistrator pgStub = (PlayerRegistrator) UnicastRemoteObject.exportObject(rem, 0);
-		registry.bind("PlayGround", pgStub);
 		System.out.println("PlayGround is ready..");
 		System.out.println("Waiting for players to connect...");
 	}
@@ -0,0 +1,104 @@
+package com.fx360t.log;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fx360t.service.mailbox.Mailbox;
+import com.fx360t.service.mailbox.RingBufferMailbox;
+
+/**
+ * Writes {@link LogEvent}s to the console in a background daemon thread.<br>
+ * Loggers put events into a lock-free {@link RingBufferMailbox} and return immediately. 
+ * When the ring is full events are dropped and counted instead of blocking the logging thread, 
+ * the number of dropped events is reported by the writer.
+ * Size of the ring is set with system property {@code log.buffer.size}. 
+ * Pending events are written out by a shutdown hook when JVM exits.
+ * @author Oleg
+ */
+final class AsyncLogWriter implements Runnable {
+	private static final int BUFFER_SIZE = Integer.getInteger("log.buffer.size", 8192);
+	
+	/**
+	 * Writer instance created on the first event
+	 */
+	private static volatile AsyncLogWriter instance;
+	
+	private final Mailbox<LogEvent> events = new RingBufferMailbox<>(BUFFER_SIZE);
+	private final AtomicLong dropped = new AtomicLong();
+	private final PrintStream out;
+	/**
+	 * Reused by the writer to format messages, guarded by {@link #out}
+	 */
+	private final StringBuilder line = new StringBuilder(256);
+
+	private AsyncLogWriter(PrintStream out) {
+		this.out = out;
+	}
+	
+	static AsyncLogWriter getInstance() {
+		AsyncLogWriter writer = instance;
+		if (writer == null) {
+			synchronized (AsyncLogWriter.class) {
+				writer = instance;
+				if (writer == null) {
+					writer = new AsyncLogWriter(System.out);
+					Thread thread = new Thread(writer, "log-writer");
+					thread.setDaemon(true);
+					thread.start();
+					Runtime.getRuntime().addShutdownHook(new Thread(writer::flush, "log-flusher"));
+					instance = writer;
+				}
+			}
+		}
+		return writer;
+	}
+	
+	/**
+	 * Puts an event to the ring without waiting
+	 */
+	void append(LogEvent event) {
+		if (!events.offer(event))
+			dropped.incrementAndGet();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				write(events.take());
+				if (events.isEmpty())
+					synchronized (out) {
+						out.flush();
+					}
+			}
+		} catch (InterruptedException e) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Writes events pending at the moment of the call.<br>
+	 * Events appended meanwhile are left in the ring, so a thread which keeps logging can not hold the flush forever.
+	 */
+	void flush() {
+		LogEvent event;
+		for (int pending = events.size(); pending > 0 && (event = events.poll()) != null; pending--)
+			write(event);
+		synchronized (out) {
+			out.flush();
+		}
+	}
+	
+	private void write(LogEvent event) {
+		synchronized (out) {
+			long lost = dropped.getAndSet(0);
+			if (lost > 0)
+				out.println("WARN " + lost + " log events were dropped");
+			line.setLength(0);
+			event.formatTo(line);
+			out.println(line);
+			if (event.error != null)
+				event.error.printStackTrace(out);
+		}
+	}
+}
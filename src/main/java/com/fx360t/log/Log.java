@@ -0,0 +1,115 @@
+package com.fx360t.log;
+
+/**
+ * Logger used on hot paths instead of printing to the console directly.<br>
+ * Logging call only checks the level and puts an event with the message pattern and arguments into
+ * the ring of {@link AsyncLogWriter}, formatting and console output happen in the writer thread.
+ * Placeholders {@code {}} in the pattern are replaced with arguments, so arguments should not be changed 
+ * after they are logged.<br>
+ * Level threshold is set once with system property {@code log.level} ({@code INFO} by default). 
+ * It is a constant for JIT, so with {@code OFF} disabled calls cost nothing and the writer thread is never started.
+ * @author Oleg
+ */
+public final class Log {
+	/**
+	 * Minimum level of events which are written
+	 */
+	private static final int THRESHOLD = LogLevel.parse(System.getProperty("log.level"), LogLevel.INFO).ordinal();
+	
+	private static final Log INSTANCE = new Log();
+	
+	private Log() {
+	}
+	
+	/**
+	 * Returns a logger for the class.<br>
+	 * All loggers currently share the same threshold and writer, the class is used for future per-class settings.
+	 * @param type - class which logs events
+	 * @return logger
+	 */
+	public static Log getLog(Class<?> type) {
+		return INSTANCE;
+	}
+	
+	public boolean isEnabled(LogLevel level) {
+		return level.ordinal() >= THRESHOLD;
+	}
+	
+	public boolean isDebugEnabled() {
+		return LogLevel.DEBUG.ordinal() >= THRESHOLD;
+	}
+	
+	public boolean isInfoEnabled() {
+		return LogLevel.INFO.ordinal() >= THRESHOLD;
+	}
+	
+	public void debug(String message) {
+		if (LogLevel.DEBUG.ordinal() >= THRESHOLD)
+			append(LogLevel.DEBUG, message, 0, null, null, null, null);
+	}
+	
+	public void debug(String pattern, Object arg) {
+		if (LogLevel.DEBUG.ordinal() >= THRESHOLD)
+			append(LogLevel.DEBUG, pattern, 1, arg, null, null, null);
+	}
+	
+	public void debug(String pattern, Object arg1, Object arg2) {
+		if (LogLevel.DEBUG.ordinal() >= THRESHOLD)
+			append(LogLevel.DEBUG, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	public void debug(String pattern, Object arg1, Object arg2, Object arg3) {
+		if (LogLevel.DEBUG.ordinal() >= THRESHOLD)
+			append(LogLevel.DEBUG, pattern, 3, arg1, arg2, arg3, null);
+	}
+	
+	public void info(String message) {
+		if (LogLevel.INFO.ordinal() >= THRESHOLD)
+			append(LogLevel.INFO, message, 0, null, null, null, null);
+	}
+	
+	public void info(String pattern, Object arg) {
+		if (LogLevel.INFO.ordinal() >= THRESHOLD)
+			append(LogLevel.INFO, pattern, 1, arg, null, null, null);
+	}
+	
+	public void info(String pattern, Object arg1, Object arg2) {
+		if (LogLevel.INFO.ordinal() >= THRESHOLD)
+			append(LogLevel.INFO, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	public void info(String pattern, Object arg1, Object arg2, Object arg3) {
+		if (LogLevel.INFO.ordinal() >= THRESHOLD)
+			append(LogLevel.INFO, pattern, 3, arg1, arg2, arg3, null);
+	}
+	
+	public void warn(String message) {
+		if (LogLevel.WARN.ordinal() >= THRESHOLD)
+			append(LogLevel.WARN, message, 0, null, null, null, null);
+	}
+	
+	public void warn(String pattern, Object arg) {
+		if (LogLevel.WARN.ordinal() >= THRESHOLD)
+			append(LogLevel.WARN, pattern, 1, arg, null, null, null);
+	}
+	
+	public void warn(String pattern, Object arg1, Object arg2) {
+		if (LogLevel.WARN.ordinal() >= THRESHOLD)
+			append(LogLevel.WARN, pattern, 2, arg1, arg2, null, null);
+	}
+	
+	public void error(String message, Throwable error) {
+		if (LogLevel.ERROR.ordinal() >= THRESHOLD)
+			append(LogLevel.ERROR, message, 0, null, null, null, error);
+	}
+	
+	public void error(String pattern, Object arg, Throwable error) {
+		if (LogLevel.ERROR.ordinal() >= THRESHOLD)
+			append(LogLevel.ERROR, pattern, 1, arg, null, null, error);
+	}
+	
+	private static void append(LogLevel level, String pattern, int arguments, 
+			Object arg1, Object arg2, Object arg3, Throwable error) {
+		AsyncLogWriter.getInstance().append(new LogEvent(level, pattern, arguments, arg1, arg2, arg3, error));
+	}
+}
@@ -0,0 +1,48 @@
+package com.fx360t.log;
+
+/**
+ * One log event as it is passed to {@link AsyncLogWriter}.<br>
+ * It keeps the message pattern and its arguments, the message is formatted only by the writer thread.
+ * Placeholders {@code {}} of the pattern are replaced with arguments in their order.
+ * @author Oleg
+ */
+final class LogEvent {
+	final LogLevel level;
+	final String pattern;
+	/**
+	 * Number of arguments passed with the pattern
+	 */
+	final int arguments;
+	final Object arg1;
+	final Object arg2;
+	final Object arg3;
+	final Throwable error;
+	
+	LogEvent(LogLevel level, String pattern, int arguments, Object arg1, Object arg2, Object arg3, Throwable error) {
+		this.level = level;
+		this.pattern = pattern;
+		this.arguments = arguments;
+		this.arg1 = arg1;
+		this.arg2 = arg2;
+		this.arg3 = arg3;
+		this.error = error;
+	}
+	
+	/**
+	 * Formats the message of this event
+	 * @param target - builder to append the message to
+	 */
+	void formatTo(StringBuilder target) {
+		if (level.compareTo(LogLevel.WARN) >= 0)
+			target.append(level).append(' ');
+		Object[] args = {arg1, arg2, arg3};
+		int argument = 0;
+		int from = 0;
+		int placeholder;
+		while (argument < arguments && (placeholder = pattern.indexOf("{}", from)) >= 0) {
+			target.append(pattern, from, placeholder).append(args[argument++]);
+			from = placeholder + 2;
+		}
+		target.append(pattern, from, pattern.length());
+	}
+}
@@ -0,0 +1,26 @@
+package com.fx360t.log;
+
+/**
+ * Levels of log events, from the most detailed to {@link #OFF}.
+ * @author Oleg
+ */
+public enum LogLevel {
+	TRACE, DEBUG, INFO, WARN, ERROR,
+	/** Threshold which disables logging completely*/
+	OFF;
+	
+	/**
+	 * Parses level name ignoring case
+	 * @param name - level name, may be {@code null}
+	 * @param defaultLevel - level returned when name is {@code null} or unknown
+	 * @return parsed level
+	 */
+	public static LogLevel parse(String name, LogLevel defaultLevel) {
+		if (name != null)
+			for (LogLevel level : values()) {
+				if (level.name().equalsIgnoreCase(name.trim()))
+					return level;
+			}
+		return defaultLevel;
+	}
+}
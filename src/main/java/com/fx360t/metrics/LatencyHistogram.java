@@ -0,0 +1,102 @@
+package com.fx360t.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with power of two buckets.<br>
+ * Bucket {@code i} counts values from {@code 2^i} to {@code 2^(i+1)-1}, so percentiles are accurate 
+ * within a factor of two, which is enough to see where latency goes. Buckets are {@link LongAdder}s:
+ * recording is a couple of shifts and an uncontended add, concurrent recorders do not share a counter.
+ * @author Oleg
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 64;
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+	
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new LongAdder();
+	}
+	
+	/**
+	 * Records one value, negative values are recorded as zero
+	 * @param nanos - latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets)
+			count += bucket.sum();
+		return count;
+	}
+	
+	/**
+	 * @return mean of recorded values in nanoseconds or 0 if nothing is recorded
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) total.sum() / count;
+	}
+	
+	/**
+	 * @return maximum recorded value in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the upper bound of the bucket containing the given percentile
+	 * @param percentile - percentile from 0 to 100
+	 * @return upper bound in nanoseconds or 0 if nothing is recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = getBuckets();
+		long count = 0;
+		for (long c : counts)
+			count += c;
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0)
+				return Math.min((2L << i) - 1, getMax());
+		}
+		return getMax();
+	}
+	
+	/**
+	 * @return counts of all buckets, element {@code i} counts values from {@code 2^i} to {@code 2^(i+1)-1}
+	 */
+	public long[] getBuckets() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = buckets[i].sum();
+		return counts;
+	}
+	
+	/**
+	 * Clears all recorded values. Values recorded concurrently may be partially lost
+	 */
+	public void reset() {
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+		total.reset();
+		max.reset();
+	}
+}
@@ -0,0 +1,57 @@
+package com.fx360t.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.fx360t.log.Log;
+
+/**
+ * Registration of MBeans in the platform MBean server under domain {@value #DOMAIN}.
+ * @author Oleg
+ */
+public final class MBeans {
+	private static final Log LOG = Log.getLog(MBeans.class);
+	/** Domain of registered MBeans */
+	public static final String DOMAIN = "com.fx360t";
+	
+	private MBeans() {
+	}
+	
+	/**
+	 * Registers an MBean with name {@code com.fx360t:type=<type>,name="<name>"}.<br>
+	 * Failures are logged, metrics are never a reason to stop the application.
+	 * @param mbean - MBean or MXBean implementation
+	 * @param type - type part of the object name
+	 * @param name - name part of the object name
+	 * @return name of registered MBean or {@code null} if it was not registered
+	 */
+	public static ObjectName register(Object mbean, String type, String name) {
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+			return objectName;
+		} catch (JMException e) {
+			LOG.error("Unable to register MBean {}", type + "/" + name, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Unregisters an MBean registered by {@link #register}
+	 * @param objectName - name of the MBean, ignored if {@code null}
+	 */
+	public static void unregister(ObjectName objectName) {
+		if (objectName == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			LOG.error("Unable to unregister MBean {}", objectName, e);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.fx360t.player;
+
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessagePublisher;
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.strategy.EventDrivenStrategy;
+import com.fx360t.strategy.Message;
+
+/**
+ * Implementation of {@link Player} which takes its turns when messages arrive.<br>
+ * The player subscribes to its messages with the {@link MessagePublisher} of the message service,
+ * every pushed message is passed to the {@link EventDrivenStrategy} and the returned replies are sent.
+ * The player has no thread of its own: turns are taken by push threads of the message service,
+ * so a waiting player costs only its objects.<br>
+ * {@link #waitAllTurnsCompleted()} returns when the strategy reaches its stop condition.
+ * This player is used on a playground in the same JVM as the message service.
+ * @author Oleg
+ */
+public class EventDrivenPlayer implements Player, MessageListener<String> {
+	private static final Log LOG = Log.getLog(EventDrivenPlayer.class);
+
+	private final String name;
+	/**
+	 * Identity of this player, computed once at construction
+	 */
+	private final String identity;
+	private final String startMessage;
+	private final EventDrivenStrategy<Message<String>> strategy;
+	private final MessageService<String> messageService;
+	private final MessagePublisher<String> publisher;
+	private final PlayerRegistrator playGround;
+	/**
+	 * Released when the strategy reaches its stop condition
+	 */
+	private final CountDownLatch turnsCompleted = new CountDownLatch(1);
+
+	/**
+	 * Constructs a player for playing on local playground on the same JVM
+	 * @param name - the player's name
+	 * @param startMessage - message to start a game with
+	 * @param strategy - the player's game strategy
+	 * @param messageService - message service which is a {@link MessagePublisher}
+	 * @param playGround - local playground to play on
+	 * @throws IllegalArgumentException if the service does not push messages
+	 */
+	@SuppressWarnings("unchecked")
+	public EventDrivenPlayer(String name, String startMessage, EventDrivenStrategy<Message<String>> strategy,
+			MessageService<String> messageService, PlayerRegistrator playGround) {
+		if (!(messageService instanceof MessagePublisher))
+			throw new IllegalArgumentException("Message service " + messageService + " does not push messages");
+		this.name = name;
+		this.identity = name + "/" + ManagementFactory.getRuntimeMXBean().getName();
+		this.startMessage = startMessage;
+		this.strategy = strategy;
+		this.messageService = messageService;
+		this.publisher = (MessagePublisher<String>) messageService;
+		this.playGround = playGround;
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void prepare() throws RemoteException {
+		strategy.ready(this);
+		messageService.register(identity);
+		publisher.subscribe(identity, this);
+		playGround.registerPlayer(this);
+	}
+
+	@Override
+	public void startToPlay(boolean initiator, Player other) throws RemoteException {
+		if (initiator) {
+			LOG.info("{} starts messaging with {}", name, other.getName());
+			send(strategy.start(this, new Message<>(startMessage, identity, other.getIdentity())));
+		}
+	}
+
+	@Override
+	public void onMessages(List<Message<String>> messages) {
+		for (Message<String> message : messages) {
+			List<Message<String>> replies = strategy.onMessage(this, message);
+			message.release();
+			send(replies);
+		}
+		if (strategy.stopCondition())
+			turnsCompleted.countDown();
+	}
+
+	private void send(List<Message<String>> messages) {
+		for (Message<String> message : messages)
+			try {
+				if (message.hasHandles())
+					messageService.sendMessage(message.getMessageBody(), message.getSenderHandle(),
+							message.getReceiverHandle());
+				else
+					messageService.sendMessage(message.getMessageBody(), message.getSenderName(),
+							message.getReceiverName());
+			} catch (RemoteException e) {
+				LOG.error("Fail to perform an operation due to exception", e);
+			} catch (MessageRejectedException e) {
+				LOG.warn("Reply was rejected: {}", e.getMessage());
+			}
+	}
+
+	@Override
+	public void waitAllTurnsCompleted() {
+		try {
+			turnsCompleted.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.error("Interrupted while waiting all turns completed", e);
+		}
+	}
+
+	@Override
+	public void gameOver() throws RemoteException {
+		publisher.unsubscribe(identity);
+		strategy.finish(this);
+		messageService.unregister(identity);
+		turnsCompleted.countDown();
+		LOG.info("{} finished the game", name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
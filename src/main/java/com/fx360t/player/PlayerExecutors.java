@@ -0,0 +1,83 @@
+package com.fx360t.player;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fx360t.log.Log;
+
+/**
+ * Executors to be shared by {@link SimplePlayer}s for running their turn loops.<br>
+ * A turn loop blocks while waiting for the next message and runs until the game is over, so a shared
+ * executor must not limit the number of its threads: both players of a game play at the same time.
+ * A {@link #shared() shared} executor reuses platform threads between games, so a JVM needs as many threads
+ * as players are playing at the moment, not one per created player. A {@link #virtual() virtual} executor
+ * runs every loop in a virtual thread which releases its carrier thread while waiting for a message.
+ * @author Oleg
+ */
+public final class PlayerExecutors {
+	private static final Log LOG = Log.getLog(PlayerExecutors.class);
+
+	private PlayerExecutors() {
+	}
+
+	/**
+	 * Creates an executor which reuses daemon platform threads named {@code player-N}
+	 * @return new executor
+	 */
+	public static ExecutorService shared() {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "player-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Creates an executor starting a virtual thread for every task.<br>
+	 * Virtual threads need Java 21, on an older JVM a {@link #shared()} executor is returned.
+	 * @return new executor
+	 */
+	public static ExecutorService virtual() {
+		try {
+			// looked up at run time as the code is compiled for Java 8
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			LOG.warn("Virtual threads are not available on Java {}, platform threads are shared instead",
+					System.getProperty("java.version"));
+			return shared();
+		}
+	}
+
+	/**
+	 * Creates an executor by its name.<br>
+	 * Supported names are {@code dedicated} where every player starts its own thread, {@code shared}
+	 * and {@code virtual}.
+	 * @param name - name of the executor
+	 * @return new executor or {@code null} for {@code dedicated} and a {@code null} name
+	 * @throws IllegalArgumentException if name is unknown
+	 */
+	public static ExecutorService forName(String name) {
+		if (name == null || "dedicated".equalsIgnoreCase(name))
+			return null;
+		if ("shared".equalsIgnoreCase(name))
+			return shared();
+		if ("virtual".equalsIgnoreCase(name))
+			return virtual();
+		throw new IllegalArgumentException("Unknown player executor: " + name);
+	}
+
+	/**
+	 * Creates an executor named by system property {@code player.executor}, see {@link #forName(String)}
+	 * @return new executor or {@code null} if players use dedicated threads
+	 */
+	public static ExecutorService fromSystemProperties() {
+		return forName(System.getProperty("player.executor"));
+	}
+}
@@ -1,14 +1,11 @@
 package com.fx360t.player;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
-import java.net.MalformedURLException;
-import java.rmi.Naming;
-import java.rmi.NoSuchObjectException;
-import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -18,6 +15,11 @@ import com.fx360t.service.PlayerRegistrator;
 import com.fx360t.strategy.GameStrategy;
 import com.fx360t.strategy.Message;
 import com.fx360t.strategy.StringMessageStrategy;
+import com.fx360t.transport.CoalescingMessageService;
+import com.fx360t.transport.PushMessageService;
+import com.fx360t.transport.RmiTransport;
+import com.fx360t.transport.ShardedMessageService;
+import com.fx360t.transport.Transport;
 
 /**
  * Implementation of {@link Player} interface.<br>
@@ -26,7 +28,8 @@ import com.fx360t.strategy.StringMessageStrategy;
  * In the preparing phase player registers on the playground and triggers
  * {@link GameStrategy#ready} method  <br>
  * The main play phase (strategy turn loop) is started in {@code gameRunner} thread when playground calls
- * {@link #startToPlay} method where the first boolean parameter indicates if player is considered as initiator <br>
+ * {@link #startToPlay} method where the first boolean parameter indicates if player is considered as initiator.
+ * Players may run their turn loops on a shared executor instead, see {@link PlayerExecutors}.<br>
  * When all turns of initiator game is completed, i.e. when {@link #waitAllTurnsCompleted()} methods returns, 
  * playground will trigger {@link #gameOver()} method of this player.
  * @author Oleg
@@ -38,6 +41,10 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	
 	
 	private String name;
+	/**
+	 * Identity of this player, computed once at construction
+	 */
+	private String identity;
 	/**
 	 * Strategy of game used by player
 	 */
@@ -48,16 +55,21 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	private transient PlayerRegistrator playGround;
 	
 	/**
-	 * Single thread executor service to provide a thread for running strategy turns
+	 * Single thread executor service to provide a thread for running strategy turns, 
+	 * {@code null} if turns run on a shared executor
+	 */
+	private transient ExecutorService gameRunner;
+	/**
+	 * Executor running strategy turns, either {@link #gameRunner} or a shared one
 	 */
-	private transient ExecutorService gameRunner = Executors.newSingleThreadExecutor();
+	private transient Executor turnRunner;
 
 	/**
 	 * Single thread executor service to provide a thread in which final operations will be
 	 * performed when the game is over.<br>
-	 *  It is only used when dealing with RMI calls to shutdown program without generating {@link RemoteException}  
+	 *  It is only created when dealing with RMI calls to shutdown program without generating {@link RemoteException}  
 	 */
-	private transient ExecutorService finalizer = Executors.newSingleThreadExecutor();
+	private transient ExecutorService finalizer;
 	private transient FinalizeTask finalizeTask = new FinalizeTask();
 	
 	/**
@@ -77,9 +89,9 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	 */
 	private Player selfRef;
 	/**
-	 * boolean flag indicates if this player uses remote playground and is itself a remote player
+	 * Transport used to export this player to a remote playground, {@code null} if the playground is local
 	 */
-	private boolean remote;
+	private transient Transport transport;
 	/**
 	 * Message to start a game with
 	 */
@@ -87,8 +99,7 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	
 	@Override
 	public String getIdentity() {
-		RuntimeMXBean mBean = ManagementFactory.getRuntimeMXBean();
-		return name+"/"+mBean.getName();
+		return identity;
 	}
 
 	@Override
@@ -107,6 +118,7 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	
 	/**
 	 * Constructs a player for playing on local or remote playground depending on passed parameter.
+	 * Remote player is exported with {@link RmiTransport}.
 	 * @param name - the player's name
 	 * @param strategy - the player's game strategy
 	 * @param playGround - playground to play on
@@ -114,15 +126,48 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 	 */
 	public SimplePlayer(String name, String startMessage,GameStrategy<Message<String>> strategy, PlayerRegistrator playGround,
 			boolean remote) {
+		this(name, startMessage, strategy, playGround, remote ? new RmiTransport() : null);
+	}
+	
+	/**
+	 * Constructs a player for playing on a remote playground reached through the transport.
+	 * @param name - the player's name
+	 * @param strategy - the player's game strategy
+	 * @param playGround - playground to play on
+	 * @param transport - transport to export this player or {@code null} if the playground runs on the same JVM
+	 */
+	public SimplePlayer(String name, String startMessage,GameStrategy<Message<String>> strategy, PlayerRegistrator playGround,
+			Transport transport) {
+		this(name, startMessage, strategy, playGround, transport, null);
+	}
+
+	/**
+	 * Constructs a player running its turns on a shared executor.
+	 * @param name - the player's name
+	 * @param strategy - the player's game strategy
+	 * @param playGround - playground to play on
+	 * @param transport - transport to export this player or {@code null} if the playground runs on the same JVM
+	 * @param turnRunner - executor for the turn loop or {@code null} to run it in a thread of this player, 
+	 * a shared executor is not shut down by the player
+	 */
+	public SimplePlayer(String name, String startMessage,GameStrategy<Message<String>> strategy, PlayerRegistrator playGround,
+			Transport transport, Executor turnRunner) {
 		this.name = name;
+		RuntimeMXBean mBean = ManagementFactory.getRuntimeMXBean();
+		this.identity = name+"/"+mBean.getName();
 		this.strategy = strategy;
 		this.playGround = playGround;
-		this.remote = remote;
+		this.transport = transport;
 		this.startMessage = startMessage;
+		if (turnRunner == null) {
+			this.gameRunner = Executors.newSingleThreadExecutor();
+			this.turnRunner = gameRunner;
+		} else
+			this.turnRunner = turnRunner;
 	}
 	/**
 	 * Implements operations of ending this player process. <br>
-	 * Used to finish application in RMI mode 
+	 * Used to finish application in remote mode 
 	 * 
 	 */
 	private class FinalizeTask implements Runnable{
@@ -130,15 +175,16 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 			try {
 				// wait until it is possible to finalize process
 				timeToFinalize.acquire();
-				UnicastRemoteObject.unexportObject(SimplePlayer.this, true);
+				transport.unexport(SimplePlayer.this);
+				transport.close();
 				System.exit(0);
-			} catch (InterruptedException | NoSuchObjectException e) {
+			} catch (InterruptedException | IOException e) {
 				;
 			}
 		}
 	}
 	public void prepare() throws RemoteException {
-		if (remote) {
+		if (transport != null) {
 			try {
 				//acquire lock which will be then waited on from FinalizeTask
 				timeToFinalize.acquire();
@@ -146,9 +192,9 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 				throw new RemoteException(e.getMessage(), e);
 			}
 			//exporting this player to be available from playground
-			Player stub = (Player) UnicastRemoteObject.exportObject(this, 0);
-			selfRef = stub;
+			selfRef = transport.export(this);
 			//executing finalize task
+			finalizer = Executors.newSingleThreadExecutor();
 			finalizer.execute( finalizeTask);
 		} else
 			selfRef = this;
@@ -202,17 +248,18 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 			strategy.start(selfRef, message);
 		}
 		//execute main strategy loop
-		gameRunner.execute(this);
+		turnRunner.execute(this);
 
 	}
 
 	@Override
 	public void gameOver() {
 		strategy.finish(selfRef);
-		//shutdown main loop
-		gameRunner.shutdown();
+		//shutdown main loop, a shared executor is left to its owner
+		if (gameRunner != null)
+			gameRunner.shutdown();
 		System.out.println(name+" finished the game");
-		if (remote) {
+		if (transport != null) {
 			// signal to finalize task
 			timeToFinalize.release();
 		}
@@ -220,39 +267,54 @@ public class SimplePlayer implements Runnable, Serializable, Player {
 
 	/**
 	 * Main method used to run Player in its own JVM.<br>
-	 * Parameters define user name, starting message  and optionally RMI registry address (i.e. 'localhost:1099'). 
+	 * Parameters define user name, starting message, optionally address of the playground (i.e. 'localhost:1099') 
+	 * and transport ({@code rmi} by default, {@code nio} or {@code shm} for players on the same host).<br> 
+	 * With system property {@code message.push} set to {@code true} messages are pushed to the player 
+	 * by the message service instead of being waited for, see {@link PushMessageService}. 
+	 * System property {@code message.coalesce} as {@code maxBatch:maxDelayMicros} makes sending asynchronous, 
+	 * messages sent within the window go to the message service with one call, see {@link CoalescingMessageService}. 
+	 * System property {@code message.shards} lists addresses of message service nodes separated by commas, 
+	 * users are partitioned across them by consistent hashing, see {@link ShardedMessageService}. 
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		String rmiAddress = (args.length > 2 ? args[2] : "localhost:1099");
+		String address = (args.length > 2 ? args[2] : "localhost:1099");
+		Transport transport = Transport.forName(args.length > 3 ? args[3] : null);
 		PlayerRegistrator playGround = null;
 		try {
-			System.out.println("Trying to connect to PlayGround at " + rmiAddress);
-			playGround = (PlayerRegistrator) Naming
-					.lookup("rmi://" + rmiAddress + "/" + PlayerRegistrator.SERVICE_NAME);
-		} catch (MalformedURLException | RemoteException | NotBoundException e) {
+			System.out.println("Trying to connect to PlayGround at " + address + " over " + transport);
+			playGround = transport.lookupPlayGround(address);
+		} catch (IOException e) {
 			System.out.println(
 					"Can't connect to a playground due to exception: " + e.getMessage() + "\n. Program will exit now");
 			e.printStackTrace();
 			System.exit(1);
 		}
-		System.out.println("Found PlayGround at " + rmiAddress);
+		System.out.println("Found PlayGround at " + address);
 		MessageService<String> messageService = null;
 		try {
-			System.out.println("Trying to connect to MessageService at " + rmiAddress);
-			messageService = (MessageService<String>) Naming
-					.lookup("rmi://" + rmiAddress + "/" + MessageService.SERVICE_NAME);
-		} catch (MalformedURLException | RemoteException | NotBoundException e) {
+			System.out.println("Trying to connect to MessageService at " + address);
+			String shards = System.getProperty("message.shards");
+			messageService = shards == null ? transport.lookupMessageService(address)
+					: ShardedMessageService.lookup(transport, shards.split(","));
+			if (Boolean.getBoolean("message.push"))
+				messageService = new PushMessageService(messageService, transport);
+			String sendWindow = System.getProperty("message.coalesce");
+			if (sendWindow != null)
+				messageService = CoalescingMessageService.fromConfiguration(messageService, sendWindow, 
+						(messages, cause) -> System.out.println("Unable to send " + messages.size() 
+								+ " messages due to exception: " + cause.getMessage()));
+		} catch (IOException | IllegalArgumentException e) {
 			System.out.println("Can't connect to a MessageService due to exception: " + e.getMessage()
 					+ "\n. Program will exit now");
 			e.printStackTrace();
 			System.exit(1);
 		}
-		System.out.println("Found MessageService at" + rmiAddress);
+		System.out.println("Found MessageService at" + address);
 		String name = args.length > 0 ? args[0] : "Player_NoName";
 		String message = args.length>1? args[1] : "Hi there";
 		Player player1 = new SimplePlayer(name, message,
-				new StringMessageStrategy(messageService), playGround, true);
+				new StringMessageStrategy(messageService), playGround, transport);
 		try {
 			player1.prepare();
 		} catch (RemoteException e) {
@@ -0,0 +1,52 @@
+package com.fx360t.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fx360t.strategy.Message;
+
+/**
+ * Receiving side of a message service which does not block the calling thread.<br>
+ * Instead of waiting for a message the caller gets a {@link CompletableFuture} which is completed
+ * when a message arrives, so one thread can serve any number of recipients.<br>
+ * This interface is not a remote one, as futures can not be passed between JVMs. RMI callers should use
+ * {@link MessageService#pollNextMessage} instead, transports with their own protocol may implement it on the client side.
+ * @author Oleg
+ * @param <T> - type of data to be used as a message
+ */
+public interface AsyncMessageReceiver<T> {
+	/**
+	 * Requests the next message for user.<br>
+	 * The future is completed with {@code null} if recipient is not registered or gets unregistered while waiting.
+	 * It may be completed in the sender's thread, so long running actions should use async continuations.
+	 * Cancelling the future withdraws the request.
+	 * @param recipientName - a user's name for whom message is requested
+	 * @return future completed with the next message for the recipient
+	 */
+	CompletableFuture<Message<T>> receiveAsync(String recipientName);
+	/**
+	 * Requests the next message for user identified by its handle.<br>
+	 * Works the same way as {@link #receiveAsync(String)}.
+	 * @param recipientHandle - handle of the user for whom message is requested
+	 * @return future completed with the next message for the recipient
+	 */
+	CompletableFuture<Message<T>> receiveAsync(int recipientHandle);
+	/**
+	 * Requests pending messages for user, at least one.<br>
+	 * The future is completed when a message arrives with it and all messages pending then,
+	 * up to the limit, like {@link MessageService#drainMessages}. 
+	 * It is completed with {@code null} if recipient is not registered or gets unregistered while waiting.
+	 * Cancelling the future withdraws the request.
+	 * @param recipientName - a user's name for whom messages are requested
+	 * @param maxMessages - maximum number of returned messages, at least one
+	 * @return future completed with the messages in the order they were sent
+	 */
+	CompletableFuture<List<Message<T>>> drainAsync(String recipientName, int maxMessages);
+	/**
+	 * Gives back messages received by a future whose result did not reach the caller, 
+	 * e.g. when it was cancelled after the messages were sent or the caller's connection is closed.<br>
+	 * The messages become the next messages of their receiver in the given order, before the pending ones.
+	 * @param messages - received messages, they must not be used after this call
+	 */
+	void redeliver(List<Message<T>> messages);
+}
@@ -0,0 +1,16 @@
+package com.fx360t.service;
+
+/**
+ * States of a game on a {@link PlayGround}
+ * @author Oleg
+ */
+public enum GameState {
+	/** Not all players are registered yet */
+	WAITING_FOR_PLAYERS,
+	/** All players are registered, the game is not started yet */
+	READY,
+	/** Players are playing */
+	RUNNING,
+	/** The game is over */
+	FINISHED
+}
@@ -0,0 +1,371 @@
+package com.fx360t.service;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+
+/**
+ * {@link PlayGround} for any number of players, which pairs them into games as they arrive.<br>
+ * A registered player takes the waiting slot if it is empty, otherwise it takes the waiting player
+ * out of the slot and both are matched. Registration is a map insertion and a compare-and-set on the slot,
+ * no lock is held, so thousands of players may register at the same time.<br>
+ * Matched pairs wait in a queue until {@link #startPlaying()}, after that every pair starts its game at once.
+ * Each game runs in its own thread: the first player of a pair is the initiator, when its turns are
+ * completed both players get {@link Player#gameOver()} and leave the playground.<br>
+ * With a number of expected players {@link #waitAllPlayersRegistered()} waits for them and
+ * {@link #waitUntilGameIsFinished()} for all their games, without it the playground serves players
+ * until {@link #finishPlaying()}.<br>
+ * Games are counted by {@link MatchmakingPlayGroundMXBean}.
+ *
+ * @author Oleg
+ */
+public class MatchmakingPlayGround implements PlayGround, PlayerRegistrator, MatchmakingPlayGroundMXBean {
+	private static final Log LOG = Log.getLog(MatchmakingPlayGround.class);
+
+	/**
+	 * Pair of matched players
+	 */
+	private final class Game implements Runnable {
+		private final String firstIdentity;
+		private final Player first;
+		private final String secondIdentity;
+		private final Player second;
+
+		Game(String firstIdentity, Player first, String secondIdentity, Player second) {
+			this.firstIdentity = firstIdentity;
+			this.first = first;
+			this.secondIdentity = secondIdentity;
+			this.second = second;
+		}
+
+		@Override
+		public void run() {
+			try {
+				first.startToPlay(true, second);
+				second.startToPlay(false, first);
+				first.waitAllTurnsCompleted();
+				first.gameOver();
+				second.gameOver();
+				LOG.debug("Game of {} and {} is over", firstIdentity, secondIdentity);
+			} catch (RemoteException | RuntimeException e) {
+				LOG.error("Game of {} failed", firstIdentity + " and " + secondIdentity, e);
+			} finally {
+				gameFinished(this);
+			}
+		}
+
+		/**
+		 * Ends the game which is not started
+		 * @return {@code false} if a player could not be told
+		 */
+		boolean cancel() {
+			return gameOver(first) & gameOver(second);
+		}
+	}
+
+	/**
+	 * Registered players by identity, until their game is over
+	 */
+	private final Map<String, Player> players = new ConcurrentHashMap<>();
+	/**
+	 * Player waiting for a partner or {@code null}
+	 */
+	private final AtomicReference<Player> waiting = new AtomicReference<>();
+	/**
+	 * Matched pairs waiting for the playground to start
+	 */
+	private final Queue<Game> matched = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger matchedGames = new AtomicInteger();
+	private final AtomicInteger runningGames = new AtomicInteger();
+	/**
+	 * Number of finished games, guarded by this playground's monitor
+	 */
+	private int finishedGames;
+	/**
+	 * Number of players to wait for, 0 if players are not limited
+	 */
+	private final int expectedPlayers;
+	private final CountDownLatch allRegistered;
+	private volatile boolean started;
+	private volatile boolean finished;
+	/**
+	 * Values of {@link System#nanoTime()} when the playground was started and finished, 0 if not yet
+	 */
+	private volatile long startedAt;
+	private volatile long finishedAt;
+	/**
+	 * Threads running games
+	 */
+	private final ExecutorService games = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger counter = new AtomicInteger();
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "game-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Constructs a playground serving players until it is finished
+	 */
+	public MatchmakingPlayGround() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a playground for a number of players
+	 * @param expectedPlayers - number of players to wait for, 0 to serve players until the playground is finished
+	 */
+	public MatchmakingPlayGround(int expectedPlayers) {
+		if (expectedPlayers < 0)
+			throw new IllegalArgumentException("Number of players can not be negative: " + expectedPlayers);
+		this.expectedPlayers = expectedPlayers;
+		this.allRegistered = new CountDownLatch(expectedPlayers);
+	}
+
+	@Override
+	public void registerPlayer(Player player) throws RemoteException {
+		if (player == null) {
+			LOG.warn("Can't register NULL player.");
+			return;
+		}
+		if (finished) {
+			LOG.warn("Can't register new player as the playground is finished.");
+			return;
+		}
+		String identity = player.getIdentity();
+		if (players.putIfAbsent(identity, player) != null) {
+			LOG.warn("Failed to register new player. Player {} is already registered", identity);
+			return;
+		}
+		allRegistered.countDown();
+		match(identity, player);
+		// the playground could be finished after the check above, then nobody else ends the new game
+		if (finished)
+			endUnstarted();
+	}
+
+	/**
+	 * Puts a player to the waiting slot or matches it with the waiting player
+	 */
+	private void match(String identity, Player player) throws RemoteException {
+		for (;;) {
+			Player partner = waiting.get();
+			if (partner == null) {
+				if (waiting.compareAndSet(null, player)) {
+					LOG.debug("{} waits for a partner", identity);
+					return;
+				}
+			} else if (waiting.compareAndSet(partner, null)) {
+				matched.add(new Game(partner.getIdentity(), partner, identity, player));
+				matchedGames.incrementAndGet();
+				startMatched();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Starts games of matched pairs if the playground is started
+	 */
+	private void startMatched() {
+		if (!started)
+			return;
+		Game game;
+		// a pair matched while the playground starts is started by one of the threads
+		while ((game = matched.poll()) != null) {
+			matchedGames.decrementAndGet();
+			runningGames.incrementAndGet();
+			try {
+				games.execute(game);
+			} catch (RejectedExecutionException e) {
+				// the playground is finished meanwhile
+				runningGames.decrementAndGet();
+				players.remove(game.firstIdentity, game.first);
+				players.remove(game.secondIdentity, game.second);
+				game.cancel();
+			}
+		}
+	}
+
+	private void gameFinished(Game game) {
+		players.remove(game.firstIdentity, game.first);
+		players.remove(game.secondIdentity, game.second);
+		runningGames.decrementAndGet();
+		synchronized (this) {
+			finishedGames++;
+			notifyAll();
+		}
+	}
+
+	@Override
+	public void unregisterPlayer(Player player) throws RemoteException {
+		if (player == null) {
+			LOG.warn("Can't unregister NULL player.");
+			return;
+		}
+		String identity = player.getIdentity();
+		Player registered = players.get(identity);
+		if (registered == null) {
+			LOG.warn("Can't unregister player {} as it is not registered", identity);
+			return;
+		}
+		// only a player without a partner may leave
+		if (waiting.compareAndSet(registered, null))
+			players.remove(identity, registered);
+		else
+			LOG.warn("Can't unregister player {} as it is matched for a game", identity);
+	}
+
+	@Override
+	public int playersCount() {
+		return players.size();
+	}
+
+	@Override
+	public boolean startPlaying() {
+		if (started) {
+			LOG.warn("Can't start playing as the playground is already started");
+			return false;
+		}
+		LOG.info("Start to play, {} pairs are matched", matchedGames.get());
+		startedAt = System.nanoTime();
+		started = true;
+		startMatched();
+		return true;
+	}
+
+	@Override
+	public boolean waitUntilGameIsFinished() {
+		if (!started) {
+			LOG.warn("Can't start waiting for finish as the playground is not started yet");
+			return false;
+		}
+		try {
+			synchronized (this) {
+				while (!finished && (expectedPlayers == 0 || finishedGames < expectedPlayers / 2))
+					wait();
+			}
+			LOG.info("{} games are finished", finishedGames);
+			return true;
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while waiting for games to finish", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Stops accepting players, players without a started game get {@link Player#gameOver()}.
+	 * Running games are played to the end.
+	 */
+	@Override
+	public boolean finishPlaying() {
+		if (finished) {
+			LOG.warn("Can't finish playing as the playground is already finished");
+			return false;
+		}
+		finishedAt = System.nanoTime();
+		synchronized (this) {
+			finished = true;
+			notifyAll();
+		}
+		games.shutdown();
+		return endUnstarted();
+	}
+
+	/**
+	 * Ends games of players which are not started: the waiting player and matched pairs get {@link Player#gameOver()}.
+	 * Called when the playground is finished, by {@link #finishPlaying()} and by players registered meanwhile.
+	 * @return {@code false} if a player could not be told
+	 */
+	private boolean endUnstarted() {
+		boolean told = true;
+		Player alone = waiting.getAndSet(null);
+		if (alone != null)
+			told &= gameOver(alone);
+		Game game;
+		while ((game = matched.poll()) != null) {
+			matchedGames.decrementAndGet();
+			told &= game.cancel();
+		}
+		return told;
+	}
+
+	/**
+	 * Tells a player without a game that it is over
+	 * @return {@code false} if the player could not be told
+	 */
+	private static boolean gameOver(Player player) {
+		try {
+			player.gameOver();
+			return true;
+		} catch (RemoteException | RuntimeException e) {
+			LOG.error("Abnormal finishing of player {} without a game", player, e);
+			return false;
+		}
+	}
+
+	@Override
+	public void waitAllPlayersRegistered() {
+		try {
+			allRegistered.await();
+			LOG.info("All {} players registered", expectedPlayers);
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while waiting all registered players", e);
+		}
+	}
+
+	@Override
+	public int getRegisteredPlayers() {
+		return playersCount();
+	}
+
+	@Override
+	public int getRunningGames() {
+		return runningGames.get();
+	}
+
+	@Override
+	public synchronized int getFinishedGames() {
+		return finishedGames;
+	}
+
+	@Override
+	public int getMatchedGames() {
+		return matchedGames.get();
+	}
+
+	@Override
+	public GameState getGameState() {
+		if (finished)
+			return GameState.FINISHED;
+		if (runningGames.get() > 0)
+			return GameState.RUNNING;
+		return matchedGames.get() > 0 ? GameState.READY : GameState.WAITING_FOR_PLAYERS;
+	}
+
+	@Override
+	public long getGameDurationMillis() {
+		long started = startedAt;
+		if (started == 0)
+			return 0;
+		long finished = finishedAt;
+		if (finished == 0)
+			finished = System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(finished - started);
+	}
+}
@@ -0,0 +1,20 @@
+package com.fx360t.service;
+
+/**
+ * Management interface of {@link MatchmakingPlayGround} exposed through JMX.
+ * @author Oleg
+ */
+public interface MatchmakingPlayGroundMXBean extends PlayGroundMXBean {
+	/**
+	 * @return number of games being played
+	 */
+	int getRunningGames();
+	/**
+	 * @return number of games played to the end
+	 */
+	int getFinishedGames();
+	/**
+	 * @return number of matched pairs waiting for the playground to start
+	 */
+	int getMatchedGames();
+}
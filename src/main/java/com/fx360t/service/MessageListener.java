@@ -0,0 +1,23 @@
+package com.fx360t.service;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import com.fx360t.strategy.Message;
+
+/**
+ * Callback endpoint receiving messages pushed by a {@link MessagePublisher}.<br>
+ * It extends {@link Remote} so that a player on another JVM can export it and get messages 
+ * without waiting in {@link MessageService#getNextMessage}.
+ * @author Oleg
+ * @param <T> - type of data to be used as a message
+ */
+public interface MessageListener<T> extends Remote {
+	/**
+	 * Receives messages of a subscribed recipient, never called concurrently for the same recipient.<br>
+	 * Several messages are passed at once when they were queued while the previous call was running.
+	 * @param messages - messages in the order they were sent
+	 */
+	void onMessages(List<Message<T>> messages) throws RemoteException;
+}
@@ -0,0 +1,26 @@
+package com.fx360t.service;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Push side of a message service: messages of a subscribed recipient are delivered to its {@link MessageListener}
+ * as they arrive instead of being waited for with {@link MessageService#getNextMessage}.<br>
+ * A subscribed recipient should not receive messages with other methods of the service.
+ * @author Oleg
+ * @param <T> - type of data to be used as a message
+ */
+public interface MessagePublisher<T> extends Remote {
+	/**
+	 * Starts pushing messages of a registered user to the listener, including messages already pending.<br>
+	 * Replaces the previous listener of the user. If the listener fails, the subscription is cancelled.
+	 * @param recipientName - name of the user
+	 * @param listener - listener of the user's messages
+	 */
+	void subscribe(String recipientName, MessageListener<T> listener) throws RemoteException;
+	/**
+	 * Stops pushing messages of a user, subscription is also cancelled when the user is unregistered
+	 * @param recipientName - name of the user
+	 */
+	void unsubscribe(String recipientName) throws RemoteException;
+}
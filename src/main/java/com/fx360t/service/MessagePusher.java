@@ -0,0 +1,97 @@
+package com.fx360t.service;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fx360t.log.Log;
+import com.fx360t.strategy.Message;
+
+/**
+ * Subscription of one user of {@link SimpleMessageService} to a {@link MessageListener}.<br>
+ * Senders only signal the pusher, messages are passed to the listener in a thread of the executor.
+ * At most one push per user runs at a time, messages queued meanwhile go to the listener in the next batch.
+ * No thread is held while the mailbox is empty.<br>
+ * If the listener throws, the subscription is cancelled and the messages of the failed call are kept 
+ * for the next subscription of the user, so a listener may get a message again after it failed. 
+ * Messages are accounted as taken, in statistics and in the journal, only when the listener has got them.
+ * @author Oleg
+ */
+final class MessagePusher implements Runnable {
+	private static final Log LOG = Log.getLog(MessagePusher.class);
+	/**
+	 * Maximum number of messages passed to the listener in one call
+	 */
+	static final int MAX_BATCH = 256;
+
+	private final UserMailbox mailbox;
+	private final MessageListener<String> listener;
+	private final Executor executor;
+	/**
+	 * {@code true} while a push task is submitted or running
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile boolean cancelled;
+
+	MessagePusher(UserMailbox mailbox, MessageListener<String> listener, Executor executor) {
+		this.mailbox = mailbox;
+		this.listener = listener;
+		this.executor = executor;
+	}
+
+	/**
+	 * Schedules a push if there are pending messages and no push is running, called by senders
+	 */
+	void signal() {
+		if (!cancelled && (!mailbox.isEmpty() || mailbox.hasUnpushed()) && scheduled.compareAndSet(false, true))
+			executor.execute(this);
+	}
+
+	/**
+	 * Stops pushing, a running push finishes its current batch
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void run() {
+		for (;;) {
+			// messages of a failed push are already taken from the mailbox
+			List<Message<String>> batch = cancelled ? null : mailbox.takeUnpushed();
+			if (batch == null) {
+				batch = new ArrayList<>();
+				if (!cancelled)
+					mailbox.drainTo(batch, MAX_BATCH);
+			}
+			if (batch.isEmpty()) {
+				scheduled.set(false);
+				// a message could be put after the mailbox was seen empty
+				if (cancelled || mailbox.isEmpty() || !scheduled.compareAndSet(false, true))
+					return;
+				continue;
+			}
+			// the listener may release pooled messages
+			long[] enqueued = new long[batch.size()];
+			for (int i = 0; i < enqueued.length; i++)
+				enqueued[i] = batch.get(i).getEnqueueTime();
+			try {
+				listener.onMessages(batch);
+			} catch (RemoteException | RuntimeException e) {
+				LOG.warn("Unable to push messages to {}, subscription is cancelled: {}", mailbox.name, e.getMessage());
+				mailbox.unsubscribe(this);
+				mailbox.unpushed(batch);
+				scheduled.set(false);
+				return;
+			}
+			for (long enqueueTime : enqueued)
+				mailbox.taken(enqueueTime);
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.fx360t.service;
+
+/**
+ * Thrown to a sender when the receiver's mailbox is full and 
+ * {@link com.fx360t.service.mailbox.OverflowPolicy#FAIL} is used, or when a persistent service 
+ * can not journal the message.<br>
+ * It is unchecked, so that it reaches remote senders as is.
+ * @author Oleg
+ */
+public class MessageRejectedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public MessageRejectedException(String message) {
+		super(message);
+	}
+}
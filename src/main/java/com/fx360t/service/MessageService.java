@@ -2,6 +2,8 @@ package com.fx360t.service;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.fx360t.strategy.Message;
 
@@ -21,13 +23,50 @@ public interface MessageService <T> extends Remote {
 	 */
 	void register(String... userNames) throws RemoteException;
 	/**
-	 * Send a message from sender to receiver.
+	 * Register one user and get its handle.<br>
+	 * Handle is a compact number which identifies the user on this MessageService. Methods taking handles 
+	 * route messages without looking up user names. Registering an already registered user returns the same handle.
+	 * @param userName - name of the user to register
+	 * @return handle of the user or {@link Message#NO_HANDLE} if user name is {@code null}
+	 * @throws RemoteException
+	 */
+	int registerUser(String userName) throws RemoteException;
+	/**
+	 * Get the handle of a registered user
+	 * @param userName - name of the user
+	 * @return handle of the user or {@link Message#NO_HANDLE} if the user is not registered
+	 * @throws RemoteException
+	 */
+	int getHandle(String userName) throws RemoteException;
+	/**
+	 * Send a message from sender to receiver.<br>
+	 * If the receiver's mailbox is bounded and full, the message is handled according to the service's
+	 * overflow policy: sender may wait, the message may be dropped or {@link MessageRejectedException} is thrown.
 	 * @param message - message to be sent
 	 * @param senderName - sender of the message
 	 * @param receiverName - receiver of the message
 	 * @throws RemoteException
 	 */
 	void sendMessage(T message, String senderName, String receiverName) throws RemoteException;
+	/**
+	 * Send a message from sender to receiver identified by their handles.<br>
+	 * Works the same way as {@link #sendMessage(Object, String, String)}.
+	 * @param message - message to be sent
+	 * @param senderHandle - handle of the sender
+	 * @param receiverHandle - handle of the receiver
+	 * @throws RemoteException
+	 */
+	void sendMessage(T message, int senderHandle, int receiverHandle) throws RemoteException;
+	
+	/**
+	 * Send several messages in one call.<br>
+	 * Every {@link Message} is routed by its sender and receiver names, exactly as in {@link #sendMessage}.
+	 * Messages which can not be delivered are skipped, the rest of the batch is still sent.
+	 * @param messages - messages to be sent
+	 * @return the number of messages accepted for delivery
+	 * @throws RemoteException
+	 */
+	int sendMessages(List<Message<T>> messages) throws RemoteException;
 	
 	/**
 	 * Unregister players on this Message service
@@ -46,4 +85,36 @@ public interface MessageService <T> extends Remote {
 	 * @throws RemoteException
 	 */
 	Message<T> getNextMessage(String recipientName) throws RemoteException;
+	/**
+	 * Wait for a new message for user identified by its handle.<br>
+	 * Works the same way as {@link #getNextMessage(String)}.
+	 * @param recipientHandle - handle of the user for whom message is requested
+	 * @return {@link Message} instance or {@code null} if recipient is not registered on this message service
+	 * @throws RemoteException
+	 */
+	Message<T> getNextMessage(int recipientHandle) throws RemoteException;
+	
+	/**
+	 * Wait for a new message for user, but not longer than the specified time.<br>
+	 * Unlike {@link #getNextMessage} this method never holds the caller longer than the timeout.
+	 * @param recipientName - a user's name for whom message is requested
+	 * @param timeout - how long to wait before giving up
+	 * @param unit - time unit of the timeout
+	 * @return {@link Message} instance or {@code null} if no message arrived in time or
+	 * recipient is not registered on this message service
+	 * @throws RemoteException
+	 */
+	Message<T> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException;
+	
+	/**
+	 * Wait for new messages for user and take up to {@code maxMessages} of them in one call.<br>
+	 * Method blocks execution until at least one message is received for the provided recipient,
+	 * then returns it together with all other pending messages, but not more than {@code maxMessages}.
+	 * @param recipientName - a user's name for whom messages are requested
+	 * @param maxMessages - maximum number of messages to return, must be positive
+	 * @return list of messages in the order they were sent or {@code null}
+	 * if recipient is not registered on this message service
+	 * @throws RemoteException
+	 */
+	List<Message<T>> drainMessages(String recipientName, int maxMessages) throws RemoteException;
 }
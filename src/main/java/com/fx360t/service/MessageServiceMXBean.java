@@ -0,0 +1,52 @@
+package com.fx360t.service;
+
+import java.util.Map;
+
+import com.fx360t.service.mailbox.OverflowPolicy;
+
+/**
+ * Management interface of a message service exposed through JMX.<br>
+ * Counters are cumulative since start or the last {@link #resetStatistics()}, 
+ * latencies are time in microseconds between putting a message to a mailbox and taking it out.
+ * @author Oleg
+ */
+public interface MessageServiceMXBean {
+	/**
+	 * @return number of registered users
+	 */
+	int getRegisteredUsers();
+	/**
+	 * @return number of pending messages of every registered user
+	 */
+	Map<String, Integer> getQueueDepths();
+	/**
+	 * @return number of messages put to mailboxes
+	 */
+	long getMessagesSent();
+	/**
+	 * @return number of messages taken from mailboxes by receivers
+	 */
+	long getMessagesReceived();
+	/**
+	 * @return number of messages not accepted because the receiver's mailbox was full
+	 */
+	long getMessagesRejected();
+	/**
+	 * @return number of pending messages dropped to make room for new ones, see {@link OverflowPolicy#DROP_OLDEST}
+	 */
+	long getMessagesDropped();
+	double getLatencyMeanMicros();
+	double getLatency50thPercentileMicros();
+	double getLatency99thPercentileMicros();
+	double getLatency999thPercentileMicros();
+	double getLatencyMaxMicros();
+	/**
+	 * @return counts of latency histogram buckets, element {@code i} counts latencies 
+	 * from {@code 2^i} to {@code 2^(i+1)-1} nanoseconds
+	 */
+	long[] getLatencyHistogram();
+	/**
+	 * Clears counters and latency histogram
+	 */
+	void resetStatistics();
+}
@@ -0,0 +1,75 @@
+package com.fx360t.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fx360t.metrics.LatencyHistogram;
+import com.fx360t.strategy.Message;
+
+/**
+ * Counters of a {@link SimpleMessageService} updated on its hot path.<br>
+ * All counters are {@link LongAdder}s, so concurrent senders and receivers do not contend on them. 
+ * Recording costs an add and one {@link System#nanoTime()} call on each side of a mailbox.
+ * @author Oleg
+ */
+class MessageStatistics {
+	final LongAdder sent = new LongAdder();
+	final LongAdder received = new LongAdder();
+	final LongAdder rejected = new LongAdder();
+	final LongAdder dropped = new LongAdder();
+	final LatencyHistogram latency = new LatencyHistogram();
+	
+	/**
+	 * Stamps a message which is about to be put to a mailbox
+	 */
+	void enqueuing(Message<String> message) {
+		message.setEnqueueTime(System.nanoTime());
+	}
+	
+	void sent() {
+		sent.increment();
+	}
+	
+	void rejected() {
+		rejected.increment();
+	}
+	
+	/**
+	 * Records a pending message dropped from a mailbox to make room for a new one
+	 */
+	void dropped() {
+		dropped.increment();
+	}
+	
+	/**
+	 * Records a message taken from a mailbox
+	 * @return the same message, {@code null} is passed through and not counted
+	 */
+	Message<String> received(Message<String> message) {
+		if (message != null)
+			received(message.getEnqueueTime());
+		return message;
+	}
+	
+	/**
+	 * Records a message taken from a mailbox by the time it was put there
+	 */
+	void received(long enqueueTime) {
+		received.increment();
+		latency.record(System.nanoTime() - enqueueTime);
+	}
+	
+	/**
+	 * Records a taken message given back to its mailbox, it is not received any more
+	 */
+	void returned() {
+		received.decrement();
+	}
+	
+	void reset() {
+		sent.reset();
+		received.reset();
+		rejected.reset();
+		dropped.reset();
+		latency.reset();
+	}
+}
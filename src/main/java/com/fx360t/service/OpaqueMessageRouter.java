@@ -0,0 +1,30 @@
+package com.fx360t.service;
+
+import com.fx360t.strategy.Message;
+
+/**
+ * Sending side of a String message service which routes bodies without decoding them.<br>
+ * A body is passed as the UTF-8 bytes it was received in, the service reads only the sender and
+ * the receiver and puts an {@link Message#opaque opaque} message to the mailbox. The bytes are written
+ * to the receiver as they are and decoded by the receiving player.<br>
+ * This interface is not a remote one, it is used by transports which read requests themselves.
+ * @author Oleg
+ */
+public interface OpaqueMessageRouter {
+	/**
+	 * Sends a message with an encoded body.<br>
+	 * Works the same way as {@link MessageService#sendMessage(Object, String, String)}.
+	 * @param encodedBody - UTF-8 bytes of the body
+	 * @param senderName - sender's name
+	 * @param receiverName - receiver's name
+	 */
+	void sendEncoded(byte[] encodedBody, String senderName, String receiverName);
+	/**
+	 * Sends a message with an encoded body between users identified by handles.<br>
+	 * Works the same way as {@link MessageService#sendMessage(Object, int, int)}.
+	 * @param encodedBody - UTF-8 bytes of the body
+	 * @param senderHandle - handle of the sender
+	 * @param receiverHandle - handle of the receiver
+	 */
+	void sendEncoded(byte[] encodedBody, int senderHandle, int receiverHandle);
+}
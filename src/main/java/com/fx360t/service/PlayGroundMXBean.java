@@ -0,0 +1,20 @@
+package com.fx360t.service;
+
+/**
+ * Management interface of a playground exposed through JMX.
+ * @author Oleg
+ */
+public interface PlayGroundMXBean {
+	/**
+	 * @return number of registered players
+	 */
+	int getRegisteredPlayers();
+	/**
+	 * @return current state of the game
+	 */
+	GameState getGameState();
+	/**
+	 * @return time in milliseconds the game has been running, or was running if it is finished
+	 */
+	long getGameDurationMillis();
+}
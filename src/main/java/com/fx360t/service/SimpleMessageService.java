@@ -1,28 +1,250 @@
 package com.fx360t.service;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 
+import com.fx360t.log.Log;
+import com.fx360t.service.journal.MessageJournal;
+import com.fx360t.service.mailbox.Mailbox;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.service.simulation.DeliverySimulator;
+import com.fx360t.service.simulation.NetworkSimulator;
 import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessagePool;
 
 /**
  * Simple implementation of {@link MessageService} with String messages.<br>
- * Internally maintains a {@link Map} that holds a queue of messages for every
- * registered user
+ * Internally maintains a {@link Map} that holds a {@link Mailbox} of messages for every
+ * registered user. Mailboxes are created by the {@link MailboxFactory} chosen at construction time.<br>
+ * Mailboxes may be bounded by {@link MailboxLimits}, in this case its {@link OverflowPolicy} decides 
+ * what happens to a message sent to a full mailbox.<br>
+ * Besides blocking receive it supports timed receive and asynchronous receive with {@link CompletableFuture}, 
+ * which is completed by the sender and does not hold a thread while waiting.
+ * Users subscribed with {@link MessagePublisher} get their messages pushed to a {@link MessageListener} 
+ * in batches by a pool of push threads.<br>
+ * Every registered user gets a handle, an index in the internal handle table. Methods taking handles
+ * find mailboxes by index, without hashing user names. Indexes of unregistered users are reused, the high bits 
+ * of a handle count the reuses of its index, so a handle kept after unregistration does not reach the next user
+ * of the index until the count wraps after 128 reuses. Indexes are reused in the order they were freed.<br>
+ * Optional {@link DeliverySimulator} delays, drops or reorders messages on their way to the mailbox 
+ * for testing under network conditions. A sender then learns only whether the mailbox is full at the time 
+ * of sending: with {@link OverflowPolicy#FAIL} a message sent to a full mailbox is rejected at once, 
+ * a message which finds the mailbox full on arrival is lost like on a network and only counted as rejected.<br>
+ * With a {@link MessagePool} messages are reused envelopes, which receivers in the same JVM return 
+ * with {@link Message#release()}.<br>
+ * Bodies sent through {@link OpaqueMessageRouter} or in {@link Message#opaque opaque} messages stay encoded 
+ * on their way through the service.<br>
+ * With a {@link MessageJournal} registrations and messages are appended to the journal, a service constructed
+ * with an existing journal starts with users and pending messages recovered from it.<br>
+ * Statistics of the service are available through {@link MessageServiceMXBean}.
  * 
  * @author Oleg
  */
-public class SimpleMessageService implements MessageService<String> {
-	private Map<String, BlockingQueue<Message<String>>> userMessages = new ConcurrentHashMap<>();
+public class SimpleMessageService implements MessageService<String>, AsyncMessageReceiver<String>, 
+		MessagePublisher<String>, OpaqueMessageRouter, MessageServiceMXBean {
+	private static final Log LOG = Log.getLog(SimpleMessageService.class);
+	/**
+	 * Number of low bits of a handle which are the index in the handle table
+	 */
+	private static final int INDEX_BITS = 24;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	/**
+	 * Time an idle push thread waits for a task before it stops
+	 */
+	private static final long PUSH_KEEP_ALIVE_SECONDS = 60;
+	private Map<String, UserMailbox> userMessages = new ConcurrentHashMap<>();
+	/**
+	 * Mailboxes indexed by users' handles. Replaced by a bigger copy when it is full.
+	 */
+	private volatile AtomicReferenceArray<UserMailbox> handles = new AtomicReferenceArray<>(16);
+	/**
+	 * Next index of the handle table never used, guarded by {@link #registrationLock}
+	 */
+	private int nextIndex;
+	/**
+	 * Handles of unregistered users, their indexes are given to new users. Guarded by {@link #registrationLock}
+	 */
+	private final Queue<Integer> freeHandles = new ArrayDeque<>();
+	/**
+	 * Lock guarding registration and unregistration of users
+	 */
+	private final Object registrationLock = new Object();
+	/**
+	 * Factory used to create a mailbox for every registered user
+	 */
+	private final MailboxFactory mailboxFactory;
+	/**
+	 * Capacity limits of mailboxes and overflow policy
+	 */
+	private final MailboxLimits limits;
+	/**
+	 * Simulator of network conditions or {@code null} if messages are put to mailboxes directly
+	 */
+	private final DeliverySimulator simulator;
+	/**
+	 * Counters and latency histogram of the service
+	 */
+	private final MessageStatistics statistics = new MessageStatistics();
+	/**
+	 * Pool of message envelopes or {@code null} if every message is a new object
+	 */
+	private final MessagePool<String> pool;
+	/**
+	 * Journal of registrations and messages or {@code null} if the service is not persistent
+	 */
+	private final MessageJournal journal;
+	/**
+	 * Threads pushing messages to subscribed listeners, started when there is something to push and stopped
+	 * when idle.<br>
+	 * System property {@code message.push.threads} limits their number, as many as there are cores by default.
+	 * Pushes of more users wait in the queue, so listeners which do not block are served by a few threads
+	 * whatever the number of subscribed users is.
+	 */
+	private final ExecutorService pushExecutor = pushExecutor(
+			Integer.getInteger("message.push.threads", Runtime.getRuntime().availableProcessors()));
+	
+	/**
+	 * Constructs a message service with unbounded linked mailboxes
+	 */
+	public SimpleMessageService() {
+		this(MailboxFactory.linked());
+	}
+	
+	/**
+	 * Constructs a message service which uses provided factory to create unbounded users' mailboxes
+	 * @param mailboxFactory - factory of mailboxes
+	 */
+	public SimpleMessageService(MailboxFactory mailboxFactory) {
+		this(mailboxFactory, MailboxLimits.unbounded());
+	}
+	
+	/**
+	 * Constructs a message service which uses provided factory to create users' mailboxes 
+	 * with the given capacity limits. 
+	 * Network simulation is configured by system properties, see {@link NetworkSimulator#fromSystemProperties()}
+	 * @param mailboxFactory - factory of mailboxes
+	 * @param limits - capacity limits and overflow policy
+	 */
+	public SimpleMessageService(MailboxFactory mailboxFactory, MailboxLimits limits) {
+		this(mailboxFactory, limits, NetworkSimulator.fromSystemProperties());
+	}
+	
+	/**
+	 * Constructs a message service which uses provided factory to create users' mailboxes 
+	 * with the given capacity limits and delivers messages through a simulator
+	 * @param mailboxFactory - factory of mailboxes
+	 * @param limits - capacity limits and overflow policy
+	 * @param simulator - simulator of network conditions or {@code null} to deliver messages directly
+	 */
+	public SimpleMessageService(MailboxFactory mailboxFactory, MailboxLimits limits, DeliverySimulator simulator) {
+		this(mailboxFactory, limits, simulator, null);
+	}
+	
+	/**
+	 * Constructs a message service which uses provided factory to create users' mailboxes 
+	 * with the given capacity limits, delivers messages through a simulator and takes message envelopes from a pool.
+	 * Pool should be used only when all receivers are in the same JVM and release handled messages
+	 * @param mailboxFactory - factory of mailboxes
+	 * @param limits - capacity limits and overflow policy
+	 * @param simulator - simulator of network conditions or {@code null} to deliver messages directly
+	 * @param pool - pool of message envelopes or {@code null} to create a new message for every send
+	 */
+	public SimpleMessageService(MailboxFactory mailboxFactory, MailboxLimits limits, DeliverySimulator simulator,
+			MessagePool<String> pool) {
+		this(mailboxFactory, limits, simulator, pool, null);
+	}
+	
+	/**
+	 * Constructs a message service which uses provided factory to create users' mailboxes 
+	 * with the given capacity limits, delivers messages through a simulator, takes message envelopes from a pool
+	 * and records registrations and messages in a journal. Users and pending messages found in the journal
+	 * are restored before the service is returned.
+	 * @param mailboxFactory - factory of mailboxes
+	 * @param limits - capacity limits and overflow policy
+	 * @param simulator - simulator of network conditions or {@code null} to deliver messages directly
+	 * @param pool - pool of message envelopes or {@code null} to create a new message for every send
+	 * @param journal - journal of the service or {@code null} if the service is not persistent
+	 */
+	public SimpleMessageService(MailboxFactory mailboxFactory, MailboxLimits limits, DeliverySimulator simulator,
+			MessagePool<String> pool, MessageJournal journal) {
+		if (mailboxFactory == null)
+			throw new NullPointerException("Mailbox factory can not be null");
+		if (limits == null)
+			throw new NullPointerException("Mailbox limits can not be null");
+		this.mailboxFactory = mailboxFactory;
+		this.limits = limits;
+		this.simulator = simulator;
+		this.pool = pool;
+		this.journal = journal;
+		if (journal != null)
+			journal.recover(new MessageJournal.Recovery() {
+				@Override
+				public void registered(String user) {
+					register(user, false);
+				}
+				@Override
+				public void sent(Message<String> message) {
+					restore(message);
+				}
+			});
+	}
+	
+	private static ExecutorService pushExecutor(int threads) {
+		ThreadFactory factory = new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "message-push-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, PUSH_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), factory);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	/**
+	 * Puts a recovered message to the receiver's mailbox, handles are assigned anew on recovery
+	 */
+	private void restore(Message<String> recovered) {
+		UserMailbox receiver = userMessages.get(recovered.getReceiverName());
+		if (receiver == null)
+			return;
+		UserMailbox sender = recovered.getSenderName() == null ? null : userMessages.get(recovered.getSenderName());
+		int senderHandle = sender == null ? Message.NO_HANDLE : sender.handle;
+		Message<String> message = recovered.getEncodedBody() != null
+				? Message.opaque(recovered.getEncodedBody(), recovered.getSenderName(), receiver.name, senderHandle, receiver.handle)
+				: new Message<>(recovered.getMessageBody(), recovered.getSenderName(), receiver.name, senderHandle, receiver.handle);
+		statistics.enqueuing(message);
+		if (!receiver.messages.offer(message))
+			LOG.warn("Mailbox of {} is full, recovered message {} is dropped", receiver.name, message);
+	}
 
 	protected Map<String,BlockingQueue<Message<String>>> getMessages(){
 		Map<String,BlockingQueue<Message<String>>> result = 
 		userMessages.keySet().stream()
 					.collect(Collectors.toMap(key->key, 
-									key->new LinkedBlockingQueue<>(userMessages.get(key))));
+									key->new LinkedBlockingQueue<>(userMessages.get(key).messages.snapshot())));
 		
 		return result;
 	}
@@ -31,71 +253,485 @@ public class SimpleMessageService implements MessageService<String> {
 		
 		if (users != null)
 			for (String user : users) {
-				if (users != null)
-					this.userMessages.putIfAbsent(user, new LinkedBlockingQueue<>());
+				if (user != null)
+					registerUser(user);
 			}
 	}
+	
+	@Override
+	public int registerUser(String user) {
+		if (user == null)
+			return Message.NO_HANDLE;
+		return register(user, journal != null);
+	}
+	
+	/**
+	 * Registers a user if it is not registered yet
+	 * @param journaled - {@code true} to record a new user in the journal
+	 * @return handle of the user
+	 */
+	private int register(String user, boolean journaled) {
+		synchronized (registrationLock) {
+			UserMailbox mailbox = userMessages.get(user);
+			if (mailbox != null)
+				return mailbox.handle;
+			if (journaled)
+				try {
+					journal.registered(user);
+				} catch (IOException e) {
+					LOG.error("Unable to journal registration of {}", user, e);
+				}
+			mailbox = new UserMailbox(user, nextHandle(), limits.<Message<String>>newMailbox(mailboxFactory, user),
+					limits.capacityFor(user), statistics, journal);
+			int index = mailbox.handle & INDEX_MASK;
+			AtomicReferenceArray<UserMailbox> table = handles;
+			if (index >= table.length()) {
+				AtomicReferenceArray<UserMailbox> grown = new AtomicReferenceArray<>(table.length() * 2);
+				for (int i = 0; i < table.length(); i++)
+					grown.set(i, table.get(i));
+				handles = table = grown;
+			}
+			table.set(index, mailbox);
+			userMessages.put(user, mailbox);
+			return mailbox.handle;
+		}
+	}
+	
+	/**
+	 * Takes the index of the earliest unregistered user with the next reuse count or a new index, 
+	 * called holding {@link #registrationLock}
+	 * @return handle for a new user
+	 */
+	private int nextHandle() {
+		Integer free = freeHandles.poll();
+		if (free != null) {
+			int reuses = (free >>> INDEX_BITS) + 1 & (Integer.MAX_VALUE >>> INDEX_BITS);
+			return reuses << INDEX_BITS | free & INDEX_MASK;
+		}
+		if (nextIndex > INDEX_MASK)
+			throw new IllegalStateException("More than " + (INDEX_MASK + 1) + " users are registered");
+		return nextIndex++;
+	}
+	
+	@Override
+	public int getHandle(String user) {
+		UserMailbox mailbox = user == null ? null : userMessages.get(user);
+		return mailbox == null ? Message.NO_HANDLE : mailbox.handle;
+	}
 
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the receiver's mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
 	@Override
 	public void sendMessage(String message, String senderName, String receiverName) {
-		if (senderName == null || !userMessages.containsKey(senderName)) {
-			System.out.println("User " + senderName + " is not registered");
-			return;
-		}
-		if (receiverName == null || !userMessages.containsKey(receiverName)) {
-			System.out.println("User " + receiverName + " is not registered");
-			return;
+		deliver(message, null, mailboxOf(senderName), mailboxOf(receiverName));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the receiver's mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) {
+		deliver(message, null, mailboxOf(senderHandle), mailboxOf(receiverHandle));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the receiver's mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
+	@Override
+	public void sendEncoded(byte[] encodedBody, String senderName, String receiverName) {
+		deliver(null, encodedBody, mailboxOf(senderName), mailboxOf(receiverName));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the receiver's mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
+	@Override
+	public void sendEncoded(byte[] encodedBody, int senderHandle, int receiverHandle) {
+		deliver(null, encodedBody, mailboxOf(senderHandle), mailboxOf(receiverHandle));
+	}
+	
+	@Override
+	public int sendMessages(List<Message<String>> messages) {
+		int accepted = 0;
+		if (messages != null)
+			for (Message<String> message : messages) {
+				try {
+					if (message != null 
+							&& deliver(message.getEncodedBody() == null ? message.getMessageBody() : null, 
+									message.getEncodedBody(),
+									mailboxOf(message.getSenderName()), mailboxOf(message.getReceiverName())))
+						accepted++;
+				} catch (MessageRejectedException e) {
+					//rejected message is not counted, the rest of the batch is still sent
+				}
+			}
+		return accepted;
+	}
+	/**
+	 * Finds mailbox of the user by name
+	 * @return mailbox or {@code null} if user is not registered
+	 */
+	private UserMailbox mailboxOf(String user) {
+		UserMailbox mailbox = user == null ? null : userMessages.get(user);
+		if (mailbox == null)
+			LOG.warn("User {} is not registered", user);
+		return mailbox;
+	}
+	/**
+	 * Finds mailbox of the user by handle
+	 * @return mailbox or {@code null} if user is not registered
+	 */
+	private UserMailbox mailboxOf(int handle) {
+		AtomicReferenceArray<UserMailbox> table = handles;
+		int index = handle & INDEX_MASK;
+		UserMailbox mailbox = handle < 0 || index >= table.length() ? null : table.get(index);
+		// the index may belong to another user now
+		if (mailbox != null && mailbox.handle != handle)
+			mailbox = null;
+		if (mailbox == null)
+			LOG.warn("User with handle {} is not registered", handle);
+		return mailbox;
+	}
+	/**
+	 * Creates a new message and passes it to the receiver's mailbox, directly or through the simulator.
+	 * @param message - body of the message, ignored if the encoded body is given
+	 * @param encodedBody - UTF-8 bytes of an opaque body or {@code null}
+	 * @return {@code true} if message was accepted, put to the mailbox or handed over to the simulator
+	 * @throws MessageRejectedException if the mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
+	private boolean deliver(String message, byte[] encodedBody, UserMailbox sender, UserMailbox receiver) {
+		if (sender == null || receiver == null)
+			return false;
+		if (sender == receiver) {
+			LOG.warn("Can't send message to yourself");
+			return false;
 		}
-		if (senderName.equals(receiverName)) {
-			System.out.println("Can't send message to yourself");
-			return;
+		Message<String> mess = encodedBody != null 
+				? Message.opaque(encodedBody, sender.name, receiver.name, sender.handle, receiver.handle)
+				: pool == null 
+				? new Message<>(message, sender.name, receiver.name, sender.handle, receiver.handle)
+				: pool.acquire(message, sender.name, receiver.name, sender.handle, receiver.handle);
+		if (simulator == null)
+			return enqueue(receiver, mess);
+		if (limits.getPolicy() == OverflowPolicy.FAIL && isFull(receiver)) {
+			statistics.rejected();
+			mess.release();
+			throw new MessageRejectedException("Mailbox of " + receiver.name + " is full");
 		}
-		Message<String> mess = new Message<>(message, senderName, receiverName);
+		simulator.deliver(receiver, () -> {
+			try {
+				enqueue(receiver, mess);
+			} catch (MessageRejectedException e) {
+				LOG.warn("Delayed message is rejected: {}", e.getMessage());
+			}
+		});
+		return true;
+	}
+	/**
+	 * @return {@code true} if the mailbox is bounded and has no room for a message
+	 */
+	private boolean isFull(UserMailbox receiver) {
+		return receiver.capacity != MailboxLimits.UNBOUNDED && receiver.messages.size() >= receiver.capacity;
+	}
+	/**
+	 * Puts a message to the receiver's mailbox applying the overflow policy.
+	 * @return {@code true} if message was put to the mailbox
+	 * @throws MessageRejectedException if the mailbox is full and {@link OverflowPolicy#FAIL} is used
+	 */
+	private boolean enqueue(UserMailbox receiver, Message<String> mess) {
 		try {
-			delaySendIfNeeded();
-			userMessages.get(receiverName).put(mess);
+			OverflowPolicy policy = limits.getPolicy();
+			statistics.enqueuing(mess);
+			if (journal == null ? policy.offer(receiver.messages, mess, limits.getBlockTimeoutNanos(), receiver.evictor)
+					: journaledOffer(policy, receiver, mess)) {
+				statistics.sent();
+				receiver.messageAdded();
+				return true;
+			}
+			statistics.rejected();
+			String senderName = mess.getSenderName();
+			mess.release();
+			if (policy == OverflowPolicy.FAIL)
+				throw new MessageRejectedException("Mailbox of " + receiver.name + " is full");
+			LOG.warn("Mailbox of {} is full, message from {} is dropped", receiver.name, senderName);
 		} catch (InterruptedException e) {
-			System.out.println("Interrupted while sending a message to "+receiverName +": " + e.getMessage());
-			e.printStackTrace();
+			mess.release();
+			LOG.error("Interrupted while sending a message to {}", receiver.name, e);
 		}
+		return false;
 	}
 	/**
-	 * Delays execution for testing purposes.
-	 * Delay time can be configured via setting system property {@code message.send.delay}
+	 * Records a message in the journal and puts it to the receiver's mailbox holding the receiver's send lock, 
+	 * so records follow the order of the mailbox. In durable mode the message is forced to disk before 
+	 * a receiver can take it. A message which is not put to the mailbox is recorded as rejected.
+	 * @return {@code true} if message was put to the mailbox
+	 * @throws InterruptedException if interrupted while waiting for the journal or for room in the mailbox
+	 * @throws MessageRejectedException if the message can not be journaled, its taking would not be replayable
 	 */
-	private static void delaySendIfNeeded() {
-		Long delay = Long.getLong("message.send.delay");
-		if(delay!=null){
+	private boolean journaledOffer(OverflowPolicy policy, UserMailbox receiver, Message<String> mess)
+			throws InterruptedException {
+		synchronized (receiver.sendLock) {
+			boolean journaled = true;
+			boolean offered = false;
 			try {
-				Thread.sleep(delay.longValue());
-			} catch (InterruptedException e) {
-				//ignore
+				journal.sent(mess);
+				offered = policy.offer(receiver.messages, mess, limits.getBlockTimeoutNanos(), receiver.evictor);
+			} catch (IOException e) {
+				journaled = false;
+				LOG.error("Unable to journal a message to {}", receiver.name, e);
+				statistics.rejected();
+				mess.release();
+				throw new MessageRejectedException("Message to " + receiver.name + " is rejected as it can not be journaled");
+			} finally {
+				if (journaled && !offered)
+					try {
+						journal.rejected(receiver.name);
+					} catch (IOException e) {
+						LOG.error("Unable to journal a message rejected by {}", receiver.name, e);
+					}
 			}
+			return offered;
 		}
 	}
 	@Override
 	public void unregister(String... users) {
 		if (users != null)
 			for (String user : users) {
-				if (user != null)
-					this.userMessages.remove(user);
+				if (user != null) {
+					UserMailbox mailbox;
+					synchronized (registrationLock) {
+						mailbox = this.userMessages.remove(user);
+						if (mailbox != null) {
+							handles.set(mailbox.handle & INDEX_MASK, null);
+							freeHandles.add(mailbox.handle);
+							if (journal != null)
+								try {
+									journal.unregistered(user);
+								} catch (IOException e) {
+									LOG.error("Unable to journal unregistration of {}", user, e);
+								}
+						}
+					}
+					if (mailbox != null)
+						mailbox.close();
+				}
 			}
 	}
 
 	@Override
 	public Message<String> getNextMessage(String recipient) {
+		return takeMessage(mailboxOf(recipient));
+	}
+	
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) {
+		return takeMessage(mailboxOf(recipientHandle));
+	}
+	
+	private static Message<String> takeMessage(UserMailbox mailbox) {
+		if (mailbox == null)
+			return null;
 		try {
-			if(recipient ==null || !userMessages.containsKey(recipient)){
-				System.out.println("User " +recipient+ " is not registered");
-				return null;
+			Message<String> message = mailbox.poll();
+			return mailbox.taken(message != null ? message : mailbox.older(mailbox.messages.take()));
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while getting a message for {}", mailbox.name, e);
+		}
+		return null;
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipient, int maxMessages) {
+		if (maxMessages < 1) {
+			LOG.warn("Can't drain less than one message");
+			return null;
+		}
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox == null)
+			return null;
+		try {
+			List<Message<String>> messages = new ArrayList<>(Math.min(maxMessages, mailbox.messages.size() + 1));
+			//wait for the first message, then take everything already pending in one go
+			if (mailbox.drainTo(messages, maxMessages) == 0) {
+				messages.add(mailbox.older(mailbox.messages.take()));
+				mailbox.drainTo(messages, maxMessages - 1);
 			}
-			Message<String> message = userMessages.get(recipient).take();
-			
-			return message;
+			for (Message<String> message : messages)
+				mailbox.taken(message);
+			return messages;
 		} catch (InterruptedException e) {
-			System.out.println("Interrupted while getting a message for "+ recipient+ ": " + e.getMessage());
-			e.printStackTrace();
+			LOG.error("Interrupted while draining messages for {}", recipient, e);
 		}
 		return null;
 	}
+	
+	@Override
+	public Message<String> pollNextMessage(String recipient, long timeout, TimeUnit unit) {
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox == null)
+			return null;
+		try {
+			Message<String> message = mailbox.poll();
+			return mailbox.taken(message != null ? message : mailbox.older(mailbox.messages.poll(timeout, unit)));
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while polling a message for {}", recipient, e);
+		}
+		return null;
+	}
+	
+	@Override
+	public CompletableFuture<Message<String>> receiveAsync(String recipient) {
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox == null)
+			return CompletableFuture.completedFuture(null);
+		return mailbox.receiveAsync();
+	}
+	
+	@Override
+	public CompletableFuture<Message<String>> receiveAsync(int recipientHandle) {
+		UserMailbox mailbox = mailboxOf(recipientHandle);
+		if (mailbox == null)
+			return CompletableFuture.completedFuture(null);
+		return mailbox.receiveAsync();
+	}
+	
+	@Override
+	public CompletableFuture<List<Message<String>>> drainAsync(String recipient, int maxMessages) {
+		if (maxMessages < 1) {
+			LOG.warn("Can't drain less than one message");
+			return CompletableFuture.completedFuture(null);
+		}
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox == null)
+			return CompletableFuture.completedFuture(null);
+		CompletableFuture<Message<String>> first = mailbox.receiveAsync();
+		CompletableFuture<List<Message<String>>> drained = new CompletableFuture<>();
+		first.whenComplete((message, error) -> {
+			if (error != null) {
+				drained.completeExceptionally(error);
+				return;
+			}
+			if (message == null) {
+				drained.complete(null);
+				return;
+			}
+			List<Message<String>> messages = new ArrayList<>(Math.min(maxMessages, mailbox.messages.size() + 1));
+			messages.add(message);
+			mailbox.drainTo(messages, maxMessages - 1);
+			for (int i = 1; i < messages.size(); i++)
+				mailbox.taken(messages.get(i));
+			// cancelled meanwhile, the messages go back in their order
+			if (!drained.complete(messages))
+				for (int i = messages.size(); i-- > 0;)
+					mailbox.redeliver(messages.get(i));
+		});
+		drained.whenComplete((messages, error) -> {
+			if (drained.isCancelled())
+				first.cancel(false);
+		});
+		return drained;
+	}
+	
+	@Override
+	public void redeliver(List<Message<String>> messages) {
+		// each message goes to the head of its mailbox
+		for (int i = messages.size(); i-- > 0;) {
+			Message<String> message = messages.get(i);
+			UserMailbox mailbox = mailboxOf(message.getReceiverName());
+			if (mailbox != null)
+				mailbox.redeliver(message);
+			else {
+				statistics.dropped();
+				message.release();
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(String recipient, MessageListener<String> listener) {
+		if (listener == null)
+			throw new NullPointerException("Listener can not be null");
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox != null)
+			mailbox.subscribe(new MessagePusher(mailbox, listener, pushExecutor));
+	}
+
+	@Override
+	public void unsubscribe(String recipient) {
+		UserMailbox mailbox = mailboxOf(recipient);
+		if (mailbox != null)
+			mailbox.unsubscribe();
+	}
+
+	@Override
+	public int getRegisteredUsers() {
+		return userMessages.size();
+	}
+	
+	@Override
+	public Map<String, Integer> getQueueDepths() {
+		Map<String, Integer> depths = new TreeMap<>();
+		userMessages.forEach((user, mailbox) -> depths.put(user, mailbox.messages.size()));
+		return depths;
+	}
+	
+	@Override
+	public long getMessagesSent() {
+		return statistics.sent.sum();
+	}
+	
+	@Override
+	public long getMessagesReceived() {
+		return statistics.received.sum();
+	}
+	
+	@Override
+	public long getMessagesRejected() {
+		return statistics.rejected.sum();
+	}
+	
+	@Override
+	public long getMessagesDropped() {
+		return statistics.dropped.sum();
+	}
+	
+	@Override
+	public double getLatencyMeanMicros() {
+		return statistics.latency.getMean() / 1000;
+	}
+	
+	@Override
+	public double getLatency50thPercentileMicros() {
+		return statistics.latency.getPercentile(50) / 1000d;
+	}
+	
+	@Override
+	public double getLatency99thPercentileMicros() {
+		return statistics.latency.getPercentile(99) / 1000d;
+	}
+	
+	@Override
+	public double getLatency999thPercentileMicros() {
+		return statistics.latency.getPercentile(99.9) / 1000d;
+	}
+	
+	@Override
+	public double getLatencyMaxMicros() {
+		return statistics.latency.getMax() / 1000d;
+	}
+	
+	@Override
+	public long[] getLatencyHistogram() {
+		return statistics.latency.getBuckets();
+	}
+	
+	@Override
+	public void resetStatistics() {
+		statistics.reset();
+	}
 }
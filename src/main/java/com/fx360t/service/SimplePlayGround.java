@@ -2,9 +2,11 @@ package com.fx360t.service;
 
 import java.rmi.RemoteException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.fx360t.log.Log;
 import com.fx360t.player.Player;
 /**
  * Simple implementation of {@link PlayGround} interface. <br>
@@ -12,11 +14,13 @@ import com.fx360t.player.Player;
  * Also it can be exported as a remote service to be used by players on other JVMs.
  * For this purpose it should be exported as a {@link PlayerRegistrator}. <br>
  * The first registered player is considered as initiator and will be triggered to start playing by invoking
- * {@link Player#startToPlay} method when the second player is also ready to play. 
+ * {@link Player#startToPlay} method when the second player is also ready to play.<br>
+ * State and duration of the game are available through {@link PlayGroundMXBean}.
  * 
  * @author Oleg
  */
-public class SimplePlayGround implements PlayGround, PlayerRegistrator {
+public class SimplePlayGround implements PlayGround, PlayerRegistrator, PlayGroundMXBean {
+	private static final Log LOG = Log.getLog(SimplePlayGround.class);
 	
 	private Player firstPlayer;
 	private Player secondPlayer;
@@ -28,6 +32,11 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 	 * boolean flag indicating if the game is running
 	 */
 	private volatile boolean gameIsRunning;
+	/**
+	 * Values of {@link System#nanoTime()} when the game was started and finished, 0 if not yet
+	 */
+	private volatile long startedAt;
+	private volatile long finishedAt;
 	/**
 	 * Latch used for waiting all 2 players are registered
 	 */
@@ -40,20 +49,21 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 	public boolean startPlaying() {
 		try {
 			if(playersCount()<2){
-				System.out.println("Can't start playing as not all players registered yet");
+				LOG.warn("Can't start playing as not all players registered yet");
 				return false;
 			}
 			if(gameIsRunning){
-				System.out.println("Can't start playing as the game is already started");
+				LOG.warn("Can't start playing as the game is already started");
 				return false;
 			}
-			System.out.println("Start to play");
+			LOG.info("Start to play");
 			firstPlayer.startToPlay(true, secondPlayer);
 			secondPlayer.startToPlay(false, firstPlayer);
+			startedAt = System.nanoTime();
+			finishedAt = 0;
 			gameIsRunning = true;
 		} catch (RemoteException e) {
-			System.out.println("Unable to start playing due to Exception: " + e.getMessage());
-			e.printStackTrace();
+			LOG.error("Unable to start playing due to exception", e);
 			return false;
 		}
 		return true;
@@ -64,29 +74,29 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 		registeringLock.lock();
 		try {
 			if (player == null) {
-				System.out.println("Can't register NULL player.");
+				LOG.warn("Can't register NULL player.");
 				return;
 			}
 			if (gameIsRunning) {
-				System.out.println("Can't register new player as the game has already started.");
+				LOG.warn("Can't register new player as the game has already started.");
 				return;
 			}
 			if (firstPlayer != null && secondPlayer != null) {
-				System.out.println("Failed to register new player. Already have two registered players");
+				LOG.warn("Failed to register new player. Already have two registered players");
 				return;
 			}
 			if (firstPlayer == null) {
 				firstPlayer = player;
 				registered++;
-				System.out.println(firstPlayer.getName() + " registered in game. Wait for one more player");
+				LOG.info("{} registered in game. Wait for one more player", firstPlayer.getName());
 				allRegistered.countDown();
 			} else if (secondPlayer == null) {
 				if (player.getIdentity().equals(firstPlayer.getIdentity())) {
-					System.out.println("Failed to register new player. This player is already registered");
+					LOG.warn("Failed to register new player. This player is already registered");
 					return;
 				}
 				secondPlayer = player;
-				System.out.println(secondPlayer.getName() + " registered in game. ");
+				LOG.info("{} registered in game. ", secondPlayer.getName());
 				registered++;
 				allRegistered.countDown();
 			}
@@ -104,16 +114,15 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 	public boolean waitUntilGameIsFinished() {
 		try {
 			if(!gameIsRunning){
-				System.out.println("Can't start waiting for finish as the game is not started yet");
+				LOG.warn("Can't start waiting for finish as the game is not started yet");
 				return false;
 			}
 
 			firstPlayer.waitAllTurnsCompleted();
-			System.out.println(firstPlayer.getName() + " ready to finish");
+			LOG.info("{} ready to finish", firstPlayer.getName());
 			return true;
 		} catch (RemoteException e) {
-			System.out.println("Failed to wait finishing the game due to exception :" + e.getMessage());
-			e.printStackTrace();
+			LOG.error("Failed to wait finishing the game due to exception", e);
 			return false;
 		}
 	}
@@ -121,20 +130,20 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 	@Override
 	public boolean finishPlaying() {
 		if(!gameIsRunning){
-			System.out.println("Can't finish playing as the game is not started yet");
+			LOG.warn("Can't finish playing as the game is not started yet");
 			return false;
 		}
 			
+		finishedAt = System.nanoTime();
 		gameIsRunning = false;
 		try {
 			firstPlayer.gameOver();
-			System.out.println("FirstPlayer ends his game");
+			LOG.info("FirstPlayer ends his game");
 			secondPlayer.gameOver();
-			System.out.println("SecondPlayer ends his game");
+			LOG.info("SecondPlayer ends his game");
 			return true;
 		} catch (RemoteException e) {
-			System.out.println("Abnormal finishing the game due to exception : "+ e.getMessage());
-			e.printStackTrace();
+			LOG.error("Abnormal finishing the game due to exception", e);
 			return false;
 		}
 	}
@@ -144,10 +153,9 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 		if (playersCount() < 2) {
 			try {
 				allRegistered.await();
-				System.out.println("All players registered");
+				LOG.info("All players registered");
 			} catch (InterruptedException e) {
-				System.out.println("Interrupted while waiting all registered players :" + e.getMessage());
-				e.printStackTrace();
+				LOG.error("Interrupted while waiting all registered players", e);
 			}
 		}
 	}
@@ -157,15 +165,15 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 		registeringLock.lock();
 		try {
 			if (player == null) {
-				System.out.println("Can't unregister NULL player.");
+				LOG.warn("Can't unregister NULL player.");
 				return;
 			}
 			if (registered == 0) {
-				System.out.println("Can't unregister player as no players were registered yet");
+				LOG.warn("Can't unregister player as no players were registered yet");
 				return;
 			}
 			if (gameIsRunning) {
-				System.out.println("Can't unregister player as the game has already started.");
+				LOG.warn("Can't unregister player as the game has already started.");
 				return;
 			}
 
@@ -182,4 +190,47 @@ public class SimplePlayGround implements PlayGround, PlayerRegistrator {
 			registeringLock.unlock();
 		}
 	}
+
+	/**
+	 * Unregisters both players of a game which is not running, used when the game is given up before it starts
+	 */
+	protected void unregisterPlayers() {
+		registeringLock.lock();
+		try {
+			if (gameIsRunning) {
+				LOG.warn("Can't unregister players as the game has already started.");
+				return;
+			}
+			firstPlayer = null;
+			secondPlayer = null;
+			registered = 0;
+		} finally {
+			registeringLock.unlock();
+		}
+	}
+
+	@Override
+	public int getRegisteredPlayers() {
+		return playersCount();
+	}
+
+	@Override
+	public GameState getGameState() {
+		if (gameIsRunning)
+			return GameState.RUNNING;
+		if (finishedAt != 0)
+			return GameState.FINISHED;
+		return playersCount() < 2 ? GameState.WAITING_FOR_PLAYERS : GameState.READY;
+	}
+
+	@Override
+	public long getGameDurationMillis() {
+		long started = startedAt;
+		if (started == 0)
+			return 0;
+		long finished = finishedAt;
+		if (finished == 0)
+			finished = System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(finished - started);
+	}
 }
@@ -0,0 +1,357 @@
+package com.fx360t.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.journal.MessageJournal;
+import com.fx360t.service.mailbox.Mailbox;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.strategy.Message;
+
+/**
+ * State of one registered user in {@link SimpleMessageService}: the {@link Mailbox} of pending messages,
+ * asynchronous receive requests waiting for a message and the subscription pushing messages to a listener.<br>
+ * A message taken for a waiter which is cancelled before it is completed or a received message given back
+ * by a remote receiver can not be put back to the head of the mailbox, it is held aside and goes to the next
+ * receiver before the pending messages.
+ * @author Oleg
+ */
+class UserMailbox {
+	private static final Log LOG = Log.getLog(UserMailbox.class);
+	/**
+	 * Name of the user
+	 */
+	final String name;
+	/**
+	 * Handle of the user, its low bits are the index of this mailbox in the service's handle table
+	 */
+	final int handle;
+	/**
+	 * Pending messages of the user
+	 */
+	final Mailbox<Message<String>> messages;
+	/**
+	 * Capacity of the mailbox or {@link MailboxLimits#UNBOUNDED}
+	 */
+	final int capacity;
+	/**
+	 * Futures returned by {@link AsyncMessageReceiver#receiveAsync} and not completed yet
+	 */
+	private final Queue<CompletableFuture<Message<String>>> waiters = new ConcurrentLinkedQueue<>();
+	/**
+	 * Messages taken for cancelled waiters or given back, oldest first and older than all pending messages
+	 */
+	private final ConcurrentLinkedDeque<Message<String>> held = new ConcurrentLinkedDeque<>();
+	/**
+	 * Statistics of the service, updated when messages are taken from this mailbox
+	 */
+	final MessageStatistics statistics;
+	/**
+	 * Journal recording taken and dropped messages or {@code null} if the service is not persistent
+	 */
+	private final MessageJournal journal;
+	/**
+	 * Serializes journaled senders of the user, so the journal records messages in the order of the mailbox
+	 */
+	final Object sendLock = new Object();
+	/**
+	 * Receives pending messages dropped by the overflow policy
+	 */
+	final Consumer<Message<String>> evictor = this::evicted;
+	/**
+	 * Subscription of the user or {@code null} if messages are not pushed
+	 */
+	private volatile MessagePusher pusher;
+	/**
+	 * Messages taken by a push which failed, they go to the next subscription before pending messages
+	 */
+	private volatile List<Message<String>> unpushed;
+	private boolean closed;
+	
+	UserMailbox(String name, int handle, Mailbox<Message<String>> messages, int capacity, MessageStatistics statistics,
+			MessageJournal journal) {
+		this.name = name;
+		this.handle = handle;
+		this.messages = messages;
+		this.capacity = capacity;
+		this.statistics = statistics;
+		this.journal = journal;
+	}
+	
+	/**
+	 * Accounts a message taken from the mailbox by a receiver: updates statistics and the journal
+	 * @return the message
+	 */
+	Message<String> taken(Message<String> message) {
+		if (message != null)
+			journalTaken();
+		return statistics.received(message);
+	}
+	
+	/**
+	 * Accounts a message taken from the mailbox and already passed on, by the time it was put to the mailbox
+	 */
+	void taken(long enqueueTime) {
+		journalTaken();
+		statistics.received(enqueueTime);
+	}
+	
+	/**
+	 * Accounts a pending message dropped to make room for a new one, a pooled envelope goes back to its pool.<br>
+	 * The drop is journaled as taken, so the message is not recovered.
+	 */
+	void evicted(Message<String> message) {
+		journalTaken();
+		statistics.dropped();
+		message.release();
+	}
+	
+	private void journalTaken() {
+		if (journal != null)
+			try {
+				journal.taken(name);
+			} catch (IOException e) {
+				LOG.error("Unable to journal a message taken by {}", name, e);
+			}
+	}
+	
+	/**
+	 * Takes the oldest held message or the oldest pending one without waiting
+	 * @return the message or {@code null} if there is none
+	 */
+	Message<String> poll() {
+		Message<String> message = held.isEmpty() ? null : held.pollFirst();
+		return message != null ? message : messages.poll();
+	}
+	
+	/**
+	 * Moves held messages and pending messages to the collection without waiting
+	 * @return the number of moved messages
+	 */
+	int drainTo(Collection<? super Message<String>> target, int maxMessages) {
+		int moved = 0;
+		Message<String> message;
+		while (moved < maxMessages && !held.isEmpty() && (message = held.pollFirst()) != null) {
+			target.add(message);
+			moved++;
+		}
+		return moved < maxMessages ? moved + messages.drainTo(target, maxMessages - moved) : moved;
+	}
+	
+	/**
+	 * @return {@code true} if there are neither held nor pending messages
+	 */
+	boolean isEmpty() {
+		return held.isEmpty() && messages.isEmpty();
+	}
+	
+	/**
+	 * Orders a message taken from the mailbox by a blocking receiver after messages held meanwhile
+	 * @param taken - message taken from the mailbox or {@code null}
+	 * @return the oldest held message, then the taken one is held after the others, 
+	 * or the taken message if none is held
+	 */
+	Message<String> older(Message<String> taken) {
+		if (taken == null || held.isEmpty())
+			return taken;
+		Message<String> older = held.pollFirst();
+		if (older == null)
+			return taken;
+		held.addLast(taken);
+		return older;
+	}
+	
+	/**
+	 * Puts a received message back to the head of the mailbox, when the receiver could not get it.
+	 * The message is not counted as received any more and the journal recovers it as the oldest one.
+	 */
+	void redeliver(Message<String> message) {
+		synchronized (this) {
+			if (!closed) {
+				if (journal != null)
+					try {
+						journal.returned(message);
+					} catch (IOException e) {
+						LOG.error("Unable to journal a message given back to {}", name, e);
+					}
+				statistics.returned();
+				held.addFirst(message);
+				message = null;
+			}
+		}
+		if (message != null) {
+			LOG.warn("Message given back to {} is dropped, the user is unregistered", name);
+			statistics.dropped();
+			message.release();
+			return;
+		}
+		messageAdded();
+	}
+	
+	/**
+	 * Returns a future completed with the next message. 
+	 * If there is no pending message the future is completed later by a sender. 
+	 */
+	CompletableFuture<Message<String>> receiveAsync() {
+		Message<String> message = poll();
+		if (message != null)
+			return CompletableFuture.completedFuture(taken(message));
+		CompletableFuture<Message<String>> waiter = new CompletableFuture<>();
+		waiters.add(waiter);
+		// a message could have arrived before the waiter was added
+		completeWaiters();
+		return waiter;
+	}
+	
+	/**
+	 * Notifies receivers about a message put to the mailbox: waiting futures and the subscription
+	 */
+	void messageAdded() {
+		completeWaiters();
+		MessagePusher subscription = pusher;
+		if (subscription != null)
+			subscription.signal();
+	}
+	
+	/**
+	 * Replaces the subscription of the user, pending messages are pushed at once
+	 */
+	synchronized void subscribe(MessagePusher subscription) {
+		MessagePusher previous = pusher;
+		pusher = subscription;
+		if (previous != null)
+			previous.cancel();
+		subscription.signal();
+	}
+	
+	/**
+	 * Cancels the subscription if it is still the current one
+	 */
+	synchronized void unsubscribe(MessagePusher subscription) {
+		subscription.cancel();
+		if (pusher == subscription)
+			pusher = null;
+	}
+	
+	/**
+	 * Keeps messages a failed push could not pass to its listener for the next subscription, 
+	 * they are dropped if the user is unregistered
+	 */
+	void unpushed(List<Message<String>> messages) {
+		synchronized (this) {
+			if (!closed) {
+				List<Message<String>> kept = unpushed;
+				if (kept != null)
+					kept.addAll(messages);
+				else
+					unpushed = messages;
+				messages = null;
+			}
+		}
+		if (messages != null) {
+			drop(messages);
+			return;
+		}
+		MessagePusher subscription = pusher;
+		if (subscription != null)
+			subscription.signal();
+	}
+	
+	/**
+	 * @return {@code true} if there are messages of a failed push
+	 */
+	boolean hasUnpushed() {
+		return unpushed != null;
+	}
+	
+	/**
+	 * Removes messages of a failed push
+	 * @return the messages or {@code null}
+	 */
+	synchronized List<Message<String>> takeUnpushed() {
+		List<Message<String>> kept = unpushed;
+		unpushed = null;
+		return kept;
+	}
+	
+	/**
+	 * Accounts messages taken from the mailbox which no receiver gets
+	 */
+	private void drop(List<Message<String>> messages) {
+		LOG.warn("{} pushed messages are not delivered to {}", messages.size(), name);
+		for (Message<String> message : messages) {
+			statistics.dropped();
+			message.release();
+		}
+	}
+	
+	/**
+	 * Cancels the current subscription
+	 */
+	void unsubscribe() {
+		MessagePusher subscription = pusher;
+		if (subscription != null)
+			unsubscribe(subscription);
+	}
+	
+	/**
+	 * Hands pending messages over to waiting futures.<br>
+	 * Called by senders after a message is put to the mailbox, costs a single read when nobody waits.
+	 */
+	void completeWaiters() {
+		if (waiters.isEmpty())
+			return;
+		synchronized (this) {
+			Message<String> message = null;
+			CompletableFuture<Message<String>> waiter;
+			while ((waiter = waiters.peek()) != null) {
+				if (waiter.isDone()) {
+					// cancelled by the caller
+					waiters.poll();
+					continue;
+				}
+				if (message == null && (message = poll()) == null)
+					return;
+				waiters.poll();
+				if (waiter.complete(message)) {
+					taken(message);
+					message = null;
+				}
+			}
+			// message raced with a cancelled waiter, it is the oldest one and goes to the next receiver
+			if (message != null)
+				held.addFirst(message);
+		}
+		MessagePusher subscription = pusher;
+		if (subscription != null && !held.isEmpty())
+			subscription.signal();
+	}
+	
+	/**
+	 * Cancels the subscription and completes all waiting futures with {@code null}, 
+	 * called when the user is unregistered
+	 */
+	void close() {
+		unsubscribe();
+		CompletableFuture<Message<String>> waiter;
+		while ((waiter = waiters.poll()) != null)
+			waiter.complete(null);
+		List<Message<String>> lost;
+		synchronized (this) {
+			closed = true;
+			lost = takeUnpushed();
+		}
+		if (lost != null)
+			drop(lost);
+		Message<String> message;
+		while ((message = held.pollFirst()) != null)
+			message.release();
+	}
+}
@@ -0,0 +1,401 @@
+package com.fx360t.service.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.fx360t.log.Log;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessageCodec;
+
+/**
+ * Append-only journal of a message service in memory-mapped segment files.<br>
+ * Registrations, sent messages, taken messages and messages given back are appended as records with a checksum, a new segment
+ * is started when the current one is full. A message is recorded before it is put to the receiver's mailbox,
+ * so records of a mailbox follow the order of its messages and a receiver never takes a message which is not
+ * recorded yet. Appending only copies the record to the mapped memory,
+ * a sync thread forces segments to disk when {@code syncBatch} records are pending or the oldest pending
+ * record is {@code syncInterval} old, so one disk write commits a group of records. In durable mode senders
+ * wait until their message is forced.<br>
+ * When the journal is opened, existing segments are replayed up to the first damaged record: every
+ * registered user gets the messages sent to it and not taken yet. The recovered state is written to
+ * a new segment and older segments are deleted, so the journal does not grow beyond one run of the service.
+ * @author Oleg
+ */
+public class MessageJournal implements Closeable {
+	private static final Log LOG = Log.getLog(MessageJournal.class);
+	private static final String SUFFIX = ".journal";
+	/**
+	 * Length and checksum before the payload of every record
+	 */
+	private static final int RECORD_HEADER = 8;
+	private static final byte REGISTERED = 1;
+	private static final byte UNREGISTERED = 2;
+	private static final byte SENT = 3;
+	private static final byte TAKEN = 4;
+	private static final byte REJECTED = 5;
+	private static final byte RETURNED = 6;
+
+	/**
+	 * Receives the state recovered from the journal
+	 */
+	public interface Recovery {
+		/**
+		 * Called for registered users in the order of registration
+		 */
+		void registered(String user);
+		/**
+		 * Called for messages not taken by their receivers, after all users are registered
+		 */
+		void sent(Message<String> message);
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+	private final int syncBatch;
+	private final long syncIntervalNanos;
+	private final boolean durable;
+
+	private long segmentIndex;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+	private final DataOutputStream recordData = new DataOutputStream(record);
+	private final CRC32 checksum = new CRC32();
+	/**
+	 * Number of appended records and number of records forced to disk
+	 */
+	private long written;
+	private long synced;
+	/**
+	 * Time the oldest record not forced yet was appended at
+	 */
+	private long firstUnsynced;
+	private boolean closed;
+	private final Thread syncThread;
+	/**
+	 * Users and their pending messages read from the segments, until they are passed to {@link #recover}
+	 */
+	private Map<String, Deque<Message<String>>> recovered;
+
+	/**
+	 * Opens the journal in a directory, replays and compacts existing segments
+	 * @param directory - directory of segment files
+	 * @param segmentSize - size of a segment file in bytes
+	 * @param syncBatch - number of pending records which are forced to disk without waiting for the interval
+	 * @param syncInterval - maximum time a record waits to be forced to disk
+	 * @param unit - unit of the interval
+	 * @param durable - if {@code true} senders wait until their message is forced to disk
+	 * @throws IOException if segments can not be read or written
+	 */
+	public MessageJournal(Path directory, int segmentSize, int syncBatch, long syncInterval, TimeUnit unit,
+			boolean durable) throws IOException {
+		if (segmentSize < 1024)
+			throw new IllegalArgumentException("Segment size must be at least 1024 bytes: " + segmentSize);
+		if (syncBatch < 1)
+			throw new IllegalArgumentException("Sync batch must be positive: " + syncBatch);
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.syncBatch = syncBatch;
+		this.syncIntervalNanos = unit.toNanos(syncInterval);
+		this.durable = durable;
+		Files.createDirectories(directory);
+		List<Path> segments = segments();
+		recovered = replay(segments);
+		segmentIndex = segments.isEmpty() ? 0 : index(segments.get(segments.size() - 1));
+		synchronized (this) {
+			roll();
+			for (Map.Entry<String, Deque<Message<String>>> user : recovered.entrySet()) {
+				append(REGISTERED, user.getKey(), null);
+				for (Message<String> message : user.getValue())
+					append(SENT, null, message);
+			}
+			segment.force();
+			synced = written;
+		}
+		for (Path old : segments)
+			Files.delete(old);
+		syncThread = new Thread(this::syncLoop, "journal-sync");
+		syncThread.setDaemon(true);
+		syncThread.start();
+	}
+
+	/**
+	 * Opens a journal configured by system properties:<br>
+	 * {@code message.journal} - directory of the journal, the journal is disabled if it is not set<br>
+	 * {@code message.journal.segment.size} - size of segment files in bytes, 64 MB by default<br>
+	 * {@code message.journal.sync.batch} - number of records forced without waiting, 1024 by default<br>
+	 * {@code message.journal.sync.interval} - maximum time before records are forced in milliseconds, 10 by default<br>
+	 * {@code message.journal.durable} - senders wait until messages are forced, {@code false} by default
+	 * @return journal or {@code null} if it is disabled
+	 * @throws IOException if the journal can not be opened
+	 */
+	public static MessageJournal fromSystemProperties() throws IOException {
+		String directory = System.getProperty("message.journal");
+		if (directory == null)
+			return null;
+		return new MessageJournal(Paths.get(directory),
+				Integer.getInteger("message.journal.segment.size", 64 * 1024 * 1024),
+				Integer.getInteger("message.journal.sync.batch", 1024),
+				Long.getLong("message.journal.sync.interval", 10), TimeUnit.MILLISECONDS,
+				Boolean.getBoolean("message.journal.durable"));
+	}
+
+	/**
+	 * Passes the recovered state to the service, only once
+	 */
+	public synchronized void recover(Recovery recovery) {
+		if (recovered == null)
+			return;
+		for (String user : recovered.keySet())
+			recovery.registered(user);
+		for (Deque<Message<String>> messages : recovered.values())
+			for (Message<String> message : messages)
+				recovery.sent(message);
+		recovered = null;
+	}
+
+	/**
+	 * Records a new user
+	 */
+	public synchronized void registered(String user) throws IOException {
+		append(REGISTERED, user, null);
+	}
+
+	/**
+	 * Records a user leaving, its pending messages are dropped
+	 */
+	public synchronized void unregistered(String user) throws IOException {
+		append(UNREGISTERED, user, null);
+	}
+
+	/**
+	 * Records a message before it is put to the receiver's mailbox, in durable mode waits until it is forced to disk
+	 * @throws InterruptedException if interrupted while waiting for the disk, the message is recorded
+	 */
+	public synchronized void sent(Message<String> message) throws IOException, InterruptedException {
+		long sequence = append(SENT, null, message);
+		if (durable)
+			while (synced < sequence && !closed)
+				wait();
+	}
+
+	/**
+	 * Records the oldest message of a user taken from its mailbox, by a receiver or dropped by the overflow policy
+	 */
+	public synchronized void taken(String user) throws IOException {
+		append(TAKEN, user, null);
+	}
+
+	/**
+	 * Records that the last message recorded for a user was not put to its mailbox
+	 */
+	public synchronized void rejected(String user) throws IOException {
+		append(REJECTED, user, null);
+	}
+
+	/**
+	 * Records a taken message put back to the head of the receiver's mailbox
+	 */
+	public synchronized void returned(Message<String> message) throws IOException {
+		append(RETURNED, null, message);
+	}
+
+	/**
+	 * Writes a record to the current segment, called holding the lock
+	 * @return sequence number of the record
+	 */
+	private long append(byte type, String user, Message<String> message) throws IOException {
+		if (closed)
+			throw new IOException("Journal is closed");
+		record.reset();
+		recordData.writeByte(type);
+		if (message != null)
+			MessageCodec.write(recordData, message);
+		else
+			MessageCodec.writeString(recordData, user);
+		int length = record.size();
+		if (RECORD_HEADER + length > segmentSize)
+			throw new IOException("Record of " + length + " bytes does not fit into a segment");
+		if (segment.remaining() < RECORD_HEADER + length)
+			roll();
+		byte[] bytes = record.toByteArray();
+		checksum.reset();
+		checksum.update(bytes, 0, length);
+		segment.putInt(length).putInt((int) checksum.getValue()).put(bytes, 0, length);
+		// the sync thread starts timing the interval at the first pending record
+		boolean first = written == synced;
+		if (first)
+			firstUnsynced = System.nanoTime();
+		written++;
+		if (first || written - synced == syncBatch)
+			notifyAll();
+		return written;
+	}
+
+	/**
+	 * Forces the current segment and starts the next one, called holding the lock
+	 */
+	private void roll() throws IOException {
+		if (segment != null) {
+			segment.force();
+			channel.close();
+			synced = written;
+			notifyAll();
+		}
+		segmentIndex++;
+		channel = FileChannel.open(directory.resolve(String.format("%010d", segmentIndex) + SUFFIX),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+	}
+
+	/**
+	 * Loop of the sync thread: waits for a group of records and forces the segment
+	 */
+	private void syncLoop() {
+		try {
+			for (;;) {
+				MappedByteBuffer current;
+				long target;
+				synchronized (this) {
+					while (!closed && written == synced)
+						wait();
+					long remaining;
+					while (!closed && written - synced < syncBatch
+							&& (remaining = firstUnsynced + syncIntervalNanos - System.nanoTime()) > 0)
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					if (closed)
+						return;
+					current = segment;
+					target = written;
+				}
+				current.force();
+				synchronized (this) {
+					if (target > synced) {
+						synced = target;
+						firstUnsynced = System.nanoTime();
+					}
+					notifyAll();
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.warn("Journal sync is interrupted");
+		}
+	}
+
+	/**
+	 * @return segment files in the order they were written
+	 */
+	private List<Path> segments() throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files)
+				segments.add(file);
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private static long index(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 * Reads records of the segments and rebuilds mailboxes of registered users
+	 */
+	private static Map<String, Deque<Message<String>>> replay(List<Path> segments) throws IOException {
+		Map<String, Deque<Message<String>>> users = new LinkedHashMap<>();
+		CRC32 checksum = new CRC32();
+		for (Path file : segments) {
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+			while (buffer.remaining() >= RECORD_HEADER) {
+				int length = buffer.getInt();
+				int expected = buffer.getInt();
+				// the rest of a segment is zero, a damaged record ends the segment
+				if (length <= 0 || length > buffer.remaining())
+					break;
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				checksum.reset();
+				checksum.update(bytes, 0, length);
+				if ((int) checksum.getValue() != expected) {
+					LOG.warn("Damaged record in {}, the rest of the segment is skipped", file);
+					break;
+				}
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+				byte type = in.readByte();
+				if (type == SENT || type == RETURNED) {
+					Message<String> message = MessageCodec.read(in);
+					Deque<Message<String>> messages = users.get(message.getReceiverName());
+					if (messages == null)
+						continue;
+					if (type == SENT)
+						messages.add(message);
+					else
+						messages.addFirst(message);
+					continue;
+				}
+				String user = MessageCodec.readString(in);
+				if (type == REGISTERED) {
+					users.putIfAbsent(user, new ArrayDeque<>());
+				} else if (type == UNREGISTERED) {
+					users.remove(user);
+				} else if (type == TAKEN) {
+					Deque<Message<String>> messages = users.get(user);
+					if (messages != null)
+						messages.poll();
+				} else if (type == REJECTED) {
+					Deque<Message<String>> messages = users.get(user);
+					if (messages != null)
+						messages.pollLast();
+				}
+			}
+		}
+		return users;
+	}
+
+	/**
+	 * Forces pending records to disk and stops the sync thread
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			segment.force();
+			synced = written;
+			channel.close();
+			notifyAll();
+		}
+		try {
+			syncThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
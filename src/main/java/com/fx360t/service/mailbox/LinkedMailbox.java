@@ -0,0 +1,84 @@
+package com.fx360t.service.mailbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Mailbox} backed by a {@link LinkedBlockingQueue}.<br>
+ * It allocates a node and takes a lock on every operation. Unless constructed with a capacity
+ * it never refuses an element.
+ * @author Oleg
+ * @param <E> - type of elements held in the mailbox
+ */
+public class LinkedMailbox<E> implements Mailbox<E> {
+	private final BlockingQueue<E> queue;
+	
+	/**
+	 * Constructs an unbounded mailbox
+	 */
+	public LinkedMailbox() {
+		this.queue = new LinkedBlockingQueue<>();
+	}
+	
+	/**
+	 * Constructs a mailbox which holds not more than {@code capacity} elements
+	 * @param capacity - maximum number of pending elements
+	 */
+	public LinkedMailbox(int capacity) {
+		this.queue = new LinkedBlockingQueue<>(capacity);
+	}
+
+	@Override
+	public boolean offer(E element) {
+		return queue.offer(element);
+	}
+
+	@Override
+	public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.offer(element, timeout, unit);
+	}
+
+	@Override
+	public void put(E element) throws InterruptedException {
+		queue.put(element);
+	}
+
+	@Override
+	public E poll() {
+		return queue.poll();
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		return queue.take();
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> target, int maxElements) {
+		return queue.drainTo(target, maxElements);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public List<E> snapshot() {
+		return new ArrayList<>(queue);
+	}
+}
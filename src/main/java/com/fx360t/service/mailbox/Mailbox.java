@@ -0,0 +1,76 @@
+package com.fx360t.service.mailbox;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mailbox holds pending messages of one recipient.<br>
+ * Any thread may put elements into a mailbox, elements are taken out in the order they were put.
+ * Implementations are created by a {@link MailboxFactory}.
+ * @author Oleg
+ * @param <E> - type of elements held in the mailbox
+ */
+public interface Mailbox<E> {
+	/**
+	 * Puts an element into the mailbox if it is possible to do it immediately
+	 * @param element - element to put, must not be null
+	 * @return {@code true} if element was put, {@code false} if the mailbox is full
+	 */
+	boolean offer(E element);
+	/**
+	 * Puts an element into the mailbox, waiting up to the specified time for free space if necessary
+	 * @param element - element to put, must not be null
+	 * @param timeout - how long to wait before giving up
+	 * @param unit - time unit of the timeout
+	 * @return {@code true} if element was put, {@code false} if the mailbox stayed full until timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException;
+	/**
+	 * Puts an element into the mailbox, waiting for free space if necessary
+	 * @param element - element to put, must not be null
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void put(E element) throws InterruptedException;
+	/**
+	 * Takes the oldest element if there is one
+	 * @return the oldest element or {@code null} if the mailbox is empty
+	 */
+	E poll();
+	/**
+	 * Takes the oldest element, waiting until it is available
+	 * @return the oldest element
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	E take() throws InterruptedException;
+	/**
+	 * Takes the oldest element, waiting up to the specified time until it is available
+	 * @param timeout - how long to wait before giving up
+	 * @param unit - time unit of the timeout
+	 * @return the oldest element or {@code null} if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	E poll(long timeout, TimeUnit unit) throws InterruptedException;
+	/**
+	 * Moves up to {@code maxElements} pending elements to the given collection without waiting
+	 * @param target - collection to add elements to
+	 * @param maxElements - maximum number of elements to move
+	 * @return the number of moved elements
+	 */
+	int drainTo(Collection<? super E> target, int maxElements);
+	/**
+	 * @return the number of pending elements
+	 */
+	int size();
+	/**
+	 * @return {@code true} if there are no pending elements
+	 */
+	boolean isEmpty();
+	/**
+	 * Copy of pending elements, oldest first.<br>
+	 * Used for inspection only, the result may be inaccurate while elements are being put or taken.
+	 * @return list of pending elements
+	 */
+	List<E> snapshot();
+}
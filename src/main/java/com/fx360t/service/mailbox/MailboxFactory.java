@@ -0,0 +1,82 @@
+package com.fx360t.service.mailbox;
+
+/**
+ * Factory of {@link Mailbox} instances.<br>
+ * Message service asks it for a new mailbox whenever a user is registered.
+ * @author Oleg
+ */
+public interface MailboxFactory {
+	/** Default capacity of ring buffer mailboxes*/
+	int DEFAULT_RING_CAPACITY = 1024;
+	/**
+	 * Creates a new empty mailbox
+	 * @return new mailbox
+	 */
+	<E> Mailbox<E> newMailbox();
+	/**
+	 * Creates a new empty mailbox which holds not more than {@code capacity} elements
+	 * @param capacity - maximum number of pending elements
+	 * @return new mailbox
+	 */
+	<E> Mailbox<E> newMailbox(int capacity);
+	
+	/**
+	 * @return factory of unbounded mailboxes backed by {@link java.util.concurrent.LinkedBlockingQueue}
+	 */
+	static MailboxFactory linked() {
+		return new MailboxFactory() {
+			@Override
+			public <E> Mailbox<E> newMailbox() {
+				return new LinkedMailbox<>();
+			}
+			@Override
+			public <E> Mailbox<E> newMailbox(int capacity) {
+				return new LinkedMailbox<>(capacity);
+			}
+			@Override
+			public String toString() {
+				return "linked";
+			}
+		};
+	}
+	
+	/**
+	 * @param capacity - number of preallocated slots in every mailbox, rounded up to a power of two
+	 * @return factory of lock-free {@link RingBufferMailbox} instances
+	 */
+	static MailboxFactory ringBuffer(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		return new MailboxFactory() {
+			@Override
+			public <E> Mailbox<E> newMailbox() {
+				return new RingBufferMailbox<>(capacity);
+			}
+			@Override
+			public <E> Mailbox<E> newMailbox(int limit) {
+				return new RingBufferMailbox<>(limit);
+			}
+			@Override
+			public String toString() {
+				return "ring:" + capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Creates a factory by its name.<br>
+	 * Supported names are {@code linked}, {@code ring} and {@code ring:<capacity>}.
+	 * @param name - name of the factory
+	 * @return mailbox factory
+	 * @throws IllegalArgumentException if name is unknown
+	 */
+	static MailboxFactory forName(String name) {
+		if (name == null || "linked".equalsIgnoreCase(name))
+			return linked();
+		if ("ring".equalsIgnoreCase(name))
+			return ringBuffer(DEFAULT_RING_CAPACITY);
+		if (name.toLowerCase().startsWith("ring:") && name.substring(5).matches("\\d+"))
+			return ringBuffer(Integer.parseInt(name.substring(5)));
+		throw new IllegalArgumentException("Unknown mailbox type: " + name);
+	}
+}
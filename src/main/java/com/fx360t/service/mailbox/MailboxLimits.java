@@ -0,0 +1,95 @@
+package com.fx360t.service.mailbox;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capacity limits of users' mailboxes and the {@link OverflowPolicy} applied when a mailbox is full.<br>
+ * Every recipient gets the default capacity unless a capacity was set for it with {@link #withCapacity}.
+ * Capacity {@value #UNBOUNDED} means that the mailbox is not limited.
+ * @author Oleg
+ */
+public class MailboxLimits {
+	/** Capacity value meaning no limit*/
+	public static final int UNBOUNDED = 0;
+	
+	private final int defaultCapacity;
+	private final OverflowPolicy policy;
+	private final long blockTimeoutNanos;
+	/**
+	 * Capacities set for particular recipients
+	 */
+	private final Map<String, Integer> capacities = new ConcurrentHashMap<>();
+	
+	/**
+	 * Constructs limits
+	 * @param defaultCapacity - capacity of every mailbox or {@link #UNBOUNDED}
+	 * @param policy - what to do when a mailbox is full
+	 * @param blockTimeout - maximum time a sender waits when policy is {@link OverflowPolicy#BLOCK}
+	 * @param unit - time unit of the timeout
+	 */
+	public MailboxLimits(int defaultCapacity, OverflowPolicy policy, long blockTimeout, TimeUnit unit) {
+		if (defaultCapacity < 0)
+			throw new IllegalArgumentException("Capacity can not be negative: " + defaultCapacity);
+		if (policy == null)
+			throw new NullPointerException("Overflow policy can not be null");
+		this.defaultCapacity = defaultCapacity;
+		this.policy = policy;
+		this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+	}
+	
+	/**
+	 * @return limits without any capacity restriction
+	 */
+	public static MailboxLimits unbounded() {
+		return new MailboxLimits(UNBOUNDED, OverflowPolicy.BLOCK, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Sets capacity of a particular recipient's mailbox.<br>
+	 * Takes effect for mailboxes created after this call.
+	 * @param recipient - recipient name
+	 * @param capacity - capacity of the mailbox or {@link #UNBOUNDED}
+	 * @return this limits
+	 */
+	public MailboxLimits withCapacity(String recipient, int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Capacity can not be negative: " + capacity);
+		capacities.put(recipient, capacity);
+		return this;
+	}
+	
+	/**
+	 * @param recipient - recipient name
+	 * @return capacity of the recipient's mailbox or {@link #UNBOUNDED}
+	 */
+	public int capacityFor(String recipient) {
+		Integer capacity = capacities.get(recipient);
+		return capacity == null ? defaultCapacity : capacity;
+	}
+	
+	/**
+	 * Creates a mailbox for the recipient according to these limits
+	 * @param factory - factory of mailboxes
+	 * @param recipient - owner of the mailbox
+	 * @return new mailbox
+	 */
+	public <E> Mailbox<E> newMailbox(MailboxFactory factory, String recipient) {
+		int capacity = capacityFor(recipient);
+		return capacity == UNBOUNDED ? factory.newMailbox() : factory.newMailbox(capacity);
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	public long getBlockTimeoutNanos() {
+		return blockTimeoutNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return (defaultCapacity == UNBOUNDED ? "unbounded" : "capacity " + defaultCapacity) + ", " + policy;
+	}
+}
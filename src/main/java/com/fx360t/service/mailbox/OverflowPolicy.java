@@ -0,0 +1,67 @@
+package com.fx360t.service.mailbox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Defines what happens when a message is sent to a full {@link Mailbox}.
+ * @author Oleg
+ */
+public enum OverflowPolicy {
+	/**
+	 * Sender waits for free space, but not longer than the configured timeout.
+	 * The message is dropped if the timeout elapses.
+	 */
+	BLOCK {
+		@Override
+		public <E> boolean offer(Mailbox<E> mailbox, E element, long timeoutNanos, Consumer<? super E> evicted) throws InterruptedException {
+			return mailbox.offer(element, timeoutNanos, TimeUnit.NANOSECONDS);
+		}
+	},
+	/**
+	 * New message is dropped
+	 */
+	REJECT {
+		@Override
+		public <E> boolean offer(Mailbox<E> mailbox, E element, long timeoutNanos, Consumer<? super E> evicted) {
+			return mailbox.offer(element);
+		}
+	},
+	/**
+	 * The oldest pending messages are dropped to make room for the new one, 
+	 * dropped messages are passed to the eviction callback
+	 */
+	DROP_OLDEST {
+		@Override
+		public <E> boolean offer(Mailbox<E> mailbox, E element, long timeoutNanos, Consumer<? super E> evicted) {
+			while (!mailbox.offer(element)) {
+				E oldest = mailbox.poll();
+				// null if a receiver took the oldest message first
+				if (oldest != null)
+					evicted.accept(oldest);
+			}
+			return true;
+		}
+	},
+	/**
+	 * New message is not accepted and the sender gets an exception
+	 */
+	FAIL {
+		@Override
+		public <E> boolean offer(Mailbox<E> mailbox, E element, long timeoutNanos, Consumer<? super E> evicted) {
+			return mailbox.offer(element);
+		}
+	};
+	
+	/**
+	 * Puts an element to the mailbox according to this policy
+	 * @param mailbox - mailbox to put element to
+	 * @param element - element to put
+	 * @param timeoutNanos - maximum time to wait for free space, used by {@link #BLOCK} only
+	 * @param evicted - receives pending elements dropped to make room, used by {@link #DROP_OLDEST} only
+	 * @return {@code true} if element was put to the mailbox
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public abstract <E> boolean offer(Mailbox<E> mailbox, E element, long timeoutNanos, 
+			Consumer<? super E> evicted) throws InterruptedException;
+}
@@ -0,0 +1,255 @@
+package com.fx360t.service.mailbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free {@link Mailbox} on top of a preallocated ring buffer.<br>
+ * Every slot of the ring has a sequence number which tells producers and consumers whether
+ * the slot is free or holds a published element, so neither side takes a lock or allocates memory
+ * per element. Many producers may put elements concurrently, the head is claimed with CAS as well,
+ * so it also stays correct if more than one thread takes elements.<br>
+ * The mailbox is bounded: the number of slots is the capacity rounded up to a power of two and {@link #offer} 
+ * fails when {@code capacity} elements are pending.
+ * Waiting threads spin, then yield, then park for a short time.
+ * @author Oleg
+ * @param <E> - type of elements held in the mailbox
+ */
+public class RingBufferMailbox<E> implements Mailbox<E> {
+	private static final int SPIN_TRIES = 64;
+	private static final int YIELD_TRIES = 128;
+	/**
+	 * Upper bound for a single park of a waiting thread.<br>
+	 * Consumers are normally woken up by producers, the bound only matters for a missed wake-up.
+	 */
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private final Object[] buffer;
+	/**
+	 * Sequence number of every slot. A slot at position {@code p} is free for a producer
+	 * when its sequence equals {@code p} and holds an element when it equals {@code p + 1}
+	 */
+	private final AtomicLongArray sequences;
+	private final int mask;
+	/**
+	 * Maximum number of pending elements, may be less than the number of slots
+	 */
+	private final int limit;
+	/**
+	 * Next position to put an element to
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * Next position to take an element from
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * Consumer parked in {@link #take()}, woken up by producers
+	 */
+	private volatile Thread consumerWaiter;
+	
+	public RingBufferMailbox(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.buffer = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.limit = capacity;
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+	
+	/**
+	 * @return the number of slots in this ring
+	 */
+	public int slots() {
+		return buffer.length;
+	}
+	
+	/**
+	 * @return maximum number of pending elements
+	 */
+	public int capacity() {
+		return limit;
+	}
+
+	@Override
+	public boolean offer(E element) {
+		if (element == null)
+			throw new NullPointerException("Mailbox does not accept null elements");
+		long position = tail.get();
+		int index;
+		for (;;) {
+			index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				// capacity which is not a power of two is enforced separately from the slots
+				if (limit < buffer.length && position - head.get() >= limit)
+					return false;
+				if (tail.compareAndSet(position, position + 1))
+					break;
+				position = tail.get();
+			} else if (difference < 0) {
+				// slot still holds an element from the previous lap - ring is full
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+		buffer[index] = element;
+		// publishing the element, the volatile write makes it visible to consumers
+		sequences.set(index, position + 1);
+		Thread waiter = consumerWaiter;
+		if (waiter != null)
+			LockSupport.unpark(waiter);
+		return true;
+	}
+
+	@Override
+	public void put(E element) throws InterruptedException {
+		int idle = 0;
+		while (!offer(element)) {
+			idle = idle(idle);
+			if (idle > SPIN_TRIES + YIELD_TRIES)
+				LockSupport.parkNanos(this, MAX_PARK_NANOS);
+		}
+	}
+
+	@Override
+	public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int idle = 0;
+		while (!offer(element)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return false;
+			idle = idle(idle);
+			if (idle > SPIN_TRIES + YIELD_TRIES)
+				LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+		}
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long position = head.get();
+		int index;
+		for (;;) {
+			index = (int) (position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1))
+					break;
+				position = head.get();
+			} else if (difference < 0) {
+				// element is not published yet - ring is empty
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+		E element = (E) buffer[index];
+		buffer[index] = null;
+		// releasing the slot for the producers of the next lap
+		sequences.set(index, position + mask + 1);
+		return element;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E element;
+		int idle = 0;
+		while ((element = poll()) == null) {
+			idle = idle(idle);
+			if (idle > SPIN_TRIES + YIELD_TRIES) {
+				consumerWaiter = Thread.currentThread();
+				// re-check after registering so that a concurrent producer either sees the waiter or we see its element
+				if (isEmpty())
+					LockSupport.parkNanos(this, MAX_PARK_NANOS);
+				consumerWaiter = null;
+			}
+		}
+		return element;
+	}
+	
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E element;
+		int idle = 0;
+		while ((element = poll()) == null) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0)
+				return null;
+			idle = idle(idle);
+			if (idle > SPIN_TRIES + YIELD_TRIES) {
+				consumerWaiter = Thread.currentThread();
+				if (isEmpty())
+					LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+				consumerWaiter = null;
+			}
+		}
+		return element;
+	}
+	
+	/**
+	 * One step of back-off used by waiting threads: spin first, then yield.
+	 * @return next value of idle counter
+	 * @throws InterruptedException if current thread is interrupted
+	 */
+	private static int idle(int idle) throws InterruptedException {
+		if (Thread.interrupted())
+			throw new InterruptedException();
+		if (idle >= SPIN_TRIES && idle < SPIN_TRIES + YIELD_TRIES)
+			Thread.yield();
+		return idle + 1;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> target, int maxElements) {
+		int drained = 0;
+		E element;
+		while (drained < maxElements && (element = poll()) != null) {
+			target.add(element);
+			drained++;
+		}
+		return drained;
+	}
+
+	@Override
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, limit));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return tail.get() <= head.get();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<E> snapshot() {
+		long from = head.get();
+		long to = tail.get();
+		List<E> result = new ArrayList<>((int) Math.max(0, Math.min(to - from, buffer.length)));
+		for (long position = from; position < to; position++) {
+			int index = (int) (position & mask);
+			if (sequences.get(index) != position + 1)
+				continue;
+			Object element = buffer[index];
+			if (element != null)
+				result.add((E) element);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,95 @@
+package com.fx360t.service.session;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.GameState;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.SimplePlayGround;
+
+/**
+ * One game of two players inside a {@link SessionPlayGround}.<br>
+ * A session is a {@link SimplePlayGround} with an id and its own {@link SessionMessageService namespace} of
+ * mailboxes in the shared message service. Players of the session use {@link #getMessageService()} and register
+ * in the session itself, then the session is started and finished independently of other sessions.
+ * A session which may fail before it is started is {@link #close() closed} when it is no longer needed.
+ * @author Oleg
+ */
+public class GameSession extends SimplePlayGround {
+	private static final Log LOG = Log.getLog(GameSession.class);
+	private final long id;
+	private final SessionMessageService<String> messageService;
+	private final SessionPlayGround owner;
+
+	GameSession(long id, MessageService<String> messageService, SessionPlayGround owner) {
+		this.id = id;
+		this.messageService = new SessionMessageService<>(messageService, "session-" + id);
+		this.owner = owner;
+	}
+
+	/**
+	 * @return id of this session, unique within its playground
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return message service with mailboxes of this session
+	 */
+	public MessageService<String> getMessageService() {
+		return messageService;
+	}
+
+	/**
+	 * Plays the whole game of this session: waits for both players, starts, waits until the game is over
+	 * and finishes it.
+	 * @param executor - executor to play on
+	 * @return future completed with {@code true} if the game was played and finished
+	 */
+	public CompletableFuture<Boolean> play(Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			waitAllPlayersRegistered();
+			return startPlaying() && waitUntilGameIsFinished() && finishPlaying();
+		}, executor);
+	}
+
+	@Override
+	public boolean startPlaying() {
+		boolean started = super.startPlaying();
+		if (started)
+			owner.sessionStarted(this);
+		return started;
+	}
+
+	@Override
+	public boolean finishPlaying() {
+		boolean finished = super.finishPlaying();
+		if (finished)
+			owner.sessionFinished(this);
+		return finished;
+	}
+
+	/**
+	 * Closes this session whatever state it is in: finishes a running game, unregisters players and mailboxes
+	 * left in the session, e.g. by a game which failed before it was started, and removes it from the playground
+	 */
+	public void close() {
+		if (getGameState() == GameState.RUNNING)
+			finishPlaying();
+		unregisterPlayers();
+		try {
+			messageService.close();
+		} catch (RemoteException e) {
+			LOG.error("Unable to unregister mailboxes of {}", this, e);
+		}
+		owner.sessionClosed(this);
+	}
+
+	@Override
+	public String toString() {
+		return "GameSession[" + id + "]";
+	}
+}
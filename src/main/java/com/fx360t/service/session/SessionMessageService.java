@@ -0,0 +1,200 @@
+package com.fx360t.service.session;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+
+/**
+ * View of a shared {@link MessageService} with its own namespace of user names.<br>
+ * User names are qualified with the namespace prefix before they reach the shared service, so each
+ * namespace has its own mailboxes and the same name may be used in several namespaces at once.
+ * Received messages carry the names as they were given to this view.<br>
+ * Handles are the handles of the shared service. The view accepts only handles of its own users, 
+ * which it has returned or received in messages, so a session can not reach mailboxes of another one by handle.
+ * @author Oleg
+ * @param <T> - type of data to be used as a message
+ */
+public class SessionMessageService<T> implements MessageService<T> {
+	private static final Log LOG = Log.getLog(SessionMessageService.class);
+	private final MessageService<T> messageService;
+	private final String prefix;
+	/**
+	 * Qualified names of users of this namespace by their handles in the shared service
+	 */
+	private final Map<Integer, String> handles = new ConcurrentHashMap<>();
+	/**
+	 * Qualified names of registered users of this namespace, unregistered by {@link #close()}
+	 */
+	private final Set<String> users = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param messageService - shared message service
+	 * @param namespace - name of the namespace, unique for the shared service
+	 */
+	public SessionMessageService(MessageService<T> messageService, String namespace) {
+		this.messageService = messageService;
+		this.prefix = namespace + '/';
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		String[] qualified = qualify(userNames);
+		messageService.register(qualified);
+		added(qualified);
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		String qualified = qualify(userName);
+		int handle = messageService.registerUser(qualified);
+		added(qualified);
+		return remember(handle, qualified);
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		String qualified = qualify(userName);
+		return remember(messageService.getHandle(qualified), qualified);
+	}
+
+	@Override
+	public void sendMessage(T message, String senderName, String receiverName) throws RemoteException {
+		messageService.sendMessage(message, qualify(senderName), qualify(receiverName));
+	}
+
+	@Override
+	public void sendMessage(T message, int senderHandle, int receiverHandle) throws RemoteException {
+		if (isOwn(senderHandle) && isOwn(receiverHandle))
+			messageService.sendMessage(message, senderHandle, receiverHandle);
+	}
+
+	@Override
+	public int sendMessages(List<Message<T>> messages) throws RemoteException {
+		List<Message<T>> qualified = new ArrayList<>(messages.size());
+		for (Message<T> message : messages)
+			qualified.add(new Message<>(message.getMessageBody(), qualify(message.getSenderName()),
+					qualify(message.getReceiverName()), message.getSenderHandle(), message.getReceiverHandle()));
+		return messageService.sendMessages(qualified);
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		String[] qualified = qualify(userNames);
+		messageService.unregister(qualified);
+		if (qualified != null) {
+			handles.values().removeAll(Arrays.asList(qualified));
+			users.removeAll(Arrays.asList(qualified));
+		}
+	}
+
+	/**
+	 * Unregisters users of this namespace which are still registered, so their mailboxes do not outlive the session
+	 */
+	void close() throws RemoteException {
+		if (users.isEmpty())
+			return;
+		String[] left = users.toArray(new String[0]);
+		messageService.unregister(left);
+		handles.values().removeAll(Arrays.asList(left));
+		users.removeAll(Arrays.asList(left));
+	}
+
+	@Override
+	public Message<T> getNextMessage(String recipientName) throws RemoteException {
+		return received(messageService.getNextMessage(qualify(recipientName)));
+	}
+
+	@Override
+	public Message<T> getNextMessage(int recipientHandle) throws RemoteException {
+		return isOwn(recipientHandle) ? received(messageService.getNextMessage(recipientHandle)) : null;
+	}
+
+	@Override
+	public Message<T> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException {
+		return received(messageService.pollNextMessage(qualify(recipientName), timeout, unit));
+	}
+
+	@Override
+	public List<Message<T>> drainMessages(String recipientName, int maxMessages) throws RemoteException {
+		List<Message<T>> messages = messageService.drainMessages(qualify(recipientName), maxMessages);
+		if (messages == null)
+			return null;
+		List<Message<T>> received = new ArrayList<>(messages.size());
+		for (Message<T> message : messages)
+			received.add(received(message));
+		return received;
+	}
+
+	private String qualify(String userName) {
+		return userName == null ? null : prefix + userName;
+	}
+
+	private String[] qualify(String... userNames) {
+		if (userNames == null)
+			return null;
+		String[] qualified = new String[userNames.length];
+		for (int i = 0; i < userNames.length; i++)
+			qualified[i] = qualify(userNames[i]);
+		return qualified;
+	}
+
+	private void added(String... qualified) {
+		if (qualified != null)
+			for (String userName : qualified)
+				if (userName != null)
+					users.add(userName);
+	}
+
+	/**
+	 * Keeps the handle of a user of this namespace
+	 * @return the handle
+	 */
+	private int remember(int handle, String qualified) {
+		if (handle != Message.NO_HANDLE && qualified != null && qualified.startsWith(prefix))
+			handles.put(handle, qualified);
+		return handle;
+	}
+
+	/**
+	 * @return {@code true} if the handle belongs to a user of this namespace
+	 */
+	private boolean isOwn(int handle) {
+		if (handles.containsKey(handle))
+			return true;
+		LOG.warn("Handle {} does not belong to namespace {}", handle, prefix);
+		return false;
+	}
+
+	private String unqualify(String userName) {
+		return userName != null && userName.startsWith(prefix) ? userName.substring(prefix.length()) : userName;
+	}
+
+	/**
+	 * Removes the namespace from names of a received message
+	 */
+	private Message<T> received(Message<T> message) {
+		if (message == null)
+			return null;
+		remember(message.getSenderHandle(), message.getSenderName());
+		remember(message.getReceiverHandle(), message.getReceiverName());
+		Message<T> local = new Message<>(message.getMessageBody(), unqualify(message.getSenderName()),
+				unqualify(message.getReceiverName()), message.getSenderHandle(), message.getReceiverHandle());
+		local.setEnqueueTime(message.getEnqueueTime());
+		message.release();
+		return local;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionMessageService[" + prefix + "]";
+	}
+}
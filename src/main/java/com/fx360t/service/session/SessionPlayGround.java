@@ -0,0 +1,181 @@
+package com.fx360t.service.session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.GameState;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayGround;
+
+/**
+ * {@link PlayGround} running many games at once over one shared {@link MessageService}.<br>
+ * Every game is a {@link GameSession} opened with {@link #openSession()}, it has its own id, its own mailbox
+ * namespace and its own lifecycle, so sessions are started and finished independently and may be played
+ * on different threads with {@link GameSession#play}. A finished or {@link GameSession#close() closed} session is removed
+ * from the playground.<br>
+ * Methods of {@link PlayGround} act on all open sessions: {@link #startPlaying()} starts every session
+ * whose players are registered, {@link #waitUntilGameIsFinished()} waits for the running sessions and
+ * {@link #finishPlaying()} finishes them.
+ * @author Oleg
+ */
+public class SessionPlayGround implements PlayGround, SessionPlayGroundMXBean {
+	private static final Log LOG = Log.getLog(SessionPlayGround.class);
+
+	private final MessageService<String> messageService;
+	private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+	private final AtomicLong lastId = new AtomicLong();
+	private final AtomicInteger finishedSessions = new AtomicInteger();
+	/**
+	 * Values of {@link System#nanoTime()} when the first session was started and the last open session was finished, 0 if not yet
+	 */
+	private final AtomicLong startedAt = new AtomicLong();
+	private volatile long finishedAt;
+
+	/**
+	 * @param messageService - message service shared by all sessions
+	 */
+	public SessionPlayGround(MessageService<String> messageService) {
+		this.messageService = messageService;
+	}
+
+	/**
+	 * Opens a new session waiting for its players
+	 * @return the session
+	 */
+	public GameSession openSession() {
+		GameSession session = new GameSession(lastId.incrementAndGet(), messageService, this);
+		sessions.put(session.getId(), session);
+		LOG.debug("{} is opened", session);
+		return session;
+	}
+
+	/**
+	 * @param id - id of a session
+	 * @return open session or {@code null} if there is no such session or it is finished
+	 */
+	public GameSession getSession(long id) {
+		return sessions.get(id);
+	}
+
+	/**
+	 * @return open sessions
+	 */
+	public Collection<GameSession> getSessions() {
+		return new ArrayList<>(sessions.values());
+	}
+
+	void sessionStarted(GameSession session) {
+		startedAt.compareAndSet(0, System.nanoTime());
+		finishedAt = 0;
+	}
+
+	void sessionFinished(GameSession session) {
+		if (sessions.remove(session.getId(), session)) {
+			finishedSessions.incrementAndGet();
+			if (sessions.isEmpty())
+				finishedAt = System.nanoTime();
+			LOG.debug("{} is finished", session);
+		}
+	}
+
+	void sessionClosed(GameSession session) {
+		if (sessions.remove(session.getId(), session)) {
+			if (sessions.isEmpty())
+				finishedAt = System.nanoTime();
+			LOG.debug("{} is closed", session);
+		}
+	}
+
+	@Override
+	public int playersCount() {
+		int count = 0;
+		for (GameSession session : sessions.values())
+			count += session.playersCount();
+		return count;
+	}
+
+	@Override
+	public boolean startPlaying() {
+		int started = 0;
+		for (GameSession session : sessions.values())
+			if (session.getGameState() == GameState.READY && session.startPlaying())
+				started++;
+		if (started == 0) {
+			LOG.warn("Can't start playing as no session is ready");
+			return false;
+		}
+		LOG.info("Started {} sessions", started);
+		return true;
+	}
+
+	@Override
+	public boolean waitUntilGameIsFinished() {
+		boolean waited = true;
+		// sessions are running at the same time, waiting one by one waits for the longest of them
+		for (GameSession session : sessions.values())
+			if (session.getGameState() == GameState.RUNNING)
+				waited &= session.waitUntilGameIsFinished();
+		return waited;
+	}
+
+	@Override
+	public boolean finishPlaying() {
+		boolean finished = true;
+		for (GameSession session : sessions.values())
+			if (session.getGameState() == GameState.RUNNING)
+				finished &= session.finishPlaying();
+		return finished;
+	}
+
+	@Override
+	public void waitAllPlayersRegistered() {
+		for (GameSession session : sessions.values())
+			session.waitAllPlayersRegistered();
+	}
+
+	@Override
+	public int getRegisteredPlayers() {
+		return playersCount();
+	}
+
+	@Override
+	public GameState getGameState() {
+		boolean ready = false;
+		for (GameSession session : sessions.values()) {
+			GameState state = session.getGameState();
+			if (state == GameState.RUNNING)
+				return GameState.RUNNING;
+			ready |= state == GameState.READY;
+		}
+		if (ready)
+			return GameState.READY;
+		return sessions.isEmpty() && finishedSessions.get() > 0 ? GameState.FINISHED : GameState.WAITING_FOR_PLAYERS;
+	}
+
+	@Override
+	public long getGameDurationMillis() {
+		long started = startedAt.get();
+		if (started == 0)
+			return 0;
+		long finished = finishedAt;
+		if (finished == 0)
+			finished = System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(finished - started);
+	}
+
+	@Override
+	public int getOpenSessions() {
+		return sessions.size();
+	}
+
+	@Override
+	public int getFinishedSessions() {
+		return finishedSessions.get();
+	}
+}
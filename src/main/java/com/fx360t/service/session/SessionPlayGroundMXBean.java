@@ -0,0 +1,18 @@
+package com.fx360t.service.session;
+
+import com.fx360t.service.PlayGroundMXBean;
+
+/**
+ * Management interface of {@link SessionPlayGround} exposed through JMX.
+ * @author Oleg
+ */
+public interface SessionPlayGroundMXBean extends PlayGroundMXBean {
+	/**
+	 * @return number of sessions which are not finished yet
+	 */
+	int getOpenSessions();
+	/**
+	 * @return number of finished sessions
+	 */
+	int getFinishedSessions();
+}
@@ -0,0 +1,16 @@
+package com.fx360t.service.simulation;
+
+/**
+ * Simulates the network between sender and receiver of a message.<br>
+ * Message service hands every accepted message over to the simulator, which decides when and whether 
+ * the message reaches the receiver's mailbox. Delivery happens on the simulator's side, the sender never waits.
+ * @author Oleg
+ */
+public interface DeliverySimulator {
+	/**
+	 * Schedules delivery of a message
+	 * @param recipient - receiver of the message, messages to one recipient keep their order unless reordering is simulated
+	 * @param delivery - action which puts the message to the recipient's mailbox
+	 */
+	void deliver(Object recipient, Runnable delivery);
+}
@@ -0,0 +1,89 @@
+package com.fx360t.service.simulation;
+
+import java.util.Random;
+
+/**
+ * Distribution of message delivery latency in milliseconds.
+ * @author Oleg
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+	/**
+	 * Draws the next latency value
+	 * @param random - source of randomness
+	 * @return latency in milliseconds, negative values are treated as zero
+	 */
+	double nextMillis(Random random);
+	
+	/**
+	 * @param millis - latency of every message
+	 * @return constant latency
+	 */
+	static LatencyDistribution fixed(double millis) {
+		return random -> millis;
+	}
+	
+	/**
+	 * @param minMillis - minimum latency
+	 * @param maxMillis - maximum latency
+	 * @return latency uniformly distributed between minimum and maximum
+	 */
+	static LatencyDistribution uniform(double minMillis, double maxMillis) {
+		if (maxMillis < minMillis)
+			throw new IllegalArgumentException("Maximum latency is less than minimum: " + maxMillis + " < " + minMillis);
+		return random -> minMillis + random.nextDouble() * (maxMillis - minMillis);
+	}
+	
+	/**
+	 * @param meanMillis - mean latency
+	 * @param deviationMillis - standard deviation
+	 * @return normally distributed latency, cut at zero
+	 */
+	static LatencyDistribution normal(double meanMillis, double deviationMillis) {
+		return random -> Math.max(0, meanMillis + random.nextGaussian() * deviationMillis);
+	}
+	
+	/**
+	 * Pareto distribution, most messages are close to the minimum latency, but some are delayed a lot.
+	 * @param minMillis - minimum latency
+	 * @param shape - tail index, the smaller the heavier is the tail
+	 * @return long-tail latency
+	 */
+	static LatencyDistribution longTail(double minMillis, double shape) {
+		if (shape <= 0)
+			throw new IllegalArgumentException("Shape must be positive: " + shape);
+		return random -> minMillis / Math.pow(1 - random.nextDouble(), 1 / shape);
+	}
+	
+	/**
+	 * Parses distribution definition.<br>
+	 * Supported definitions are {@code fixed:<ms>}, {@code uniform:<min>,<max>}, {@code normal:<mean>,<deviation>}
+	 * and {@code longtail:<min>,<shape>}.
+	 * @param definition - distribution definition
+	 * @return latency distribution
+	 * @throws IllegalArgumentException if definition is not valid
+	 */
+	static LatencyDistribution parse(String definition) {
+		int colon = definition.indexOf(':');
+		if (colon < 0)
+			throw new IllegalArgumentException("Invalid latency distribution: " + definition);
+		String type = definition.substring(0, colon).trim().toLowerCase();
+		String[] values = definition.substring(colon + 1).split(",");
+		double[] params = new double[values.length];
+		try {
+			for (int i = 0; i < values.length; i++)
+				params[i] = Double.parseDouble(values[i].trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid latency distribution: " + definition, e);
+		}
+		if ("fixed".equals(type) && params.length == 1)
+			return fixed(params[0]);
+		if ("uniform".equals(type) && params.length == 2)
+			return uniform(params[0], params[1]);
+		if ("normal".equals(type) && params.length == 2)
+			return normal(params[0], params[1]);
+		if ("longtail".equals(type) && params.length == 2)
+			return longTail(params[0], params[1]);
+		throw new IllegalArgumentException("Invalid latency distribution: " + definition);
+	}
+}
@@ -0,0 +1,191 @@
+package com.fx360t.service.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fx360t.log.Log;
+
+/**
+ * {@link DeliverySimulator} which imitates a WAN link.<br>
+ * Every message gets a latency drawn from a {@link LatencyDistribution} plus uniform jitter, 
+ * some messages are lost with the drop rate and some overtake others with the reorder rate.
+ * Messages which are not reordered reach every recipient in the order they were sent.<br>
+ * Delayed messages are delivered by a single daemon scheduler thread, so a delivery which blocks
+ * (e.g. on a full mailbox with blocking overflow policy) holds all other deliveries.<br>
+ * All settings are fixed at construction, see {@link #fromSystemProperties()} for configuration via system properties.
+ * @author Oleg
+ */
+public class NetworkSimulator implements DeliverySimulator {
+	private static final Log LOG = Log.getLog(NetworkSimulator.class);
+	/**
+	 * Minimum extra delay of a reordered message, so that it can be overtaken even with zero latency
+	 */
+	private static final long MIN_REORDER_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private final LatencyDistribution latency;
+	private final long jitterNanos;
+	private final double dropRate;
+	private final double reorderRate;
+	/**
+	 * Deliveries of every recipient which keep their order, a lane is removed when all its messages are delivered
+	 */
+	private final Map<Object, Lane> lanes = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final LongAdder dropped = new LongAdder();
+	
+	/**
+	 * Constructs simulator
+	 * @param latency - latency distribution
+	 * @param jitterMillis - maximum random delay added to the latency
+	 * @param dropRate - probability of message loss, from 0 to 1
+	 * @param reorderRate - probability of message being overtaken by later messages, from 0 to 1
+	 */
+	public NetworkSimulator(LatencyDistribution latency, double jitterMillis, double dropRate, double reorderRate) {
+		if (latency == null)
+			throw new NullPointerException("Latency distribution can not be null");
+		if (dropRate < 0 || dropRate > 1 || reorderRate < 0 || reorderRate > 1)
+			throw new IllegalArgumentException("Rates must be between 0 and 1");
+		this.latency = latency;
+		this.jitterNanos = (long) (jitterMillis * 1_000_000);
+		this.dropRate = dropRate;
+		this.reorderRate = reorderRate;
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "delivery-simulator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		this.scheduler = executor;
+	}
+	
+	/**
+	 * Creates simulator configured by system properties, which are read only once:<br>
+	 * {@code message.latency} - latency distribution, see {@link LatencyDistribution#parse}<br>
+	 * {@code message.send.delay} - fixed latency in milliseconds, used when {@code message.latency} is not set<br>
+	 * {@code message.jitter} - maximum jitter in milliseconds<br>
+	 * {@code message.drop.rate} and {@code message.reorder.rate} - probabilities from 0 to 1
+	 * @return simulator or {@code null} if none of the properties is set
+	 */
+	public static NetworkSimulator fromSystemProperties() {
+		String latency = System.getProperty("message.latency");
+		String delay = System.getProperty("message.send.delay");
+		String jitter = System.getProperty("message.jitter");
+		String dropRate = System.getProperty("message.drop.rate");
+		String reorderRate = System.getProperty("message.reorder.rate");
+		if (latency == null && delay == null && jitter == null && dropRate == null && reorderRate == null)
+			return null;
+		LatencyDistribution distribution = latency != null ? LatencyDistribution.parse(latency)
+				: LatencyDistribution.fixed(delay != null ? Double.parseDouble(delay) : 0);
+		return new NetworkSimulator(distribution, 
+				jitter == null ? 0 : Double.parseDouble(jitter),
+				dropRate == null ? 0 : Double.parseDouble(dropRate),
+				reorderRate == null ? 0 : Double.parseDouble(reorderRate));
+	}
+
+	@Override
+	public void deliver(Object recipient, Runnable delivery) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (dropRate > 0 && random.nextDouble() < dropRate) {
+			dropped.increment();
+			LOG.debug("Message to {} is lost", recipient);
+			return;
+		}
+		long delay = Math.max(0, (long) (latency.nextMillis(random) * 1_000_000));
+		if (jitterNanos > 0)
+			delay += random.nextLong(jitterNanos + 1);
+		if (reorderRate > 0 && random.nextDouble() < reorderRate) {
+			// not ordered with other messages and delayed once more, so that later messages pass it
+			scheduler.schedule(delivery, delay + Math.max(delay, MIN_REORDER_DELAY_NANOS), TimeUnit.NANOSECONDS);
+			return;
+		}
+		long due = System.nanoTime() + delay;
+		Lane lane = lanes.computeIfAbsent(recipient, Lane::new);
+		// a lane removed meanwhile takes no more messages, the next one is created
+		while (!lane.add(due, delivery))
+			lane = lanes.computeIfAbsent(recipient, Lane::new);
+		scheduler.schedule(lane, delay, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * @return number of recipients with messages on the way
+	 */
+	int getLanes() {
+		return lanes.size();
+	}
+	
+	/**
+	 * In-order deliveries of one recipient.<br>
+	 * A message is never due earlier than the previous one, and whenever the scheduler runs the lane 
+	 * it delivers all due messages from the head, so the order does not depend on the scheduler's tie-breaking.<br>
+	 * An empty lane removes itself from the simulator. Messages of the next lane of the recipient are not due
+	 * before the last delivery of the removed one has run, as lanes run in the single scheduler thread.
+	 */
+	private class Lane implements Runnable {
+		private final Object recipient;
+		private final Queue<Pending> pending = new ArrayDeque<>();
+		private long lastDue;
+		private boolean removed;
+		
+		Lane(Object recipient) {
+			this.recipient = recipient;
+		}
+		
+		/**
+		 * @return {@code false} if the lane is removed
+		 */
+		synchronized boolean add(long due, Runnable delivery) {
+			if (removed)
+				return false;
+			lastDue = Math.max(due, lastDue);
+			pending.add(new Pending(lastDue, delivery));
+			return true;
+		}
+		
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			Runnable delivery;
+			while ((delivery = next(now)) != null)
+				delivery.run();
+		}
+		
+		private synchronized Runnable next(long now) {
+			Pending next = pending.peek();
+			if (next == null) {
+				if (!removed) {
+					removed = true;
+					lanes.remove(recipient, this);
+				}
+				return null;
+			}
+			if (next.due - now > 0)
+				return null;
+			pending.poll();
+			return next.delivery;
+		}
+	}
+	
+	private static class Pending {
+		final long due;
+		final Runnable delivery;
+		
+		Pending(long due, Runnable delivery) {
+			this.due = due;
+			this.delivery = delivery;
+		}
+	}
+	
+	/**
+	 * @return the number of messages lost so far
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+}
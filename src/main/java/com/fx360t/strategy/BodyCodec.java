@@ -0,0 +1,37 @@
+package com.fx360t.strategy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoder and decoder of message bodies of one type.<br>
+ * Codecs are registered in {@link MessageCodec} and found by the class of a body when a message is written
+ * and by the type id when it is read, so both sides must register the same codecs with the same ids.
+ * @author Oleg
+ * @param <T> - type of bodies
+ */
+public interface BodyCodec<T> {
+	/**
+	 * @return id written before every body, unique within {@link MessageCodec}
+	 */
+	byte getTypeId();
+	/**
+	 * @return class of bodies handled by this codec
+	 */
+	Class<T> getType();
+	/**
+	 * Writes a body, never called for {@code null}
+	 * @param out - output to write to
+	 * @param body - body to write
+	 * @throws IOException if output fails
+	 */
+	void write(DataOutput out, T body) throws IOException;
+	/**
+	 * Reads a body written by {@link #write}
+	 * @param in - input to read from
+	 * @return body
+	 * @throws IOException if input fails
+	 */
+	T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,52 @@
+package com.fx360t.strategy;
+
+import java.util.List;
+
+import com.fx360t.player.Player;
+/**
+ * Interface of a game process driven by arriving data instead of a turn loop.<br>
+ * The strategy does not receive or send anything itself, it is called when data arrives
+ * and returns the data to be sent in reply. So no thread is held while a player waits for its turn.<br>
+ * Typical game process for one player would be as follows: <br>
+ *  1. {@link #ready(Player)} <br>
+ *  2. {@link #start(Player, Object)} by the initiator <br>
+ *  3. {@link #onMessage(Player, Object)} for every arrival until {@link #stopCondition()} is {@code true}<br>
+ *  4. {@link #finish(Player)}<br>
+ * Calls for one player are never concurrent, but they may come from different threads.
+ * @author Oleg
+ * @param <T> - the type of data used in players interactions
+ * @see GameStrategy
+ */
+public interface EventDrivenStrategy<T> {
+	/**
+	 * Returns {@code true} when the game process should be stopped
+	 * @return {@code true} when the game process should be stopped
+	 */
+	boolean stopCondition();
+	/**
+	 * Defines a step when {@link Player} is prepared and ready for playing
+	 * @param player - a player who is ready for the game
+	 * @return {@code true} if preparation was successful
+	 */
+	boolean ready(Player player);
+	/**
+	 * Defines a starting point of the game process
+	 * @param player - player who started the game process
+	 * @param data - data to start the game with
+	 * @return data to be sent, empty if the game can't be started
+	 */
+	List<T> start(Player player, T data);
+	/**
+	 * Defines one turn for the player, taken when data arrives
+	 * @param player - the player who makes this turn
+	 * @param data - arrived data
+	 * @return data to be sent in reply, empty if nothing is sent
+	 */
+	List<T> onMessage(Player player, T data);
+	/**
+	 * Defines a finishing point of the game process for the player
+	 * @param player
+	 * @return {@code true} if finish was successful
+	 */
+	boolean finish(Player player);
+}
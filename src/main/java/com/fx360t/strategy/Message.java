@@ -1,27 +1,95 @@
 package com.fx360t.strategy;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
 
 import com.fx360t.service.MessageService;
 /**
  * A wrapper class for messages used in {@link MessageService}.<br>
- * Besides message body it contains information about sender and receiver 
+ * Besides message body it contains information about sender and receiver: their names and, when known,
+ * their compact handles assigned by the message service at registration.<br>
+ * Messages taken from a {@link MessagePool} are reused: the receiver calls {@link #release()} when 
+ * the message is handled. Pool reference is transient, a deserialized message is never pooled.<br>
+ * Messages are serialized in the compact format of {@link MessageCodec} instead of default Java serialization.<br>
+ * A String body may be kept as the UTF-8 bytes it was received in, see {@link #opaque}. Such a message 
+ * is routed and written again without decoding, the body is decoded on the first {@link #getMessageBody()}.
  * @author Oleg
  * @param <T> - data type for message bodies
  */
-public class Message<T> implements Serializable{
+public class Message<T> implements Externalizable{
 	private static final long serialVersionUID = 1L;
+	/** Handle value used when a handle of a user is not known*/
+	public static final int NO_HANDLE = -1;
 	private T messageBody;
 	private String senderName;
 	private String receiverName;
+	private int senderHandle = NO_HANDLE;
+	private int receiverHandle = NO_HANDLE;
+	/** UTF-8 bytes of an opaque String body or {@code null}, {@link #messageBody} is decoded from them when asked for */
+	private byte[] encodedBody;
+	/** Value of {@link System#nanoTime()} when the message was put to a mailbox, meaningful only in the service's JVM */
+	private transient long enqueueTime;
+	/** Pool to return this message to, {@code null} if the message is not pooled */
+	transient MessagePool<T> pool;
+	/** {@code true} while a pooled message is in use, guards against releasing it twice */
+	transient boolean acquired;
+	/**
+	 * Constructs an empty message to be filled by deserialization or by {@link #set} 
+	 */
+	public Message() {
+	}
 	public Message(T messageBody, String senderName, String receiverName) {
 		super();
 		this.messageBody = messageBody;
 		this.senderName = senderName;
 		this.receiverName = receiverName;
 	}
+	public Message(T messageBody, String senderName, String receiverName, int senderHandle, int receiverHandle) {
+		set(messageBody, senderName, receiverName, senderHandle, receiverHandle);
+	}
+	/**
+	 * Creates a message with a String body kept as received, it is decoded only if the body is asked for
+	 * @param encodedBody - UTF-8 bytes of the body or {@code null} for a {@code null} body
+	 */
+	public static Message<String> opaque(byte[] encodedBody, String senderName, String receiverName, 
+			int senderHandle, int receiverHandle) {
+		Message<String> message = new Message<>(null, senderName, receiverName, senderHandle, receiverHandle);
+		message.encodedBody = encodedBody;
+		return message;
+	}
+	/**
+	 * Fills a reused message
+	 */
+	void set(T messageBody, String senderName, String receiverName, int senderHandle, int receiverHandle) {
+		this.messageBody = messageBody;
+		this.encodedBody = null;
+		this.senderName = senderName;
+		this.receiverName = receiverName;
+		this.senderHandle = senderHandle;
+		this.receiverHandle = receiverHandle;
+	}
+	@SuppressWarnings("unchecked")
 	public T getMessageBody() {
-		return messageBody;
+		T body = messageBody;
+		if (body == null && encodedBody != null)
+			// decoding twice in racing threads gives equal strings
+			messageBody = body = (T) new String(encodedBody, StandardCharsets.UTF_8);
+		return body;
+	}
+	/**
+	 * Makes the body opaque, called after {@link #set} when a message is read
+	 */
+	void setEncodedBody(byte[] encodedBody) {
+		this.encodedBody = encodedBody;
+	}
+	/**
+	 * @return UTF-8 bytes of an opaque body or {@code null} if the body is held as an object
+	 */
+	public byte[] getEncodedBody() {
+		return encodedBody;
 	}
 	public String getSenderName() {
 		return senderName;
@@ -29,9 +97,45 @@ public class Message<T> implements Serializable{
 	public String getReceiverName() {
 		return receiverName;
 	}
+	public int getSenderHandle() {
+		return senderHandle;
+	}
+	public int getReceiverHandle() {
+		return receiverHandle;
+	}
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+	public void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+	/**
+	 * @return {@code true} if handles of both sender and receiver are known
+	 */
+	public boolean hasHandles() {
+		return senderHandle != NO_HANDLE && receiverHandle != NO_HANDLE;
+	}
+	/**
+	 * Returns a pooled message to its pool, does nothing if the message is not pooled.<br>
+	 * Called once by the receiver when the message is handled, the message must not be used after that.
+	 * @throws IllegalStateException if a pooled message is released twice
+	 */
+	public void release() {
+		MessagePool<T> owner = pool;
+		if (owner != null)
+			owner.release(this);
+	}
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		MessageCodec.write(out, this);
+	}
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		MessageCodec.readInto(in, this);
+	}
 	@Override
 	public String toString() {
-			return senderName +" -> " +receiverName +" : " + messageBody;
+			return senderName +" -> " +receiverName +" : " + getMessageBody();
 	}
 	
 }
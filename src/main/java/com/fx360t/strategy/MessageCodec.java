@@ -0,0 +1,263 @@
+package com.fx360t.strategy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of {@link BodyCodec}s and the binary format of {@link Message}.<br>
+ * A message is written as the type id of its body, the body, sender and receiver names and both handles.
+ * Strings are written as a length and UTF-8 bytes, length -1 stands for {@code null}.
+ * Codecs of {@link String}, {@link Long} and {@code byte[]} bodies are registered from the start.<br>
+ * The format is used by {@link Message} as {@link java.io.Externalizable}, so RMI does not write
+ * class descriptors of message fields, and may be used by any transport writing to {@link DataOutput}.
+ * Bodies of other types without a registered codec are written with Java serialization when the output
+ * is an {@link ObjectOutput}.<br>
+ * In opaque mode, enabled by system property {@code message.opaque} or {@link #setOpaqueBodies}, 
+ * String bodies are read as {@link Message#opaque opaque} bytes. A server routing such messages writes 
+ * the same bytes to receivers and never decodes the bodies, only endpoints reading the body do.
+ * @author Oleg
+ */
+public final class MessageCodec {
+	/** Type id of a {@code null} body */
+	public static final byte NULL = 0;
+	/** Type id of a body written with Java serialization */
+	public static final byte OBJECT = -1;
+	/** Type id of String bodies */
+	private static final byte STRING = 1;
+
+	/**
+	 * Codecs by type id, written under the class lock and read by decoding threads without it
+	 */
+	private static final AtomicReferenceArray<BodyCodec<?>> byId = new AtomicReferenceArray<>(256);
+	private static final Map<Class<?>, BodyCodec<?>> byType = new ConcurrentHashMap<>();
+	private static volatile boolean opaqueBodies = Boolean.getBoolean("message.opaque");
+
+	static {
+		register(new BodyCodec<String>() {
+			@Override
+			public byte getTypeId() {
+				return STRING;
+			}
+			@Override
+			public Class<String> getType() {
+				return String.class;
+			}
+			@Override
+			public void write(DataOutput out, String body) throws IOException {
+				writeString(out, body);
+			}
+			@Override
+			public String read(DataInput in) throws IOException {
+				return readString(in);
+			}
+		});
+		register(new BodyCodec<Long>() {
+			@Override
+			public byte getTypeId() {
+				return 2;
+			}
+			@Override
+			public Class<Long> getType() {
+				return Long.class;
+			}
+			@Override
+			public void write(DataOutput out, Long body) throws IOException {
+				out.writeLong(body);
+			}
+			@Override
+			public Long read(DataInput in) throws IOException {
+				return in.readLong();
+			}
+		});
+		register(new BodyCodec<byte[]>() {
+			@Override
+			public byte getTypeId() {
+				return 3;
+			}
+			@Override
+			public Class<byte[]> getType() {
+				return byte[].class;
+			}
+			@Override
+			public void write(DataOutput out, byte[] body) throws IOException {
+				out.writeInt(body.length);
+				out.write(body);
+			}
+			@Override
+			public byte[] read(DataInput in) throws IOException {
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+				return body;
+			}
+		});
+	}
+
+	private MessageCodec() {
+	}
+
+	/**
+	 * Registers a codec for bodies of its type.<br>
+	 * A codec registered before for the same type is replaced, its type id is freed if it differs.
+	 * @param codec - codec to register
+	 * @throws IllegalArgumentException if the type id is reserved or taken by a codec of another type
+	 */
+	public static synchronized void register(BodyCodec<?> codec) {
+		byte id = codec.getTypeId();
+		if (id == NULL || id == OBJECT)
+			throw new IllegalArgumentException("Type id " + id + " is reserved");
+		BodyCodec<?> registered = byId.get(id & 0xFF);
+		if (registered != null && registered.getType() != codec.getType())
+			throw new IllegalArgumentException("Type id " + id + " is already used for " + registered.getType().getName());
+		byId.set(id & 0xFF, codec);
+		BodyCodec<?> replaced = byType.put(codec.getType(), codec);
+		if (replaced != null && replaced.getTypeId() != id)
+			byId.compareAndSet(replaced.getTypeId() & 0xFF, replaced, null);
+	}
+
+	/**
+	 * @param type - class of bodies
+	 * @return codec registered for the type or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BodyCodec<T> forType(Class<T> type) {
+		return (BodyCodec<T>) byType.get(type);
+	}
+
+	/**
+	 * Chooses whether String bodies are read as opaque bytes
+	 */
+	public static void setOpaqueBodies(boolean opaque) {
+		opaqueBodies = opaque;
+	}
+
+	/**
+	 * @return {@code true} if String bodies are read as opaque bytes
+	 */
+	public static boolean isOpaqueBodies() {
+		return opaqueBodies;
+	}
+
+	/**
+	 * Writes a message
+	 * @param out - output to write to
+	 * @param message - message to write
+	 * @throws NotSerializableException if there is no codec for the body and the output is not an {@link ObjectOutput}
+	 * @throws IOException if output fails
+	 */
+	public static void write(DataOutput out, Message<?> message) throws IOException {
+		byte[] encoded = message.getEncodedBody();
+		if (encoded != null) {
+			out.writeByte(STRING);
+			out.writeInt(encoded.length);
+			out.write(encoded);
+		} else
+			writeBody(out, message.getMessageBody());
+		writeString(out, message.getSenderName());
+		writeString(out, message.getReceiverName());
+		out.writeInt(message.getSenderHandle());
+		out.writeInt(message.getReceiverHandle());
+	}
+
+	/**
+	 * Reads a message written by {@link #write}
+	 * @param in - input to read from
+	 * @return new message
+	 * @throws IOException if input fails or the body type is unknown
+	 */
+	public static <T> Message<T> read(DataInput in) throws IOException {
+		Message<T> message = new Message<>();
+		readInto(in, message);
+		return message;
+	}
+
+	/**
+	 * Reads a message written by {@link #write} into an existing envelope
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> void readInto(DataInput in, Message<T> message) throws IOException {
+		byte id = in.readByte();
+		byte[] encoded = null;
+		T body = null;
+		if (id == STRING && opaqueBodies) {
+			int length = in.readInt();
+			if (length >= 0) {
+				encoded = new byte[length];
+				in.readFully(encoded);
+			}
+		} else
+			body = (T) readBody(id, in);
+		String senderName = readString(in);
+		String receiverName = readString(in);
+		message.set(body, senderName, receiverName, in.readInt(), in.readInt());
+		message.setEncodedBody(encoded);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void writeBody(DataOutput out, Object body) throws IOException {
+		if (body == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		BodyCodec<Object> codec = (BodyCodec<Object>) byType.get(body.getClass());
+		if (codec != null) {
+			out.writeByte(codec.getTypeId());
+			codec.write(out, body);
+		} else if (out instanceof ObjectOutput) {
+			out.writeByte(OBJECT);
+			((ObjectOutput) out).writeObject(body);
+		} else
+			throw new NotSerializableException("No codec for message body " + body.getClass().getName());
+	}
+
+	private static Object readBody(byte id, DataInput in) throws IOException {
+		if (id == NULL)
+			return null;
+		if (id == OBJECT) {
+			if (!(in instanceof ObjectInput))
+				throw new StreamCorruptedException("Serialized message body can not be read from " + in.getClass().getName());
+			try {
+				return ((ObjectInput) in).readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException("Unknown class of message body: " + e.getMessage(), e);
+			}
+		}
+		BodyCodec<?> codec = byId.get(id & 0xFF);
+		if (codec == null)
+			throw new StreamCorruptedException("No codec for message body type " + id);
+		return codec.read(in);
+	}
+
+	/**
+	 * Writes a string as its length and UTF-8 bytes
+	 */
+	public static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString}
+	 */
+	public static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
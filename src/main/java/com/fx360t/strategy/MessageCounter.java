@@ -0,0 +1,156 @@
+package com.fx360t.strategy;
+
+import com.fx360t.log.Log;
+
+/**
+ * Counters and state flags of the game played by {@link StringMessageStrategy} and
+ * {@link StringMessageEventStrategy}.<br>
+ * The strategy which starts the game is the "initiator" strategy, its stop-condition depends
+ * on the number of sent and received messages, which is limited by {@code stopValue} equal to ten.
+ * The other strategy stops when its game is finished.<br>
+ * State checks log a warning and return {@code false} when the strategy can't make a step.
+ * @author Oleg
+ */
+final class MessageCounter {
+	private static final Log LOG = Log.getLog(MessageCounter.class);
+	/**
+	 * Counter for sent messages
+	 */
+	private int counterSent;
+	/**
+	 * Counter for received messages
+	 */
+	private int counterReceived;
+	/**
+	 * Limit of sent and received messages, used to determine a stop-condition
+	 * if this strategy is "initiator"-strategy
+	 */
+	private int stopValue = 10;
+	private boolean initiatorStrategy;
+	/**
+	 * Stop-condition flag, set when the game is finished, possibly in another thread than the turns
+	 */
+	private volatile boolean stopCondition = false;
+	/**
+	 * ready to play flag
+	 */
+	private boolean isReady;
+	/**
+	 * playing flag
+	 */
+	private boolean isPlaying;
+
+	boolean stopCondition() {
+		if (initiatorStrategy)
+			return counterSent == stopValue && counterReceived == stopValue;
+		return stopCondition;
+	}
+
+	/**
+	 * Checks whether the strategy can get ready and resets the counters if it can
+	 */
+	boolean canGetReady() {
+		if (isReady) {
+			LOG.warn("Already ready to play");
+			return false;
+		}
+		if (isPlaying) {
+			LOG.warn("Can't get ready. Already playing");
+			return false;
+		}
+		counterReceived = 0;
+		counterSent = 0;
+		stopCondition = false;
+		return true;
+	}
+
+	void ready() {
+		isReady = true;
+	}
+
+	/**
+	 * Checks whether the strategy can start a game with the given data
+	 */
+	boolean canStart(Message<String> data) {
+		if (data == null) {
+			LOG.warn("Can't start with null data");
+			return false;
+		}
+		if (!isReady) {
+			LOG.warn("Strategy not ready. Can't start playing");
+			return false;
+		}
+		if (isPlaying) {
+			LOG.warn("Can't start playing as playing is already started");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes this strategy the "initiator" one
+	 */
+	void initiate() {
+		initiatorStrategy = true;
+	}
+
+	/**
+	 * Checks whether the strategy is ready and marks it playing
+	 */
+	boolean play() {
+		if (!isReady) {
+			LOG.warn("Can't play. Not ready");
+			return false;
+		}
+		isPlaying = true;
+		return true;
+	}
+
+	void sent() {
+		counterSent++;
+	}
+
+	int getSent() {
+		return counterSent;
+	}
+
+	/**
+	 * Counts a received message and logs it with the counters
+	 */
+	void received(Message<String> message) {
+		counterReceived++;
+		// formatted here: a pooled message may be reused before the log writer gets to it
+		if (LOG.isInfoEnabled())
+			LOG.info("{}, totalSent = {}, totalReceived = {}", String.valueOf(message), counterSent, counterReceived);
+	}
+
+	/**
+	 * @return {@code true} if this is the "initiator" strategy and it has sent all its messages
+	 */
+	boolean allSent() {
+		return initiatorStrategy && counterSent == stopValue;
+	}
+
+	/**
+	 * Checks whether a started game can be finished
+	 */
+	boolean canFinish() {
+		if (!isReady || !isPlaying) {
+			LOG.warn("Can't finish as playing not started yet");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the stop-condition, called before the player leaves the message service
+	 */
+	void stop() {
+		stopCondition = true;
+	}
+
+	void finished() {
+		isPlaying = false;
+		isReady = false;
+	}
+}
@@ -0,0 +1,74 @@
+package com.fx360t.strategy;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fx360t.service.mailbox.Mailbox;
+import com.fx360t.service.mailbox.RingBufferMailbox;
+
+/**
+ * Pool of reusable {@link Message} envelopes for message services and players running in one JVM.<br>
+ * Sender acquires a filled message, receiver calls {@link Message#release()} when it is handled. 
+ * Free messages are kept in a lock-free {@link RingBufferMailbox}, so acquiring and releasing from 
+ * different threads does not block. When the pool is empty a new message is created, when it is full 
+ * a released message is left to the garbage collector, so a lost or dropped message never breaks the pool.<br>
+ * Pooled messages must not leave the JVM by reference: a serialized copy is not pooled and 
+ * the original is simply never returned.
+ * @author Oleg
+ * @param <T> - data type for message bodies
+ */
+public class MessagePool<T> {
+	private final Mailbox<Message<T>> free;
+	/**
+	 * Number of messages created because the pool was empty
+	 */
+	private final LongAdder created = new LongAdder();
+	
+	/**
+	 * @param capacity - maximum number of free messages kept by the pool
+	 */
+	public MessagePool(int capacity) {
+		free = new RingBufferMailbox<>(capacity);
+	}
+	
+	/**
+	 * Takes a free message from the pool, or creates a new one, and fills it
+	 * @return message to be released by its receiver
+	 */
+	public Message<T> acquire(T messageBody, String senderName, String receiverName, int senderHandle, int receiverHandle) {
+		Message<T> message = free.poll();
+		if (message == null) {
+			message = new Message<>();
+			message.pool = this;
+			created.increment();
+		}
+		message.set(messageBody, senderName, receiverName, senderHandle, receiverHandle);
+		message.acquired = true;
+		return message;
+	}
+	
+	/**
+	 * Clears a message and puts it back to the pool
+	 * @throws IllegalStateException if the message is already released
+	 */
+	void release(Message<T> message) {
+		if (!message.acquired)
+			throw new IllegalStateException("Message is already released");
+		message.acquired = false;
+		message.set(null, null, null, Message.NO_HANDLE, Message.NO_HANDLE);
+		free.offer(message);
+	}
+	
+	/**
+	 * @return number of free messages in the pool
+	 */
+	public int size() {
+		return free.size();
+	}
+	
+	/**
+	 * @return number of messages created because the pool was empty
+	 */
+	public long getCreated() {
+		return created.sum();
+	}
+}
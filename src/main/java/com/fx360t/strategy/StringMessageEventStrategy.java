@@ -0,0 +1,83 @@
+package com.fx360t.strategy;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+
+/**
+ * An {@link EventDrivenStrategy} implementation for the case of game data to be
+ * {@link Message} of String, it plays the same game as {@link StringMessageStrategy}.<br>
+ * Every arrived message is answered with a reply which reverts its sender and receiver and adds
+ * the value of {@code counterSent} to its body. Handles are reverted as well.<br>
+ * When a {@link Player} calls {@link #start} method then this strategy
+ * considered to be an "initiator" strategy and its stop-condition will depend
+ * on the number of sent and received messages.<br>
+ * This number is limited by {@code stopValue} value, which equals to ten, see {@link MessageCounter}.
+ *
+ * @author Oleg
+ */
+public class StringMessageEventStrategy implements EventDrivenStrategy<Message<String>> {
+	private static final Log LOG = Log.getLog(StringMessageEventStrategy.class);
+	/**
+	 * Counters and state of the game, its stop-condition is set by {@link #finish}
+	 */
+	private final MessageCounter counter = new MessageCounter();
+
+	@Override
+	public boolean stopCondition() {
+		return counter.stopCondition();
+	}
+
+	@Override
+	public boolean ready(Player player) {
+		if(!counter.canGetReady())
+			return false;
+		counter.ready();
+		return true;
+	}
+
+	@Override
+	public List<Message<String>> start(Player player, Message<String> data) {
+		if(!counter.canStart(data))
+			return Collections.emptyList();
+		try {
+			Message<String> first = new Message<>(data.getMessageBody(), player.getIdentity(), data.getReceiverName());
+			counter.initiate();
+			counter.play();
+			counter.sent();
+			return Collections.singletonList(first);
+		} catch (RemoteException e) {
+			LOG.error("Fail to perform an operation due to exception", e);
+			return Collections.emptyList();
+		}
+	}
+
+	@Override
+	public List<Message<String>> onMessage(Player player, Message<String> message) {
+		if(!counter.play())
+			return Collections.emptyList();
+		counter.received(message);
+		//don't reply if this is initiator strategy and counterSent equals stopValue
+		if (counter.allSent())
+			return Collections.emptyList();
+		Message<String> reply = new Message<>(message.getMessageBody() + counter.getSent(),
+				message.getReceiverName(),
+				message.getSenderName(),
+				message.getReceiverHandle(),
+				message.getSenderHandle());
+		counter.sent();
+		return Collections.singletonList(reply);
+	}
+
+	@Override
+	public boolean finish(Player player) {
+		if(!counter.canFinish())
+			return false;
+		counter.stop();
+		counter.finished();
+		return true;
+	}
+}
@@ -2,7 +2,9 @@ package com.fx360t.strategy;
 
 import java.rmi.RemoteException;
 
+import com.fx360t.log.Log;
 import com.fx360t.player.Player;
+import com.fx360t.service.MessageRejectedException;
 import com.fx360t.service.MessageService;
 
 /**
@@ -15,43 +17,33 @@ import com.fx360t.service.MessageService;
  * When a {@link Player} calls {@link #start} method then this strategy
  * considered to be an "initiator" strategy and its stop-condition will depend
  * on the number of sent and received messages.<br>
- * This number is limited by {@code stopValue} value, which equals to ten.
+ * This number is limited by {@code stopValue} value, which equals to ten, see {@link MessageCounter}.<br>
+ * Once a received {@link Message} carries handles of sender and receiver, the strategy
+ * receives and replies by handles instead of names.<br>
+ * Received messages are released after the reply is prepared, the reply itself is a reused envelope 
+ * which never leaves the strategy, so a turn allocates no envelopes when the service pools messages.
  * 
  * @author Oleg
  */
 public class StringMessageStrategy implements GameStrategy<Message<String>> {
+	private static final Log LOG = Log.getLog(StringMessageStrategy.class);
 	/**
 	 * {@link MessageService} used in this strategy for sending and receiving
 	 * string messages
 	 */
 	private MessageService<String> messageService;
 	/**
-	 * Counter for sent messages
+	 * Counters and state of the game, its stop-condition is set by {@link #finish} in another thread than the turn loop
 	 */
-	private int counterSent;
+	private final MessageCounter counter = new MessageCounter();
 	/**
-	 * Counter for received messages
+	 * Handle of the player in message service, known after the first received message
 	 */
-	private int counterReceived;
+	private int ownHandle = Message.NO_HANDLE;
 	/**
-	 * Limit of sent and received messages, used to determine a stop-condition
-	 * if this strategy is "initiator"-strategy
+	 * Envelope reused for every reply, only its fields are passed to the message service
 	 */
-	private int stopValue = 10;
-	private boolean initiatorStrategy;
-	/**
-	 * Stop-condition flag
-	 */
-	private boolean stopCondition = false;
-	
-	/**
-	 * ready to play flag
-	 */
-	private boolean isReady;
-	/**
-	 * playing flag
-	 */
-	private boolean isPlaying;
+	private final Message<String> reply = new Message<>();
 	
 	public StringMessageStrategy(MessageService<String> messageService) {
 		if(messageService == null)
@@ -60,19 +52,12 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 	}
 
 	public boolean stopCondition() {
-		// if this is an initiatorStrategy then check the number
-		// of sent and received messages
-		if (initiatorStrategy)
-			return counterSent == stopValue && counterReceived == stopValue;
-		return stopCondition;
+		return counter.stopCondition();
 	}
 
 	public boolean play(Player player) {
-		if(!isReady){
-			System.out.println("Can't play. Not ready");
+		if(!counter.play())
 			return false;
-		}
-		isPlaying= true;
 		/*
 		 * Three-step turn: 
 		 * 1. Wait for a message 
@@ -81,54 +66,40 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 		 */
 		Message<String> message = waitForMessage(player);
 		Message<String> reply = prepareReply(message);
+		if (message != null)
+			message.release();
 		sendReply(reply);
 		return true;
 	}
 
 	@Override
 	public boolean start(Player player, Message<String> data) {
-		if(data==null){
-			System.out.println("Can't start with null data");
-			return false;
-		}
-		if(!isReady){
-			System.out.println("Strategy not ready. Can't start playing");
-			return false;
-		}
-		if(isPlaying){
-			System.out.println("Can't start playing as playing is already started");
+		if(!counter.canStart(data))
 			return false;
-		}
-		initiatorStrategy = true;
+		counter.initiate();
 		try {
 			messageService.sendMessage(data.getMessageBody(), 
 					(player.getIdentity()),
 					data.getReceiverName());
-			counterSent++;
+			counter.sent();
 		} catch (RemoteException e) {
 			handleRemoteException(e);
 			return false;
+		} catch (MessageRejectedException e) {
+			LOG.warn("Message was rejected: {}", e.getMessage());
+			return false;
 		}
 		return true;
 	}
 
 	@Override
 	public boolean ready(Player player) {
-		if(isReady){
-			System.out.println("Already ready to play");
+		if(!counter.canGetReady())
 			return false;
-		}
-		if(isPlaying){
-			System.out.println("Can't get ready. Already playing");
-			return false;
-		}
-		counterReceived = 0;
-		counterSent = 0;
-		stopCondition = false;
-		isPlaying=false;
+		ownHandle = Message.NO_HANDLE;
 		try {
 			messageService.register(player.getIdentity());
-			isReady= true;
+			counter.ready();
 			return true;
 		} catch (RemoteException e) {
 			handleRemoteException(e);
@@ -138,15 +109,13 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 
 	@Override
 	public boolean finish(Player player) {
-		if(!isReady || !isPlaying){
-			System.out.println("Can't finish as playing not started yet");
+		if(!counter.canFinish())
 			return false;
-		}
+		// set before unregistering: the turn loop wakes up with no message and must see it
+		counter.stop();
 		try {
 			messageService.unregister(player.getIdentity());
-			stopCondition = true;
-			isPlaying=false;
-			isReady= false;
+			counter.finished();
 			return true;
 		} catch (RemoteException e) {
 			handleRemoteException(e);
@@ -160,9 +129,12 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 	
 	private Message<String> waitForMessage(Player player){
 		try {
-			Message<String> mes = messageService.getNextMessage(player.getIdentity());
-			counterReceived++;
-			System.out.println(mes + ", totalSent = " + counterSent + ", totalReceived = " + counterReceived) ;
+			Message<String> mes = ownHandle == Message.NO_HANDLE 
+					? messageService.getNextMessage(player.getIdentity())
+					: messageService.getNextMessage(ownHandle);
+			if (mes != null && mes.hasHandles())
+				ownHandle = mes.getReceiverHandle();
+			counter.received(mes);
 			return mes;
 		} catch (RemoteException e) {
 			handleRemoteException(e);
@@ -172,15 +144,18 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 	/**
 	 * Second step in one play turn - prepare a reply message.<br>
 	 * It takes incoming message as a parameter, reverts its sender and receiver and
-	 * adds the value of {@code conterSent} to its body
+	 * adds the value of {@code conterSent} to its body. Handles are reverted as well.
+	 * The reply is written to the strategy's own envelope.
 	 */
 	private Message<String> prepareReply(Message<String> message){
 		if(message==null)
 			return null;
-		return new Message<String>
-			    (message.getMessageBody() + counterSent,
-			    		message.getReceiverName(),
-			    		message.getSenderName());
+		reply.set(message.getMessageBody() + counter.getSent(),
+				message.getReceiverName(),
+				message.getSenderName(),
+				message.getReceiverHandle(),
+				message.getSenderHandle());
+		return reply;
 	}
 	/**
 	 * Third step in one play turn - send prepared reply.
@@ -190,25 +165,31 @@ public class StringMessageStrategy implements GameStrategy<Message<String>> {
 		if(reply == null)
 			return;
 		//don't send message if this is initiator strategy and counterSent equals stopValue
-		if (initiatorStrategy && counterSent == stopValue)
+		if (counter.allSent())
 			return;
 		try {
-			messageService.sendMessage(reply.getMessageBody(),
-					reply.getSenderName(), 
-					reply.getReceiverName());
-			counterSent++;
+			if (reply.hasHandles())
+				messageService.sendMessage(reply.getMessageBody(),
+						reply.getSenderHandle(), 
+						reply.getReceiverHandle());
+			else
+				messageService.sendMessage(reply.getMessageBody(),
+						reply.getSenderName(), 
+						reply.getReceiverName());
+			counter.sent();
 		} catch (RemoteException e) {
 			handleRemoteException(e);
+		} catch (MessageRejectedException e) {
+			LOG.warn("Reply was rejected: {}", e.getMessage());
 		}
 	}
 	/**
 	 * Simple RemoteException handler<br>
-	 * Just prints out stacktrace.
+	 * Just logs the exception with its stacktrace.
 	 * @param e
 	 */
 	private static void handleRemoteException(RemoteException e){
-		System.out.println("Fail to perform an operation due to Exception :" + e.getMessage());
-		e.printStackTrace();
+		LOG.error("Fail to perform an operation due to exception", e);
 	}
 	
 }
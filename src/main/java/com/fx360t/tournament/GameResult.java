@@ -0,0 +1,91 @@
+package com.fx360t.tournament;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of one game of a {@link Tournament}.
+ * @author Oleg
+ */
+public final class GameResult {
+	private final int round;
+	private final long sessionId;
+	private final String initiator;
+	private final String opponent;
+	private final boolean completed;
+	private final long durationNanos;
+	private final String failure;
+
+	GameResult(int round, long sessionId, String initiator, String opponent, boolean completed, long durationNanos,
+			String failure) {
+		this.round = round;
+		this.sessionId = sessionId;
+		this.initiator = initiator;
+		this.opponent = opponent;
+		this.completed = completed;
+		this.durationNanos = durationNanos;
+		this.failure = failure;
+	}
+
+	/**
+	 * @return number of the round starting from 1
+	 */
+	public int getRound() {
+		return round;
+	}
+
+	/**
+	 * @return id of the game session the game was played in
+	 */
+	public long getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @return name of the entrant who started the game
+	 */
+	public String getInitiator() {
+		return initiator;
+	}
+
+	/**
+	 * @return name of the other entrant
+	 */
+	public String getOpponent() {
+		return opponent;
+	}
+
+	/**
+	 * @param entrant - name of an entrant
+	 * @return {@code true} if the entrant played this game
+	 */
+	public boolean isPlayedBy(String entrant) {
+		return initiator.equals(entrant) || opponent.equals(entrant);
+	}
+
+	/**
+	 * @return {@code true} if the game was started, played to the end and finished
+	 */
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	/**
+	 * @return time from registration of the players to the end of the game in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return message of the exception which broke the game or {@code null}
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		return "round " + round + ": " + initiator + " vs " + opponent + (completed ? " completed" : " failed")
+				+ " in " + TimeUnit.NANOSECONDS.toMicros(durationNanos) + " us" + (failure == null ? "" : " (" + failure + ")");
+	}
+}
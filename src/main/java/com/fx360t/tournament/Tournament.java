@@ -0,0 +1,199 @@
+package com.fx360t.tournament;
+
+import java.io.Closeable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.PlayerExecutors;
+import com.fx360t.player.SimplePlayer;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.session.GameSession;
+import com.fx360t.service.session.SessionPlayGround;
+import com.fx360t.strategy.GameStrategy;
+import com.fx360t.strategy.Message;
+
+/**
+ * Runs many games between entrants' strategies in one JVM.<br>
+ * Every entrant is a name and a factory of its {@link GameStrategy}. Games are scheduled as a round robin,
+ * where every pair of entrants plays a number of times, or as a bracket, where a {@link Judge} picks
+ * the winner of every game and winners play each other until one is left.<br>
+ * Every game is a {@link GameSession} of a {@link SessionPlayGround} with its own mailboxes in the shared
+ * message service. Games of a round are tasks of a {@link ForkJoinPool}, a task blocks until its game is over,
+ * so the parallelism of the pool is the number of games played at once, the number of cores by default.
+ * Turn loops of the players run on a {@link PlayerExecutors#shared() shared} executor.<br>
+ * A game is not limited in time, a strategy which never reaches its stop condition holds its task.
+ * @author Oleg
+ */
+public class Tournament implements Closeable {
+	private static final Log LOG = Log.getLog(Tournament.class);
+	private static final String START_MESSAGE = "Hi there";
+
+	/**
+	 * Decides the winner of a bracket game
+	 */
+	public interface Judge {
+		/**
+		 * @param result - result of a game
+		 * @return name of the winner, one of the players of the game
+		 */
+		String winner(GameResult result);
+	}
+
+	private final SessionPlayGround playGround;
+	private final ForkJoinPool games;
+	private final ExecutorService playerExecutor = PlayerExecutors.shared();
+	private final Map<String, Function<MessageService<String>, GameStrategy<Message<String>>>> entrants = new LinkedHashMap<>();
+
+	/**
+	 * Constructs a tournament playing as many games at once as there are cores
+	 * @param messageService - message service for all games
+	 */
+	public Tournament(MessageService<String> messageService) {
+		this(messageService, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param messageService - message service for all games
+	 * @param parallelism - number of games played at once
+	 */
+	public Tournament(MessageService<String> messageService, int parallelism) {
+		this.playGround = new SessionPlayGround(messageService);
+		this.games = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Adds an entrant
+	 * @param name - unique name of the entrant
+	 * @param strategy - creates a strategy of the entrant for every game,
+	 * it is given the message service of the game
+	 * @return this tournament
+	 * @throws IllegalArgumentException if the name is already taken
+	 */
+	public Tournament addEntrant(String name, Function<MessageService<String>, GameStrategy<Message<String>>> strategy) {
+		if (name == null || strategy == null)
+			throw new NullPointerException("Name and strategy of an entrant can not be null");
+		if (entrants.putIfAbsent(name, strategy) != null)
+			throw new IllegalArgumentException("Entrant " + name + " is already added");
+		return this;
+	}
+
+	/**
+	 * @return playground the games are played on
+	 */
+	public SessionPlayGround getPlayGround() {
+		return playGround;
+	}
+
+	/**
+	 * Plays every pair of entrants the given number of times, entrants start games by turns.<br>
+	 * All games are scheduled at once.
+	 * @param rounds - number of games of every pair
+	 * @return results of the games
+	 */
+	public TournamentResult roundRobin(int rounds) {
+		List<String> names = new ArrayList<>(entrants.keySet());
+		List<Callable<GameResult>> scheduled = new ArrayList<>();
+		for (int round = 1; round <= rounds; round++)
+			for (int i = 0; i < names.size(); i++)
+				for (int j = i + 1; j < names.size(); j++)
+					scheduled.add(game(round, names.get(round % 2 == 1 ? i : j), names.get(round % 2 == 1 ? j : i)));
+		long start = System.nanoTime();
+		List<GameResult> results = play(scheduled);
+		TournamentResult result = new TournamentResult(results, System.nanoTime() - start, null);
+		LOG.info("Round robin of {} entrants: {}", names.size(), result);
+		return result;
+	}
+
+	/**
+	 * Plays single elimination rounds until one entrant is left.<br>
+	 * Entrants are paired in the order they were added, the last one of an odd number passes to the next round.
+	 * Games of a round are played at once.
+	 * @param judge - decides the winner of every game
+	 * @return results of the games and the winner
+	 */
+	public TournamentResult bracket(Judge judge) {
+		List<String> left = new ArrayList<>(entrants.keySet());
+		List<GameResult> results = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int round = 1; left.size() > 1; round++) {
+			List<Callable<GameResult>> scheduled = new ArrayList<>();
+			for (int i = 0; i + 1 < left.size(); i += 2)
+				scheduled.add(game(round, left.get(i), left.get(i + 1)));
+			List<String> winners = new ArrayList<>();
+			for (GameResult game : play(scheduled)) {
+				String winner = judge.winner(game);
+				if (!game.isPlayedBy(winner))
+					throw new IllegalStateException("Judge picked " + winner + " who did not play " + game);
+				winners.add(winner);
+				results.add(game);
+			}
+			if (left.size() % 2 == 1)
+				winners.add(left.get(left.size() - 1));
+			left = winners;
+		}
+		TournamentResult result = new TournamentResult(results, System.nanoTime() - start, left.isEmpty() ? null : left.get(0));
+		LOG.info("Bracket of {} entrants: {}", entrants.size(), result);
+		return result;
+	}
+
+	/**
+	 * Runs games in the pool and waits for all of them
+	 */
+	private List<GameResult> play(List<Callable<GameResult>> scheduled) {
+		List<GameResult> results = new ArrayList<>(scheduled.size());
+		for (Future<GameResult> game : games.invokeAll(scheduled))
+			try {
+				results.add(game.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for games", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Game failed", e.getCause());
+			}
+		return results;
+	}
+
+	private Callable<GameResult> game(int round, String initiator, String opponent) {
+		return () -> {
+			GameSession session = playGround.openSession();
+			MessageService<String> messageService = session.getMessageService();
+			long start = System.nanoTime();
+			boolean completed = false;
+			String failure = null;
+			try {
+				new SimplePlayer(initiator, START_MESSAGE, entrants.get(initiator).apply(messageService), session,
+						null, playerExecutor).prepare();
+				new SimplePlayer(opponent, START_MESSAGE, entrants.get(opponent).apply(messageService), session,
+						null, playerExecutor).prepare();
+				// the whole lifecycle runs in this task
+				completed = session.play(Runnable::run).join();
+			} catch (RemoteException | RuntimeException e) {
+				failure = String.valueOf(e.getMessage());
+				LOG.error("Game of {} failed", initiator + " and " + opponent, e);
+			} finally {
+				session.close();
+			}
+			return new GameResult(round, session.getId(), initiator, opponent, completed, System.nanoTime() - start,
+					failure);
+		};
+	}
+
+	/**
+	 * Stops threads of the tournament
+	 */
+	@Override
+	public void close() {
+		games.shutdown();
+		playerExecutor.shutdown();
+	}
+}
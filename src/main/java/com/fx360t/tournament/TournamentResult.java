@@ -0,0 +1,84 @@
+package com.fx360t.tournament;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of all games of a {@link Tournament} and their timings.
+ * @author Oleg
+ */
+public final class TournamentResult {
+	private final List<GameResult> games;
+	private final long wallNanos;
+	private final String winner;
+
+	TournamentResult(List<GameResult> games, long wallNanos, String winner) {
+		this.games = Collections.unmodifiableList(new ArrayList<>(games));
+		this.wallNanos = wallNanos;
+		this.winner = winner;
+	}
+
+	/**
+	 * @return results of all games in the order they were scheduled
+	 */
+	public List<GameResult> getGames() {
+		return games;
+	}
+
+	/**
+	 * @param entrant - name of an entrant
+	 * @return results of the games played by the entrant
+	 */
+	public List<GameResult> getGamesOf(String entrant) {
+		List<GameResult> played = new ArrayList<>();
+		for (GameResult game : games)
+			if (game.isPlayedBy(entrant))
+				played.add(game);
+		return played;
+	}
+
+	/**
+	 * @return number of games played to the end
+	 */
+	public int getCompletedGames() {
+		int completed = 0;
+		for (GameResult game : games)
+			if (game.isCompleted())
+				completed++;
+		return completed;
+	}
+
+	/**
+	 * @return time the tournament took in nanoseconds
+	 */
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	/**
+	 * @return sum of durations of all games in nanoseconds,
+	 * divided by {@link #getWallNanos()} it shows how many games were played at once
+	 */
+	public long getTotalGameNanos() {
+		long total = 0;
+		for (GameResult game : games)
+			total += game.getDurationNanos();
+		return total;
+	}
+
+	/**
+	 * @return the winner of a bracket tournament, {@code null} for a round-robin one
+	 */
+	public String getWinner() {
+		return winner;
+	}
+
+	@Override
+	public String toString() {
+		return games.size() + " games, " + getCompletedGames() + " completed in "
+				+ TimeUnit.NANOSECONDS.toMillis(wallNanos) + " ms, total game time "
+				+ TimeUnit.NANOSECONDS.toMillis(getTotalGameNanos()) + " ms" + (winner == null ? "" : ", winner " + winner);
+	}
+}
@@ -0,0 +1,329 @@
+package com.fx360t.transport;
+
+import java.io.Closeable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+
+/**
+ * Client side {@link MessageService} which sends messages asynchronously.<br>
+ * Sending methods queue a message and return at once. A sender thread waits until the first queued message
+ * is {@code maxDelay} old or {@code maxBatch} messages are queued and sends them with one
+ * {@link MessageService#sendMessages} call. Messages are sent in the order they were queued.<br>
+ * The remote service finds users of a batch by name, names of handles are learned from registration and
+ * received messages. A message between handles with unknown names is sent on its own with its handles.<br>
+ * Failures are not thrown to senders, they are reported to the {@link FailureHandler}. Unregistration
+ * and {@link #flush()} wait until queued messages are sent.
+ * @author Oleg
+ */
+public class CoalescingMessageService implements MessageService<String>, Closeable {
+	private static final Log LOG = Log.getLog(CoalescingMessageService.class);
+
+	/**
+	 * Receives messages which could not be sent
+	 */
+	public interface FailureHandler {
+		/**
+		 * @param messages - messages of the failed call, some of them may have been accepted
+		 * @param cause - exception thrown by the remote service or {@link MessageRejectedException}
+		 * if some messages were not accepted
+		 */
+		void failed(List<Message<String>> messages, Exception cause);
+	}
+
+	private final MessageService<String> remote;
+	private final int maxBatch;
+	private final long maxDelayNanos;
+	private final FailureHandler failureHandler;
+	private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+	/**
+	 * Lock guarding the queue, the sender thread waits on it for messages, flushing threads for the queue to be sent
+	 */
+	private final Object lock = new Object();
+	private List<Message<String>> queue = new ArrayList<>();
+	/**
+	 * Time the first message of the queue was queued at
+	 */
+	private long firstQueued;
+	/**
+	 * {@code true} while the sender thread sends a batch
+	 */
+	private boolean sending;
+	/**
+	 * Number of threads waiting in {@link #flush()}, the queue is sent without delay while it is positive
+	 */
+	private int flushing;
+	private boolean closed;
+	private final Thread sender;
+
+	/**
+	 * @param remote - service to send messages to
+	 * @param maxBatch - maximum number of messages sent with one call
+	 * @param maxDelay - maximum time a message waits for others
+	 * @param unit - unit of the delay
+	 * @param failureHandler - handler of failed sends
+	 */
+	public CoalescingMessageService(MessageService<String> remote, int maxBatch, long maxDelay, TimeUnit unit,
+			FailureHandler failureHandler) {
+		if (maxBatch < 1)
+			throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+		if (failureHandler == null)
+			throw new NullPointerException("Failure handler can not be null");
+		this.remote = remote;
+		this.maxBatch = maxBatch;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.failureHandler = failureHandler;
+		this.sender = new Thread(this::sendQueued, "message-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * Creates a service from a configuration {@code maxBatch:maxDelayMicros}, i.e. {@code 64:200}
+	 * @param remote - service to send messages to
+	 * @param configuration - batch size and delay in microseconds
+	 * @param failureHandler - handler of failed sends
+	 * @throws IllegalArgumentException if the configuration can not be parsed
+	 */
+	public static CoalescingMessageService fromConfiguration(MessageService<String> remote, String configuration,
+			FailureHandler failureHandler) {
+		String[] parts = configuration.split(":");
+		try {
+			return new CoalescingMessageService(remote, Integer.parseInt(parts[0].trim()),
+					parts.length > 1 ? Long.parseLong(parts[1].trim()) : 0, TimeUnit.MICROSECONDS, failureHandler);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Send window must be maxBatch:maxDelayMicros, not " + configuration, e);
+		}
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		remote.register(userNames);
+		if (userNames != null)
+			for (String user : userNames)
+				remember(user, remote.getHandle(user));
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		return remember(userName, remote.registerUser(userName));
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		Integer handle = userName == null ? null : handles.get(userName);
+		return handle != null ? handle : remember(userName, remote.getHandle(userName));
+	}
+
+	private int remember(String user, int handle) {
+		if (user != null && handle != Message.NO_HANDLE) {
+			handles.put(user, handle);
+			names.put(handle, user);
+		}
+		return handle;
+	}
+
+	private Message<String> received(Message<String> message) {
+		if (message != null && message.hasHandles()) {
+			remember(message.getSenderName(), message.getSenderHandle());
+			remember(message.getReceiverName(), message.getReceiverHandle());
+		}
+		return message;
+	}
+
+	@Override
+	public void sendMessage(String message, String senderName, String receiverName) {
+		enqueue(new Message<>(message, senderName, receiverName));
+	}
+
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) {
+		enqueue(new Message<>(message, names.get(senderHandle), names.get(receiverHandle), senderHandle, receiverHandle));
+	}
+
+	/**
+	 * Queues messages to be sent
+	 * @return number of queued messages
+	 */
+	@Override
+	public int sendMessages(List<Message<String>> messages) {
+		int queued = 0;
+		if (messages != null)
+			for (Message<String> message : messages)
+				if (message != null) {
+					enqueue(message);
+					queued++;
+				}
+		return queued;
+	}
+
+	private void enqueue(Message<String> message) {
+		synchronized (lock) {
+			if (closed)
+				throw new IllegalStateException("Message service is closed");
+			if (queue.isEmpty())
+				firstQueued = System.nanoTime();
+			queue.add(message);
+			if (queue.size() == 1 || queue.size() >= maxBatch)
+				lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Loop of the sender thread
+	 */
+	private void sendQueued() {
+		for (;;) {
+			List<Message<String>> batch;
+			synchronized (lock) {
+				try {
+					while (queue.isEmpty() && !closed)
+						lock.wait();
+					long remaining;
+					while (queue.size() < maxBatch && flushing == 0 && !closed
+							&& (remaining = firstQueued + maxDelayNanos - System.nanoTime()) > 0)
+						TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				} catch (InterruptedException e) {
+					closed = true;
+				}
+				if (queue.isEmpty()) {
+					lock.notifyAll();
+					return;
+				}
+				batch = queue;
+				queue = new ArrayList<>();
+				sending = true;
+			}
+			try {
+				send(batch);
+			} finally {
+				synchronized (lock) {
+					sending = false;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a batch in parts: messages with names by one call, messages with handles only one by one
+	 */
+	private void send(List<Message<String>> batch) {
+		int from = 0;
+		while (from < batch.size()) {
+			int to = from;
+			while (to < batch.size() && to - from < maxBatch && isNamed(batch.get(to)))
+				to++;
+			if (to > from) {
+				// a copy, as sub lists are not serializable
+				List<Message<String>> part = from == 0 && to == batch.size() ? batch : new ArrayList<>(batch.subList(from, to));
+				try {
+					int accepted = remote.sendMessages(part);
+					if (accepted < part.size())
+						failed(part, new MessageRejectedException((part.size() - accepted) + " of " + part.size()
+								+ " messages are not accepted"));
+				} catch (RemoteException | RuntimeException e) {
+					failed(part, e);
+				}
+				from = to;
+			} else {
+				Message<String> message = batch.get(from++);
+				try {
+					remote.sendMessage(message.getMessageBody(), message.getSenderHandle(), message.getReceiverHandle());
+				} catch (RemoteException | RuntimeException e) {
+					failed(Collections.singletonList(message), e);
+				}
+			}
+		}
+	}
+
+	private static boolean isNamed(Message<String> message) {
+		return message.getSenderName() != null && message.getReceiverName() != null;
+	}
+
+	private void failed(List<Message<String>> messages, Exception cause) {
+		try {
+			failureHandler.failed(messages, cause);
+		} catch (RuntimeException e) {
+			LOG.error("Failure handler failed", e);
+		}
+	}
+
+	/**
+	 * Sends queued messages without waiting for the delay and waits until they are sent
+	 */
+	public void flush() {
+		synchronized (lock) {
+			flushing++;
+			lock.notifyAll();
+			try {
+				while ((!queue.isEmpty() || sending) && sender.isAlive())
+					lock.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				flushing--;
+			}
+		}
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		flush();
+		remote.unregister(userNames);
+	}
+
+	@Override
+	public Message<String> getNextMessage(String recipientName) throws RemoteException {
+		return received(remote.getNextMessage(recipientName));
+	}
+
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) throws RemoteException {
+		return received(remote.getNextMessage(recipientHandle));
+	}
+
+	@Override
+	public Message<String> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException {
+		return received(remote.pollNextMessage(recipientName, timeout, unit));
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipientName, int maxMessages) throws RemoteException {
+		List<Message<String>> messages = remote.drainMessages(recipientName, maxMessages);
+		if (messages != null)
+			messages.forEach(this::received);
+		return messages;
+	}
+
+	/**
+	 * Sends queued messages and stops the sender thread
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			sender.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Coalescing" + remote;
+	}
+}
@@ -0,0 +1,201 @@
+package com.fx360t.transport;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessagePublisher;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+
+/**
+ * Client side {@link MessageService} receiving messages pushed by a remote {@link MessagePublisher}.<br>
+ * Users registered through this service are subscribed with a listener exported by the transport,
+ * pushed messages are put to local queues and receiving methods take them from there,
+ * so waiting for a message holds neither a connection nor a server thread.
+ * Sending and registration are delegated to the remote service.
+ * @author Oleg
+ */
+public class PushMessageService implements MessageService<String>, MessageListener<String> {
+	private static final Log LOG = Log.getLog(PushMessageService.class);
+	/**
+	 * Put to a queue when its user is unregistered, wakes up waiting receivers
+	 */
+	private static final Message<String> UNREGISTERED = new Message<>(null, null, null);
+
+	private final MessageService<String> remote;
+	private final MessagePublisher<String> publisher;
+	private final Transport transport;
+	private final MessageListener<String> exported;
+	private final Map<String, BlockingQueue<Message<String>>> queues = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+	/**
+	 * @param remote - remote message service, must be a {@link MessagePublisher}
+	 * @param transport - transport the service was found with, exports the listener
+	 * @throws IllegalArgumentException if the service does not push messages
+	 * @throws RemoteException if the listener can not be exported
+	 */
+	@SuppressWarnings("unchecked")
+	public PushMessageService(MessageService<String> remote, Transport transport) throws RemoteException {
+		if (!(remote instanceof MessagePublisher))
+			throw new IllegalArgumentException("Message service " + remote + " does not push messages");
+		this.remote = remote;
+		this.publisher = (MessagePublisher<String>) remote;
+		this.transport = transport;
+		this.exported = transport.export(this);
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		remote.register(userNames);
+		if (userNames != null)
+			for (String user : userNames)
+				if (user != null)
+					subscribe(user, remote.getHandle(user));
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		int handle = remote.registerUser(userName);
+		subscribe(userName, handle);
+		return handle;
+	}
+
+	private void subscribe(String user, int handle) throws RemoteException {
+		if (handle == Message.NO_HANDLE)
+			return;
+		queues.put(user, new LinkedBlockingQueue<>());
+		names.put(handle, user);
+		publisher.subscribe(user, exported);
+	}
+
+	@Override
+	public void onMessages(List<Message<String>> messages) {
+		for (Message<String> message : messages) {
+			BlockingQueue<Message<String>> queue = queues.get(message.getReceiverName());
+			if (queue == null)
+				LOG.warn("Pushed message to unknown user {} is dropped", message.getReceiverName());
+			else
+				queue.add(message);
+		}
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		return remote.getHandle(userName);
+	}
+
+	@Override
+	public void sendMessage(String message, String senderName, String receiverName) throws RemoteException {
+		remote.sendMessage(message, senderName, receiverName);
+	}
+
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) throws RemoteException {
+		remote.sendMessage(message, senderHandle, receiverHandle);
+	}
+
+	@Override
+	public int sendMessages(List<Message<String>> messages) throws RemoteException {
+		return remote.sendMessages(messages);
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		remote.unregister(userNames);
+		if (userNames != null)
+			for (String user : userNames) {
+				BlockingQueue<Message<String>> queue = user == null ? null : queues.remove(user);
+				if (queue != null)
+					queue.add(UNREGISTERED);
+				names.values().remove(user);
+			}
+	}
+
+	@Override
+	public Message<String> getNextMessage(String recipientName) {
+		return receive(recipientName, -1);
+	}
+
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) {
+		return receive(names.get(recipientHandle), -1);
+	}
+
+	@Override
+	public Message<String> pollNextMessage(String recipientName, long timeout, TimeUnit unit) {
+		return receive(recipientName, Math.max(0, unit.toNanos(timeout)));
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipientName, int maxMessages) {
+		if (maxMessages < 1) {
+			LOG.warn("Can't drain less than one message");
+			return null;
+		}
+		BlockingQueue<Message<String>> queue = queueOf(recipientName);
+		Message<String> first = receive(recipientName, -1);
+		if (first == null)
+			return null;
+		List<Message<String>> messages = new ArrayList<>();
+		messages.add(first);
+		Message<String> message;
+		while (messages.size() < maxMessages && (message = queue.poll()) != null) {
+			if (message == UNREGISTERED) {
+				queue.add(message);
+				break;
+			}
+			messages.add(message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Takes a pushed message from the local queue
+	 * @param timeoutNanos - time to wait, negative to wait until a message comes or the recipient is unregistered
+	 */
+	private Message<String> receive(String recipient, long timeoutNanos) {
+		BlockingQueue<Message<String>> queue = queueOf(recipient);
+		if (queue == null)
+			return null;
+		try {
+			Message<String> message = timeoutNanos < 0 ? queue.take() : queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+			if (message == UNREGISTERED) {
+				// left for other receivers of the same user
+				queue.add(message);
+				return null;
+			}
+			return message;
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while getting a message for {}", recipient, e);
+		}
+		return null;
+	}
+
+	private BlockingQueue<Message<String>> queueOf(String user) {
+		BlockingQueue<Message<String>> queue = user == null ? null : queues.get(user);
+		if (queue == null)
+			LOG.warn("User {} is not registered", user);
+		return queue;
+	}
+
+	/**
+	 * Stops accepting pushed messages
+	 */
+	public void close() {
+		transport.unexport(this);
+	}
+
+	@Override
+	public String toString() {
+		return "Push" + remote;
+	}
+}
@@ -0,0 +1,190 @@
+package com.fx360t.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Socket factory of objects exported by {@link RmiTransport}.<br>
+ * Sockets have TCP_NODELAY set, so small calls are not held back by Nagle's algorithm, optionally
+ * custom buffer sizes, and their streams are buffered. With compression the streams are deflated and
+ * every flush of RMI ends a compressed block, so calls are not delayed. Native memory of the compressor 
+ * and the decompressor is released when the socket is closed.<br>
+ * The client side is serialized with stubs, so both ends of a connection use the same settings.
+ * Factories with equal settings are equal, which lets RMI share connections between exported objects.
+ * @author Oleg
+ */
+public class RmiSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_STREAM_BUFFER = 8192;
+
+	private final boolean tcpNoDelay;
+	/**
+	 * Socket send and receive buffer sizes, 0 to keep system defaults
+	 */
+	private final int socketBufferSize;
+	/**
+	 * Size of stream buffers, 0 for unbuffered streams
+	 */
+	private final int streamBufferSize;
+	private final boolean compress;
+
+	/**
+	 * @param tcpNoDelay - disables Nagle's algorithm
+	 * @param socketBufferSize - size of socket send and receive buffers, 0 to keep system defaults
+	 * @param streamBufferSize - size of stream buffers, 0 for unbuffered streams
+	 * @param compress - deflates data sent over sockets
+	 */
+	public RmiSocketFactory(boolean tcpNoDelay, int socketBufferSize, int streamBufferSize, boolean compress) {
+		if (socketBufferSize < 0 || streamBufferSize < 0)
+			throw new IllegalArgumentException("Buffer size can not be negative");
+		this.tcpNoDelay = tcpNoDelay;
+		this.socketBufferSize = socketBufferSize;
+		this.streamBufferSize = streamBufferSize;
+		this.compress = compress;
+	}
+
+	/**
+	 * Creates a factory configured by system properties:<br>
+	 * {@code rmi.tcpNoDelay} - {@code true} by default<br>
+	 * {@code rmi.socket.buffer} - size of socket buffers in bytes, system default if not set<br>
+	 * {@code rmi.stream.buffer} - size of stream buffers in bytes, {@value #DEFAULT_STREAM_BUFFER} by default<br>
+	 * {@code rmi.compress} - {@code false} by default
+	 * @return factory
+	 */
+	public static RmiSocketFactory fromSystemProperties() {
+		return new RmiSocketFactory(
+				Boolean.parseBoolean(System.getProperty("rmi.tcpNoDelay", "true")),
+				Integer.getInteger("rmi.socket.buffer", 0),
+				Integer.getInteger("rmi.stream.buffer", DEFAULT_STREAM_BUFFER),
+				Boolean.getBoolean("rmi.compress"));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		Socket socket = new TunedSocket();
+		configure(socket);
+		socket.connect(new InetSocketAddress(host, port));
+		return socket;
+	}
+
+	@Override
+	public ServerSocket createServerSocket(int port) throws IOException {
+		ServerSocket server = new ServerSocket() {
+			@Override
+			public Socket accept() throws IOException {
+				Socket socket = new TunedSocket();
+				implAccept(socket);
+				configure(socket);
+				return socket;
+			}
+		};
+		if (socketBufferSize > 0)
+			// set before binding, so that accepted sockets may use a big window
+			server.setReceiveBufferSize(socketBufferSize);
+		server.bind(new InetSocketAddress(port));
+		return server;
+	}
+
+	private void configure(Socket socket) throws IOException {
+		socket.setTcpNoDelay(tcpNoDelay);
+		if (socketBufferSize > 0) {
+			socket.setSendBufferSize(socketBufferSize);
+			socket.setReceiveBufferSize(socketBufferSize);
+		}
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (other == null || other.getClass() != getClass())
+			return false;
+		RmiSocketFactory factory = (RmiSocketFactory) other;
+		return tcpNoDelay == factory.tcpNoDelay && socketBufferSize == factory.socketBufferSize
+				&& streamBufferSize == factory.streamBufferSize && compress == factory.compress;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Boolean.hashCode(tcpNoDelay);
+		hash = 31 * hash + socketBufferSize;
+		hash = 31 * hash + streamBufferSize;
+		return 31 * hash + Boolean.hashCode(compress);
+	}
+
+	@Override
+	public String toString() {
+		return "RmiSocketFactory[tcpNoDelay=" + tcpNoDelay + ", socketBuffer=" + socketBufferSize
+				+ ", streamBuffer=" + streamBufferSize + ", compress=" + compress + "]";
+	}
+
+	/**
+	 * Socket with buffered and optionally compressed streams
+	 */
+	private final class TunedSocket extends Socket {
+		private InputStream input;
+		private OutputStream output;
+		private Inflater inflater;
+		private Deflater deflater;
+
+		@Override
+		public synchronized InputStream getInputStream() throws IOException {
+			if (input == null) {
+				int bufferSize = Math.max(streamBufferSize, 512);
+				if (compress) {
+					InputStream socketInput = super.getInputStream();
+					inflater = new Inflater();
+					input = new InflaterInputStream(socketInput, inflater, bufferSize);
+				} else
+					input = streamBufferSize > 0 ? new BufferedInputStream(super.getInputStream(), streamBufferSize)
+							: super.getInputStream();
+			}
+			return input;
+		}
+
+		@Override
+		public synchronized OutputStream getOutputStream() throws IOException {
+			if (output == null) {
+				int bufferSize = Math.max(streamBufferSize, 512);
+				// sync flush: every flush of RMI sends all data written so far
+				if (compress) {
+					OutputStream socketOutput = super.getOutputStream();
+					deflater = new Deflater(Deflater.BEST_SPEED);
+					output = new DeflaterOutputStream(socketOutput, deflater, bufferSize, true);
+				} else
+					output = streamBufferSize > 0 ? new BufferedOutputStream(super.getOutputStream(), streamBufferSize)
+							: super.getOutputStream();
+			}
+			return output;
+		}
+
+		/**
+		 * Closes the socket and ends the compressor and the decompressor, streams given with them
+		 * do not end ones they did not create
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (inflater != null)
+					inflater.end();
+				if (deflater != null)
+					deflater.end();
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.fx360t.transport;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.rmi.AlreadyBoundException;
+import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+
+/**
+ * {@link Transport} based on Java RMI.<br>
+ * Services are exported and bound in a registry created on the given port, players are exported as RMI objects.
+ * Closing the transport unexports the registry and the services it has bound.
+ * @author Oleg
+ */
+public class RmiTransport implements Transport {
+	private static final Log LOG = Log.getLog(RmiTransport.class);
+	private final RmiSocketFactory socketFactory;
+	/**
+	 * Registry and services exported by {@link #bind}
+	 */
+	private final List<Remote> bound = new ArrayList<>();
+	private int localPort = -1;
+	
+	/**
+	 * Constructs a transport with sockets configured by system properties, see {@link RmiSocketFactory#fromSystemProperties()}
+	 */
+	public RmiTransport() {
+		this(RmiSocketFactory.fromSystemProperties());
+	}
+	
+	/**
+	 * @param socketFactory - factory of sockets of exported objects
+	 */
+	public RmiTransport(RmiSocketFactory socketFactory) {
+		this.socketFactory = socketFactory;
+	}
+	
+	private Remote exportObject(Remote object) throws RemoteException {
+		return UnicastRemoteObject.exportObject(object, 0, socketFactory, socketFactory);
+	}
+
+	/**
+	 * {@inheritDoc}<br>
+	 * Port 0 binds the registry to a free port, see {@link #getLocalPort()}
+	 */
+	@Override
+	public synchronized void bind(MessageService<String> messageService, PlayerRegistrator playGround, int port) 
+			throws IOException {
+		if (localPort != -1)
+			throw new IOException("Transport is already bound to port " + localPort);
+		// plain sockets: the registry is looked up by Naming, not by stubs carrying the socket factory
+		Registry registry = LocateRegistry.createRegistry(port, null, requested -> {
+			ServerSocket server = new ServerSocket(requested);
+			localPort = server.getLocalPort();
+			return server;
+		});
+		bound.add(registry);
+		try {
+			registry.bind(MessageService.SERVICE_NAME, exportObject(messageService));
+			bound.add(messageService);
+			registry.bind(PlayerRegistrator.SERVICE_NAME, exportObject(playGround));
+			bound.add(playGround);
+		} catch (AlreadyBoundException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return local port of the registry or -1 if the transport is not bound
+	 */
+	public synchronized int getLocalPort() {
+		return localPort;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public MessageService<String> lookupMessageService(String address) throws IOException {
+		return (MessageService<String>) lookup(address, MessageService.SERVICE_NAME);
+	}
+
+	@Override
+	public PlayerRegistrator lookupPlayGround(String address) throws IOException {
+		return (PlayerRegistrator) lookup(address, PlayerRegistrator.SERVICE_NAME);
+	}
+	
+	private static Object lookup(String address, String name) throws IOException {
+		try {
+			return Naming.lookup("rmi://" + address + "/" + name);
+		} catch (MalformedURLException | NotBoundException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Player export(Player player) throws RemoteException {
+		return (Player) exportObject(player);
+	}
+
+	@Override
+	public void unexport(Player player) {
+		try {
+			UnicastRemoteObject.unexportObject(player, true);
+		} catch (NoSuchObjectException e) {
+			// not exported
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public MessageListener<String> export(MessageListener<String> listener) throws RemoteException {
+		return (MessageListener<String>) exportObject(listener);
+	}
+
+	@Override
+	public void unexport(MessageListener<String> listener) {
+		try {
+			UnicastRemoteObject.unexportObject(listener, true);
+		} catch (NoSuchObjectException e) {
+			// not exported
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		for (Remote object : bound)
+			try {
+				UnicastRemoteObject.unexportObject(object, true);
+			} catch (NoSuchObjectException e) {
+				LOG.warn("{} is not exported", object);
+			}
+		bound.clear();
+		localPort = -1;
+	}
+	
+	@Override
+	public String toString() {
+		return "rmi";
+	}
+}
@@ -0,0 +1,387 @@
+package com.fx360t.transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+
+/**
+ * Client side {@link MessageService} which partitions users across several message service nodes.<br>
+ * Every node gets a number of points on a hash ring, a user belongs to the node owning the first point
+ * after the hash of the user's name. Operations of a user go to its node, a message goes to the node of
+ * its receiver, where its sender is registered as a guest so that the node accepts it.<br>
+ * Handles of nodes are local to them, this service assigns its own handles to names and translates
+ * handles of received messages, so replies by handle work across nodes.<br>
+ * Every client routes users by its own ring and clients do not tell each other about nodes, so all clients 
+ * of a deployment must be given the same nodes. A node joins with {@link #addShard}, called on every client:
+ * only users whose hashes fall between the new points and their predecessors change their node. 
+ * The first client which sees such a user still registered on its old node moves it: the user is registered 
+ * on the new node, its pending messages are sent there and it is unregistered from the old node, so clients 
+ * joining later find it moved. A receiver waiting on the old node follows the user to the new one. 
+ * Users are found among the users known to the client, a user no client knows is not moved.
+ * @author Oleg
+ */
+public class ShardedMessageService implements MessageService<String> {
+	private static final Log LOG = Log.getLog(ShardedMessageService.class);
+	private static final int DEFAULT_POINTS = 64;
+
+	/**
+	 * Message service node and users registered there as senders only
+	 */
+	private static final class Shard {
+		final String id;
+		final MessageService<String> service;
+		final Set<String> guests = ConcurrentHashMap.newKeySet();
+
+		Shard(String id, MessageService<String> service) {
+			this.id = id;
+			this.service = service;
+		}
+	}
+
+	private final int pointsPerNode;
+	/**
+	 * Hash ring, points of nodes by their hashes, replaced when a node joins
+	 */
+	private volatile NavigableMap<Integer, Shard> ring = new TreeMap<>();
+	/**
+	 * Nodes by id in the order they joined, replaced when a node joins
+	 */
+	private volatile Map<String, Shard> shards = new LinkedHashMap<>();
+	private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+	private final AtomicInteger nextHandle = new AtomicInteger();
+
+	/**
+	 * Constructs a service over message services of nodes
+	 * @param nodes - message services by node id, i.e. address
+	 */
+	public ShardedMessageService(Map<String, MessageService<String>> nodes) {
+		this(nodes, DEFAULT_POINTS);
+	}
+
+	/**
+	 * Constructs a service over message services of nodes
+	 * @param nodes - message services by node id, i.e. address
+	 * @param pointsPerNode - number of points of every node on the hash ring
+	 */
+	public ShardedMessageService(Map<String, MessageService<String>> nodes, int pointsPerNode) {
+		if (pointsPerNode < 1)
+			throw new IllegalArgumentException("Node must have at least one point on the ring: " + pointsPerNode);
+		if (nodes.isEmpty())
+			throw new IllegalArgumentException("Message service needs at least one node");
+		this.pointsPerNode = pointsPerNode;
+		for (Map.Entry<String, MessageService<String>> node : nodes.entrySet()) {
+			Shard shard = new Shard(node.getKey(), node.getValue());
+			shards.put(shard.id, shard);
+			place(ring, shard);
+		}
+	}
+
+	private void place(NavigableMap<Integer, Shard> points, Shard shard) {
+		for (int point = 0; point < pointsPerNode; point++)
+			points.putIfAbsent(hash(shard.id + "#" + point), shard);
+	}
+
+	/**
+	 * Adds a node to the ring and moves users known to this service which it owns now, 
+	 * unless another client has moved them already
+	 * @param id - id of the node, i.e. its address
+	 * @param service - message service of the node
+	 * @throws RemoteException if users can not be moved, the node stays on the ring
+	 */
+	public synchronized void addShard(String id, MessageService<String> service) throws RemoteException {
+		if (shards.containsKey(id))
+			throw new IllegalArgumentException("Node " + id + " is already on the ring");
+		Shard added = new Shard(id, service);
+		NavigableMap<Integer, Shard> grown = new TreeMap<>(ring);
+		place(grown, added);
+		Map<String, Shard> moved = new LinkedHashMap<>();
+		for (String user : handles.keySet()) {
+			Shard previous = owner(user);
+			// senders only seen in messages are not registered on their node
+			if (owner(grown, user) == added && previous.service.getHandle(user) != Message.NO_HANDLE) {
+				// senders of the new node's users reach the moved user from now on
+				service.registerUser(user);
+				moved.put(user, previous);
+			}
+		}
+		Map<String, Shard> joined = new LinkedHashMap<>(shards);
+		joined.put(id, added);
+		shards = joined;
+		ring = grown;
+		for (Map.Entry<String, Shard> user : moved.entrySet())
+			move(user.getKey(), user.getValue(), added);
+	}
+
+	/**
+	 * Moves pending messages of a user to its new node and unregisters it from the old one,
+	 * which wakes up its receivers waiting there
+	 */
+	private void move(String user, Shard from, Shard to) throws RemoteException {
+		List<Message<String>> pending = new ArrayList<>();
+		Message<String> message;
+		while ((message = from.service.pollNextMessage(user, 0, TimeUnit.MILLISECONDS)) != null)
+			pending.add(message);
+		from.service.unregister(user);
+		from.guests.remove(user);
+		for (Message<String> moved : pending)
+			guest(to, moved.getSenderName());
+		if (!pending.isEmpty())
+			to.service.sendMessages(pending);
+		LOG.info("User {} is moved from {} to {}", user, from.id, to.id);
+	}
+
+	/**
+	 * Finds message services of nodes with a transport
+	 * @param transport - transport to look services up with
+	 * @param addresses - addresses of nodes as {@code host:port}
+	 * @throws IOException if a service can not be reached
+	 */
+	public static ShardedMessageService lookup(Transport transport, String... addresses) throws IOException {
+		Map<String, MessageService<String>> nodes = new LinkedHashMap<>();
+		for (String address : addresses)
+			nodes.put(address.trim(), transport.lookupMessageService(address.trim()));
+		return new ShardedMessageService(nodes);
+	}
+
+	/**
+	 * @return ids of nodes in the order they were added
+	 */
+	public Collection<String> getShards() {
+		return new ArrayList<>(shards.keySet());
+	}
+
+	/**
+	 * @return id of the node owning the user
+	 */
+	public String getShard(String user) {
+		return owner(user).id;
+	}
+
+	private Shard owner(String user) {
+		return owner(ring, user);
+	}
+
+	private static Shard owner(NavigableMap<Integer, Shard> points, String user) {
+		Map.Entry<Integer, Shard> point = points.ceilingEntry(hash(user));
+		return (point != null ? point : points.firstEntry()).getValue();
+	}
+
+	/**
+	 * FNV-1a hash of UTF-8 bytes with the final mix of MurmurHash3, spreads similar names over the ring
+	 */
+	private static int hash(String key) {
+		int hash = 0x811c9dc5;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	/**
+	 * Registers a sender on the node of a receiver if it belongs to another node
+	 */
+	private void guest(Shard shard, String sender) throws RemoteException {
+		if (sender == null || owner(sender) == shard || shard.guests.contains(sender))
+			return;
+		if (shard.service.registerUser(sender) != Message.NO_HANDLE)
+			shard.guests.add(sender);
+	}
+
+	private int handleOf(String user) {
+		return handles.computeIfAbsent(user, name -> {
+			int handle = nextHandle.getAndIncrement();
+			names.put(handle, name);
+			return handle;
+		});
+	}
+
+	private String nameOf(int handle) {
+		String name = names.get(handle);
+		if (name == null)
+			LOG.warn("User with handle {} is not registered", handle);
+		return name;
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		if (userNames != null)
+			for (String user : userNames)
+				if (user != null)
+					registerUser(user);
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		if (userName == null)
+			return Message.NO_HANDLE;
+		Shard shard = owner(userName);
+		if (shard.service.registerUser(userName) == Message.NO_HANDLE)
+			return Message.NO_HANDLE;
+		shard.guests.remove(userName);
+		return handleOf(userName);
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		if (userName == null)
+			return Message.NO_HANDLE;
+		Integer handle = handles.get(userName);
+		if (handle != null)
+			return handle;
+		return owner(userName).service.getHandle(userName) == Message.NO_HANDLE ? Message.NO_HANDLE
+				: handleOf(userName);
+	}
+
+	@Override
+	public void sendMessage(String message, String senderName, String receiverName) throws RemoteException {
+		if (receiverName == null) {
+			LOG.warn("User {} is not registered", receiverName);
+			return;
+		}
+		Shard shard = owner(receiverName);
+		guest(shard, senderName);
+		shard.service.sendMessage(message, senderName, receiverName);
+	}
+
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) throws RemoteException {
+		String sender = nameOf(senderHandle);
+		String receiver = nameOf(receiverHandle);
+		if (sender != null && receiver != null)
+			sendMessage(message, sender, receiver);
+	}
+
+	/**
+	 * Sends messages with one call per node, keeping the order of messages of every node
+	 */
+	@Override
+	public int sendMessages(List<Message<String>> messages) throws RemoteException {
+		if (messages == null)
+			return 0;
+		Map<Shard, List<Message<String>>> parts = new LinkedHashMap<>();
+		for (Message<String> message : messages)
+			if (message != null && message.getReceiverName() != null) {
+				Shard shard = owner(message.getReceiverName());
+				guest(shard, message.getSenderName());
+				parts.computeIfAbsent(shard, key -> new ArrayList<>()).add(message);
+			}
+		int accepted = 0;
+		for (Map.Entry<Shard, List<Message<String>>> part : parts.entrySet())
+			accepted += part.getKey().service.sendMessages(part.getValue());
+		return accepted;
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		if (userNames == null)
+			return;
+		for (String user : userNames) {
+			if (user == null)
+				continue;
+			owner(user).service.unregister(user);
+			for (Shard shard : shards.values())
+				if (shard.guests.remove(user))
+					shard.service.unregister(user);
+			Integer handle = handles.remove(user);
+			if (handle != null)
+				names.remove(handle, user);
+		}
+	}
+
+	@Override
+	public Message<String> getNextMessage(String recipientName) throws RemoteException {
+		if (recipientName == null)
+			return null;
+		for (;;) {
+			Shard shard = owner(recipientName);
+			Message<String> message = shard.service.getNextMessage(recipientName);
+			// the recipient is moved to a joined node
+			if (message != null || owner(recipientName) == shard)
+				return received(message);
+		}
+	}
+
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) throws RemoteException {
+		String recipient = nameOf(recipientHandle);
+		return recipient == null ? null : getNextMessage(recipient);
+	}
+
+	@Override
+	public Message<String> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException {
+		if (recipientName == null)
+			return null;
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (;;) {
+			Shard shard = owner(recipientName);
+			Message<String> message = shard.service.pollNextMessage(recipientName, 
+					Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			if (message != null || owner(recipientName) == shard)
+				return received(message);
+		}
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipientName, int maxMessages) throws RemoteException {
+		if (maxMessages < 1) {
+			LOG.warn("Can't drain less than one message");
+			return null;
+		}
+		if (recipientName == null)
+			return null;
+		List<Message<String>> messages;
+		for (;;) {
+			Shard shard = owner(recipientName);
+			messages = shard.service.drainMessages(recipientName, maxMessages);
+			if (messages != null || owner(recipientName) == shard)
+				break;
+		}
+		if (messages == null)
+			return null;
+		List<Message<String>> translated = new ArrayList<>(messages.size());
+		for (Message<String> message : messages)
+			translated.add(received(message));
+		return translated;
+	}
+
+	/**
+	 * Replaces handles of the node with handles of this service
+	 */
+	private Message<String> received(Message<String> message) {
+		if (message == null)
+			return null;
+		Message<String> translated = new Message<>(message.getMessageBody(), message.getSenderName(),
+				message.getReceiverName(), message.getSenderName() == null ? Message.NO_HANDLE
+						: handleOf(message.getSenderName()), handleOf(message.getReceiverName()));
+		translated.setEnqueueTime(message.getEnqueueTime());
+		message.release();
+		return translated;
+	}
+
+	@Override
+	public String toString() {
+		return "ShardedMessageService" + getShards();
+	}
+}
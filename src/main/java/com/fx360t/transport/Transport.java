@@ -0,0 +1,87 @@
+package com.fx360t.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessagePublisher;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.transport.nio.NioTransport;
+import com.fx360t.transport.shm.SharedMemoryTransport;
+
+/**
+ * Transport used to reach {@link MessageService} and {@link PlayerRegistrator} of a playground running on 
+ * another JVM and to let the playground call back remote {@link Player}s.<br>
+ * Server side binds the services to a port, client side looks them up by address {@code host:port} and 
+ * exports its players. Proxies returned by a transport implement the same interfaces as local objects, 
+ * so players and strategies do not depend on the transport in use.
+ * @author Oleg
+ */
+public interface Transport extends Closeable {
+	/**
+	 * Makes services available to remote clients
+	 * @param messageService - message service to be used by remote players
+	 * @param playGround - playground where remote players register
+	 * @param port - port to listen on
+	 * @throws IOException if services can not be bound
+	 */
+	void bind(MessageService<String> messageService, PlayerRegistrator playGround, int port) throws IOException;
+	/**
+	 * Finds a message service bound on another JVM
+	 * @param address - address of the server as {@code host:port}
+	 * @return proxy of the remote message service
+	 * @throws IOException if the service can not be reached
+	 */
+	MessageService<String> lookupMessageService(String address) throws IOException;
+	/**
+	 * Finds a playground bound on another JVM
+	 * @param address - address of the server as {@code host:port}
+	 * @return proxy of the remote playground
+	 * @throws IOException if the playground can not be reached
+	 */
+	PlayerRegistrator lookupPlayGround(String address) throws IOException;
+	/**
+	 * Makes a local player callable by a remote playground
+	 * @param player - local player
+	 * @return reference to be passed to the remote playground instead of the player
+	 * @throws RemoteException if the player can not be exported
+	 */
+	Player export(Player player) throws RemoteException;
+	/**
+	 * Stops accepting remote calls to an exported player
+	 * @param player - player passed to {@link #export}
+	 */
+	void unexport(Player player);
+	/**
+	 * Makes a local message listener callable by a remote message service
+	 * @param listener - local listener
+	 * @return reference to be passed to {@link MessagePublisher#subscribe} instead of the listener
+	 * @throws RemoteException if the listener can not be exported
+	 */
+	MessageListener<String> export(MessageListener<String> listener) throws RemoteException;
+	/**
+	 * Stops accepting remote calls to an exported listener
+	 * @param listener - listener passed to {@link #export}
+	 */
+	void unexport(MessageListener<String> listener);
+	
+	/**
+	 * Returns a transport by name: {@code rmi} (default when name is {@code null}), {@code nio} 
+	 * or {@code shm} for players on the same host
+	 * @param name - name of the transport
+	 * @return new transport
+	 * @throws IllegalArgumentException if name is unknown
+	 */
+	static Transport forName(String name) {
+		if (name == null || "rmi".equalsIgnoreCase(name))
+			return new RmiTransport();
+		if ("nio".equalsIgnoreCase(name))
+			return new NioTransport();
+		if ("shm".equalsIgnoreCase(name))
+			return new SharedMemoryTransport();
+		throw new IllegalArgumentException("Unknown transport: " + name);
+	}
+}
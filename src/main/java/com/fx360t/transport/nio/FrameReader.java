@@ -0,0 +1,179 @@
+package com.fx360t.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.fx360t.strategy.Message;
+
+/**
+ * Reads values of one received frame written by {@link FrameWriter}. Compressed strings are inflated
+ * if compression is agreed on the connection, all strings of a frame inflate to at most {@link Frames#MAX_FRAME} bytes.<br>
+ * Lengths and counts come from the peer, they are checked against the rest of the frame, which is not longer than
+ * {@link Frames#MAX_FRAME}, before anything is allocated. A frame not matching them throws {@link InvalidFrameException}.
+ * @author Oleg
+ */
+final class FrameReader {
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+	
+	private final ByteBuffer buffer;
+	/**
+	 * {@code true} if the peer may compress strings
+	 */
+	private final boolean compressed;
+	/**
+	 * Number of bytes inflated from compressed strings of the frame
+	 */
+	private int inflated;
+	
+	/**
+	 * @param buffer - frame without its length
+	 * @param compressed - {@code true} if compression is agreed with the peer
+	 */
+	FrameReader(ByteBuffer buffer, boolean compressed) {
+		this.buffer = buffer;
+		this.compressed = compressed;
+	}
+	
+	byte readByte() {
+		return buffer.get();
+	}
+	
+	boolean readBoolean() {
+		return buffer.get() != 0;
+	}
+	
+	int readInt() {
+		return buffer.getInt();
+	}
+	
+	long readLong() {
+		return buffer.getLong();
+	}
+	
+	String readString() {
+		int length = buffer.getInt();
+		if (length == Frames.COMPRESSED)
+			return new String(inflate(), StandardCharsets.UTF_8);
+		if (length < 0)
+			return null;
+		checkLength(length);
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+	
+	String[] readStrings() {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		// every string takes at least its length
+		checkCount(length, 4);
+		String[] values = new String[length];
+		for (int i = 0; i < length; i++)
+			values[i] = readString();
+		return values;
+	}
+	
+	/**
+	 * Reads a string written by {@link FrameWriter#writeString} as its UTF-8 bytes
+	 */
+	byte[] readBytes() {
+		int length = buffer.getInt();
+		if (length == Frames.COMPRESSED)
+			return inflate();
+		if (length < 0)
+			return null;
+		checkLength(length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Checks that a value of the given length fits into the rest of the frame
+	 */
+	private void checkLength(int length) {
+		if (length > buffer.remaining())
+			throw new InvalidFrameException("Value of " + length + " bytes is longer than the rest of the frame");
+	}
+	
+	/**
+	 * Checks that the given number of values, each at least {@code minSize} bytes long, fits into the rest of the frame
+	 */
+	private void checkCount(int count, int minSize) {
+		if (count > buffer.remaining() / minSize)
+			throw new InvalidFrameException(count + " values do not fit into the rest of the frame");
+	}
+	
+	/**
+	 * Reads a compressed string after its length
+	 * @return UTF-8 bytes of the string
+	 */
+	private byte[] inflate() {
+		if (!compressed)
+			throw new InvalidFrameException("Compressed string on a connection without compression");
+		int length = buffer.getInt();
+		int compressed = buffer.getInt();
+		if (length < 0 || compressed < 0 || compressed > buffer.remaining())
+			throw new InvalidFrameException("Invalid compressed string of " + compressed + " bytes");
+		// a small frame of many strings could inflate to gigabytes
+		if (length > Frames.MAX_FRAME - inflated)
+			throw new InvalidFrameException("Compressed strings of the frame inflate to more than " + Frames.MAX_FRAME + " bytes");
+		inflated += length;
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), compressed);
+		byte[] bytes = new byte[length];
+		try {
+			if (inflater.inflate(bytes) != length || !inflater.finished())
+				throw new InvalidFrameException("Compressed string is not " + length + " bytes long");
+		} catch (DataFormatException e) {
+			throw new InvalidFrameException("Corrupted compressed string: " + e.getMessage(), e);
+		}
+		buffer.position(buffer.position() + compressed);
+		return bytes;
+	}
+	
+	Message<String> readMessage() {
+		return readMessage(false);
+	}
+	
+	/**
+	 * @param opaque - keeps the body as bytes, see {@link Message#opaque}
+	 */
+	Message<String> readMessage(boolean opaque) {
+		if (!readBoolean())
+			return null;
+		byte[] encodedBody = opaque ? readBytes() : null;
+		String body = opaque ? null : readString();
+		String senderName = readString();
+		String receiverName = readString();
+		int senderHandle = readInt();
+		int receiverHandle = readInt();
+		return opaque ? Message.opaque(encodedBody, senderName, receiverName, senderHandle, receiverHandle)
+				: new Message<>(body, senderName, receiverName, senderHandle, receiverHandle);
+	}
+	
+	List<Message<String>> readMessages() {
+		return readMessages(false);
+	}
+	
+	/**
+	 * @param opaque - keeps bodies as bytes, see {@link Message#opaque}
+	 */
+	List<Message<String>> readMessages(boolean opaque) {
+		int size = buffer.getInt();
+		if (size < 0)
+			return null;
+		// every message takes at least its presence flag
+		checkCount(size, 1);
+		List<Message<String>> messages = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			messages.add(readMessage(opaque));
+		return messages;
+	}
+}
@@ -0,0 +1,165 @@
+package com.fx360t.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.fx360t.strategy.Message;
+
+/**
+ * Writes one frame of the {@link Frames protocol} into a growing buffer.<br>
+ * Strings are written as a length and UTF-8 bytes, length -1 stands for {@code null}. 
+ * Message bodies not shorter than the compression threshold of the connection are deflated
+ * if that makes them shorter.
+ * @author Oleg
+ */
+final class FrameWriter {
+	private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	
+	private ByteBuffer buffer = ByteBuffer.allocate(128);
+	final int callId;
+	/**
+	 * Minimum length of a compressed body, 0 if bodies are not compressed
+	 */
+	private final int compressThreshold;
+	
+	FrameWriter(byte type, int callId) {
+		this(type, callId, 0);
+	}
+	
+	FrameWriter(byte type, int callId, int compressThreshold) {
+		this.callId = callId;
+		this.compressThreshold = compressThreshold;
+		buffer.putInt(0);
+		buffer.put(type);
+		buffer.putInt(callId);
+	}
+	
+	private void ensure(int bytes) {
+		if (buffer.remaining() < bytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+	}
+	
+	FrameWriter writeByte(byte value) {
+		ensure(1);
+		buffer.put(value);
+		return this;
+	}
+	
+	FrameWriter writeBoolean(boolean value) {
+		return writeByte(value ? (byte) 1 : 0);
+	}
+	
+	FrameWriter writeInt(int value) {
+		ensure(4);
+		buffer.putInt(value);
+		return this;
+	}
+	
+	FrameWriter writeLong(long value) {
+		ensure(8);
+		buffer.putLong(value);
+		return this;
+	}
+	
+	FrameWriter writeString(String value) {
+		if (value == null)
+			return writeInt(-1);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(bytes.length);
+		ensure(bytes.length);
+		buffer.put(bytes);
+		return this;
+	}
+	
+	/**
+	 * Writes UTF-8 bytes of a string, the same way as {@link #writeString}
+	 */
+	FrameWriter writeBytes(byte[] value) {
+		if (value == null)
+			return writeInt(-1);
+		writeInt(value.length);
+		ensure(value.length);
+		buffer.put(value);
+		return this;
+	}
+	
+	/**
+	 * Writes a message body, compressed if it is long enough
+	 */
+	FrameWriter writeBody(String body) {
+		return body == null ? writeInt(-1) : writeBody(body.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Writes UTF-8 bytes of a message body, compressed if they are long enough
+	 */
+	FrameWriter writeBody(byte[] body) {
+		// a compressed body has 12 bytes of lengths
+		if (body == null || compressThreshold <= 0 || body.length < compressThreshold || body.length <= 12)
+			return writeBytes(body);
+		ensure(12 + body.length);
+		int start = buffer.position();
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(body);
+		deflater.finish();
+		// not finished within the original length means that compression does not pay off
+		int compressed = deflater.deflate(buffer.array(), buffer.arrayOffset() + start + 12, body.length - 12);
+		if (!deflater.finished() || compressed <= 0)
+			return writeBytes(body);
+		buffer.putInt(Frames.COMPRESSED).putInt(body.length).putInt(compressed);
+		buffer.position(start + 12 + compressed);
+		return this;
+	}
+	
+	FrameWriter writeStrings(String[] values) {
+		if (values == null)
+			return writeInt(-1);
+		writeInt(values.length);
+		for (String value : values)
+			writeString(value);
+		return this;
+	}
+	
+	FrameWriter writeMessage(Message<String> message) {
+		writeBoolean(message != null);
+		if (message != null) {
+			byte[] encodedBody = message.getEncodedBody();
+			if (encodedBody != null)
+				// opaque body goes out as it came in
+				writeBody(encodedBody);
+			else
+				writeBody(message.getMessageBody());
+			writeString(message.getSenderName());
+			writeString(message.getReceiverName());
+			writeInt(message.getSenderHandle());
+			writeInt(message.getReceiverHandle());
+		}
+		return this;
+	}
+	
+	FrameWriter writeMessages(List<Message<String>> messages) {
+		if (messages == null)
+			return writeInt(-1);
+		writeInt(messages.size());
+		for (Message<String> message : messages)
+			writeMessage(message);
+		return this;
+	}
+	
+	/**
+	 * Completes the frame with its length
+	 * @return buffer ready to be written to a channel
+	 */
+	ByteBuffer toBuffer() {
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+		return buffer;
+	}
+}
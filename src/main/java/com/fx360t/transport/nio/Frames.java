@@ -0,0 +1,68 @@
+package com.fx360t.transport.nio;
+
+/**
+ * Constants of the framed protocol of {@link NioTransport}.<br>
+ * Every frame is a 4 byte length followed by the frame type, the call id and the payload. 
+ * A request payload starts with the target and the method, followed by arguments. 
+ * A response payload is the return value, an error payload is the exception class name and message. 
+ * Calls to {@link #PLAYER} carry the id of the exported player after the method, calls to {@link #MESSAGE_LISTENER} 
+ * carry the name of the subscribed user.<br>
+ * A client starts a connection with a {@link #HELLO} call of the {@link #CONNECTION} target, which agrees 
+ * on the compression threshold of message bodies. Bodies not shorter than the threshold may be written as 
+ * length {@link #COMPRESSED}, the original length, the compressed length and deflated bytes.
+ * @author Oleg
+ */
+final class Frames {
+	/** Maximum length of a frame, longer frames are considered a protocol error */
+	static final int MAX_FRAME = 16 * 1024 * 1024;
+	/** Length of a compressed string */
+	static final int COMPRESSED = -2;
+	
+	static final byte REQUEST = 1;
+	static final byte RESPONSE = 2;
+	static final byte ERROR = 3;
+	
+	static final byte MESSAGE_SERVICE = 1;
+	static final byte PLAYGROUND = 2;
+	static final byte PLAYER = 3;
+	static final byte MESSAGE_LISTENER = 4;
+	static final byte CONNECTION = 5;
+	
+	// MessageService methods
+	static final byte REGISTER = 1;
+	static final byte REGISTER_USER = 2;
+	static final byte GET_HANDLE = 3;
+	static final byte SEND_BY_NAME = 4;
+	static final byte SEND_BY_HANDLE = 5;
+	static final byte SEND_MESSAGES = 6;
+	static final byte UNREGISTER = 7;
+	static final byte NEXT_BY_NAME = 8;
+	static final byte NEXT_BY_HANDLE = 9;
+	static final byte POLL_NEXT = 10;
+	static final byte DRAIN = 11;
+	static final byte SUBSCRIBE = 12;
+	static final byte UNSUBSCRIBE = 13;
+	static final byte CANCEL_RECEIVE = 14;
+	static final byte REDELIVER = 15;
+	
+	// PlayerRegistrator methods
+	static final byte REGISTER_PLAYER = 1;
+	static final byte UNREGISTER_PLAYER = 2;
+	
+	// Player methods
+	static final byte GET_IDENTITY = 1;
+	static final byte GET_NAME = 2;
+	static final byte PREPARE = 3;
+	static final byte WAIT_ALL_TURNS = 4;
+	static final byte START_TO_PLAY = 5;
+	static final byte GAME_OVER = 6;
+	
+	// MessageListener methods
+	static final byte ON_MESSAGES = 1;
+	
+	// Connection methods
+	static final byte HELLO = 1;
+	
+	private Frames() {
+	}
+}
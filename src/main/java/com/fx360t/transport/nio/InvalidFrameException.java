@@ -0,0 +1,18 @@
+package com.fx360t.transport.nio;
+
+/**
+ * Thrown by {@link FrameReader} when a received frame does not match the protocol, 
+ * the connection the frame came from is closed.
+ * @author Oleg
+ */
+final class InvalidFrameException extends IllegalStateException {
+	private static final long serialVersionUID = 1L;
+
+	InvalidFrameException(String message) {
+		super(message);
+	}
+
+	InvalidFrameException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,347 @@
+package com.fx360t.transport.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessageRejectedException;
+
+/**
+ * One connection of {@link NioTransport}, calls go in both directions.<br>
+ * Outgoing calls wait for the response frame with the same call id, incoming requests are passed to 
+ * the {@link RequestHandler}. Frames are written by the selector thread from a queue, so any thread may send.
+ * @author Oleg
+ */
+final class NioConnection implements NioLoop.Handler {
+	private static final Log LOG = Log.getLog(NioConnection.class);
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	
+	private final NioLoop loop;
+	private final SocketChannel channel;
+	private final RequestHandler handler;
+	private final String peer;
+	private SelectionKey key;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+	/**
+	 * {@code true} while the selector thread has frames to write
+	 */
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	private final Map<Integer, CompletableFuture<FrameReader>> calls = new ConcurrentHashMap<>();
+	private final AtomicInteger nextCallId = new AtomicInteger();
+	/**
+	 * Number of received requests not answered yet
+	 */
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private volatile boolean closed;
+	/**
+	 * Players reachable through this connection by id: exported local players on the client side,
+	 * proxies of remote players on the server side
+	 */
+	final Map<Integer, Player> players = new ConcurrentHashMap<>();
+	final AtomicInteger nextPlayerId = new AtomicInteger();
+	/**
+	 * Listeners of subscribed users by user name, on the client side
+	 */
+	final Map<String, MessageListener<String>> listeners = new ConcurrentHashMap<>();
+	/**
+	 * Receives of the peer waiting for a message by call id, on the server side. 
+	 * They are cancelled when the connection is closed.
+	 */
+	final Map<Integer, CompletableFuture<?>> receives = new ConcurrentHashMap<>();
+	/**
+	 * Compression threshold of message bodies agreed with the peer, 0 until it is agreed or if it is off
+	 */
+	volatile int compressThreshold;
+	
+	NioConnection(NioLoop loop, SocketChannel channel, RequestHandler handler) throws IOException {
+		this.loop = loop;
+		this.channel = channel;
+		this.handler = handler;
+		this.peer = String.valueOf(channel.getRemoteAddress());
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+	}
+	
+	/**
+	 * Registers the channel in the selector, called in the selector thread
+	 */
+	void register() throws IOException {
+		key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+	}
+	
+	/**
+	 * Starts a request frame
+	 */
+	FrameWriter request(byte target, byte method) {
+		return new FrameWriter(Frames.REQUEST, nextCallId.incrementAndGet(), compressThreshold)
+				.writeByte(target)
+				.writeByte(method);
+	}
+	
+	/**
+	 * Sends a request
+	 * @return future completed with the response or with the exception thrown by the remote side
+	 */
+	CompletableFuture<FrameReader> call(FrameWriter request) {
+		CompletableFuture<FrameReader> response = new CompletableFuture<>();
+		calls.put(request.callId, response);
+		if (!send(request.toBuffer()) && calls.remove(request.callId) != null)
+			response.completeExceptionally(closedException());
+		return response;
+	}
+	
+	/**
+	 * Sends a request and waits for the response
+	 * @throws RemoteException if the connection is closed or the remote side threw a checked exception
+	 */
+	FrameReader invoke(FrameWriter request) throws RemoteException {
+		return await(call(request));
+	}
+	
+	/**
+	 * Waits for the result of a call, the future is cancelled if the waiting thread is interrupted
+	 * @throws RemoteException if the connection is closed or the remote side threw a checked exception
+	 */
+	<V> V await(CompletableFuture<V> result) throws RemoteException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			result.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for a response from " + peer, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof RemoteException)
+				throw (RemoteException) cause;
+			throw new RemoteException(cause.getMessage(), cause);
+		}
+	}
+	
+	/**
+	 * Starts a response frame
+	 */
+	FrameWriter response(int callId) {
+		return new FrameWriter(Frames.RESPONSE, callId, compressThreshold);
+	}
+	
+	/**
+	 * Sends a response to a received request
+	 * @return {@code false} if the response is lost as the connection is closed
+	 */
+	boolean reply(FrameWriter response) {
+		// the frame is queued first, so a graceful close waits until it is written
+		boolean sent = send(response.toBuffer());
+		if (!sent)
+			LOG.debug("Response to {} is lost, connection is closed", peer);
+		activeRequests.decrementAndGet();
+		return sent;
+	}
+	
+	/**
+	 * Sends an exception as the response to a received request
+	 */
+	void replyError(int callId, Throwable error) {
+		reply(new FrameWriter(Frames.ERROR, callId)
+				.writeString(error.getClass().getName())
+				.writeString(error.getMessage()));
+	}
+	
+	/**
+	 * Queues a frame to be written by the selector thread
+	 * @return {@code false} if the connection is closed
+	 */
+	private boolean send(ByteBuffer frame) {
+		if (closed)
+			return false;
+		writeQueue.add(frame);
+		if (writeScheduled.compareAndSet(false, true))
+			loop.execute(this::flush);
+		return true;
+	}
+	
+	@Override
+	public void ready(SelectionKey key) throws IOException {
+		if (key.isReadable())
+			read();
+		if (key.isValid() && key.isWritable())
+			write();
+	}
+	
+	private void flush() {
+		try {
+			write();
+		} catch (IOException e) {
+			LOG.debug("Unable to write to {}: {}", peer, e.getMessage());
+			close();
+		}
+	}
+	
+	/**
+	 * Writes queued frames until the socket buffer is full, called in the selector thread
+	 */
+	private void write() throws IOException {
+		if (closed)
+			return;
+		do {
+			ByteBuffer frame;
+			while ((frame = writeQueue.peek()) != null) {
+				channel.write(frame);
+				if (frame.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				writeQueue.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			writeScheduled.set(false);
+			// a frame could be queued after the queue was seen empty
+		} while (!writeQueue.isEmpty() && writeScheduled.compareAndSet(false, true));
+	}
+	
+	/**
+	 * Reads available bytes and dispatches complete frames, called in the selector thread
+	 */
+	private void read() throws IOException {
+		if (channel.read(readBuffer) < 0)
+			throw new EOFException("Connection closed by " + peer);
+		readBuffer.flip();
+		while (readBuffer.remaining() >= 4) {
+			int length = readBuffer.getInt(readBuffer.position());
+			if (length < 5 || length > Frames.MAX_FRAME)
+				throw new IOException("Invalid frame length " + length + " from " + peer);
+			if (readBuffer.remaining() < 4 + length) {
+				if (readBuffer.capacity() < 4 + length) {
+					ByteBuffer grown = ByteBuffer.allocate(4 + length);
+					grown.put(readBuffer);
+					readBuffer = grown;
+					return;
+				}
+				break;
+			}
+			readBuffer.position(readBuffer.position() + 4);
+			byte[] frame = new byte[length];
+			readBuffer.get(frame);
+			dispatch(new FrameReader(ByteBuffer.wrap(frame), compressThreshold > 0));
+		}
+		readBuffer.compact();
+	}
+	
+	/**
+	 * Passes a request to the handler or a response to the waiting call
+	 * @throws IOException if a request does not match the protocol, the connection is closed then
+	 */
+	private void dispatch(FrameReader frame) throws IOException {
+		byte type = frame.readByte();
+		int callId = frame.readInt();
+		if (type == Frames.REQUEST) {
+			activeRequests.incrementAndGet();
+			try {
+				handler.request(this, callId, frame);
+			} catch (InvalidFrameException | BufferUnderflowException e) {
+				activeRequests.decrementAndGet();
+				LOG.warn("Invalid request from {}, connection is closed: {}", peer, e.toString());
+				throw new IOException("Invalid request from " + peer, e);
+			} catch (RuntimeException e) {
+				replyError(callId, e);
+			}
+			return;
+		}
+		CompletableFuture<FrameReader> response = calls.remove(callId);
+		if (response == null) {
+			LOG.warn("Unexpected response {} from {}", callId, peer);
+		} else if (type == Frames.RESPONSE) {
+			response.complete(frame);
+		} else {
+			try {
+				response.completeExceptionally(error(frame.readString(), frame.readString()));
+			} catch (RuntimeException e) {
+				// the caller fails as well, before the selector thread closes the connection
+				response.completeExceptionally(new RemoteException("Invalid error frame from " + peer, e));
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Recreates an exception thrown by the remote side
+	 */
+	private static Exception error(String type, String message) {
+		if (MessageRejectedException.class.getName().equals(type))
+			return new MessageRejectedException(message);
+		if (RemoteException.class.getName().equals(type))
+			return new RemoteException(message);
+		return new RemoteException(type + ": " + message);
+	}
+	
+	private RemoteException closedException() {
+		return new RemoteException("Connection to " + peer + " is closed");
+	}
+	
+	/**
+	 * Closes the connection when received requests are answered and queued frames are written, 
+	 * but not later than the timeout
+	 */
+	void closeGracefully(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		try {
+			while (!closed && (activeRequests.get() > 0 || writeScheduled.get()) && System.nanoTime() < deadline)
+				Thread.sleep(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		close();
+	}
+	
+	/**
+	 * Closes the connection, calls waiting for responses fail with {@link RemoteException}
+	 * and receives of the peer are cancelled
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOG.debug("Unable to close connection to {}: {}", peer, e.getMessage());
+		}
+		for (Integer callId : calls.keySet()) {
+			CompletableFuture<FrameReader> response = calls.remove(callId);
+			if (response != null)
+				response.completeExceptionally(closedException());
+		}
+		for (CompletableFuture<?> received : receives.values())
+			received.cancel(false);
+		players.clear();
+		listeners.clear();
+	}
+	
+	boolean isClosed() {
+		return closed;
+	}
+	
+	@Override
+	public String toString() {
+		return peer;
+	}
+}
@@ -0,0 +1,374 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.AsyncMessageReceiver;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessagePublisher;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.OpaqueMessageRouter;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessageCodec;
+
+/**
+ * Invokes local objects for requests received by {@link NioConnection}s.<br>
+ * Calls run in worker threads, so the selector thread never blocks. Waiting for a message does not hold 
+ * a worker when the message service is an {@link AsyncMessageReceiver}: the response is sent by the thread 
+ * which completes the receive, so thousands of remote players may wait at the same time. 
+ * If the message service is a {@link MessagePublisher}, clients may subscribe and get messages pushed 
+ * with calls to their listeners. With opaque bodies enabled in {@link MessageCodec} and an 
+ * {@link OpaqueMessageRouter} service, bodies of sent messages are passed on as received bytes.
+ * @author Oleg
+ */
+final class NioDispatcher implements RequestHandler {
+	/**
+	 * One remote call of a local object
+	 */
+	private interface Invocation {
+		void invoke(FrameWriter response) throws Exception;
+	}
+	
+	private final MessageService<String> messageService;
+	private final AsyncMessageReceiver<String> asyncReceiver;
+	private final MessagePublisher<String> publisher;
+	/**
+	 * Message service routing encoded bodies, {@code null} unless opaque bodies are enabled
+	 */
+	private final OpaqueMessageRouter router;
+	private final PlayerRegistrator playGround;
+	private final Executor workers;
+	private final ScheduledExecutorService timer;
+	/**
+	 * Compression threshold of message bodies of this side, 0 if compression is off
+	 */
+	private final int compressThreshold;
+	
+	/**
+	 * @param messageService - message service to call or {@code null} if it is not served
+	 * @param playGround - playground to call or {@code null} if it is not served
+	 * @param workers - executor of calls
+	 * @param timer - executor completing timed receives
+	 * @param compressThreshold - minimum length of compressed message bodies, 0 to turn compression off
+	 */
+	@SuppressWarnings("unchecked")
+	NioDispatcher(MessageService<String> messageService, PlayerRegistrator playGround, 
+			Executor workers, ScheduledExecutorService timer, int compressThreshold) {
+		this.messageService = messageService;
+		this.asyncReceiver = messageService instanceof AsyncMessageReceiver 
+				? (AsyncMessageReceiver<String>) messageService : null;
+		this.publisher = messageService instanceof MessagePublisher 
+				? (MessagePublisher<String>) messageService : null;
+		this.router = MessageCodec.isOpaqueBodies() && messageService instanceof OpaqueMessageRouter
+				? (OpaqueMessageRouter) messageService : null;
+		this.playGround = playGround;
+		this.workers = workers;
+		this.timer = timer;
+		this.compressThreshold = compressThreshold;
+	}
+
+	@Override
+	public void request(NioConnection connection, int callId, FrameReader request) {
+		byte target = request.readByte();
+		byte method = request.readByte();
+		if (target == Frames.MESSAGE_SERVICE && messageService != null)
+			messageService(connection, callId, method, request);
+		else if (target == Frames.PLAYGROUND && playGround != null)
+			playGround(connection, callId, method, request);
+		else if (target == Frames.PLAYER)
+			player(connection, callId, method, request);
+		else if (target == Frames.MESSAGE_LISTENER && method == Frames.ON_MESSAGES)
+			listener(connection, callId, request);
+		else if (target == Frames.CONNECTION && method == Frames.HELLO)
+			hello(connection, callId, request);
+		else
+			connection.replyError(callId, new RemoteException("No service " + target + " at " + connection));
+	}
+	
+	private void messageService(NioConnection connection, int callId, byte method, FrameReader request) {
+		switch (method) {
+		case Frames.REGISTER: {
+			String[] users = request.readStrings();
+			execute(connection, callId, response -> messageService.register(users));
+			break;
+		}
+		case Frames.REGISTER_USER: {
+			String user = request.readString();
+			execute(connection, callId, response -> response.writeInt(messageService.registerUser(user)));
+			break;
+		}
+		case Frames.GET_HANDLE: {
+			String user = request.readString();
+			execute(connection, callId, response -> response.writeInt(messageService.getHandle(user)));
+			break;
+		}
+		case Frames.SEND_BY_NAME: {
+			if (router != null) {
+				byte[] body = request.readBytes();
+				String sender = request.readString();
+				String receiver = request.readString();
+				execute(connection, callId, response -> router.sendEncoded(body, sender, receiver));
+				break;
+			}
+			String body = request.readString();
+			String sender = request.readString();
+			String receiver = request.readString();
+			execute(connection, callId, response -> messageService.sendMessage(body, sender, receiver));
+			break;
+		}
+		case Frames.SEND_BY_HANDLE: {
+			if (router != null) {
+				byte[] body = request.readBytes();
+				int sender = request.readInt();
+				int receiver = request.readInt();
+				execute(connection, callId, response -> router.sendEncoded(body, sender, receiver));
+				break;
+			}
+			String body = request.readString();
+			int sender = request.readInt();
+			int receiver = request.readInt();
+			execute(connection, callId, response -> messageService.sendMessage(body, sender, receiver));
+			break;
+		}
+		case Frames.SEND_MESSAGES: {
+			List<Message<String>> messages = request.readMessages(router != null);
+			execute(connection, callId, response -> response.writeInt(messageService.sendMessages(messages)));
+			break;
+		}
+		case Frames.UNREGISTER: {
+			String[] users = request.readStrings();
+			execute(connection, callId, response -> messageService.unregister(users));
+			break;
+		}
+		case Frames.NEXT_BY_NAME: {
+			String recipient = request.readString();
+			if (asyncReceiver != null)
+				replyWhenReceived(connection, callId, asyncReceiver.receiveAsync(recipient));
+			else
+				execute(connection, callId, response -> writeReceived(response, messageService.getNextMessage(recipient)));
+			break;
+		}
+		case Frames.NEXT_BY_HANDLE: {
+			int recipient = request.readInt();
+			if (asyncReceiver != null)
+				replyWhenReceived(connection, callId, asyncReceiver.receiveAsync(recipient));
+			else
+				execute(connection, callId, response -> writeReceived(response, messageService.getNextMessage(recipient)));
+			break;
+		}
+		case Frames.POLL_NEXT: {
+			String recipient = request.readString();
+			long timeout = request.readLong();
+			if (asyncReceiver != null) {
+				CompletableFuture<Message<String>> received = asyncReceiver.receiveAsync(recipient);
+				if (!received.isDone())
+					// completed receive withdraws the request from the mailbox
+					timer.schedule(() -> received.complete(null), timeout, TimeUnit.NANOSECONDS);
+				replyWhenReceived(connection, callId, received);
+			} else
+				execute(connection, callId, response -> writeReceived(response, 
+						messageService.pollNextMessage(recipient, timeout, TimeUnit.NANOSECONDS)));
+			break;
+		}
+		case Frames.DRAIN: {
+			String recipient = request.readString();
+			int maxMessages = request.readInt();
+			if (asyncReceiver != null)
+				replyWhenReceived(connection, callId, asyncReceiver.drainAsync(recipient, maxMessages), 
+						FrameWriter::writeMessages, Function.identity());
+			else
+				execute(connection, callId, response -> {
+					List<Message<String>> messages = messageService.drainMessages(recipient, maxMessages);
+					response.writeMessages(messages);
+					if (messages != null)
+						messages.forEach(Message::release);
+				});
+			break;
+		}
+		case Frames.CANCEL_RECEIVE: {
+			CompletableFuture<?> received = connection.receives.get(request.readInt());
+			if (received != null)
+				received.cancel(false);
+			connection.reply(connection.response(callId));
+			break;
+		}
+		case Frames.REDELIVER: {
+			List<Message<String>> messages = request.readMessages(router != null);
+			if (asyncReceiver == null)
+				connection.replyError(callId, new RemoteException("Message service does not redeliver messages"));
+			else
+				execute(connection, callId, response -> asyncReceiver.redeliver(messages));
+			break;
+		}
+		case Frames.SUBSCRIBE: {
+			String recipient = request.readString();
+			if (publisher == null)
+				connection.replyError(callId, new RemoteException("Message service does not push messages"));
+			else
+				execute(connection, callId, response -> publisher.subscribe(recipient, new NioListenerProxy(connection, recipient)));
+			break;
+		}
+		case Frames.UNSUBSCRIBE: {
+			String recipient = request.readString();
+			if (publisher == null)
+				connection.replyError(callId, new RemoteException("Message service does not push messages"));
+			else
+				execute(connection, callId, response -> publisher.unsubscribe(recipient));
+			break;
+		}
+		default:
+			unknownMethod(connection, callId, method);
+		}
+	}
+	
+	/**
+	 * Agrees on compression with a client: bodies are compressed if both sides allow it,
+	 * from the greater of their thresholds
+	 */
+	private void hello(NioConnection connection, int callId, FrameReader request) {
+		int requested = request.readInt();
+		int agreed = requested > 0 && compressThreshold > 0 ? Math.max(requested, compressThreshold) : 0;
+		FrameWriter response = connection.response(callId).writeInt(agreed);
+		// set after the response is started, so the response itself is readable by any client
+		connection.compressThreshold = agreed;
+		connection.reply(response);
+	}
+	
+	private void listener(NioConnection connection, int callId, FrameReader request) {
+		String recipient = request.readString();
+		List<Message<String>> messages = request.readMessages();
+		MessageListener<String> listener = connection.listeners.get(recipient);
+		if (listener == null)
+			connection.replyError(callId, new RemoteException("No listener of " + recipient));
+		else
+			execute(connection, callId, response -> listener.onMessages(messages));
+	}
+	
+	private void playGround(NioConnection connection, int callId, byte method, FrameReader request) {
+		switch (method) {
+		case Frames.REGISTER_PLAYER: {
+			int id = request.readInt();
+			String identity = request.readString();
+			String name = request.readString();
+			execute(connection, callId, response -> {
+				NioPlayerProxy player = new NioPlayerProxy(connection, id, identity, name);
+				connection.players.put(id, player);
+				playGround.registerPlayer(player);
+			});
+			break;
+		}
+		case Frames.UNREGISTER_PLAYER: {
+			int id = request.readInt();
+			execute(connection, callId, response -> {
+				Player player = connection.players.remove(id);
+				if (player != null)
+					playGround.unregisterPlayer(player);
+			});
+			break;
+		}
+		default:
+			unknownMethod(connection, callId, method);
+		}
+	}
+	
+	private void player(NioConnection connection, int callId, byte method, FrameReader request) {
+		int id = request.readInt();
+		Player player = connection.players.get(id);
+		if (player == null) {
+			connection.replyError(callId, new RemoteException("Player " + id + " is not exported"));
+			return;
+		}
+		switch (method) {
+		case Frames.GET_IDENTITY:
+			execute(connection, callId, response -> response.writeString(player.getIdentity()));
+			break;
+		case Frames.GET_NAME:
+			execute(connection, callId, response -> response.writeString(player.getName()));
+			break;
+		case Frames.PREPARE:
+			execute(connection, callId, response -> player.prepare());
+			break;
+		case Frames.WAIT_ALL_TURNS:
+			execute(connection, callId, response -> player.waitAllTurnsCompleted());
+			break;
+		case Frames.START_TO_PLAY: {
+			boolean initiator = request.readBoolean();
+			PlayerReference other = new PlayerReference(request.readString(), request.readString());
+			execute(connection, callId, response -> player.startToPlay(initiator, other));
+			break;
+		}
+		case Frames.GAME_OVER:
+			execute(connection, callId, response -> player.gameOver());
+			break;
+		default:
+			unknownMethod(connection, callId, method);
+		}
+	}
+	
+	private void execute(NioConnection connection, int callId, Invocation invocation) {
+		workers.execute(() -> {
+			FrameWriter response = connection.response(callId);
+			try {
+				invocation.invoke(response);
+			} catch (Throwable e) {
+				connection.replyError(callId, e);
+				return;
+			}
+			connection.reply(response);
+		});
+	}
+	
+	private void replyWhenReceived(NioConnection connection, int callId, CompletableFuture<Message<String>> received) {
+		replyWhenReceived(connection, callId, received, FrameWriter::writeMessage, Collections::singletonList);
+	}
+	
+	/**
+	 * Sends the messages of a receive when it is completed. The receive is cancelled if the connection
+	 * is closed or the client cancels it, messages which can not be sent are redelivered to their mailbox.
+	 * @param writer - writes the result to the response
+	 * @param messages - messages of a result which is not {@code null}
+	 */
+	private <R> void replyWhenReceived(NioConnection connection, int callId, CompletableFuture<R> received,
+			BiConsumer<FrameWriter, R> writer, Function<R, List<Message<String>>> messages) {
+		connection.receives.put(callId, received);
+		// the connection could be closed before the receive was added
+		if (connection.isClosed())
+			received.cancel(false);
+		received.whenComplete((result, error) -> {
+			connection.receives.remove(callId, received);
+			if (error != null) {
+				connection.replyError(callId, error);
+				return;
+			}
+			FrameWriter response = connection.response(callId);
+			writer.accept(response, result);
+			List<Message<String>> taken = result == null ? Collections.emptyList() : messages.apply(result);
+			if (connection.reply(response))
+				taken.forEach(Message::release);
+			else
+				asyncReceiver.redeliver(taken);
+		});
+	}
+	
+	/**
+	 * Writes a received message, which is released as only its copy goes to the remote side
+	 */
+	private static void writeReceived(FrameWriter response, Message<String> message) {
+		response.writeMessage(message);
+		if (message != null)
+			message.release();
+	}
+	
+	private static void unknownMethod(NioConnection connection, int callId, byte method) {
+		connection.replyError(callId, new RemoteException("Unknown method " + method));
+	}
+}
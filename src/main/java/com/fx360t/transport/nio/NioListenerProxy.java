@@ -0,0 +1,37 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+import com.fx360t.service.MessageListener;
+import com.fx360t.strategy.Message;
+
+/**
+ * Server side proxy of a {@link MessageListener} subscribed by a client of {@link NioTransport}.<br>
+ * Pushed messages are released once the client got them, as only their copies are kept there.
+ * @author Oleg
+ */
+final class NioListenerProxy implements MessageListener<String> {
+	private final NioConnection connection;
+	private final String recipient;
+	
+	NioListenerProxy(NioConnection connection, String recipient) {
+		this.connection = connection;
+		this.recipient = recipient;
+	}
+
+	@Override
+	public void onMessages(List<Message<String>> messages) throws RemoteException {
+		FrameWriter request = connection.request(Frames.MESSAGE_LISTENER, Frames.ON_MESSAGES)
+				.writeString(recipient)
+				.writeMessages(messages);
+		connection.invoke(request);
+		// messages of a failed call are pushed again
+		messages.forEach(Message::release);
+	}
+	
+	@Override
+	public String toString() {
+		return recipient + "@" + connection;
+	}
+}
@@ -0,0 +1,111 @@
+package com.fx360t.transport.nio;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.fx360t.log.Log;
+
+/**
+ * Selector thread of {@link NioTransport}.<br>
+ * One thread serves all channels of the transport: it accepts connections, reads frames and writes queued frames.
+ * Other threads never touch selection keys, they pass tasks to the loop with {@link #execute}.
+ * @author Oleg
+ */
+final class NioLoop implements Runnable {
+	private static final Log LOG = Log.getLog(NioLoop.class);
+	
+	/**
+	 * Object attached to a selection key
+	 */
+	interface Handler {
+		/**
+		 * Handles ready operations of the key, called in the loop thread
+		 * @throws IOException if the channel failed, then the handler is closed, 
+		 * the handler is closed on a {@link RuntimeException} as well
+		 */
+		void ready(SelectionKey key) throws IOException;
+		void close();
+	}
+	
+	final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final Thread thread;
+	private volatile boolean running = true;
+	
+	NioLoop() throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, "nio-selector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Runs a task in the loop thread
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		if (Thread.currentThread() != thread)
+			selector.wakeup();
+	}
+	
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				// tasks added by this thread while handling keys did not wake the selector up
+				if (tasks.isEmpty())
+					selector.select();
+				else
+					selector.selectNow();
+				Runnable task;
+				while ((task = tasks.poll()) != null)
+					runTask(task);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Handler handler = (Handler) key.attachment();
+					try {
+						if (key.isValid())
+							handler.ready(key);
+					} catch (IOException | CancelledKeyException e) {
+						LOG.debug("Channel is closed: {}", e.getMessage());
+						handler.close();
+					} catch (RuntimeException e) {
+						// a broken channel must not stop the thread serving all other channels
+						LOG.error("Channel failed and is closed", e);
+						handler.close();
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("Selector failed", e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOG.error("Unable to close selector", e);
+		}
+	}
+	
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			LOG.error("Task failed in selector thread", e);
+		}
+	}
+	
+	/**
+	 * Stops the loop and closes the selector
+	 */
+	void close() {
+		running = false;
+		selector.wakeup();
+	}
+}
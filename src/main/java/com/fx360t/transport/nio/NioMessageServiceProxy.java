@@ -0,0 +1,163 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.fx360t.service.AsyncMessageReceiver;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessagePublisher;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+
+/**
+ * Client side proxy of a {@link MessageService} served by {@link NioTransport}.<br>
+ * Blocking methods wait for the response in the calling thread, asynchronous receive returns 
+ * the future of the call and holds no thread while waiting. A cancelled receive is withdrawn on the server
+ * and a message which was already sent for it is given back to the server. Listeners of subscribed users are kept 
+ * by the connection and called by the server with pushed messages.
+ * @author Oleg
+ */
+final class NioMessageServiceProxy implements MessageService<String>, AsyncMessageReceiver<String>, MessagePublisher<String> {
+	private final NioConnection connection;
+	
+	NioMessageServiceProxy(NioConnection connection) {
+		this.connection = connection;
+	}
+	
+	private FrameWriter request(byte method) {
+		return connection.request(Frames.MESSAGE_SERVICE, method);
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		connection.invoke(request(Frames.REGISTER).writeStrings(userNames));
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		return connection.invoke(request(Frames.REGISTER_USER).writeString(userName)).readInt();
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		return connection.invoke(request(Frames.GET_HANDLE).writeString(userName)).readInt();
+	}
+
+	@Override
+	public void sendMessage(String message, String senderName, String receiverName) throws RemoteException {
+		connection.invoke(request(Frames.SEND_BY_NAME).writeBody(message).writeString(senderName).writeString(receiverName));
+	}
+
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) throws RemoteException {
+		connection.invoke(request(Frames.SEND_BY_HANDLE).writeBody(message).writeInt(senderHandle).writeInt(receiverHandle));
+	}
+
+	@Override
+	public int sendMessages(List<Message<String>> messages) throws RemoteException {
+		return connection.invoke(request(Frames.SEND_MESSAGES).writeMessages(messages)).readInt();
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		connection.invoke(request(Frames.UNREGISTER).writeStrings(userNames));
+	}
+
+	@Override
+	public Message<String> getNextMessage(String recipientName) throws RemoteException {
+		return connection.await(receiveAsync(recipientName));
+	}
+
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) throws RemoteException {
+		return connection.await(receiveAsync(recipientHandle));
+	}
+
+	@Override
+	public Message<String> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException {
+		return connection.invoke(request(Frames.POLL_NEXT).writeString(recipientName).writeLong(unit.toNanos(timeout)))
+				.readMessage();
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipientName, int maxMessages) throws RemoteException {
+		return connection.await(drainAsync(recipientName, maxMessages));
+	}
+
+	@Override
+	public CompletableFuture<Message<String>> receiveAsync(String recipientName) {
+		return receive(request(Frames.NEXT_BY_NAME).writeString(recipientName));
+	}
+
+	@Override
+	public CompletableFuture<Message<String>> receiveAsync(int recipientHandle) {
+		return receive(request(Frames.NEXT_BY_HANDLE).writeInt(recipientHandle));
+	}
+	
+	@Override
+	public CompletableFuture<List<Message<String>>> drainAsync(String recipientName, int maxMessages) {
+		return receive(request(Frames.DRAIN).writeString(recipientName).writeInt(maxMessages), 
+				FrameReader::readMessages, Function.identity());
+	}
+	
+	private CompletableFuture<Message<String>> receive(FrameWriter request) {
+		return receive(request, FrameReader::readMessage, Collections::singletonList);
+	}
+	
+	/**
+	 * Sends a receive request, cancelling the returned future cancels the request on the server
+	 * @param reader - reads the result from the response
+	 * @param messages - messages of a result which is not {@code null}
+	 */
+	private <R> CompletableFuture<R> receive(FrameWriter request, Function<FrameReader, R> reader, 
+			Function<R, List<Message<String>>> messages) {
+		int callId = request.callId;
+		CompletableFuture<R> received = new CompletableFuture<>();
+		connection.call(request).whenComplete((response, error) -> {
+			if (error != null) {
+				received.completeExceptionally(error);
+				return;
+			}
+			R result = reader.apply(response);
+			if (!received.complete(result) && result != null)
+				// cancelled after the server had sent the messages
+				redeliver(messages.apply(result));
+		});
+		received.whenComplete((result, error) -> {
+			if (received.isCancelled())
+				connection.call(request(Frames.CANCEL_RECEIVE).writeInt(callId));
+		});
+		return received;
+	}
+	
+	@Override
+	public void redeliver(List<Message<String>> messages) {
+		connection.call(request(Frames.REDELIVER).writeMessages(messages));
+	}
+	
+	@Override
+	public void subscribe(String recipientName, MessageListener<String> listener) throws RemoteException {
+		connection.listeners.put(recipientName, listener);
+		try {
+			connection.invoke(request(Frames.SUBSCRIBE).writeString(recipientName));
+		} catch (RemoteException | RuntimeException e) {
+			connection.listeners.remove(recipientName, listener);
+			throw e;
+		}
+	}
+
+	@Override
+	public void unsubscribe(String recipientName) throws RemoteException {
+		connection.invoke(request(Frames.UNSUBSCRIBE).writeString(recipientName));
+		connection.listeners.remove(recipientName);
+	}
+	
+	@Override
+	public String toString() {
+		return "MessageService@" + connection;
+	}
+}
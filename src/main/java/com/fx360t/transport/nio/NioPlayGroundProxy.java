@@ -0,0 +1,65 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+import java.util.Map;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+import com.fx360t.service.PlayerRegistrator;
+
+/**
+ * Client side proxy of a {@link PlayerRegistrator} served by {@link NioTransport}.<br>
+ * A registered player is exported through the connection, so the playground can call it back.
+ * @author Oleg
+ */
+final class NioPlayGroundProxy implements PlayerRegistrator {
+	private static final Log LOG = Log.getLog(NioPlayGroundProxy.class);
+	private final NioConnection connection;
+	
+	NioPlayGroundProxy(NioConnection connection) {
+		this.connection = connection;
+	}
+
+	@Override
+	public void registerPlayer(Player player) throws RemoteException {
+		if (player == null) {
+			LOG.warn("Can't register NULL player.");
+			return;
+		}
+		int id = idOf(player);
+		if (id < 0) {
+			id = connection.nextPlayerId.incrementAndGet();
+			connection.players.put(id, player);
+		}
+		connection.invoke(connection.request(Frames.PLAYGROUND, Frames.REGISTER_PLAYER)
+				.writeInt(id)
+				.writeString(player.getIdentity())
+				.writeString(player.getName()));
+	}
+
+	@Override
+	public void unregisterPlayer(Player player) throws RemoteException {
+		int id = idOf(player);
+		if (id < 0) {
+			LOG.warn("Can't unregister player {} as it is not registered", player);
+			return;
+		}
+		connection.invoke(connection.request(Frames.PLAYGROUND, Frames.UNREGISTER_PLAYER).writeInt(id));
+		connection.players.remove(id);
+	}
+	
+	/**
+	 * @return id of the exported player or -1 if it is not exported
+	 */
+	private int idOf(Player player) {
+		for (Map.Entry<Integer, Player> entry : connection.players.entrySet())
+			if (entry.getValue() == player)
+				return entry.getKey();
+		return -1;
+	}
+	
+	@Override
+	public String toString() {
+		return "PlayGround@" + connection;
+	}
+}
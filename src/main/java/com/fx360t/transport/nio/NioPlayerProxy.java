@@ -0,0 +1,66 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+
+import com.fx360t.player.Player;
+
+/**
+ * Server side proxy of a {@link Player} exported by a client of {@link NioTransport}.<br>
+ * Identity and name are sent at registration, other methods are called over the connection.
+ * @author Oleg
+ */
+final class NioPlayerProxy implements Player {
+	private final NioConnection connection;
+	private final int id;
+	private final String identity;
+	private final String name;
+	
+	NioPlayerProxy(NioConnection connection, int id, String identity, String name) {
+		this.connection = connection;
+		this.id = id;
+		this.identity = identity;
+		this.name = name;
+	}
+	
+	private FrameWriter request(byte method) {
+		return connection.request(Frames.PLAYER, method).writeInt(id);
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void prepare() throws RemoteException {
+		connection.invoke(request(Frames.PREPARE));
+	}
+
+	@Override
+	public void waitAllTurnsCompleted() throws RemoteException {
+		connection.invoke(request(Frames.WAIT_ALL_TURNS));
+	}
+
+	@Override
+	public void startToPlay(boolean initiator, Player other) throws RemoteException {
+		connection.invoke(request(Frames.START_TO_PLAY)
+				.writeBoolean(initiator)
+				.writeString(other.getIdentity())
+				.writeString(other.getName()));
+	}
+
+	@Override
+	public void gameOver() throws RemoteException {
+		connection.invoke(request(Frames.GAME_OVER));
+	}
+	
+	@Override
+	public String toString() {
+		return name + "@" + connection;
+	}
+}
@@ -0,0 +1,243 @@
+package com.fx360t.transport.nio;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fx360t.log.Log;
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.transport.Transport;
+
+/**
+ * {@link Transport} over non-blocking TCP with a length-prefixed binary protocol, see {@link Frames}.<br>
+ * One selector thread serves all connections of the transport. Calls of local objects run in a pool of 
+ * worker threads, receiving a message does not hold a thread on the server. Both sides may call each other 
+ * over one connection: clients call the message service and the playground, the playground calls back 
+ * players exported by clients. One connection is opened per server address.<br>
+ * Long message bodies are compressed on connections where both sides agree to it.
+ * @author Oleg
+ */
+public class NioTransport implements Transport {
+	private static final Log LOG = Log.getLog(NioTransport.class);
+	/**
+	 * Time to wait for answering received calls when the transport is closed
+	 */
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+	
+	private static final int DEFAULT_COMPRESS_THRESHOLD = 1024;
+	
+	private NioLoop loop;
+	private final ExecutorService workers = Executors.newCachedThreadPool(daemonThreads("nio-worker"));
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("nio-timer"));
+	/**
+	 * Minimum length of message bodies compressed on connections of this transport, 0 if compression is off
+	 */
+	private final int compressThreshold;
+	private final NioDispatcher clientDispatcher;
+	/**
+	 * Opened and accepted connections by peer address
+	 */
+	final Map<String, NioConnection> connections = new ConcurrentHashMap<>();
+	private ServerSocketChannel server;
+	
+	/**
+	 * Creates a transport with compression of message bodies configured by system property 
+	 * {@code nio.compress.threshold}: minimum length of a compressed body in bytes, 
+	 * {@value #DEFAULT_COMPRESS_THRESHOLD} by default, 0 turns compression off
+	 */
+	public NioTransport() {
+		this(Integer.getInteger("nio.compress.threshold", DEFAULT_COMPRESS_THRESHOLD));
+	}
+	
+	/**
+	 * Creates a transport compressing long message bodies.<br>
+	 * Compression is agreed per connection: bodies are compressed only if both sides allow it, 
+	 * starting from the greater of the thresholds. Messages passed within a JVM are never compressed.
+	 * @param compressThreshold - minimum length of a compressed body in bytes, 0 or negative to turn compression off
+	 */
+	public NioTransport(int compressThreshold) {
+		this.compressThreshold = Math.max(0, compressThreshold);
+		this.clientDispatcher = new NioDispatcher(null, null, workers, timer, this.compressThreshold);
+	}
+	
+	private static ThreadFactory daemonThreads(String name) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	
+	private synchronized NioLoop loop() throws IOException {
+		if (loop == null)
+			loop = new NioLoop();
+		return loop;
+	}
+
+	@Override
+	public synchronized void bind(MessageService<String> messageService, PlayerRegistrator playGround, int port) 
+			throws IOException {
+		if (server != null)
+			throw new IOException("Transport is already bound to " + server.getLocalAddress());
+		NioLoop loop = loop();
+		NioDispatcher dispatcher = new NioDispatcher(messageService, playGround, workers, timer, compressThreshold);
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		ServerSocketChannel channel = server;
+		NioLoop.Handler acceptor = new NioLoop.Handler() {
+			@Override
+			public void ready(SelectionKey key) throws IOException {
+				SocketChannel accepted;
+				connections.values().removeIf(NioConnection::isClosed);
+				while ((accepted = channel.accept()) != null) {
+					NioConnection connection = new NioConnection(loop, accepted, dispatcher);
+					connection.register();
+					connections.put(connection.toString(), connection);
+					LOG.info("Accepted connection from {}", connection);
+				}
+			}
+
+			@Override
+			public void close() {
+				LOG.warn("Server channel is closed");
+			}
+		};
+		loop.execute(() -> {
+			try {
+				channel.register(loop.selector, SelectionKey.OP_ACCEPT, acceptor);
+			} catch (IOException e) {
+				LOG.error("Unable to accept connections", e);
+			}
+		});
+	}
+	
+	/**
+	 * @return local port the transport is bound to or -1 if it is not bound
+	 */
+	public synchronized int getLocalPort() {
+		return server == null ? -1 : server.socket().getLocalPort();
+	}
+
+	@Override
+	public MessageService<String> lookupMessageService(String address) throws IOException {
+		return new NioMessageServiceProxy(connect(address));
+	}
+
+	@Override
+	public PlayerRegistrator lookupPlayGround(String address) throws IOException {
+		return new NioPlayGroundProxy(connect(address));
+	}
+	
+	/**
+	 * Returns the connection to the address, opens it if there is no open one
+	 */
+	private synchronized NioConnection connect(String address) throws IOException {
+		NioConnection connection = connections.get(address);
+		if (connection != null && !connection.isClosed())
+			return connection;
+		int colon = address.lastIndexOf(':');
+		if (colon < 0)
+			throw new IOException("Address must be host:port, not " + address);
+		String host = address.substring(0, colon);
+		int port = Integer.parseInt(address.substring(colon + 1));
+		NioLoop loop = loop();
+		NioConnection opened = new NioConnection(loop, SocketChannel.open(new InetSocketAddress(host, port)), clientDispatcher);
+		loop.execute(() -> {
+			try {
+				opened.register();
+			} catch (IOException e) {
+				LOG.error("Unable to register connection to {}", address, e);
+				opened.close();
+			}
+		});
+		connections.put(address, opened);
+		hello(opened);
+		return opened;
+	}
+
+	/**
+	 * Agrees on compression of message bodies with the server, 
+	 * without compression if the server does not know the call
+	 */
+	private void hello(NioConnection connection) throws IOException {
+		if (compressThreshold == 0)
+			return;
+		try {
+			connection.compressThreshold = connection.invoke(
+					connection.request(Frames.CONNECTION, Frames.HELLO).writeInt(compressThreshold)).readInt();
+		} catch (RemoteException e) {
+			if (connection.isClosed())
+				throw e;
+			LOG.warn("Message bodies to {} are not compressed: {}", connection, e.getMessage());
+		}
+	}
+
+	@Override
+	public Player export(Player player) {
+		// players are exported through the playground proxy when they are registered
+		return player;
+	}
+
+	@Override
+	public void unexport(Player player) {
+		for (NioConnection connection : connections.values())
+			connection.players.values().removeIf(exported -> exported == player);
+	}
+
+	@Override
+	public MessageListener<String> export(MessageListener<String> listener) {
+		// listeners are exported through the message service proxy when they subscribe
+		return listener;
+	}
+
+	@Override
+	public void unexport(MessageListener<String> listener) {
+		for (NioConnection connection : connections.values())
+			connection.listeners.values().removeIf(exported -> exported == listener);
+	}
+
+	/**
+	 * Closes all connections after answering received calls, stops accepting connections and threads
+	 */
+	@Override
+	public synchronized void close() {
+		for (NioConnection connection : connections.values())
+			connection.closeGracefully(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		connections.clear();
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				LOG.error("Unable to close server channel", e);
+			}
+			server = null;
+		}
+		if (loop != null) {
+			loop.close();
+			loop = null;
+		}
+		workers.shutdown();
+		timer.shutdownNow();
+	}
+	
+	@Override
+	public String toString() {
+		return "nio";
+	}
+}
@@ -0,0 +1,59 @@
+package com.fx360t.transport.nio;
+
+import java.rmi.RemoteException;
+
+import com.fx360t.player.Player;
+
+/**
+ * Identity and name of a player passed to a remote player by {@link Player#startToPlay}.<br>
+ * The other player is not reachable through the connection, only its identity and name are known.
+ * @author Oleg
+ */
+final class PlayerReference implements Player {
+	private final String identity;
+	private final String name;
+	
+	PlayerReference(String identity, String name) {
+		this.identity = identity;
+		this.name = name;
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void prepare() throws RemoteException {
+		throw unreachable();
+	}
+
+	@Override
+	public void waitAllTurnsCompleted() throws RemoteException {
+		throw unreachable();
+	}
+
+	@Override
+	public void startToPlay(boolean initiator, Player other) throws RemoteException {
+		throw unreachable();
+	}
+
+	@Override
+	public void gameOver() throws RemoteException {
+		throw unreachable();
+	}
+	
+	private RemoteException unreachable() {
+		return new RemoteException("Player " + name + " is not reachable through this connection");
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
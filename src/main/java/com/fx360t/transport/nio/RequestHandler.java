@@ -0,0 +1,16 @@
+package com.fx360t.transport.nio;
+
+/**
+ * Handles requests received by a {@link NioConnection}
+ * @author Oleg
+ */
+interface RequestHandler {
+	/**
+	 * Handles a request, called in the selector thread, so it must not block.<br>
+	 * The handler must answer with {@link NioConnection#reply} or {@link NioConnection#replyError} exactly once.
+	 * @param connection - connection the request came from
+	 * @param callId - id of the call to answer
+	 * @param request - request positioned at the target
+	 */
+	void request(NioConnection connection, int callId, FrameReader request);
+}
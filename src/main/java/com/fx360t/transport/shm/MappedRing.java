@@ -0,0 +1,329 @@
+package com.fx360t.transport.shm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer of byte records in a memory-mapped file, shared by processes on the same host.<br>
+ * It uses the algorithm of {@link com.fx360t.service.mailbox.RingBufferMailbox}: every slot has a
+ * sequence number telling whether it is free or holds a published record, producers of any process
+ * claim the tail with CAS, the consumer claims the head. Sequences and cursors live in the mapped memory
+ * and are accessed with {@link UnsafeMemory}, the only way to CAS on a mapped buffer in Java 8.<br>
+ * File layout: header {@code magic, slots, slotSize, closed, owner, generation} and the tail and the head cursors
+ * on separate cache lines, then the slots as {@code sequence, length, payload}.<br>
+ * The ring is created by its consumer, which marks it closed when it does not read any more.
+ * Every ring is stamped with the process id of its owner and a random generation. A consumer restarted after
+ * a crash creates a new ring of the same name and marks the replaced one closed, so producers still mapping
+ * the old file map the new one and can tell by the generation that the ring was replaced.
+ * A process waiting for the other side can not be woken up, so waiting threads spin, then yield,
+ * then park for a short time.
+ * @author Oleg
+ */
+final class MappedRing implements Closeable {
+	private static final int MAGIC = 0x360F5E01;
+	private static final int CACHE_LINE = 64;
+	private static final int SLOTS_OFFSET = 4;
+	private static final int SLOT_SIZE_OFFSET = 8;
+	private static final int CLOSED_OFFSET = 12;
+	private static final int OWNER_OFFSET = 16;
+	private static final int GENERATION_OFFSET = 24;
+	private static final int TAIL_OFFSET = CACHE_LINE;
+	private static final int HEAD_OFFSET = 2 * CACHE_LINE;
+	private static final int HEADER_SIZE = 3 * CACHE_LINE;
+	/**
+	 * Sequence number and length before the payload of every slot
+	 */
+	private static final int SLOT_HEADER_SIZE = 12;
+
+	private static final int SPIN_TRIES = 64;
+	private static final int YIELD_TRIES = 128;
+	private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/**
+	 * Id of this process, 0 if unknown
+	 */
+	private static final long PID = pid();
+
+	private final Path file;
+	/**
+	 * Keeps the mapping alive, memory is accessed by {@link #address}
+	 */
+	private final MappedByteBuffer buffer;
+	private final long address;
+	private final int mask;
+	private final int slotSize;
+	private final long owner;
+	private final long generation;
+
+	private MappedRing(Path file, MappedByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		this.address = UnsafeMemory.address(buffer);
+		if (buffer.capacity() < HEADER_SIZE || UnsafeMemory.getIntVolatile(address) != MAGIC)
+			throw new IOException(file + " is not a message ring");
+		int slots = UnsafeMemory.getInt(address + SLOTS_OFFSET);
+		this.slotSize = UnsafeMemory.getInt(address + SLOT_SIZE_OFFSET);
+		try {
+			checkSize(slots, slotSize);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + " is not a valid message ring: " + e.getMessage());
+		}
+		if (buffer.capacity() < HEADER_SIZE + (long) slots * slotSize)
+			throw new IOException(file + " is truncated");
+		this.mask = slots - 1;
+		this.owner = UnsafeMemory.getLong(address + OWNER_OFFSET);
+		this.generation = UnsafeMemory.getLong(address + GENERATION_OFFSET);
+	}
+
+	private static long pid() {
+		// name of the runtime is pid@host on HotSpot
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		try {
+			return Long.parseLong(name.substring(0, name.indexOf('@')));
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Creates a ring file, replacing an existing one.<br>
+	 * The file is initialized under a temporary name and then moved, so producers never see it half written.
+	 * A replaced ring is marked closed after the move, so its producers map the new file.
+	 * @param file - path of the ring
+	 * @param slots - number of slots, a power of two
+	 * @param slotSize - size of a slot in bytes, a multiple of 8
+	 */
+	static MappedRing create(Path file, int slots, int slotSize) throws IOException {
+		checkSize(slots, slotSize);
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		long size = HEADER_SIZE + (long) slots * slotSize;
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			buffer = channel.map(MapMode.READ_WRITE, 0, size);
+		}
+		long address = UnsafeMemory.address(buffer);
+		UnsafeMemory.putInt(address + SLOTS_OFFSET, slots);
+		UnsafeMemory.putInt(address + SLOT_SIZE_OFFSET, slotSize);
+		UnsafeMemory.putLong(address + OWNER_OFFSET, PID);
+		UnsafeMemory.putLong(address + GENERATION_OFFSET, ThreadLocalRandom.current().nextLong());
+		for (int i = 0; i < slots; i++)
+			UnsafeMemory.putLong(address + HEADER_SIZE + (long) i * slotSize, i);
+		// magic is written last, the ring is valid once it is visible
+		UnsafeMemory.putIntVolatile(address, MAGIC);
+		MappedRing replaced = null;
+		try {
+			replaced = open(file);
+		} catch (IOException e) {
+			// no ring to replace or not a ring at all
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (replaced != null)
+			replaced.close();
+		return new MappedRing(file, buffer);
+	}
+
+	/**
+	 * Checks the size of a ring before it is created
+	 * @throws IllegalArgumentException if the number of slots is not a power of two or the slot size 
+	 * is not a multiple of 8 bigger than the slot header
+	 */
+	static void checkSize(int slots, int slotSize) {
+		if (slots < 1 || Integer.bitCount(slots) != 1)
+			throw new IllegalArgumentException("Number of slots must be a power of two: " + slots);
+		if (slotSize <= SLOT_HEADER_SIZE || slotSize % 8 != 0)
+			throw new IllegalArgumentException("Slot size must be a multiple of 8 bigger than " + SLOT_HEADER_SIZE);
+	}
+
+	/**
+	 * Maps an existing ring file created by {@link #create}
+	 * @throws java.nio.file.NoSuchFileException if there is no such file
+	 */
+	static MappedRing open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return new MappedRing(file, channel.map(MapMode.READ_WRITE, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @return id of the process which created the ring, 0 if unknown
+	 */
+	long owner() {
+		return owner;
+	}
+
+	/**
+	 * @return random stamp telling this ring from rings created before under the same name
+	 */
+	long generation() {
+		return generation;
+	}
+
+	/**
+	 * @return maximum length of a record
+	 */
+	int maxLength() {
+		return slotSize - SLOT_HEADER_SIZE;
+	}
+
+	private long slot(long position) {
+		return address + HEADER_SIZE + (position & mask) * slotSize;
+	}
+
+	/**
+	 * Puts a record to the ring
+	 * @param data - array holding the record
+	 * @param length - length of the record
+	 * @return {@code false} if the ring is full
+	 * @throws IllegalArgumentException if the record is longer than {@link #maxLength()}
+	 */
+	boolean offer(byte[] data, int length) {
+		if (length > maxLength())
+			throw new IllegalArgumentException("Record of " + length + " bytes does not fit into a slot of " + file);
+		long position = UnsafeMemory.getLongVolatile(address + TAIL_OFFSET);
+		long slot;
+		for (;;) {
+			slot = slot(position);
+			long difference = UnsafeMemory.getLongVolatile(slot) - position;
+			if (difference == 0) {
+				if (UnsafeMemory.compareAndSwapLong(address + TAIL_OFFSET, position, position + 1))
+					break;
+				position = UnsafeMemory.getLongVolatile(address + TAIL_OFFSET);
+			} else if (difference < 0) {
+				// slot still holds a record from the previous lap - ring is full
+				return false;
+			} else {
+				position = UnsafeMemory.getLongVolatile(address + TAIL_OFFSET);
+			}
+		}
+		UnsafeMemory.putInt(slot + 8, length);
+		UnsafeMemory.copy(data, slot + SLOT_HEADER_SIZE, length);
+		// publishing the record, the volatile write makes it visible to the consumer
+		UnsafeMemory.putLongVolatile(slot, position + 1);
+		return true;
+	}
+
+	/**
+	 * Puts a record to the ring, waits while the ring is full
+	 * @return {@code false} if the ring is closed by its consumer
+	 */
+	boolean put(byte[] data, int length) throws InterruptedException {
+		int idle = 0;
+		while (!offer(data, length)) {
+			if (isClosed())
+				return false;
+			idle = idle(idle, MAX_PARK_NANOS);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes a record from the ring
+	 * @return the record or {@code null} if the ring is empty
+	 * @throws IOException if the length of the record is invalid, the record is skipped
+	 */
+	byte[] poll() throws IOException {
+		long position = UnsafeMemory.getLongVolatile(address + HEAD_OFFSET);
+		long slot;
+		for (;;) {
+			slot = slot(position);
+			long difference = UnsafeMemory.getLongVolatile(slot) - (position + 1);
+			if (difference == 0) {
+				if (UnsafeMemory.compareAndSwapLong(address + HEAD_OFFSET, position, position + 1))
+					break;
+				position = UnsafeMemory.getLongVolatile(address + HEAD_OFFSET);
+			} else if (difference < 0) {
+				// record is not published yet - ring is empty
+				return null;
+			} else {
+				position = UnsafeMemory.getLongVolatile(address + HEAD_OFFSET);
+			}
+		}
+		int length = UnsafeMemory.getInt(slot + 8);
+		// the file may be written by anyone, a length out of the slot would read beyond the mapping
+		byte[] data = length < 0 || length > maxLength() ? null : new byte[length];
+		if (data != null)
+			UnsafeMemory.copy(slot + SLOT_HEADER_SIZE, data, length);
+		// releasing the slot for the producers of the next lap
+		UnsafeMemory.putLongVolatile(slot, position + mask + 1);
+		if (data == null)
+			throw new IOException("Invalid record of " + length + " bytes in " + file);
+		return data;
+	}
+
+	/**
+	 * Takes a record from the ring, waits until there is one or the timeout elapses
+	 * @param timeoutNanos - time to wait, negative to wait without timeout
+	 * @return the record or {@code null} if the timeout elapsed or the ring is closed
+	 * @throws IOException if the length of the record is invalid, the record is skipped
+	 */
+	byte[] poll(long timeoutNanos) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		byte[] data;
+		int idle = 0;
+		while ((data = poll()) == null) {
+			if (isClosed())
+				return null;
+			long remaining = timeoutNanos < 0 ? MAX_PARK_NANOS : deadline - System.nanoTime();
+			if (remaining <= 0)
+				return null;
+			idle = idle(idle, Math.min(remaining, MAX_PARK_NANOS));
+		}
+		return data;
+	}
+
+	/**
+	 * One step of back-off used by waiting threads: spin first, then yield, then park.
+	 * @return next value of idle counter
+	 * @throws InterruptedException if current thread is interrupted
+	 */
+	private int idle(int idle, long parkNanos) throws InterruptedException {
+		if (Thread.interrupted())
+			throw new InterruptedException();
+		if (idle >= SPIN_TRIES + YIELD_TRIES)
+			LockSupport.parkNanos(this, parkNanos);
+		else if (idle >= SPIN_TRIES)
+			Thread.yield();
+		return idle + 1;
+	}
+
+	boolean isEmpty() {
+		return UnsafeMemory.getLongVolatile(address + TAIL_OFFSET) <= UnsafeMemory.getLongVolatile(address + HEAD_OFFSET);
+	}
+
+	/**
+	 * @return {@code true} if the consumer does not read the ring any more
+	 */
+	boolean isClosed() {
+		return UnsafeMemory.getIntVolatile(address + CLOSED_OFFSET) != 0;
+	}
+
+	/**
+	 * Marks the ring closed, called by the consumer. Producers and waiting threads see it at once.
+	 */
+	@Override
+	public void close() {
+		UnsafeMemory.putIntVolatile(address + CLOSED_OFFSET, 1);
+	}
+
+	Path file() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+}
@@ -0,0 +1,424 @@
+package com.fx360t.transport.shm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.fx360t.log.Log;
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.MessageService;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessageCodec;
+
+/**
+ * {@link MessageService} for processes on the same host, messages go through memory-mapped files.<br>
+ * Every user registered through this service gets a {@link MappedRing} named after the user in the
+ * shared directory, senders in any process map the receiver's ring and put messages encoded with
+ * {@link MessageCodec} directly to it. Users, their handles and unregistration are still managed by
+ * the remote service, which is called once per user, not per message.<br>
+ * Handles of peers are learned from received messages and from {@link #getHandle}, so messages sent by handles
+ * must go to users known to this service. Messages to users which have no ring are dropped like messages
+ * to unknown users. Statistics of the remote service do not include messages sent through shared memory.<br>
+ * Size of rings is set by system properties {@value #SLOTS_PROPERTY} and {@value #SLOT_SIZE_PROPERTY}, a message 
+ * which does not fit into a slot is rejected. Senders read the size from the receiver's ring, so processes 
+ * may use different sizes. Rings are kept in a directory of the current OS user accessible only by that user,
+ * unless {@value #DIRECTORY_PROPERTY} sets a shared one.
+ * @author Oleg
+ */
+public class SharedMemoryMessageService implements MessageService<String>, Closeable {
+	private static final Log LOG = Log.getLog(SharedMemoryMessageService.class);
+	/**
+	 * System property with the directory of ring files
+	 */
+	public static final String DIRECTORY_PROPERTY = "shm.dir";
+	/**
+	 * System property with the number of slots of a ring, a power of two
+	 */
+	public static final String SLOTS_PROPERTY = "shm.slots";
+	/**
+	 * System property with the size of a slot in bytes, a multiple of 8, it limits the length of a message
+	 */
+	public static final String SLOT_SIZE_PROPERTY = "shm.slot.size";
+	private static final int DEFAULT_SLOTS = 1024;
+	private static final int DEFAULT_SLOT_SIZE = 512;
+
+	private final MessageService<String> remote;
+	private final Path directory;
+	private final int slots;
+	private final int slotSize;
+	/**
+	 * Rings of users registered through this service
+	 */
+	private final Map<String, MappedRing> ownRings = new ConcurrentHashMap<>();
+	/**
+	 * Mapped rings of receivers
+	 */
+	private final Map<String, MappedRing> peerRings = new ConcurrentHashMap<>();
+	private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+	private final Map<Integer, String> names = new ConcurrentHashMap<>();
+	private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+	/**
+	 * Constructs a service keeping rings in the directory given by {@value #DIRECTORY_PROPERTY}
+	 * or in {@code fx360t-shm-<user>} in the temporary directory, rings are sized by {@value #SLOTS_PROPERTY}
+	 * and {@value #SLOT_SIZE_PROPERTY}
+	 * @param remote - service managing users
+	 * @throws UncheckedIOException if the default directory can not be made private to the current user
+	 */
+	public SharedMemoryMessageService(MessageService<String> remote) {
+		this(remote, System.getProperty(DIRECTORY_PROPERTY) != null ? Paths.get(System.getProperty(DIRECTORY_PROPERTY))
+				: privateDirectory(Paths.get(System.getProperty("java.io.tmpdir"),
+						"fx360t-shm-" + System.getProperty("user.name", "").replaceAll("[^A-Za-z0-9._-]", "_"))),
+				Integer.getInteger(SLOTS_PROPERTY, DEFAULT_SLOTS), Integer.getInteger(SLOT_SIZE_PROPERTY, DEFAULT_SLOT_SIZE));
+	}
+
+	/**
+	 * Creates a directory accessible only by its owner, an existing one gets the same permissions,
+	 * which fails unless the current user owns it. Other file systems than POSIX ones keep their defaults.
+	 */
+	private static Path privateDirectory(Path directory) {
+		try {
+			if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+				return Files.createDirectories(directory);
+			Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+			if (!Files.isDirectory(directory))
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(ownerOnly));
+			Files.setPosixFilePermissions(directory, ownerOnly);
+			return directory;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to create private directory of rings " + directory, e);
+		}
+	}
+
+	/**
+	 * Constructs a service with rings of 1024 slots of 512 bytes
+	 * @param remote - service managing users
+	 * @param directory - directory of ring files shared by all processes
+	 */
+	public SharedMemoryMessageService(MessageService<String> remote, Path directory) {
+		this(remote, directory, DEFAULT_SLOTS, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * @param remote - service managing users
+	 * @param directory - directory of ring files shared by all processes
+	 * @param slots - number of slots of rings of users registered through this service, a power of two
+	 * @param slotSize - size of a slot in bytes, a multiple of 8
+	 */
+	public SharedMemoryMessageService(MessageService<String> remote, Path directory, int slots, int slotSize) {
+		MappedRing.checkSize(slots, slotSize);
+		this.remote = remote;
+		this.directory = directory;
+		this.slots = slots;
+		this.slotSize = slotSize;
+	}
+
+	private Path ringFile(String user) {
+		return directory.resolve(user.replaceAll("[^A-Za-z0-9._-]", "_") + ".ring");
+	}
+
+	@Override
+	public void register(String... userNames) throws RemoteException {
+		remote.register(userNames);
+		if (userNames != null)
+			for (String user : userNames)
+				if (user != null)
+					createRing(user, remote.getHandle(user));
+	}
+
+	@Override
+	public int registerUser(String userName) throws RemoteException {
+		int handle = remote.registerUser(userName);
+		createRing(userName, handle);
+		return handle;
+	}
+
+	private void createRing(String user, int handle) throws RemoteException {
+		remember(user, handle);
+		try {
+			MappedRing previous = ownRings.put(user, MappedRing.create(ringFile(user), slots, slotSize));
+			if (previous != null)
+				previous.close();
+		} catch (IOException e) {
+			throw new RemoteException("Unable to create ring of " + user, e);
+		}
+	}
+
+	private void remember(String user, int handle) {
+		if (user != null && handle != Message.NO_HANDLE) {
+			handles.put(user, handle);
+			names.put(handle, user);
+		}
+	}
+
+	private void forget(String user) {
+		Integer handle = handles.remove(user);
+		if (handle != null)
+			names.remove(handle, user);
+	}
+
+	@Override
+	public int getHandle(String userName) throws RemoteException {
+		Integer handle = userName == null ? null : handles.get(userName);
+		if (handle != null)
+			return handle;
+		int found = remote.getHandle(userName);
+		remember(userName, found);
+		return found;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the message does not fit into a slot of the ring
+	 */
+	@Override
+	public void sendMessage(String message, String senderName, String receiverName) throws RemoteException {
+		deliver(new Message<>(message, senderName, receiverName, getHandle(senderName), getHandle(receiverName)));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @throws MessageRejectedException if the message does not fit into a slot of the ring
+	 */
+	@Override
+	public void sendMessage(String message, int senderHandle, int receiverHandle) throws RemoteException {
+		deliver(new Message<>(message, names.get(senderHandle), names.get(receiverHandle), senderHandle, receiverHandle));
+	}
+
+	@Override
+	public int sendMessages(List<Message<String>> messages) throws RemoteException {
+		int accepted = 0;
+		if (messages != null)
+			for (Message<String> message : messages) {
+				try {
+					if (message != null && deliver(new Message<>(message.getMessageBody(),
+							message.getSenderName(), message.getReceiverName(),
+							getHandle(message.getSenderName()), getHandle(message.getReceiverName()))))
+						accepted++;
+				} catch (MessageRejectedException e) {
+					//rejected message is not counted, the rest of the batch is still sent
+				}
+			}
+		return accepted;
+	}
+
+	/**
+	 * Puts a message to the receiver's ring, waits while the ring is full
+	 * @return {@code false} if the sender or the receiver is unknown
+	 */
+	private boolean deliver(Message<String> message) throws RemoteException {
+		if (message.getSenderName() == null || message.getReceiverName() == null) {
+			LOG.warn("Sender or receiver of {} is not registered", message);
+			return false;
+		}
+		if (message.getSenderName().equals(message.getReceiverName())) {
+			LOG.warn("Can't send message to yourself");
+			return false;
+		}
+		Encoder encoder = encoders.get();
+		try {
+			encoder.reset();
+			MessageCodec.write(encoder.data, message);
+			MappedRing ring = peerRing(message.getReceiverName());
+			if (ring == null) {
+				LOG.warn("User {} has no ring", message.getReceiverName());
+				return false;
+			}
+			if (encoder.size() > ring.maxLength())
+				throw new MessageRejectedException("Message of " + encoder.size() + " bytes is too long for " + ring);
+			if (!ring.put(encoder.buffer(), encoder.size())) {
+				LOG.warn("User {} is unregistered", message.getReceiverName());
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			throw new RemoteException("Unable to write message to " + message.getReceiverName(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while sending a message to " + message.getReceiverName(), e);
+		}
+	}
+
+	/**
+	 * Returns the mapped ring of a receiver, maps it again if it is closed because its owner has unregistered
+	 * or a restarted owner has replaced it
+	 * @return ring or {@code null} if the receiver has no open ring
+	 */
+	private MappedRing peerRing(String receiver) throws IOException {
+		MappedRing ring = ownRings.get(receiver);
+		if (ring != null)
+			return ring;
+		ring = peerRings.get(receiver);
+		MappedRing closed = null;
+		if (ring != null) {
+			if (!ring.isClosed())
+				return ring;
+			// the receiver has unregistered, it gets a new handle when it registers again
+			forget(receiver);
+			closed = ring;
+		}
+		try {
+			ring = MappedRing.open(ringFile(receiver));
+		} catch (NoSuchFileException e) {
+			peerRings.remove(receiver);
+			return null;
+		}
+		if (ring.isClosed()) {
+			peerRings.remove(receiver);
+			return null;
+		}
+		if (closed != null && closed.generation() != ring.generation())
+			LOG.info("Ring of {} is replaced by process {}", receiver, ring.owner());
+		peerRings.put(receiver, ring);
+		return ring;
+	}
+
+	@Override
+	public void unregister(String... userNames) throws RemoteException {
+		if (userNames != null)
+			for (String user : userNames) {
+				MappedRing ring = user == null ? null : ownRings.remove(user);
+				if (ring != null) {
+					closeRing(ring);
+					forget(user);
+				}
+			}
+		remote.unregister(userNames);
+	}
+
+	/**
+	 * Marks an own ring closed, so that waiting receivers wake up with no message, and deletes its file
+	 */
+	private static void closeRing(MappedRing ring) {
+		ring.close();
+		try {
+			Files.deleteIfExists(ring.file());
+		} catch (IOException e) {
+			LOG.warn("Unable to delete {}: {}", ring, e.getMessage());
+		}
+	}
+
+	@Override
+	public Message<String> getNextMessage(String recipientName) throws RemoteException {
+		return receive(recipientName, -1);
+	}
+
+	@Override
+	public Message<String> getNextMessage(int recipientHandle) throws RemoteException {
+		return receive(names.get(recipientHandle), -1);
+	}
+
+	@Override
+	public Message<String> pollNextMessage(String recipientName, long timeout, TimeUnit unit) throws RemoteException {
+		return receive(recipientName, Math.max(0, unit.toNanos(timeout)));
+	}
+
+	/**
+	 * Waits for a message in the recipient's own ring
+	 * @param timeoutNanos - time to wait, negative to wait until a message comes or the recipient is unregistered
+	 */
+	private Message<String> receive(String recipient, long timeoutNanos) throws RemoteException {
+		MappedRing ring = ownRing(recipient);
+		if (ring == null)
+			return null;
+		try {
+			return decode(ring.poll(timeoutNanos));
+		} catch (IOException e) {
+			throw new RemoteException("Unable to read message of " + recipient, e);
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted while getting a message for {}", recipient, e);
+		}
+		return null;
+	}
+
+	@Override
+	public List<Message<String>> drainMessages(String recipientName, int maxMessages) throws RemoteException {
+		if (maxMessages < 1) {
+			LOG.warn("Can't drain less than one message");
+			return null;
+		}
+		Message<String> first = receive(recipientName, -1);
+		if (first == null)
+			return null;
+		List<Message<String>> messages = new ArrayList<>();
+		messages.add(first);
+		MappedRing ring = ownRings.get(recipientName);
+		byte[] data;
+		try {
+			while (ring != null && messages.size() < maxMessages && (data = ring.poll()) != null)
+				messages.add(decode(data));
+		} catch (IOException e) {
+			// messages taken before are not lost
+			LOG.warn("Message of {} is skipped: {}", recipientName, e.getMessage());
+		}
+		return messages;
+	}
+
+	private MappedRing ownRing(String user) {
+		MappedRing ring = user == null ? null : ownRings.get(user);
+		if (ring == null)
+			LOG.warn("User {} is not registered", user);
+		return ring;
+	}
+
+	private Message<String> decode(byte[] data) throws RemoteException {
+		if (data == null)
+			return null;
+		try {
+			Message<String> message = MessageCodec.read(new DataInputStream(new ByteArrayInputStream(data)));
+			remember(message.getSenderName(), message.getSenderHandle());
+			return message;
+		} catch (IOException e) {
+			throw new RemoteException("Unable to read message", e);
+		}
+	}
+
+	/**
+	 * Closes rings of users still registered through this service
+	 */
+	@Override
+	public void close() {
+		for (MappedRing ring : ownRings.values())
+			closeRing(ring);
+		ownRings.clear();
+		peerRings.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "SharedMemory" + remote;
+	}
+
+	/**
+	 * Reusable buffer a message is encoded to before it is copied to a ring
+	 */
+	private static final class Encoder extends ByteArrayOutputStream {
+		final DataOutputStream data = new DataOutputStream(this);
+
+		Encoder() {
+			super(DEFAULT_SLOT_SIZE);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.fx360t.transport.shm;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageListener;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.transport.Transport;
+import com.fx360t.transport.nio.NioTransport;
+
+/**
+ * {@link Transport} for players running on the same host as each other.<br>
+ * Messages go through memory-mapped rings of {@link SharedMemoryMessageService}, registration of users
+ * and players and calls of the playground go through {@link NioTransport}. The server side is a plain
+ * {@link NioTransport}, so players using shared memory and players using {@code nio} may join
+ * the same playground, but only players using shared memory can message each other.
+ * @author Oleg
+ */
+public class SharedMemoryTransport implements Transport {
+	private final NioTransport control = new NioTransport();
+	private final List<SharedMemoryMessageService> services = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void bind(MessageService<String> messageService, PlayerRegistrator playGround, int port) throws IOException {
+		control.bind(messageService, playGround, port);
+	}
+
+	@Override
+	public MessageService<String> lookupMessageService(String address) throws IOException {
+		SharedMemoryMessageService service = new SharedMemoryMessageService(control.lookupMessageService(address));
+		services.add(service);
+		return service;
+	}
+
+	@Override
+	public PlayerRegistrator lookupPlayGround(String address) throws IOException {
+		return control.lookupPlayGround(address);
+	}
+
+	@Override
+	public Player export(Player player) throws RemoteException {
+		return control.export(player);
+	}
+
+	@Override
+	public void unexport(Player player) {
+		control.unexport(player);
+	}
+
+	@Override
+	public MessageListener<String> export(MessageListener<String> listener) throws RemoteException {
+		return control.export(listener);
+	}
+
+	@Override
+	public void unexport(MessageListener<String> listener) {
+		control.unexport(listener);
+	}
+
+	@Override
+	public void close() {
+		for (SharedMemoryMessageService service : services)
+			service.close();
+		services.clear();
+		control.close();
+	}
+
+	@Override
+	public String toString() {
+		return "shm";
+	}
+}
@@ -0,0 +1,186 @@
+package com.fx360t.transport.shm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+
+/**
+ * Access to off-heap memory by address, the only place using {@code sun.misc.Unsafe}.<br>
+ * Unsafe is looked up reflectively and its methods are called through constant method handles bound to it,
+ * so the code has no compile time reference to the proprietary API and compiles without warnings,
+ * while the JIT compiles calls of constant handles to the same intrinsics as direct calls.
+ * Addresses are absolute, memory is not checked, a wrong address crashes the JVM.
+ * @author Oleg
+ */
+final class UnsafeMemory {
+	private static final MethodHandle GET_LONG_FIELD;
+	private static final MethodHandle GET_INT;
+	private static final MethodHandle GET_LONG;
+	private static final MethodHandle PUT_INT;
+	private static final MethodHandle PUT_LONG;
+	private static final MethodHandle GET_INT_VOLATILE;
+	private static final MethodHandle PUT_INT_VOLATILE;
+	private static final MethodHandle GET_LONG_VOLATILE;
+	private static final MethodHandle PUT_LONG_VOLATILE;
+	private static final MethodHandle COMPARE_AND_SWAP_LONG;
+	private static final MethodHandle COPY_MEMORY;
+	private static final long ADDRESS_OFFSET;
+	private static final long BYTES_OFFSET;
+
+	static {
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			GET_LONG_FIELD = method(lookup, type, unsafe, "getLong", long.class, Object.class, long.class);
+			GET_INT = method(lookup, type, unsafe, "getInt", int.class, long.class);
+			GET_LONG = method(lookup, type, unsafe, "getLong", long.class, long.class);
+			PUT_INT = method(lookup, type, unsafe, "putInt", void.class, long.class, int.class);
+			PUT_LONG = method(lookup, type, unsafe, "putLong", void.class, long.class, long.class);
+			GET_INT_VOLATILE = method(lookup, type, unsafe, "getIntVolatile", int.class, Object.class, long.class);
+			PUT_INT_VOLATILE = method(lookup, type, unsafe, "putIntVolatile", void.class, Object.class, long.class,
+					int.class);
+			GET_LONG_VOLATILE = method(lookup, type, unsafe, "getLongVolatile", long.class, Object.class, long.class);
+			PUT_LONG_VOLATILE = method(lookup, type, unsafe, "putLongVolatile", void.class, Object.class, long.class,
+					long.class);
+			COMPARE_AND_SWAP_LONG = method(lookup, type, unsafe, "compareAndSwapLong", boolean.class, Object.class,
+					long.class, long.class, long.class);
+			COPY_MEMORY = method(lookup, type, unsafe, "copyMemory", void.class, Object.class, long.class,
+					Object.class, long.class, long.class);
+			ADDRESS_OFFSET = (long) method(lookup, type, unsafe, "objectFieldOffset", long.class, Field.class)
+					.invoke(Buffer.class.getDeclaredField("address"));
+			BYTES_OFFSET = (int) method(lookup, type, unsafe, "arrayBaseOffset", int.class, Class.class)
+					.invoke(byte[].class);
+		} catch (Throwable e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private UnsafeMemory() {
+	}
+
+	private static MethodHandle method(MethodHandles.Lookup lookup, Class<?> type, Object unsafe, String name,
+			Class<?> returnType, Class<?>... parameterTypes) throws ReflectiveOperationException {
+		return lookup.findVirtual(type, name, MethodType.methodType(returnType, parameterTypes)).bindTo(unsafe);
+	}
+
+	/**
+	 * Methods of Unsafe throw no checked exceptions
+	 */
+	private static RuntimeException rethrow(Throwable e) {
+		if (e instanceof RuntimeException)
+			return (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new IllegalStateException(e);
+	}
+
+	/**
+	 * @return address of the memory of a direct buffer
+	 */
+	static long address(Buffer buffer) {
+		try {
+			return (long) GET_LONG_FIELD.invokeExact((Object) buffer, ADDRESS_OFFSET);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static int getInt(long address) {
+		try {
+			return (int) GET_INT.invokeExact(address);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static long getLong(long address) {
+		try {
+			return (long) GET_LONG.invokeExact(address);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static void putInt(long address, int value) {
+		try {
+			PUT_INT.invokeExact(address, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static void putLong(long address, long value) {
+		try {
+			PUT_LONG.invokeExact(address, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static int getIntVolatile(long address) {
+		try {
+			return (int) GET_INT_VOLATILE.invokeExact((Object) null, address);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static void putIntVolatile(long address, int value) {
+		try {
+			PUT_INT_VOLATILE.invokeExact((Object) null, address, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static long getLongVolatile(long address) {
+		try {
+			return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static void putLongVolatile(long address, long value) {
+		try {
+			PUT_LONG_VOLATILE.invokeExact((Object) null, address, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	static boolean compareAndSwapLong(long address, long expected, long value) {
+		try {
+			return (boolean) COMPARE_AND_SWAP_LONG.invokeExact((Object) null, address, expected, value);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * Copies bytes from an array to memory
+	 */
+	static void copy(byte[] source, long address, int length) {
+		try {
+			COPY_MEMORY.invokeExact((Object) source, BYTES_OFFSET, (Object) null, address, (long) length);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * Copies bytes from memory to an array
+	 */
+	static void copy(long address, byte[] target, int length) {
+		try {
+			COPY_MEMORY.invokeExact((Object) null, address, (Object) target, BYTES_OFFSET, (long) length);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.fx360t.log;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LogEventTest {
+	@Test
+	public void formatTest(){
+		Assert.assertEquals("plain message", format(LogLevel.INFO, "plain message"));
+		Assert.assertEquals("a -> b : 1", format(LogLevel.INFO, "{} -> {} : {}", "a", "b", 1));
+		Assert.assertEquals("only a {}", format(LogLevel.DEBUG, "only {} {}", "a"));
+		Assert.assertEquals("WARN User null is not registered", format(LogLevel.WARN, "User {} is not registered", (Object) null));
+	}
+	@Test
+	public void parseLevelTest(){
+		Assert.assertEquals(LogLevel.OFF, LogLevel.parse(" off", LogLevel.INFO));
+		Assert.assertEquals(LogLevel.INFO, LogLevel.parse("unknown", LogLevel.INFO));
+		Assert.assertEquals(LogLevel.DEBUG, LogLevel.parse(null, LogLevel.DEBUG));
+	}
+	private static String format(LogLevel level, String pattern, Object... args){
+		Object[] all = Arrays.copyOf(args, 3);
+		StringBuilder target = new StringBuilder();
+		new LogEvent(level, pattern, args.length, all[0], all[1], all[2], null).formatTo(target);
+		return target.toString();
+	}
+}
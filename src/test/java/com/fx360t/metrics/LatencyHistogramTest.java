@@ -0,0 +1,29 @@
+package com.fx360t.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void recordTest(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getPercentile(50));
+		for(int i=0;i<98;i++)
+			histogram.record(100);
+		histogram.record(5000);
+		histogram.record(-1);
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(1, histogram.getBuckets()[0]);
+		Assert.assertEquals(98, histogram.getBuckets()[6]);
+		Assert.assertEquals(1, histogram.getBuckets()[12]);
+		Assert.assertEquals(127, histogram.getPercentile(50));
+		Assert.assertEquals(127, histogram.getPercentile(99));
+		Assert.assertEquals(5000, histogram.getPercentile(100));
+		Assert.assertEquals(5000, histogram.getMax());
+		Assert.assertEquals((98*100+5000)/100d, histogram.getMean(), 0.001);
+		
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getMax());
+	}
+}
@@ -0,0 +1,72 @@
+package com.fx360t.player;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.StringMessageEventStrategy;
+
+public class EventDrivenPlayerTest {
+
+	@Test(timeout = 10000)
+	public void playTest() throws RemoteException {
+		SimpleMessageService messageService = new SimpleMessageService();
+		PlayerRegistrator playGround = Mockito.mock(PlayerRegistrator.class);
+		StringMessageEventStrategy firstStrategy = new StringMessageEventStrategy();
+		StringMessageEventStrategy secondStrategy = new StringMessageEventStrategy();
+		Player first = new EventDrivenPlayer("John", "Hi", firstStrategy, messageService, playGround);
+		Player second = new EventDrivenPlayer("Bob", "Hi", secondStrategy, messageService, playGround);
+		first.prepare();
+		second.prepare();
+		Mockito.verify(playGround).registerPlayer(first);
+		Assert.assertEquals(2, messageService.getRegisteredUsers());
+
+		first.startToPlay(true, second);
+		second.startToPlay(false, first);
+		first.waitAllTurnsCompleted();
+		Assert.assertTrue(firstStrategy.stopCondition());
+		Assert.assertFalse(secondStrategy.stopCondition());
+		first.gameOver();
+		second.gameOver();
+		Assert.assertTrue(secondStrategy.stopCondition());
+		Assert.assertEquals(0, messageService.getRegisteredUsers());
+		Assert.assertEquals(20, messageService.getMessagesSent());
+	}
+
+	@Test
+	public void strategyTest() throws RemoteException {
+		Player player = Mockito.mock(Player.class);
+		Mockito.when(player.getIdentity()).thenReturn("John");
+		StringMessageEventStrategy strategy = new StringMessageEventStrategy();
+		Assert.assertTrue(strategy.start(player, new Message<>("Hi", "John", "Bob")).isEmpty());
+		Assert.assertTrue(strategy.ready(player));
+		List<Message<String>> sent = strategy.start(player, new Message<>("Hi", "John", "Bob"));
+		Assert.assertEquals("John", sent.get(0).getSenderName());
+		Assert.assertEquals("Bob", sent.get(0).getReceiverName());
+		for (int i = 1; i < 10; i++) {
+			List<Message<String>> replies = strategy.onMessage(player, new Message<>("Hi", "Bob", "John", 2, 1));
+			Assert.assertEquals("Hi" + i, replies.get(0).getMessageBody());
+			Assert.assertEquals(1, replies.get(0).getSenderHandle());
+			Assert.assertEquals(2, replies.get(0).getReceiverHandle());
+		}
+		Assert.assertFalse(strategy.stopCondition());
+		Assert.assertTrue(strategy.onMessage(player, new Message<>("Hi", "Bob", "John")).isEmpty());
+		Assert.assertTrue(strategy.stopCondition());
+		Assert.assertTrue(strategy.finish(player));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notPublisherTest() {
+		@SuppressWarnings("unchecked")
+		MessageService<String> messageService = Mockito.mock(MessageService.class);
+		new EventDrivenPlayer("John", "Hi", new StringMessageEventStrategy(), messageService,
+				Mockito.mock(PlayerRegistrator.class));
+	}
+}
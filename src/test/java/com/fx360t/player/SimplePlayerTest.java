@@ -1,6 +1,8 @@
 package com.fx360t.player;
 
 import java.rmi.RemoteException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -113,5 +115,42 @@ public class SimplePlayerTest {
 		Assert.assertTrue(finished);
 	}
 
+	@Test
+	public void sharedExecutorTest() throws RemoteException {
+		@SuppressWarnings("unchecked")
+		GameStrategy<Message<String>> turns = Mockito.mock(GameStrategy.class);
+		Mockito.when(turns.stopCondition()).thenReturn(false, true);
+		AtomicReference<String> turnThread = new AtomicReference<>();
+		Mockito.doAnswer((inv) -> {
+			turnThread.set(Thread.currentThread().getName());
+			return true;
+		}).when(turns).play(Mockito.any());
+		ExecutorService executor = PlayerExecutors.shared();
+		Player player1 = new SimplePlayer("John", "startM", turns, playGround, null, executor);
+		Player player2 = new SimplePlayer("Bob", "startM", strategy, playGround);
+		player1.prepare();
+		player1.startToPlay(true, player2);
+		player1.waitAllTurnsCompleted();
+		Assert.assertTrue(turnThread.get().startsWith("player-"));
+		player1.gameOver();
+		Mockito.verify(turns).finish(Mockito.any());
+		Assert.assertFalse(executor.isShutdown());
+		executor.shutdown();
+	}
 
+	@Test
+	public void executorsTest() throws Exception {
+		Assert.assertNull(PlayerExecutors.forName(null));
+		Assert.assertNull(PlayerExecutors.forName("dedicated"));
+		for (String name : new String[] { "shared", "virtual" }) {
+			ExecutorService executor = PlayerExecutors.forName(name);
+			Assert.assertEquals("done", executor.submit(() -> "done").get());
+			executor.shutdown();
+		}
+		try {
+			PlayerExecutors.forName("pooled");
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
 }
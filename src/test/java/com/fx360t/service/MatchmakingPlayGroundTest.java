@@ -0,0 +1,145 @@
+package com.fx360t.service;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fx360t.player.Player;
+
+public class MatchmakingPlayGroundTest {
+
+	private static Player player(String identity) throws RemoteException {
+		Player player = Mockito.mock(Player.class);
+		Mockito.when(player.getIdentity()).thenReturn(identity);
+		Mockito.when(player.getName()).thenReturn(identity);
+		return player;
+	}
+
+	@Test
+	public void matchingTest() throws RemoteException {
+		MatchmakingPlayGround playGround = new MatchmakingPlayGround(4);
+		Player[] players = new Player[4];
+		for (int i = 0; i < players.length; i++) {
+			players[i] = player("player" + i);
+			playGround.registerPlayer(players[i]);
+		}
+		playGround.registerPlayer(null);
+		playGround.registerPlayer(players[0]);
+		Assert.assertEquals(4, playGround.playersCount());
+		Assert.assertEquals(2, playGround.getMatchedGames());
+		Assert.assertEquals(GameState.READY, playGround.getGameState());
+		playGround.waitAllPlayersRegistered();
+
+		Assert.assertTrue(playGround.startPlaying());
+		Assert.assertTrue(playGround.waitUntilGameIsFinished());
+		Assert.assertEquals(2, playGround.getFinishedGames());
+		Assert.assertEquals(0, playGround.playersCount());
+		Mockito.verify(players[0]).startToPlay(true, players[1]);
+		Mockito.verify(players[1]).startToPlay(false, players[0]);
+		Mockito.verify(players[2]).startToPlay(true, players[3]);
+		Mockito.verify(players[3]).startToPlay(false, players[2]);
+		for (Player player : players)
+			Mockito.verify(player).gameOver();
+
+		Assert.assertTrue(playGround.finishPlaying());
+		Assert.assertEquals(GameState.FINISHED, playGround.getGameState());
+		playGround.registerPlayer(player("late"));
+		Assert.assertEquals(0, playGround.playersCount());
+	}
+
+	@Test
+	public void unregisterPlayerTest() throws RemoteException {
+		MatchmakingPlayGround playGround = new MatchmakingPlayGround();
+		Player first = player("first");
+		Player second = player("second");
+		Player third = player("third");
+		playGround.registerPlayer(first);
+		playGround.unregisterPlayer(first);
+		Assert.assertEquals(0, playGround.playersCount());
+		Assert.assertEquals(GameState.WAITING_FOR_PLAYERS, playGround.getGameState());
+
+		playGround.registerPlayer(first);
+		playGround.registerPlayer(second);
+		playGround.registerPlayer(third);
+		// matched players stay
+		playGround.unregisterPlayer(first);
+		Assert.assertEquals(3, playGround.playersCount());
+		playGround.unregisterPlayer(third);
+		Assert.assertEquals(2, playGround.playersCount());
+
+		// players without a started game are finished with the playground
+		playGround.registerPlayer(third);
+		Assert.assertTrue(playGround.finishPlaying());
+		Mockito.verify(first).gameOver();
+		Mockito.verify(second).gameOver();
+		Mockito.verify(third).gameOver();
+		Mockito.verify(first, Mockito.never()).startToPlay(Mockito.anyBoolean(), Mockito.any());
+	}
+
+	@Test
+	public void concurrentRegistrationTest() throws Exception {
+		int threads = 4;
+		int perThread = 250;
+		MatchmakingPlayGround playGround = new MatchmakingPlayGround(threads * perThread);
+		Assert.assertTrue(playGround.startPlaying());
+		List<Player> players = new ArrayList<>();
+		for (int i = 0; i < threads * perThread; i++)
+			players.add(player("player" + i));
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> registrations = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			List<Player> part = players.subList(t * perThread, (t + 1) * perThread);
+			registrations.add(executor.submit(() -> {
+				start.await();
+				for (Player player : part)
+					playGround.registerPlayer(player);
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> registration : registrations)
+			registration.get();
+		executor.shutdown();
+		playGround.waitAllPlayersRegistered();
+
+		Assert.assertTrue(playGround.waitUntilGameIsFinished());
+		Assert.assertEquals(players.size() / 2, playGround.getFinishedGames());
+		Assert.assertEquals(0, playGround.playersCount());
+		for (Player player : players) {
+			Mockito.verify(player).startToPlay(Mockito.anyBoolean(), Mockito.any());
+			Mockito.verify(player).gameOver();
+		}
+		playGround.finishPlaying();
+	}
+
+	@Test
+	public void finishWhileMatchingTest() throws RemoteException {
+		for (boolean started : new boolean[] { false, true }) {
+			MatchmakingPlayGround playGround = new MatchmakingPlayGround();
+			if (started)
+				playGround.startPlaying();
+			Player first = player("first");
+			Player second = player("second");
+			playGround.registerPlayer(first);
+			// the playground is finished while the second player is matched with the first one
+			Mockito.when(first.getIdentity()).then(invocation -> {
+				playGround.finishPlaying();
+				return "first";
+			});
+			playGround.registerPlayer(second);
+			Mockito.verify(first).gameOver();
+			Mockito.verify(second).gameOver();
+			Assert.assertEquals(0, playGround.getRunningGames());
+			Assert.assertEquals(0, playGround.getMatchedGames());
+		}
+	}
+}
@@ -1,9 +1,31 @@
 package com.fx360t.service;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.fx360t.metrics.MBeans;
+import com.fx360t.service.mailbox.LinkedMailbox;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
 import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessagePool;
 
 public class SimpleMessageServiceTest extends SimpleMessageService {
 	@Test
@@ -56,4 +78,309 @@ public class SimpleMessageServiceTest extends SimpleMessageService {
 		mess = this.getNextMessage("user3");
 		Assert.assertTrue(mess==null);
 	}
+	@Test
+	public void sendMessagesTest(){
+		this.register("user1","user2");
+		int sent = this.sendMessages(Arrays.asList(new Message<>("m1","user1","user2"),
+								new Message<>("m2","user2","user1"),
+								new Message<>("m3","user1","user3"),
+								new Message<>("m4","user1","user2")));
+		Assert.assertEquals(3, sent);
+		Assert.assertEquals(2, getMessages().get("user2").size());
+		Assert.assertEquals(1, getMessages().get("user1").size());
+		Assert.assertEquals(0, this.sendMessages(null));
+	}
+	@Test
+	public void drainMessagesTest(){
+		this.register("user1","user2");
+		for(int i=0;i<5;i++)
+			this.sendMessage("message"+i,"user1", "user2");
+		List<Message<String>> messages = this.drainMessages("user2", 3);
+		Assert.assertEquals(3, messages.size());
+		Assert.assertEquals("message0", messages.get(0).getMessageBody());
+		Assert.assertEquals("message2", messages.get(2).getMessageBody());
+		messages = this.drainMessages("user2", 10);
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("message4", messages.get(1).getMessageBody());
+		Assert.assertNull(this.drainMessages("user3", 10));
+		Assert.assertNull(this.drainMessages("user2", 0));
+	}
+	@Test
+	public void overflowPolicyTest(){
+		SimpleMessageService reject = new SimpleMessageService(MailboxFactory.ringBuffer(16), 
+				new MailboxLimits(2, OverflowPolicy.REJECT, 0, TimeUnit.MILLISECONDS).withCapacity("user3", 3));
+		reject.register("user1","user2","user3");
+		for(int i=0;i<5;i++){
+			reject.sendMessage("message"+i,"user1", "user2");
+			reject.sendMessage("message"+i,"user1", "user3");
+		}
+		Assert.assertEquals(2, reject.getMessages().get("user2").size());
+		Assert.assertEquals("message0", reject.getMessages().get("user2").peek().getMessageBody());
+		Assert.assertEquals(3, reject.getMessages().get("user3").size());
+		
+		SimpleMessageService dropOldest = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(2, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS));
+		dropOldest.register("user1","user2");
+		for(int i=0;i<5;i++)
+			dropOldest.sendMessage("message"+i,"user1", "user2");
+		Assert.assertEquals(2, dropOldest.getMessages().get("user2").size());
+		Assert.assertEquals("message3", dropOldest.getMessages().get("user2").peek().getMessageBody());
+		Assert.assertEquals(3, dropOldest.getMessagesDropped());
+		Assert.assertEquals(0, dropOldest.getMessagesRejected());
+		
+		SimpleMessageService block = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(1, OverflowPolicy.BLOCK, 10, TimeUnit.MILLISECONDS));
+		block.register("user1","user2");
+		block.sendMessage("message0","user1", "user2");
+		block.sendMessage("message1","user1", "user2");
+		Assert.assertEquals(1, block.getMessages().get("user2").size());
+		
+		SimpleMessageService fail = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(1, OverflowPolicy.FAIL, 0, TimeUnit.MILLISECONDS));
+		fail.register("user1","user2");
+		fail.sendMessage("message0","user1", "user2");
+		try{
+			fail.sendMessage("message1","user1", "user2");
+			Assert.fail();
+		}catch(MessageRejectedException e){
+		}
+		Assert.assertEquals(0, fail.sendMessages(Arrays.asList(new Message<>("message2","user1","user2"))));
+	}
+	@Test
+	public void pollNextMessageTest(){
+		this.register("user1","user2");
+		Assert.assertNull(this.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		this.sendMessage("message","user1", "user2");
+		Message<String> mess = this.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(mess!=null && mess.getMessageBody().equals("message"));
+		Assert.assertNull(this.pollNextMessage("user3", 10, TimeUnit.MILLISECONDS));
+	}
+	@Test
+	public void receiveAsyncTest() throws Exception{
+		this.register("user1","user2");
+		this.sendMessage("message0","user1", "user2");
+		Assert.assertEquals("message0", this.receiveAsync("user2").get(1, TimeUnit.SECONDS).getMessageBody());
+		
+		CompletableFuture<Message<String>> cancelled = this.receiveAsync("user2");
+		CompletableFuture<Message<String>> first = this.receiveAsync("user2");
+		CompletableFuture<Message<String>> second = this.receiveAsync("user2");
+		Assert.assertFalse(first.isDone());
+		cancelled.cancel(false);
+		this.sendMessage("message1","user1", "user2");
+		this.sendMessage("message2","user1", "user2");
+		Assert.assertEquals("message1", first.get(1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertEquals("message2", second.get(1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertTrue(getMessages().get("user2").isEmpty());
+		
+		CompletableFuture<Message<String>> pending = this.receiveAsync("user2");
+		this.unregister("user2");
+		Assert.assertNull(pending.get(1, TimeUnit.SECONDS));
+		Assert.assertNull(this.receiveAsync("user3").get());
+	}
+	@Test
+	public void cancelledWaiterTest() throws Exception{
+		List<CompletableFuture<Message<String>>> cancelling = new ArrayList<>();
+		// the waiter is cancelled right after a message is taken for it
+		LinkedMailbox<Message<String>> messages = new LinkedMailbox<Message<String>>(1) {
+			@Override
+			public Message<String> poll() {
+				Message<String> message = super.poll();
+				if (message != null && !cancelling.isEmpty())
+					cancelling.remove(0).cancel(false);
+				return message;
+			}
+		};
+		UserMailbox mailbox = new UserMailbox("user2", 1, messages, 1, new MessageStatistics(), null);
+		CompletableFuture<Message<String>> cancelled = mailbox.receiveAsync();
+		cancelling.add(cancelled);
+		Assert.assertTrue(messages.offer(new Message<>("message1", "user1", "user2")));
+		mailbox.messageAdded();
+		Assert.assertTrue(cancelled.isCancelled());
+		// the full mailbox does not drop the message, it goes before newer ones
+		Assert.assertTrue(messages.offer(new Message<>("message2", "user1", "user2")));
+		Assert.assertFalse(mailbox.isEmpty());
+		Assert.assertEquals("message1", mailbox.receiveAsync().get(1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertEquals("message2", mailbox.receiveAsync().get(1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertTrue(mailbox.isEmpty());
+	}
+	@Test
+	public void subscribeTest() throws Exception{
+		this.register("user1","user2");
+		this.sendMessage("message0","user1", "user2");
+		BlockingQueue<List<Message<String>>> batches = new LinkedBlockingQueue<>();
+		CountDownLatch release = new CountDownLatch(1);
+		this.subscribe("user2", messages -> {
+			batches.add(messages);
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+		});
+		Assert.assertEquals("message0", batches.poll(1, TimeUnit.SECONDS).get(0).getMessageBody());
+		// sent while the first push is running, they come in one batch
+		this.sendMessage("message1","user1", "user2");
+		this.sendMessage("message2","user1", "user2");
+		release.countDown();
+		List<Message<String>> batch = batches.poll(1, TimeUnit.SECONDS);
+		Assert.assertEquals(2, batch.size());
+		Assert.assertEquals("message2", batch.get(1).getMessageBody());
+		Assert.assertTrue(getMessages().get("user2").isEmpty());
+		
+		this.unsubscribe("user2");
+		this.sendMessage("message3","user1", "user2");
+		Assert.assertEquals("message3", this.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertNull(batches.poll(10, TimeUnit.MILLISECONDS));
+		
+		this.subscribe("user2", messages -> {
+			throw new RemoteException("unreachable");
+		});
+		this.sendMessage("message4","user1", "user2");
+		Thread.sleep(50);
+		// failed listener is unsubscribed, messages stay in the mailbox
+		this.sendMessage("message5","user1", "user2");
+		Assert.assertEquals("message5", this.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+		// the failed batch goes to the next subscription
+		this.subscribe("user2", batches::add);
+		Assert.assertEquals("message4", batches.poll(1, TimeUnit.SECONDS).get(0).getMessageBody());
+		
+		this.subscribe("user2", messages -> {
+			throw new IllegalStateException("broken");
+		});
+		this.sendMessage("message6","user1", "user2");
+		long deadline = System.currentTimeMillis() + 1000;
+		while (!getMessages().get("user2").isEmpty() && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		// a message of a failed push is not received
+		Assert.assertEquals(6, this.getMessagesReceived());
+		this.unregister("user2");
+		// the failed push may finish after the user is unregistered
+		while (this.getMessagesDropped() < 1 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(1, this.getMessagesDropped());
+	}
+	@Test
+	public void handlesTest(){
+		int handle1 = this.registerUser("user1");
+		int handle2 = this.registerUser("user2");
+		Assert.assertNotEquals(handle1, handle2);
+		Assert.assertEquals(handle1, this.registerUser("user1"));
+		Assert.assertEquals(handle2, this.getHandle("user2"));
+		Assert.assertEquals(Message.NO_HANDLE, this.getHandle("user3"));
+		Assert.assertEquals(Message.NO_HANDLE, this.registerUser(null));
+		
+		this.sendMessage("message", handle1, handle2);
+		Message<String> mess = this.getNextMessage(handle2);
+		Assert.assertTrue(mess!=null && mess.getMessageBody().equals("message")
+				&& mess.getSenderName().equals("user1") && mess.getSenderHandle() == handle1
+				&& mess.getReceiverHandle() == handle2);
+		this.sendMessage("message", "user2", "user1");
+		Assert.assertEquals(handle2, this.getNextMessage("user1").getSenderHandle());
+		
+		this.sendMessage("message", handle1, handle1);
+		this.sendMessage("message", handle1, 1000);
+		Assert.assertTrue(getMessages().get("user1").isEmpty());
+		Assert.assertNull(this.getNextMessage(-5));
+		
+		for(int i=0;i<40;i++)
+			this.registerUser("user"+(i+3));
+		this.sendMessage("message", handle1, this.getHandle("user42"));
+		Assert.assertEquals("user42", this.getNextMessage(this.getHandle("user42")).getReceiverName());
+		this.unregister("user2");
+		Assert.assertNull(this.getNextMessage(handle2));
+		int reused = this.registerUser("user2");
+		Assert.assertNotEquals(handle2, reused);
+		// the index is reused, the old handle does not reach the new user
+		Assert.assertEquals(handle2 & 0xFFFFFF, reused & 0xFFFFFF);
+		this.sendMessage("message", handle1, handle2);
+		Assert.assertTrue(getMessages().get("user2").isEmpty());
+		for(int i=0;i<1000;i++){
+			this.unregister("user2");
+			this.registerUser("user2");
+		}
+		Assert.assertEquals(handle2 & 0xFFFFFF, this.getHandle("user2") & 0xFFFFFF);
+		Assert.assertEquals(42, this.getRegisteredUsers());
+	}
+	@Test
+	public void statisticsTest() throws Exception{
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(2, OverflowPolicy.REJECT, 0, TimeUnit.MILLISECONDS));
+		service.register("user1","user2");
+		for(int i=0;i<3;i++)
+			service.sendMessage("message"+i,"user1", "user2");
+		Assert.assertEquals(2, service.getRegisteredUsers());
+		Assert.assertEquals(2, service.getMessagesSent());
+		Assert.assertEquals(1, service.getMessagesRejected());
+		Assert.assertEquals(Integer.valueOf(2), service.getQueueDepths().get("user2"));
+		Assert.assertEquals(Integer.valueOf(0), service.getQueueDepths().get("user1"));
+		
+		service.getNextMessage("user2");
+		service.receiveAsync("user2").get(1, TimeUnit.SECONDS);
+		Assert.assertEquals(2, service.getMessagesReceived());
+		Assert.assertEquals(2, Arrays.stream(service.getLatencyHistogram()).sum());
+		Assert.assertTrue(service.getLatencyMaxMicros() >= service.getLatency50thPercentileMicros());
+		
+		ObjectName name = MBeans.register(service, "MessageService", "statisticsTest");
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			Assert.assertEquals(2L, server.getAttribute(name, "MessagesReceived"));
+			Assert.assertEquals(2, ((TabularData)server.getAttribute(name, "QueueDepths")).size());
+			server.invoke(name, "resetStatistics", null, null);
+			Assert.assertEquals(0, service.getMessagesSent());
+		}finally{
+			MBeans.unregister(name);
+		}
+	}
+	@Test
+	public void messagePoolTest(){
+		MessagePool<String> pool = new MessagePool<>(4);
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(1, OverflowPolicy.REJECT, 0, TimeUnit.MILLISECONDS), null, pool);
+		service.register("user1","user2");
+		service.sendMessage("message0","user1", "user2");
+		Message<String> mess = service.getNextMessage("user2");
+		Assert.assertEquals("message0", mess.getMessageBody());
+		mess.release();
+		
+		service.sendMessage("message1","user1", "user2");
+		Message<String> reused = service.getNextMessage("user2");
+		Assert.assertSame(mess, reused);
+		Assert.assertEquals("message1", reused.getMessageBody());
+		reused.release();
+		
+		service.sendMessage("message2","user1", "user2");
+		service.sendMessage("message3","user1", "user2");
+		Assert.assertEquals(1, service.getMessagesRejected());
+		Assert.assertEquals(1, pool.size());
+		Assert.assertEquals(2, pool.getCreated());
+		
+		// envelopes dropped to make room go back to the pool
+		MessagePool<String> dropPool = new MessagePool<>(4);
+		SimpleMessageService dropOldest = new SimpleMessageService(MailboxFactory.linked(), 
+				new MailboxLimits(1, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS), null, dropPool);
+		dropOldest.register("user1","user2");
+		for(int i=0;i<3;i++)
+			dropOldest.sendMessage("message"+i,"user1", "user2");
+		Assert.assertEquals(2, dropOldest.getMessagesDropped());
+		Assert.assertEquals(1, dropPool.size());
+		Assert.assertEquals(2, dropPool.getCreated());
+		Assert.assertEquals("message2", dropOldest.getNextMessage("user2").getMessageBody());
+	}
+	
+	@Test
+	public void opaqueTest(){
+		this.register("user1","user2");
+		byte[] body = "message0".getBytes(StandardCharsets.UTF_8);
+		this.sendEncoded(body, "user1", "user2");
+		Message<String> mess = this.getNextMessage("user2");
+		Assert.assertSame(body, mess.getEncodedBody());
+		Assert.assertEquals("user1", mess.getSenderName());
+		
+		this.sendEncoded(body, mess.getReceiverHandle(), mess.getSenderHandle());
+		Assert.assertSame(body, this.getNextMessage("user1").getEncodedBody());
+		
+		this.sendMessages(Arrays.asList(Message.opaque(body, "user1", "user2", Message.NO_HANDLE, Message.NO_HANDLE)));
+		mess = this.getNextMessage("user2");
+		Assert.assertSame(body, mess.getEncodedBody());
+		Assert.assertEquals("message0", mess.getMessageBody());
+	}
 }
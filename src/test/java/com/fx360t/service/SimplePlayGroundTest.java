@@ -146,4 +146,27 @@ public class SimplePlayGroundTest {
 			Assert.fail(e.getMessage());
 		}
 	}
+	@Test
+	public void gameStateTest(){
+		SimplePlayGround playGround = new SimplePlayGround();
+		try {
+			Assert.assertEquals(GameState.WAITING_FOR_PLAYERS, playGround.getGameState());
+			playGround.registerPlayer(firstPlayer);
+			playGround.registerPlayer(secondPlayer);
+			Assert.assertEquals(GameState.READY, playGround.getGameState());
+			Assert.assertEquals(2, playGround.getRegisteredPlayers());
+			Assert.assertEquals(0, playGround.getGameDurationMillis());
+			playGround.startPlaying();
+			Assert.assertEquals(GameState.RUNNING, playGround.getGameState());
+			Thread.sleep(20);
+			playGround.finishPlaying();
+			Assert.assertEquals(GameState.FINISHED, playGround.getGameState());
+			long duration = playGround.getGameDurationMillis();
+			Assert.assertTrue(duration >= 20);
+			Thread.sleep(20);
+			Assert.assertEquals(duration, playGround.getGameDurationMillis());
+		} catch (RemoteException | InterruptedException e) {
+			Assert.fail(e.getMessage());
+		}
+	}
 }
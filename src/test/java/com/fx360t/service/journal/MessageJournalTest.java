@@ -0,0 +1,211 @@
+package com.fx360t.service.journal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.strategy.Message;
+
+public class MessageJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MessageJournal open(int segmentSize, boolean durable) throws Exception {
+		return new MessageJournal(folder.getRoot().toPath(), segmentSize, 16, 1, TimeUnit.MILLISECONDS, durable);
+	}
+
+	private static SimpleMessageService service(MessageJournal journal) {
+		return new SimpleMessageService(MailboxFactory.linked(), MailboxLimits.unbounded(), null, null, journal);
+	}
+
+	@Test
+	public void recoveryTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2", "user3");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		service.sendMessage("message2", "user2", "user1");
+		service.sendMessage("message3", "user1", "user3");
+		Assert.assertEquals("message0", service.getNextMessage("user2").getMessageBody());
+		service.unregister("user3");
+		journal.close();
+
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals(2, service.getRegisteredUsers());
+		Message<String> message = service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("message1", message.getMessageBody());
+		Assert.assertEquals(service.getHandle("user1"), message.getSenderHandle());
+		Assert.assertEquals("message2", service.pollNextMessage("user1", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertNull(service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(Message.NO_HANDLE, service.getHandle("user3"));
+		journal.close();
+
+		// old segments are replaced by the recovered state
+		Assert.assertEquals(1, folder.getRoot().listFiles().length);
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals(2, service.getRegisteredUsers());
+		Assert.assertNull(service.pollNextMessage("user1", 0, TimeUnit.MILLISECONDS));
+		journal.close();
+	}
+
+	@Test
+	public void redeliverTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		Message<String> message = service.getNextMessage("user2");
+		service.redeliver(Collections.singletonList(message));
+		Assert.assertEquals(0, service.getMessagesReceived());
+		journal.close();
+
+		// the message given back is recovered before the pending one
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals("message0", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertEquals("message1", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		journal.close();
+	}
+
+	@Test
+	public void failedPushTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2");
+		CountDownLatch pushed = new CountDownLatch(1);
+		service.subscribe("user2", messages -> {
+			pushed.countDown();
+			throw new RemoteException("unreachable");
+		});
+		service.sendMessage("message0", "user1", "user2");
+		Assert.assertTrue(pushed.await(1, TimeUnit.SECONDS));
+		journal.close();
+
+		// the message was not delivered, so it is recovered
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals("message0", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		journal.close();
+	}
+
+	@Test
+	public void journalFailureTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2");
+		journal.close();
+		// a message without its record would make later records of the mailbox replay wrong messages
+		try {
+			service.sendMessage("message0", "user1", "user2");
+			Assert.fail();
+		} catch (MessageRejectedException e) {
+		}
+		Assert.assertEquals(1, service.getMessagesRejected());
+		Assert.assertNull(service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void segmentsTest() throws Exception {
+		MessageJournal journal = open(1024, true);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2");
+		for (int i = 0; i < 100; i++)
+			service.sendMessage("message" + i, "user1", "user2");
+		Assert.assertTrue(folder.getRoot().listFiles().length > 1);
+		journal.close();
+
+		journal = open(1024, false);
+		service = service(journal);
+		for (int i = 0; i < 100; i++)
+			Assert.assertEquals("message" + i, service.getNextMessage("user2").getMessageBody());
+		journal.close();
+	}
+
+	@Test
+	public void overflowTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(),
+				new MailboxLimits(2, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS), null, null, journal);
+		service.register("user1", "user2", "user3");
+		for (int i = 0; i < 5; i++)
+			service.sendMessage("message" + i, "user1", "user2");
+		journal.close();
+
+		// dropped messages are not recovered
+		journal = open(1024 * 1024, false);
+		service = new SimpleMessageService(MailboxFactory.linked(),
+				new MailboxLimits(2, OverflowPolicy.REJECT, 0, TimeUnit.MILLISECONDS), null, null, journal);
+		Assert.assertEquals("message3", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertEquals("message4", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertNull(service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS));
+		service.sendMessage("message5", "user1", "user3");
+		service.sendMessage("message6", "user1", "user3");
+		service.sendMessage("message7", "user1", "user3");
+		service.sendMessage("message8", "user1", "user2");
+		journal.close();
+
+		// rejected messages are not recovered
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals("message5", service.pollNextMessage("user3", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertEquals("message6", service.pollNextMessage("user3", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertNull(service.pollNextMessage("user3", 0, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("message8", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		journal.close();
+	}
+
+	@Test
+	public void damagedTest() throws Exception {
+		MessageJournal journal = open(1024 * 1024, false);
+		SimpleMessageService service = service(journal);
+		service.register("user1", "user2");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		journal.close();
+
+		File[] segments = folder.getRoot().listFiles();
+		Assert.assertEquals(1, segments.length);
+		try (RandomAccessFile file = new RandomAccessFile(segments[0], "rw")) {
+			// the last byte of the last record, a write torn by a crash
+			long position = 0;
+			int length;
+			long last = 0;
+			while ((length = readInt(file, position)) > 0) {
+				last = position + 8 + length - 1;
+				position += 8 + length;
+			}
+			file.seek(last);
+			int damaged = file.read() ^ 0xFF;
+			file.seek(last);
+			file.write(damaged);
+		}
+
+		journal = open(1024 * 1024, false);
+		service = service(journal);
+		Assert.assertEquals("message0", service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertNull(service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS));
+		journal.close();
+	}
+
+	private static int readInt(RandomAccessFile file, long position) throws Exception {
+		file.seek(position);
+		return file.readInt();
+	}
+}
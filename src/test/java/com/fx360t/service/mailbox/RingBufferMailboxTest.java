@@ -0,0 +1,88 @@
+package com.fx360t.service.mailbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RingBufferMailboxTest {
+	@Test
+	public void capacityTest(){
+		Assert.assertEquals(8, new RingBufferMailbox<String>(5).slots());
+		Assert.assertEquals(5, new RingBufferMailbox<String>(5).capacity());
+		Assert.assertEquals(1, new RingBufferMailbox<String>(1).capacity());
+		try{
+			new RingBufferMailbox<String>(0);
+			Assert.fail();
+		}catch(IllegalArgumentException e){
+		}
+	}
+	@Test
+	public void offerPollTest(){
+		Mailbox<String> mailbox = new RingBufferMailbox<>(4);
+		Assert.assertTrue(mailbox.isEmpty());
+		Assert.assertNull(mailbox.poll());
+		for(int i=0;i<4;i++)
+			Assert.assertTrue(mailbox.offer("m"+i));
+		Assert.assertFalse(mailbox.offer("m4"));
+		Assert.assertEquals(4, mailbox.size());
+		Assert.assertEquals("m0", mailbox.snapshot().get(0));
+		Assert.assertEquals("m0", mailbox.poll());
+		Assert.assertTrue(mailbox.offer("m4"));
+		List<String> drained = new ArrayList<>();
+		Assert.assertEquals(3, mailbox.drainTo(drained, 3));
+		Assert.assertEquals("m1", drained.get(0));
+		Assert.assertEquals("m4", mailbox.poll());
+		Assert.assertTrue(mailbox.isEmpty());
+	}
+	@Test
+	public void takeTest() throws InterruptedException{
+		Mailbox<String> mailbox = new RingBufferMailbox<>(4);
+		CountDownLatch received = new CountDownLatch(1);
+		Thread consumer = new Thread(()->{
+			try {
+				if("message".equals(mailbox.take()))
+					received.countDown();
+			} catch (InterruptedException e) {
+			}
+		});
+		consumer.start();
+		Thread.sleep(100);
+		mailbox.put("message");
+		Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+	}
+	@Test
+	public void multipleProducersTest() throws InterruptedException{
+		Mailbox<Integer> mailbox = new RingBufferMailbox<>(16);
+		int producers = 4;
+		int perProducer = 10000;
+		ExecutorService executor = Executors.newFixedThreadPool(producers);
+		for(int p=0;p<producers;p++){
+			int base = p*perProducer;
+			executor.execute(()->{
+				try {
+					for(int i=0;i<perProducer;i++)
+						mailbox.put(base+i);
+				} catch (InterruptedException e) {
+				}
+			});
+		}
+		int[] last = new int[producers];
+		Arrays.fill(last, -1);
+		for(int i=0;i<producers*perProducer;i++){
+			int value = mailbox.take();
+			int producer = value/perProducer;
+			//elements of every producer come in the order they were put
+			Assert.assertTrue(value > last[producer]);
+			last[producer] = value;
+		}
+		executor.shutdown();
+		Assert.assertTrue(mailbox.isEmpty());
+	}
+}
@@ -0,0 +1,126 @@
+package com.fx360t.service.session;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.GameState;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.strategy.Message;
+
+public class SessionPlayGroundTest {
+
+	private static Player player(String identity) throws RemoteException {
+		Player player = Mockito.mock(Player.class);
+		Mockito.when(player.getIdentity()).thenReturn(identity);
+		Mockito.when(player.getName()).thenReturn(identity);
+		return player;
+	}
+
+	private static void register(GameSession session, Player... players) throws RemoteException {
+		for (Player player : players)
+			session.registerPlayer(player);
+	}
+
+	@Test
+	public void mailboxesTest() throws RemoteException {
+		SimpleMessageService shared = new SimpleMessageService();
+		SessionPlayGround playGround = new SessionPlayGround(shared);
+		MessageService<String> first = playGround.openSession().getMessageService();
+		MessageService<String> second = playGround.openSession().getMessageService();
+		first.register("John", "Bob");
+		second.register("John", "Bob");
+		Assert.assertEquals(4, shared.getRegisteredUsers());
+
+		first.sendMessage("hello", "John", "Bob");
+		Assert.assertNull(second.pollNextMessage("Bob", 0, TimeUnit.MILLISECONDS));
+		Message<String> message = first.getNextMessage("Bob");
+		Assert.assertEquals("hello", message.getMessageBody());
+		Assert.assertEquals("John", message.getSenderName());
+		Assert.assertEquals("Bob", message.getReceiverName());
+		Assert.assertEquals(first.getHandle("John"), message.getSenderHandle());
+		Assert.assertNotEquals(first.getHandle("John"), second.getHandle("John"));
+
+		first.sendMessage("reply", message.getReceiverHandle(), message.getSenderHandle());
+		Assert.assertEquals("reply", first.getNextMessage(message.getSenderHandle()).getMessageBody());
+		Assert.assertEquals(1, second.sendMessages(Arrays.asList(new Message<>("batch", "Bob", "John"))));
+		Assert.assertNull(first.pollNextMessage("John", 0, TimeUnit.MILLISECONDS));
+		Assert.assertEquals("Bob", second.drainMessages("John", 10).get(0).getSenderName());
+
+		first.unregister("John", "Bob");
+		Assert.assertEquals(2, shared.getRegisteredUsers());
+	}
+
+	@Test
+	public void foreignHandleTest() throws RemoteException {
+		SimpleMessageService shared = new SimpleMessageService();
+		SessionPlayGround playGround = new SessionPlayGround(shared);
+		MessageService<String> first = playGround.openSession().getMessageService();
+		MessageService<String> second = playGround.openSession().getMessageService();
+		int john = first.registerUser("John");
+		int bob = first.registerUser("Bob");
+		int mallory = second.registerUser("Mallory");
+
+		second.sendMessage("spam", mallory, bob);
+		second.sendMessage("spam", john, bob);
+		Assert.assertNull(first.pollNextMessage("Bob", 0, TimeUnit.MILLISECONDS));
+		first.sendMessage("hello", john, bob);
+		Assert.assertNull(second.getNextMessage(bob));
+		Assert.assertEquals("hello", first.getNextMessage(bob).getMessageBody());
+
+		first.unregister("Bob");
+		first.sendMessage("late", john, bob);
+		Assert.assertNull(first.pollNextMessage("John", 0, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void lifecycleTest() throws Exception {
+		SessionPlayGround playGround = new SessionPlayGround(new SimpleMessageService());
+		GameSession first = playGround.openSession();
+		GameSession second = playGround.openSession();
+		Assert.assertNotEquals(first.getId(), second.getId());
+		Assert.assertSame(second, playGround.getSession(second.getId()));
+		Player john = player("John");
+		Player bob = player("Bob");
+		register(first, john, bob);
+		Assert.assertEquals(GameState.WAITING_FOR_PLAYERS, second.getGameState());
+		register(second, player("John"), player("Bob"));
+		Assert.assertEquals(4, playGround.playersCount());
+		Assert.assertEquals(GameState.READY, playGround.getGameState());
+
+		// sessions start and finish independently
+		Assert.assertTrue(first.startPlaying());
+		Assert.assertEquals(GameState.READY, second.getGameState());
+		Assert.assertEquals(GameState.RUNNING, playGround.getGameState());
+		Assert.assertTrue(first.waitUntilGameIsFinished());
+		Assert.assertTrue(first.finishPlaying());
+		Mockito.verify(john).gameOver();
+		Assert.assertNull(playGround.getSession(first.getId()));
+		Assert.assertEquals(1, playGround.getFinishedSessions());
+		Assert.assertEquals(GameState.READY, playGround.getGameState());
+
+		GameSession third = playGround.openSession();
+		register(third, player("John"), player("Bob"));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Assert.assertTrue(third.play(executor).get(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		Assert.assertEquals(GameState.FINISHED, third.getGameState());
+
+		// the rest is played through the playground
+		Assert.assertTrue(playGround.startPlaying());
+		Assert.assertTrue(playGround.waitUntilGameIsFinished());
+		Assert.assertTrue(playGround.finishPlaying());
+		Assert.assertEquals(0, playGround.getOpenSessions());
+		Assert.assertEquals(3, playGround.getFinishedSessions());
+		Assert.assertEquals(GameState.FINISHED, playGround.getGameState());
+		Assert.assertFalse(playGround.startPlaying());
+	}
+}
@@ -0,0 +1,119 @@
+package com.fx360t.service.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.strategy.Message;
+
+public class NetworkSimulatorTest {
+	@Test
+	public void distributionTest(){
+		Random random = new Random(1);
+		Assert.assertEquals(5, LatencyDistribution.parse("fixed:5").nextMillis(random), 0);
+		for(int i=0;i<100;i++){
+			double uniform = LatencyDistribution.parse("uniform:1, 3").nextMillis(random);
+			Assert.assertTrue(uniform >= 1 && uniform <= 3);
+			Assert.assertTrue(LatencyDistribution.parse("normal:5,1").nextMillis(random) >= 0);
+			Assert.assertTrue(LatencyDistribution.parse("longtail:2,1.5").nextMillis(random) >= 2);
+		}
+		try{
+			LatencyDistribution.parse("gamma:1,2");
+			Assert.fail();
+		}catch(IllegalArgumentException e){
+		}
+	}
+	@Test
+	public void delayedDeliveryTest(){
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), MailboxLimits.unbounded(),
+				new NetworkSimulator(LatencyDistribution.fixed(200), 0, 0, 0));
+		service.register("user1","user2");
+		long start = System.nanoTime();
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		//sender is not delayed
+		Assert.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+		Assert.assertNull(service.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		Message<String> mess = service.pollNextMessage("user2", 5, TimeUnit.SECONDS);
+		Assert.assertEquals("message0", mess.getMessageBody());
+		Assert.assertEquals("message1", service.pollNextMessage("user2", 5, TimeUnit.SECONDS).getMessageBody());
+	}
+	@Test
+	public void dropTest(){
+		NetworkSimulator simulator = new NetworkSimulator(LatencyDistribution.fixed(0), 0, 1, 0);
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), MailboxLimits.unbounded(),
+				simulator);
+		service.register("user1","user2");
+		service.sendMessage("message", "user1", "user2");
+		Assert.assertNull(service.pollNextMessage("user2", 100, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, simulator.getDropped());
+	}
+	@Test
+	public void lanesTest() throws InterruptedException{
+		NetworkSimulator simulator = new NetworkSimulator(LatencyDistribution.fixed(1), 0, 0, 0);
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), MailboxLimits.unbounded(),
+				simulator);
+		for(int i=0;i<10;i++)
+			service.register("user"+i);
+		for(int i=0;i<10;i++)
+			service.sendMessage("message"+i, "user"+i, i==0?"user1":"user0");
+		Assert.assertEquals("message1", service.pollNextMessage("user0", 5, TimeUnit.SECONDS).getMessageBody());
+		for(int i=0;i<8;i++)
+			Assert.assertNotNull(service.pollNextMessage("user0", 5, TimeUnit.SECONDS));
+		Assert.assertNotNull(service.pollNextMessage("user1", 5, TimeUnit.SECONDS));
+		// lanes of recipients without messages on the way are removed
+		long deadline = System.currentTimeMillis() + 5000;
+		while(simulator.getLanes() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(0, simulator.getLanes());
+	}
+	@Test
+	public void rejectTest() throws InterruptedException{
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(),
+				new MailboxLimits(1, OverflowPolicy.FAIL, 0, TimeUnit.MILLISECONDS),
+				new NetworkSimulator(LatencyDistribution.fixed(50), 0, 0, 0));
+		service.register("user1","user2");
+		service.sendMessage("message0", "user1", "user2");
+		Assert.assertEquals("message0", service.pollNextMessage("user2", 5, TimeUnit.SECONDS).getMessageBody());
+		service.sendMessage("message1", "user1", "user2");
+		long deadline = System.currentTimeMillis() + 5000;
+		while(service.getMessagesSent() < 2 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		// full mailbox rejects at once
+		try{
+			service.sendMessage("message2", "user1", "user2");
+			Assert.fail();
+		}catch(MessageRejectedException e){
+		}
+		Assert.assertEquals(1, service.getMessagesRejected());
+		// accepted messages which find the mailbox full on arrival are counted as rejected
+		service.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS);
+		List<Message<String>> batch = new ArrayList<>();
+		for(int i=3;i<6;i++)
+			batch.add(new Message<>("message"+i, "user1", "user2"));
+		Assert.assertEquals(3, service.sendMessages(batch));
+		while(service.getMessagesRejected() < 3 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		Assert.assertEquals(3, service.getMessagesRejected());
+		Assert.assertEquals(3, service.getMessagesSent());
+	}
+	@Test
+	public void orderTest(){
+		SimpleMessageService service = new SimpleMessageService(MailboxFactory.linked(), MailboxLimits.unbounded(),
+				new NetworkSimulator(LatencyDistribution.uniform(0, 20), 5, 0, 0));
+		service.register("user1","user2");
+		for(int i=0;i<50;i++)
+			service.sendMessage("message"+i, "user1", "user2");
+		for(int i=0;i<50;i++)
+			Assert.assertEquals("message"+i, service.pollNextMessage("user2", 5, TimeUnit.SECONDS).getMessageBody());
+	}
+}
@@ -0,0 +1,208 @@
+package com.fx360t.strategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageCodecTest {
+	@Test
+	public void bodiesTest() throws Exception {
+		Message<String> text = copy(new Message<>("message", "user1", "user2", 1, 2));
+		Assert.assertEquals("message", text.getMessageBody());
+		Assert.assertEquals("user1", text.getSenderName());
+		Assert.assertEquals("user2", text.getReceiverName());
+		Assert.assertEquals(1, text.getSenderHandle());
+		Assert.assertEquals(2, text.getReceiverHandle());
+		Assert.assertEquals(Long.valueOf(42), copy(new Message<>(42L, "user1", "user2")).getMessageBody());
+		Assert.assertArrayEquals(new byte[] {1, 2, 3}, copy(new Message<>(new byte[] {1, 2, 3}, "user1", "user2")).getMessageBody());
+		Message<String> empty = copy(new Message<String>(null, null, "user2"));
+		Assert.assertNull(empty.getMessageBody());
+		Assert.assertNull(empty.getSenderName());
+		Assert.assertEquals(Message.NO_HANDLE, empty.getSenderHandle());
+	}
+
+	@Test
+	public void opaqueTest() throws Exception {
+		Message<String> message = new Message<>("message \u00e9", "user1", "user2", 1, 2);
+		MessageCodec.setOpaqueBodies(true);
+		try {
+			Message<String> routed = copy(message);
+			Assert.assertArrayEquals("message \u00e9".getBytes(StandardCharsets.UTF_8), routed.getEncodedBody());
+			Assert.assertEquals(1, routed.getSenderHandle());
+			// routed again without decoding, the same bytes are written
+			Assert.assertArrayEquals(encode(message), encode(routed));
+			Assert.assertNull(copy(new Message<String>(null, "user1", "user2")).getMessageBody());
+			Assert.assertEquals(Long.valueOf(42), copy(new Message<>(42L, "user1", "user2")).getMessageBody());
+			MessageCodec.setOpaqueBodies(false);
+			Message<String> received = copy(routed);
+			Assert.assertNull(received.getEncodedBody());
+			Assert.assertEquals("message \u00e9", received.getMessageBody());
+			Assert.assertEquals("message \u00e9", routed.getMessageBody());
+		} finally {
+			MessageCodec.setOpaqueBodies(false);
+		}
+	}
+
+	@Test
+	public void serializationTest() throws Exception {
+		Message<String> message = new Message<>("message", "user1", "user2", 1, 2);
+		byte[] serialized = serialize(message);
+		@SuppressWarnings("unchecked")
+		Message<String> copy = (Message<String>) new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+		Assert.assertEquals("message", copy.getMessageBody());
+		Assert.assertEquals(2, copy.getReceiverHandle());
+		Assert.assertTrue(serialized.length < 100);
+
+		Message<BigDecimal> other = new Message<>(BigDecimal.TEN, "user1", "user2");
+		@SuppressWarnings("unchecked")
+		Message<BigDecimal> otherCopy = (Message<BigDecimal>) new ObjectInputStream(
+				new ByteArrayInputStream(serialize(other))).readObject();
+		Assert.assertEquals(BigDecimal.TEN, otherCopy.getMessageBody());
+		try {
+			copy(other);
+			Assert.fail();
+		} catch (NotSerializableException e) {
+		}
+	}
+
+	@Test
+	public void registerTest() throws Exception {
+		MessageCodec.register(new BodyCodec<int[]>() {
+			@Override
+			public byte getTypeId() {
+				return 100;
+			}
+			@Override
+			public Class<int[]> getType() {
+				return int[].class;
+			}
+			@Override
+			public void write(DataOutput out, int[] body) throws IOException {
+				out.writeInt(body.length);
+				for (int value : body)
+					out.writeInt(value);
+			}
+			@Override
+			public int[] read(DataInput in) throws IOException {
+				int[] body = new int[in.readInt()];
+				for (int i = 0; i < body.length; i++)
+					body[i] = in.readInt();
+				return body;
+			}
+		});
+		Assert.assertNotNull(MessageCodec.forType(int[].class));
+		Assert.assertTrue(Arrays.equals(new int[] {5, 6}, copy(new Message<>(new int[] {5, 6}, "user1", "user2")).getMessageBody()));
+		try {
+			MessageCodec.register(new BodyCodec<Integer>() {
+				@Override
+				public byte getTypeId() {
+					return 1;
+				}
+				@Override
+				public Class<Integer> getType() {
+					return Integer.class;
+				}
+				@Override
+				public void write(DataOutput out, Integer body) throws IOException {
+				}
+				@Override
+				public Integer read(DataInput in) throws IOException {
+					return null;
+				}
+			});
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+		Assert.assertNull(MessageCodec.forType(Integer.class));
+	}
+
+	@Test
+	public void reregisterTest() throws Exception {
+		MessageCodec.register(new ShortCodec((byte) 101));
+		byte[] old = encode(new Message<>((short) 7, "user1", "user2"));
+		MessageCodec.register(new ShortCodec((byte) 102));
+		Assert.assertEquals(102, MessageCodec.forType(Short.class).getTypeId());
+		Assert.assertEquals(Short.valueOf((short) 7), copy(new Message<>((short) 7, "user1", "user2")).getMessageBody());
+		try {
+			// the old id is free
+			MessageCodec.read(new DataInputStream(new ByteArrayInputStream(old)));
+			Assert.fail();
+		} catch (StreamCorruptedException e) {
+		}
+		MessageCodec.register(new BodyCodec<Character>() {
+			@Override
+			public byte getTypeId() {
+				return 101;
+			}
+			@Override
+			public Class<Character> getType() {
+				return Character.class;
+			}
+			@Override
+			public void write(DataOutput out, Character body) throws IOException {
+				out.writeChar(body);
+			}
+			@Override
+			public Character read(DataInput in) throws IOException {
+				return in.readChar();
+			}
+		});
+		Assert.assertEquals(Character.valueOf('c'), copy(new Message<>('c', "user1", "user2")).getMessageBody());
+	}
+
+	private static final class ShortCodec implements BodyCodec<Short> {
+		private final byte id;
+
+		ShortCodec(byte id) {
+			this.id = id;
+		}
+		@Override
+		public byte getTypeId() {
+			return id;
+		}
+		@Override
+		public Class<Short> getType() {
+			return Short.class;
+		}
+		@Override
+		public void write(DataOutput out, Short body) throws IOException {
+			out.writeShort(body);
+		}
+		@Override
+		public Short read(DataInput in) throws IOException {
+			return in.readShort();
+		}
+	}
+
+	private static <T> Message<T> copy(Message<T> message) throws IOException {
+		return MessageCodec.read(new DataInputStream(new ByteArrayInputStream(encode(message))));
+	}
+
+	private static byte[] encode(Message<?> message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		MessageCodec.write(new DataOutputStream(bytes), message);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+}
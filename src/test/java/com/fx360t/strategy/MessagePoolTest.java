@@ -0,0 +1,53 @@
+package com.fx360t.strategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessagePoolTest {
+	@Test
+	public void acquireReleaseTest(){
+		MessagePool<String> pool = new MessagePool<>(2);
+		Message<String> message = pool.acquire("message", "user1", "user2", 1, 2);
+		Assert.assertEquals("message", message.getMessageBody());
+		Assert.assertEquals(2, message.getReceiverHandle());
+		message.release();
+		Assert.assertEquals(1, pool.size());
+		Assert.assertNull(message.getMessageBody());
+		try{
+			message.release();
+			Assert.fail();
+		}catch(IllegalStateException e){
+		}
+		
+		Message<String> reused = pool.acquire("message1", "user2", "user1", 2, 1);
+		Assert.assertSame(message, reused);
+		Assert.assertEquals("user2", reused.getSenderName());
+		Assert.assertEquals(1, pool.getCreated());
+		
+		Message<String> created = pool.acquire("message2", "user2", "user1", 2, 1);
+		Assert.assertNotSame(reused, created);
+		Assert.assertEquals(2, pool.getCreated());
+		
+		new Message<>("message", "user1", "user2").release();
+	}
+	@Test
+	public void serializationTest() throws Exception{
+		MessagePool<String> pool = new MessagePool<>(2);
+		Message<String> message = pool.acquire("message", "user1", "user2", 1, 2);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+			out.writeObject(message);
+		}
+		@SuppressWarnings("unchecked")
+		Message<String> copy = (Message<String>) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		Assert.assertEquals("message", copy.getMessageBody());
+		Assert.assertEquals(1, copy.getSenderHandle());
+		copy.release();
+		Assert.assertEquals(0, pool.size());
+	}
+}
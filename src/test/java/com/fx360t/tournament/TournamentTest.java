@@ -0,0 +1,68 @@
+package com.fx360t.tournament;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.strategy.StringMessageStrategy;
+
+public class TournamentTest {
+
+	private static Tournament tournament(int entrants) {
+		Tournament tournament = new Tournament(new SimpleMessageService(), 2);
+		for (int i = 1; i <= entrants; i++)
+			tournament.addEntrant("Player" + i, StringMessageStrategy::new);
+		return tournament;
+	}
+
+	@Test(timeout = 30000)
+	public void roundRobinTest() {
+		try (Tournament tournament = tournament(4)) {
+			TournamentResult result = tournament.roundRobin(2);
+			Assert.assertEquals(12, result.getGames().size());
+			Assert.assertEquals(12, result.getCompletedGames());
+			Assert.assertNull(result.getWinner());
+			Assert.assertEquals(6, result.getGamesOf("Player1").size());
+			for (GameResult game : result.getGamesOf("Player1"))
+				Assert.assertEquals(game.getRound() == 1, "Player1".equals(game.getInitiator()));
+			Assert.assertTrue(result.getTotalGameNanos() > 0);
+			Assert.assertEquals(0, tournament.getPlayGround().getOpenSessions());
+			Assert.assertEquals(12, tournament.getPlayGround().getFinishedSessions());
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void bracketTest() {
+		try (Tournament tournament = tournament(5)) {
+			TournamentResult result = tournament.bracket(GameResult::getOpponent);
+			// 5 -> 3 -> 2 -> 1
+			Assert.assertEquals(4, result.getGames().size());
+			Assert.assertEquals(4, result.getCompletedGames());
+			Assert.assertEquals("Player5", result.getWinner());
+			Assert.assertEquals(3, result.getGames().get(3).getRound());
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void failedGameTest() {
+		SimpleMessageService messageService = new SimpleMessageService();
+		try (Tournament tournament = new Tournament(messageService, 2)) {
+			tournament.addEntrant("Player1", StringMessageStrategy::new);
+			tournament.addEntrant("Player2", service -> {
+				throw new IllegalStateException("no strategy");
+			});
+			TournamentResult result = tournament.roundRobin(1);
+			Assert.assertEquals(1, result.getGames().size());
+			Assert.assertEquals(0, result.getCompletedGames());
+			Assert.assertEquals(0, tournament.getPlayGround().getOpenSessions());
+			Assert.assertEquals(0, messageService.getRegisteredUsers());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void entrantTest() {
+		try (Tournament tournament = tournament(1)) {
+			tournament.addEntrant("Player1", StringMessageStrategy::new);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.fx360t.transport;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.strategy.Message;
+
+public class CoalescingMessageServiceTest {
+	private final BlockingQueue<Exception> failures = new LinkedBlockingQueue<>();
+	private CoalescingMessageService service;
+
+	@After
+	public void close() {
+		if (service != null)
+			service.close();
+	}
+
+	private CoalescingMessageService coalescing(MessageService<String> remote, int maxBatch, long maxDelayMillis) {
+		service = new CoalescingMessageService(remote, maxBatch, maxDelayMillis, TimeUnit.MILLISECONDS,
+				(messages, cause) -> failures.add(cause));
+		return service;
+	}
+
+	@Test
+	public void batchTest() throws Exception {
+		SimpleMessageService remote = Mockito.spy(new SimpleMessageService());
+		coalescing(remote, 10, 10000);
+		service.register("user1", "user2");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		service.sendMessage("message2", "user1", "user2");
+		Assert.assertNull(remote.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		service.flush();
+		Mockito.verify(remote, Mockito.times(1)).sendMessages(Matchers.<List<Message<String>>>any());
+		List<Message<String>> messages = service.drainMessages("user2", 10);
+		Assert.assertEquals(3, messages.size());
+		Assert.assertEquals("message2", messages.get(2).getMessageBody());
+	}
+
+	@Test
+	public void windowTest() throws Exception {
+		SimpleMessageService remote = new SimpleMessageService();
+		coalescing(remote, 2, 10000);
+		service.register("user1", "user2");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		// batch is full, it is sent without waiting for the delay
+		Assert.assertEquals("message0", remote.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+
+		coalescing(remote, 10, 10).sendMessage("message2", "user1", "user2");
+		Assert.assertEquals("message1", remote.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertEquals("message2", remote.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+	}
+
+	@Test
+	public void handlesTest() throws Exception {
+		SimpleMessageService remote = Mockito.spy(new SimpleMessageService());
+		remote.register("user1", "user2");
+		int handle1 = remote.getHandle("user1");
+		int handle2 = remote.getHandle("user2");
+		coalescing(remote, 10, 0);
+		service.register("user2");
+		service.sendMessage("message0", handle2, handle1);
+		remote.sendMessage("message1", "user1", "user2");
+		Message<String> received = service.getNextMessage("user2");
+		service.sendMessage("message2", received.getReceiverHandle(), received.getSenderHandle());
+		service.flush();
+		// names of user1 are not known for the first message, it goes on its own
+		Mockito.verify(remote).sendMessage("message0", handle2, handle1);
+		Assert.assertEquals("message0", remote.getNextMessage("user1").getMessageBody());
+		Message<String> reply = remote.getNextMessage("user1");
+		Assert.assertEquals("message2", reply.getMessageBody());
+		Assert.assertEquals("user2", reply.getSenderName());
+		Assert.assertTrue(failures.isEmpty());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void failureTest() throws Exception {
+		MessageService<String> failing = Mockito.mock(MessageService.class);
+		Mockito.when(failing.sendMessages(Matchers.<List<Message<String>>>any())).thenThrow(new RemoteException("unreachable"));
+		coalescing(failing, 10, 0).sendMessage("message0", "user1", "user2");
+		Assert.assertTrue(failures.poll(1, TimeUnit.SECONDS) instanceof RemoteException);
+		service.close();
+
+		SimpleMessageService remote = new SimpleMessageService(MailboxFactory.linked(),
+				new MailboxLimits(1, OverflowPolicy.FAIL, 0, TimeUnit.MILLISECONDS));
+		remote.register("user1", "user2");
+		coalescing(remote, 10, 10000);
+		service.sendMessage("message1", "user1", "user2");
+		service.sendMessage("message2", "user1", "user2");
+		service.flush();
+		Assert.assertTrue(failures.poll(1, TimeUnit.SECONDS) instanceof MessageRejectedException);
+		Assert.assertEquals("message1", remote.getNextMessage("user2").getMessageBody());
+	}
+}
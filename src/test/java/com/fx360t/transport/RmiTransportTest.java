@@ -0,0 +1,90 @@
+package com.fx360t.transport;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.SimplePlayGround;
+import com.fx360t.strategy.Message;
+
+public class RmiTransportTest {
+	@Test
+	public void compressedTest() throws Exception {
+		callTest(new RmiSocketFactory(true, 64 * 1024, 4096, true));
+	}
+
+	@Test
+	public void unbufferedTest() throws Exception {
+		callTest(new RmiSocketFactory(false, 0, 0, false));
+	}
+
+	@Test
+	public void closeTest() throws Exception {
+		RmiSocketFactory socketFactory = new RmiSocketFactory(true, 0, 512, true);
+		try (ServerSocket server = socketFactory.createServerSocket(0);
+				Socket socket = socketFactory.createSocket("localhost", server.getLocalPort());
+				Socket accepted = server.accept()) {
+			OutputStream output = socket.getOutputStream();
+			output.write(1);
+			socket.close();
+			try {
+				output.write(1);
+				Assert.fail();
+			} catch (NullPointerException e) {
+				// the deflater is ended
+			}
+		}
+	}
+
+	private static void callTest(RmiSocketFactory socketFactory) throws Exception {
+		RmiTransport transport = new RmiTransport(socketFactory);
+		try {
+			call(transport);
+		} finally {
+			transport.close();
+		}
+		Assert.assertEquals(-1, transport.getLocalPort());
+	}
+
+	private static void call(RmiTransport transport) throws Exception {
+		SimpleMessageService local = new SimpleMessageService();
+		SimplePlayGround playGround = new SimplePlayGround();
+		transport.bind(local, playGround, 0);
+		int port = transport.getLocalPort();
+		Assert.assertNotEquals(0, port);
+
+		MessageService<String> service = transport.lookupMessageService("localhost:" + port);
+		service.register("user1", "user2");
+		char[] body = new char[100_000];
+		Arrays.fill(body, 'a');
+		service.sendMessage(new String(body), "user1", "user2");
+		Assert.assertEquals(new String(body), service.getNextMessage("user2").getMessageBody());
+		Assert.assertEquals(1, service.sendMessages(Collections.singletonList(new Message<>("message", "user2", "user1"))));
+		Assert.assertEquals("message", service.pollNextMessage("user1", 1, TimeUnit.SECONDS).getMessageBody());
+
+		Player player = Mockito.mock(Player.class);
+		Mockito.when(player.getIdentity()).thenReturn("player");
+		PlayerRegistrator remote = transport.lookupPlayGround("localhost:" + port);
+		Player exported = transport.export(player);
+		remote.registerPlayer(exported);
+		Assert.assertEquals(1, playGround.playersCount());
+		transport.unexport(player);
+		try {
+			exported.getIdentity();
+			Assert.fail();
+		} catch (RemoteException e) {
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.fx360t.transport;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fx360t.service.MessageService;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.strategy.Message;
+
+public class ShardedMessageServiceTest {
+
+	private static ShardedMessageService sharded(SimpleMessageService... nodes) throws Exception {
+		Map<String, MessageService<String>> services = new LinkedHashMap<>();
+		for (int i = 0; i < nodes.length; i++)
+			services.put("node" + i, nodes[i]);
+		return new ShardedMessageService(services);
+	}
+
+	@Test
+	public void routingTest() throws Exception {
+		SimpleMessageService node0 = new SimpleMessageService();
+		SimpleMessageService node1 = new SimpleMessageService();
+		SimpleMessageService node2 = new SimpleMessageService();
+		ShardedMessageService service = sharded(node0, node1, node2);
+		Set<String> used = new HashSet<>();
+		for (int i = 0; i < 30; i++) {
+			String user = "user" + i;
+			service.registerUser(user);
+			used.add(service.getShard(user));
+			Assert.assertEquals(service.getShard(user), service.getShard(user));
+		}
+		Assert.assertEquals(3, used.size());
+
+		// sender and receiver on different nodes
+		String sender = "user0";
+		String receiver = null;
+		for (int i = 1; receiver == null; i++)
+			if (!service.getShard("user" + i).equals(service.getShard(sender)))
+				receiver = "user" + i;
+		service.sendMessage("message0", sender, receiver);
+		Message<String> message = service.getNextMessage(receiver);
+		Assert.assertEquals("message0", message.getMessageBody());
+		Assert.assertEquals(service.getHandle(sender), message.getSenderHandle());
+		service.sendMessage("message1", message.getReceiverHandle(), message.getSenderHandle());
+		Assert.assertEquals("message1", service.pollNextMessage(sender, 1, TimeUnit.SECONDS).getMessageBody());
+
+		Assert.assertEquals(2, service.sendMessages(Arrays.asList(new Message<>("message2", sender, receiver),
+				new Message<>("message3", receiver, sender))));
+		Assert.assertEquals("message2", service.drainMessages(receiver, 10).get(0).getMessageBody());
+		Assert.assertEquals("message3", service.drainMessages(sender, 10).get(0).getMessageBody());
+
+		service.unregister(sender);
+		Assert.assertEquals(Message.NO_HANDLE, node0.getHandle(sender));
+		Assert.assertEquals(Message.NO_HANDLE, node1.getHandle(sender));
+		Assert.assertEquals(Message.NO_HANDLE, node2.getHandle(sender));
+	}
+
+	@Test
+	public void ringTest() throws Exception {
+		SimpleMessageService node0 = new SimpleMessageService();
+		SimpleMessageService node1 = new SimpleMessageService();
+		SimpleMessageService node2 = new SimpleMessageService();
+		// clients given the same nodes route users the same way
+		ShardedMessageService first = sharded(node0, node1);
+		ShardedMessageService second = sharded(node0, node1);
+		ShardedMessageService grown = sharded(node0, node1, node2);
+		int moved = 0;
+		for (int i = 0; i < 100; i++) {
+			String user = "user" + i;
+			Assert.assertEquals(first.getShard(user), second.getShard(user));
+			// one more node takes users only from other nodes, it never moves users between them
+			if ("node2".equals(grown.getShard(user)))
+				moved++;
+			else
+				Assert.assertEquals(first.getShard(user), grown.getShard(user));
+		}
+		Assert.assertTrue(moved > 0 && moved < 100);
+		first.registerUser("user0");
+		second.sendMessage("message", "user1", "user0");
+		Assert.assertEquals("message", first.pollNextMessage("user0", 0, TimeUnit.MILLISECONDS).getMessageBody());
+	}
+
+	@Test(timeout = 10000)
+	public void rebalanceTest() throws Exception {
+		SimpleMessageService node0 = new SimpleMessageService();
+		SimpleMessageService node1 = new SimpleMessageService();
+		SimpleMessageService node2 = new SimpleMessageService();
+		ShardedMessageService first = sharded(node0, node1);
+		ShardedMessageService second = sharded(node0, node1);
+		ShardedMessageService grown = sharded(node0, node1, node2);
+		String moved = null;
+		String stayed = null;
+		for (int i = 0; moved == null || stayed == null; i++)
+			if ("node2".equals(grown.getShard("user" + i)))
+				moved = moved == null ? "user" + i : moved;
+			else
+				stayed = stayed == null ? "user" + i : stayed;
+		first.register(moved, stayed);
+		second.getHandle(moved);
+		second.sendMessage("message0", stayed, moved);
+		second.sendMessage("message1", stayed, moved);
+		String receiver = moved;
+		CompletableFuture<Message<String>> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				// takes the first message, then waits on the old node
+				first.getNextMessage(receiver);
+				return first.getNextMessage(receiver);
+			} catch (RemoteException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		first.addShard("node2", node2);
+		Assert.assertEquals("node2", first.getShard(moved));
+		Assert.assertEquals(Message.NO_HANDLE, node0.getHandle(moved));
+		Assert.assertEquals(Message.NO_HANDLE, node1.getHandle(moved));
+		Assert.assertNotEquals(Message.NO_HANDLE, node2.getHandle(moved));
+		// the other client finds the user moved
+		second.addShard("node2", node2);
+		second.sendMessage("message2", stayed, moved);
+		Message<String> message = waiting.get(1, TimeUnit.SECONDS);
+		Assert.assertEquals("message1", message.getMessageBody());
+		Assert.assertEquals(first.getHandle(stayed), message.getSenderHandle());
+		Assert.assertEquals("message2", first.drainMessages(moved, 10).get(0).getMessageBody());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void noNodesTest() {
+		new ShardedMessageService(new LinkedHashMap<>());
+	}
+}
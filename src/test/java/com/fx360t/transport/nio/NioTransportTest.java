@@ -0,0 +1,369 @@
+package com.fx360t.transport.nio;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fx360t.player.Player;
+import com.fx360t.service.AsyncMessageReceiver;
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.MessageService;
+import com.fx360t.service.PlayerRegistrator;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.service.SimplePlayGround;
+import com.fx360t.service.mailbox.MailboxFactory;
+import com.fx360t.service.mailbox.MailboxLimits;
+import com.fx360t.service.mailbox.OverflowPolicy;
+import com.fx360t.strategy.Message;
+import com.fx360t.strategy.MessageCodec;
+import com.fx360t.transport.PushMessageService;
+
+public class NioTransportTest {
+	private NioTransport server;
+	private NioTransport client;
+	private SimplePlayGround playGround;
+	private String address;
+
+	@Before
+	public void init() throws Exception {
+		server = new NioTransport();
+		playGround = new SimplePlayGround();
+		server.bind(new SimpleMessageService(MailboxFactory.linked(),
+				new MailboxLimits(2, OverflowPolicy.FAIL, 0, TimeUnit.MILLISECONDS)), playGround, 0);
+		address = "localhost:" + server.getLocalPort();
+		client = new NioTransport();
+	}
+
+	@After
+	public void close() {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void messagesTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		service.register("user1", "user2");
+		service.sendMessage("message0", "user1", "user2");
+		Message<String> mess = service.getNextMessage("user2");
+		Assert.assertTrue(mess != null && mess.getMessageBody().equals("message0")
+				&& mess.getSenderName().equals("user1") && mess.getReceiverName().equals("user2"));
+
+		int handle1 = service.getHandle("user1");
+		int handle2 = service.registerUser("user2");
+		service.sendMessage("message1", handle2, handle1);
+		Assert.assertEquals(handle2, service.getNextMessage(handle1).getSenderHandle());
+
+		Assert.assertEquals(2, service.sendMessages(Arrays.asList(new Message<>("m1", "user1", "user2"),
+				new Message<>("m2", "user1", "user2"), new Message<>("m3", "user1", "user3"))));
+		List<Message<String>> messages = service.drainMessages("user2", 10);
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("m2", messages.get(1).getMessageBody());
+		Assert.assertNull(service.drainMessages("user3", 10));
+
+		Assert.assertNull(service.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		service.sendMessage("message2", "user1", "user2");
+		Assert.assertEquals("message2", service.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS).getMessageBody());
+
+		service.sendMessage("message3", "user1", "user2");
+		service.sendMessage("message4", "user1", "user2");
+		try {
+			service.sendMessage("message5", "user1", "user2");
+			Assert.fail();
+		} catch (MessageRejectedException e) {
+		}
+		service.unregister("user2");
+		Assert.assertNull(service.getNextMessage("user2"));
+	}
+
+	@Test
+	public void receiveAsyncTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		Assert.assertTrue(service instanceof AsyncMessageReceiver);
+		@SuppressWarnings("unchecked")
+		AsyncMessageReceiver<String> receiver = (AsyncMessageReceiver<String>) service;
+		service.register("user1", "user2");
+		CompletableFuture<Message<String>> first = receiver.receiveAsync("user2");
+		CompletableFuture<Message<String>> second = receiver.receiveAsync(service.getHandle("user2"));
+		Assert.assertFalse(first.isDone());
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		Assert.assertEquals("message0", first.get(1, TimeUnit.SECONDS).getMessageBody());
+		Assert.assertEquals("message1", second.get(1, TimeUnit.SECONDS).getMessageBody());
+
+		CompletableFuture<Message<String>> pending = receiver.receiveAsync("user2");
+		service.unregister("user2");
+		Assert.assertNull(pending.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void drainAsyncTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		@SuppressWarnings("unchecked")
+		AsyncMessageReceiver<String> receiver = (AsyncMessageReceiver<String>) service;
+		service.register("user1", "user2");
+		CompletableFuture<List<Message<String>>> drained = receiver.drainAsync("user2", 10);
+		Assert.assertFalse(drained.isDone());
+		service.sendMessage("message0", "user1", "user2");
+		Assert.assertEquals("message0", drained.get(1, TimeUnit.SECONDS).get(0).getMessageBody());
+
+		receiver.drainAsync("user2", 10).cancel(false);
+		service.sendMessage("message1", "user1", "user2");
+		service.sendMessage("message2", "user1", "user2");
+		List<Message<String>> messages = service.drainMessages("user2", 10);
+		Assert.assertEquals("message1", messages.get(0).getMessageBody());
+		Assert.assertNull(receiver.drainAsync("user3", 10).get(1, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void disconnectTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		service.register("user1", "user2");
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		Thread receiver = new Thread(() -> {
+			try {
+				service.getNextMessage("user2");
+			} catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		receiver.start();
+		while (receiver.getState() != Thread.State.WAITING)
+			Thread.sleep(1);
+		client.close();
+		receiver.join();
+		Assert.assertTrue(failure.get() instanceof RemoteException);
+		// the server notices the closed connection
+		while (!server.connections.values().stream().allMatch(NioConnection::isClosed))
+			Thread.sleep(1);
+
+		client = new NioTransport();
+		MessageService<String> other = client.lookupMessageService(address);
+		other.sendMessage("message0", "user1", "user2");
+		Message<String> mess = other.pollNextMessage("user2", 1, TimeUnit.SECONDS);
+		Assert.assertEquals("message0", mess == null ? null : mess.getMessageBody());
+	}
+
+	@Test
+	public void cancelTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		@SuppressWarnings("unchecked")
+		AsyncMessageReceiver<String> receiver = (AsyncMessageReceiver<String>) service;
+		service.register("user1", "user2");
+		CompletableFuture<Message<String>> cancelled = receiver.receiveAsync("user2");
+		cancelled.cancel(false);
+		service.sendMessage("message0", "user1", "user2");
+		Message<String> mess = service.pollNextMessage("user2", 1, TimeUnit.SECONDS);
+		Assert.assertEquals("message0", mess == null ? null : mess.getMessageBody());
+	}
+
+	@Test
+	public void opaqueTest() throws Exception {
+		SimpleMessageService messageService = Mockito.spy(new SimpleMessageService());
+		NioTransport opaqueServer = new NioTransport();
+		MessageCodec.setOpaqueBodies(true);
+		try {
+			opaqueServer.bind(messageService, playGround, 0);
+		} finally {
+			MessageCodec.setOpaqueBodies(false);
+		}
+		try {
+			MessageService<String> service = client.lookupMessageService("localhost:" + opaqueServer.getLocalPort());
+			service.register("user1", "user2");
+			service.sendMessage("message0", "user1", "user2");
+			service.sendMessages(Arrays.asList(new Message<>("message1", "user1", "user2")));
+			Mockito.verify(messageService).sendEncoded("message0".getBytes(StandardCharsets.UTF_8), "user1", "user2");
+			Mockito.verify(messageService, Mockito.never()).sendMessage(Mockito.anyString(), Mockito.anyString(), Mockito.anyString());
+			Assert.assertEquals("message0", service.getNextMessage("user2").getMessageBody());
+			Assert.assertEquals("message1", service.getNextMessage("user2").getMessageBody());
+		} finally {
+			opaqueServer.close();
+		}
+	}
+
+	@Test
+	public void compressionTest() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			text.append("message").append(i % 10);
+		String body = text.toString();
+		byte[] random = new byte[2000];
+		new Random(1).nextBytes(random);
+		FrameWriter writer = new FrameWriter(Frames.RESPONSE, 1, 1024)
+				.writeBody(body).writeBody("short").writeBytes(random).writeBody(random).writeBody((String) null);
+		ByteBuffer frame = writer.toBuffer();
+		Assert.assertTrue(frame.remaining() < body.length() + 2 * random.length);
+		frame.position(9);
+		FrameReader reader = new FrameReader(frame.slice(), true);
+		Assert.assertEquals(body, reader.readString());
+		Assert.assertEquals("short", reader.readString());
+		Assert.assertArrayEquals(random, reader.readBytes());
+		Assert.assertArrayEquals(random, reader.readBytes());
+		Assert.assertNull(reader.readString());
+
+		// the client does not compress, the agreed threshold is off
+		NioTransport plain = new NioTransport(0);
+		NioTransport compressing = new NioTransport(64);
+		try {
+			for (NioTransport transport : Arrays.asList(plain, compressing)) {
+				MessageService<String> service = transport.lookupMessageService(address);
+				service.register("user1", "user2");
+				service.sendMessage(body, "user1", "user2");
+				Assert.assertEquals(body, service.getNextMessage("user2").getMessageBody());
+				service.unregister("user1", "user2");
+			}
+		} finally {
+			plain.close();
+			compressing.close();
+		}
+	}
+
+	@Test
+	public void pushTest() throws Exception {
+		MessageService<String> service = new PushMessageService(client.lookupMessageService(address), client);
+		service.register("user1");
+		int handle2 = service.registerUser("user2");
+		service.sendMessage("message0", "user1", "user2");
+		service.sendMessage("message1", "user1", "user2");
+		Message<String> mess = service.getNextMessage("user2");
+		Assert.assertTrue(mess != null && mess.getMessageBody().equals("message0") && mess.getSenderName().equals("user1"));
+		Assert.assertEquals("message1", service.getNextMessage(handle2).getMessageBody());
+		Assert.assertNull(service.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		service.sendMessage("message2", "user2", "user1");
+		Assert.assertEquals("message2", service.pollNextMessage("user1", 1, TimeUnit.SECONDS).getMessageBody());
+
+		CompletableFuture<Message<String>> pending = CompletableFuture.supplyAsync(() -> {
+			try {
+				return service.getNextMessage("user2");
+			} catch (RemoteException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		service.unregister("user2");
+		Assert.assertNull(pending.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void playersTest() throws Exception {
+		Player first = player("first");
+		Player second = player("second");
+		CountDownLatch started = new CountDownLatch(2);
+		Mockito.doAnswer(inv -> {
+			Player other = (Player) inv.getArguments()[1];
+			Assert.assertEquals("second", other.getIdentity());
+			Assert.assertEquals("second", other.getName());
+			started.countDown();
+			return null;
+		}).when(first).startToPlay(Mockito.eq(true), Mockito.any());
+		Mockito.doAnswer(inv -> {
+			started.countDown();
+			return null;
+		}).when(second).startToPlay(Mockito.eq(false), Mockito.any());
+
+		PlayerRegistrator remote = client.lookupPlayGround(address);
+		remote.registerPlayer(first);
+		remote.registerPlayer(client.export(second));
+		Assert.assertEquals(2, playGround.playersCount());
+		Assert.assertTrue(playGround.startPlaying());
+		Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		Assert.assertTrue(playGround.waitUntilGameIsFinished());
+		Mockito.verify(first).waitAllTurnsCompleted();
+		Assert.assertTrue(playGround.finishPlaying());
+		Mockito.verify(first).gameOver();
+		Mockito.verify(second).gameOver();
+	}
+
+	@Test(timeout = 10000)
+	public void invalidFrameTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		service.register("user1");
+		try (SocketChannel peer = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+			// a register call claiming more users than the frame holds
+			ByteBuffer frame = ByteBuffer.allocate(4 + 11);
+			frame.putInt(11).put(Frames.REQUEST).putInt(1).put(Frames.MESSAGE_SERVICE).put(Frames.REGISTER)
+					.putInt(Integer.MAX_VALUE).flip();
+			peer.write(frame);
+			Assert.assertEquals(-1, peer.read(ByteBuffer.allocate(64)));
+		}
+		// other connections are still served
+		Assert.assertEquals(0, service.getHandle("user1"));
+	}
+
+	@Test(timeout = 10000)
+	public void corruptCompressionTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		service.register("user1");
+		try (SocketChannel peer = SocketChannel.open(new InetSocketAddress("localhost", server.getLocalPort()))) {
+			// a message body claiming to be deflated
+			ByteBuffer frame = ByteBuffer.allocate(4 + 22);
+			frame.putInt(22).put(Frames.REQUEST).putInt(1).put(Frames.MESSAGE_SERVICE).put(Frames.SEND_BY_NAME)
+					.putInt(Frames.COMPRESSED).putInt(5).putInt(3).put(new byte[] { 1, 2, 3 }).flip();
+			peer.write(frame);
+			Assert.assertEquals(-1, peer.read(ByteBuffer.allocate(64)));
+		}
+		Assert.assertEquals(0, service.getHandle("user1"));
+	}
+
+	@Test
+	public void inflateLimitTest() throws Exception {
+		char[] zeros = new char[1024 * 1024];
+		Arrays.fill(zeros, '0');
+		String body = new String(zeros);
+		FrameWriter writer = new FrameWriter(Frames.RESPONSE, 1, 1024);
+		int strings = Frames.MAX_FRAME / body.length() + 1;
+		for (int i = 0; i < strings; i++)
+			writer.writeBody(body);
+		ByteBuffer frame = writer.toBuffer();
+		frame.position(9);
+		FrameReader reader = new FrameReader(frame.slice(), true);
+		try {
+			for (int i = 0; i < strings; i++)
+				Assert.assertEquals(body.length(), reader.readBytes().length);
+			Assert.fail();
+		} catch (InvalidFrameException e) {
+		}
+		// compression is not agreed
+		try {
+			new FrameReader(frame.slice(), false).readBytes();
+			Assert.fail();
+		} catch (InvalidFrameException e) {
+		}
+	}
+
+	@Test
+	public void closedTest() throws Exception {
+		MessageService<String> service = client.lookupMessageService(address);
+		service.register("user1");
+		server.close();
+		try {
+			for (int i = 0; i < 100; i++) {
+				service.getHandle("user1");
+				Thread.sleep(10);
+			}
+			Assert.fail();
+		} catch (RemoteException e) {
+		}
+	}
+
+	private static Player player(String name) throws RemoteException {
+		Player player = Mockito.mock(Player.class);
+		Mockito.when(player.getIdentity()).thenReturn(name);
+		Mockito.when(player.getName()).thenReturn(name);
+		return player;
+	}
+}
@@ -0,0 +1,209 @@
+package com.fx360t.transport.shm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fx360t.service.MessageRejectedException;
+import com.fx360t.service.SimpleMessageService;
+import com.fx360t.strategy.Message;
+
+public class SharedMemoryMessageServiceTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private SimpleMessageService remote;
+	/**
+	 * Services of two players sharing the directory as if they ran in different processes
+	 */
+	private SharedMemoryMessageService first;
+	private SharedMemoryMessageService second;
+	private Path directory;
+
+	@Before
+	public void init() throws Exception {
+		remote = new SimpleMessageService();
+		directory = folder.getRoot().toPath();
+		first = new SharedMemoryMessageService(remote, directory);
+		second = new SharedMemoryMessageService(remote, directory);
+	}
+
+	@After
+	public void close() {
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void messagesTest() throws Exception {
+		first.register("user1");
+		int handle2 = second.registerUser("user2");
+		Assert.assertTrue(Files.exists(directory.resolve("user2.ring")));
+
+		first.sendMessage("message0", "user1", "user2");
+		Message<String> mess = second.getNextMessage("user2");
+		Assert.assertEquals("message0", mess.getMessageBody());
+		Assert.assertEquals("user1", mess.getSenderName());
+		Assert.assertEquals(handle2, mess.getReceiverHandle());
+		Assert.assertEquals(remote.getHandle("user1"), mess.getSenderHandle());
+
+		// handles of the sender are learned from the received message
+		second.sendMessage("message1", mess.getReceiverHandle(), mess.getSenderHandle());
+		Assert.assertEquals("message1", first.getNextMessage(remote.getHandle("user1")).getMessageBody());
+
+		Assert.assertEquals(2, first.sendMessages(Arrays.asList(new Message<>("m1", "user1", "user2"),
+				new Message<>("m2", "user1", "user2"), new Message<>("m3", "user1", "user3"))));
+		List<Message<String>> messages = second.drainMessages("user2", 10);
+		Assert.assertEquals(2, messages.size());
+		Assert.assertEquals("m2", messages.get(1).getMessageBody());
+
+		Assert.assertNull(second.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS));
+		first.sendMessage("message2", "user1", "user2");
+		Assert.assertEquals("message2", second.pollNextMessage("user2", 10, TimeUnit.MILLISECONDS).getMessageBody());
+		Assert.assertTrue(remote.getQueueDepths().values().stream().allMatch(depth -> depth == 0));
+	}
+
+	@Test
+	public void rejectedTest() throws Exception {
+		first.register("user1");
+		second.register("user2");
+		char[] body = new char[1000];
+		Arrays.fill(body, 'a');
+		try {
+			first.sendMessage(new String(body), "user1", "user2");
+			Assert.fail();
+		} catch (MessageRejectedException e) {
+		}
+		first.sendMessage("message", "user1", "user2");
+		Assert.assertEquals("message", second.getNextMessage("user2").getMessageBody());
+	}
+
+	@Test
+	public void slotSizeTest() throws Exception {
+		SharedMemoryMessageService large = new SharedMemoryMessageService(remote, directory, 16, 2048);
+		try {
+			first.register("user1");
+			large.register("user2");
+			char[] body = new char[1000];
+			Arrays.fill(body, 'a');
+			// the sender takes the size from the ring of the receiver
+			first.sendMessage(new String(body), "user1", "user2");
+			Assert.assertEquals(new String(body), large.getNextMessage("user2").getMessageBody());
+		} finally {
+			large.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidSlotSizeTest() {
+		new SharedMemoryMessageService(remote, directory, 16, 100);
+	}
+
+	@Test
+	public void replacedRingTest() throws Exception {
+		first.register("user1");
+		second.register("user2");
+		first.sendMessage("message0", "user1", "user2");
+		Assert.assertEquals("message0", second.getNextMessage("user2").getMessageBody());
+		// process of user2 crashed and its restart creates the ring again while user1 still maps the old one
+		MappedRing restarted = MappedRing.create(directory.resolve("user2.ring"), 16, 512);
+		try {
+			Assert.assertNotEquals(0, restarted.owner());
+			first.sendMessage("message1", "user1", "user2");
+			Assert.assertNotNull(restarted.poll());
+			Assert.assertNull(second.pollNextMessage("user2", 0, TimeUnit.MILLISECONDS));
+		} finally {
+			restarted.close();
+		}
+	}
+
+	@Test
+	public void corruptRingTest() throws Exception {
+		Path file = directory.resolve("corrupt.ring");
+		MappedRing ring = MappedRing.create(file, 16, 512);
+		Assert.assertTrue(ring.offer(new byte[8], 8));
+		Assert.assertTrue(ring.offer(new byte[4], 4));
+		// length of the first record and number of slots in the header
+		write(file, 3 * 64 + 8, -1);
+		try {
+			ring.poll();
+			Assert.fail();
+		} catch (IOException e) {
+		}
+		Assert.assertEquals(4, ring.poll().length);
+		write(file, 4, 3);
+		try {
+			MappedRing.open(file);
+			Assert.fail();
+		} catch (IOException e) {
+		}
+	}
+
+	private static void write(Path file, long position, int value) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write((ByteBuffer) ByteBuffer.allocate(4).putInt(value).flip(), position);
+		}
+	}
+
+	@Test
+	public void privateDirectoryTest() throws Exception {
+		Assume.assumeTrue(System.getProperty(SharedMemoryMessageService.DIRECTORY_PROPERTY) == null
+				&& FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		try (SharedMemoryMessageService service = new SharedMemoryMessageService(remote)) {
+			service.register("private1");
+			Path ring = Paths.get(System.getProperty("java.io.tmpdir"), 
+					"fx360t-shm-" + System.getProperty("user.name").replaceAll("[^A-Za-z0-9._-]", "_"), "private1.ring");
+			Assert.assertTrue(Files.exists(ring));
+			Assert.assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(ring.getParent())));
+			service.unregister("private1");
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void unregisterTest() throws Exception {
+		first.register("user1");
+		second.register("user2");
+		first.sendMessage("message0", "user1", "user2");
+		Assert.assertEquals("message0", second.getNextMessage("user2").getMessageBody());
+		AtomicReference<Thread> receiver = new AtomicReference<>();
+		CompletableFuture<Message<String>> pending = CompletableFuture.supplyAsync(() -> {
+			receiver.set(Thread.currentThread());
+			try {
+				return second.getNextMessage("user2");
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		// the receiver parks on the empty ring after spinning
+		while (receiver.get() == null || !(LockSupport.getBlocker(receiver.get()) instanceof MappedRing))
+			Thread.yield();
+		second.unregister("user2");
+		Assert.assertNull(pending.get(1, TimeUnit.SECONDS));
+		Assert.assertFalse(Files.exists(directory.resolve("user2.ring")));
+		first.sendMessage("lost", "user1", "user2");
+
+		// registered again, the sender maps the new ring
+		second.register("user2");
+		first.sendMessage("message", "user1", "user2");
+		Assert.assertEquals("message", second.pollNextMessage("user2", 1, TimeUnit.SECONDS).getMessageBody());
+	}
+}